@@ -0,0 +1,606 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.kurento.client.processor;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedOptions;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.TypeParameterElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic.Kind;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * Generates, for every interface annotated with {@code @RemoteClass}, a concrete stub that
+ * dispatches its methods to a {@code RemoteObjectInvocationHandler}, and a {@code RomRegistry}
+ * listing those stubs, the module info classes and the types of the module packages. The registry
+ * is published as a {@link java.util.ServiceLoader} service, so kurento-client can create remote
+ * objects without dynamic proxies and resolve module types without {@link Class#forName}.
+ *
+ * <p>
+ * The registry is generated in {@code <package>.internal.stubs}, where package is the first (in
+ * alphabetical order) package with remote classes. It can be changed with the option
+ * {@value #REGISTRY_PACKAGE_OPTION} when several compilation units share packages.
+ * </p>
+ *
+ * <p>
+ * Stubs are generated in the round their remote classes are found, and the registry in the first
+ * round that finds no new ones, so generated files are never created in the last round and other
+ * processors can still process them.
+ * </p>
+ */
+@SupportedAnnotationTypes({ RemoteClassProcessor.REMOTE_CLASS_ANNOTATION,
+    RemoteClassProcessor.MODULE_NAME_ANNOTATION })
+@SupportedOptions(RemoteClassProcessor.REGISTRY_PACKAGE_OPTION)
+public class RemoteClassProcessor extends AbstractProcessor {
+
+  static final String REMOTE_CLASS_ANNOTATION = "org.kurento.client.internal.RemoteClass";
+  static final String MODULE_NAME_ANNOTATION = "org.kurento.client.internal.ModuleName";
+  static final String REGISTRY_PACKAGE_OPTION = "kurento.romRegistryPackage";
+
+  private static final String REGISTRY_INTERFACE = "org.kurento.client.internal.RomRegistry";
+  private static final String HANDLER_CLASS =
+      "org.kurento.client.internal.client.RemoteObjectInvocationHandler";
+  private static final String STUB_INTERFACE =
+      "org.kurento.client.internal.client.RemoteObjectStub";
+  private static final String MODULE_INFO_PACKAGE = "org.kurento.module";
+  private static final String MODULE_INFO_SUFFIX = "ModuleInfo";
+  private static final String STUB_SUFFIX = "Stub";
+  private static final String REGISTRY_CLASS = "RomStubRegistry";
+
+  private final List<TypeElement> remoteClasses = new ArrayList<>();
+  private final Set<String> modulePackages = new TreeSet<>();
+  private final Map<String, String> moduleInfos = new TreeMap<>();
+  private final Set<String> rootTypes = new TreeSet<>();
+  private final Set<String> processed = new HashSet<>();
+
+  private final List<TypeElement> pendingStubs = new ArrayList<>();
+  private final Map<String, String> stubs = new TreeMap<>();
+  private String registryPackage;
+  private boolean registryGenerated;
+
+  @Override
+  public SourceVersion getSupportedSourceVersion() {
+    return SourceVersion.latestSupported();
+  }
+
+  @Override
+  public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+
+    if (roundEnv.processingOver()) {
+      return false;
+    }
+
+    for (Element root : roundEnv.getRootElements()) {
+      collectRootType(root);
+    }
+
+    TypeElement remoteClass = processingEnv.getElementUtils()
+        .getTypeElement(REMOTE_CLASS_ANNOTATION);
+    if (remoteClass != null) {
+      for (Element element : roundEnv.getElementsAnnotatedWith(remoteClass)) {
+        if (element.getKind() == ElementKind.INTERFACE
+            && processed.add(((TypeElement) element).getQualifiedName().toString())) {
+          remoteClasses.add((TypeElement) element);
+          pendingStubs.add((TypeElement) element);
+          modulePackages.add(packageOf(element));
+        }
+      }
+    }
+
+    TypeElement moduleName = processingEnv.getElementUtils()
+        .getTypeElement(MODULE_NAME_ANNOTATION);
+    if (moduleName != null) {
+      for (Element element : roundEnv.getElementsAnnotatedWith(moduleName)) {
+        modulePackages.add(packageOf(element));
+      }
+    }
+
+    boolean stubsGenerated = false;
+
+    if (!pendingStubs.isEmpty()) {
+      if (registryGenerated) {
+        for (TypeElement pending : pendingStubs) {
+          processingEnv.getMessager().printMessage(Kind.WARNING,
+              "Remote class found after generating the ROM registry. It will use a dynamic proxy",
+              pending);
+        }
+      } else {
+        stubsGenerated = generateStubs(pendingStubs);
+      }
+      pendingStubs.clear();
+    }
+
+    // Generated stubs are processed in the next round, so the registry is generated there
+    if (!stubsGenerated && !remoteClasses.isEmpty() && !registryGenerated) {
+      registryGenerated = true;
+      try {
+        generateRegistry();
+      } catch (IOException e) {
+        processingEnv.getMessager().printMessage(Kind.ERROR,
+            "Exception generating ROM registry: " + e.getMessage());
+      }
+    }
+
+    return false;
+  }
+
+  private void collectRootType(Element root) {
+
+    if (!(root instanceof TypeElement)) {
+      return;
+    }
+
+    TypeElement type = (TypeElement) root;
+    if (type.getNestingKind() != NestingKind.TOP_LEVEL
+        || !type.getModifiers().contains(Modifier.PUBLIC)) {
+      return;
+    }
+
+    String packageName = packageOf(type);
+    String simpleName = type.getSimpleName().toString();
+
+    if (MODULE_INFO_PACKAGE.equals(packageName) && simpleName.endsWith(MODULE_INFO_SUFFIX)
+        && simpleName.length() > MODULE_INFO_SUFFIX.length() && hasGetPackageName(type)) {
+
+      String module = simpleName.substring(0, simpleName.length() - MODULE_INFO_SUFFIX.length());
+      moduleInfos.put(module.substring(0, 1).toLowerCase() + module.substring(1),
+          type.getQualifiedName().toString());
+    }
+
+    rootTypes.add(type.getQualifiedName().toString());
+  }
+
+  private boolean hasGetPackageName(TypeElement type) {
+    for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+      if (method.getSimpleName().contentEquals("getPackageName")
+          && method.getParameters().isEmpty()
+          && method.getModifiers().contains(Modifier.STATIC)
+          && method.getModifiers().contains(Modifier.PUBLIC)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return true if any stub has been generated
+   */
+  private boolean generateStubs(List<TypeElement> newRemoteClasses) {
+
+    if (registryPackage == null) {
+      registryPackage = processingEnv.getOptions().get(REGISTRY_PACKAGE_OPTION);
+      if (registryPackage == null) {
+        Set<String> packages = new TreeSet<>();
+        for (TypeElement remoteClass : newRemoteClasses) {
+          packages.add(packageOf(remoteClass));
+        }
+        registryPackage = packages.iterator().next() + ".internal.stubs";
+      }
+    }
+
+    boolean generated = false;
+
+    for (TypeElement remoteClass : newRemoteClasses) {
+
+      if (!remoteClass.getTypeParameters().isEmpty()
+          || !remoteClass.getModifiers().contains(Modifier.PUBLIC)) {
+        processingEnv.getMessager().printMessage(Kind.NOTE,
+            "Stub not generated for non public or generic remote class", remoteClass);
+        continue;
+      }
+
+      String stubName = stubNameFor(remoteClass);
+      try {
+        generateStub(registryPackage, stubName, remoteClass);
+        stubs.put(remoteClass.getQualifiedName().toString(), registryPackage + "." + stubName);
+        generated = true;
+      } catch (IOException e) {
+        processingEnv.getMessager().printMessage(Kind.ERROR,
+            "Exception generating stub: " + e.getMessage(), remoteClass);
+      }
+    }
+
+    return generated;
+  }
+
+  /**
+   * @return the annotation marking generated sources in the source version being compiled, or
+   *         null if there is none (e.g. javax.annotation.Generated is not available since Java 9)
+   */
+  private String generatedAnnotation() {
+    for (String annotation : new String[] { "javax.annotation.processing.Generated",
+        "javax.annotation.Generated" }) {
+      if (processingEnv.getElementUtils().getTypeElement(annotation) != null) {
+        return annotation;
+      }
+    }
+    return null;
+  }
+
+  private void printGeneratedAnnotation(PrintWriter out) {
+    String generated = generatedAnnotation();
+    if (generated != null) {
+      out.println("@" + generated + "(\"" + RemoteClassProcessor.class.getName() + "\")");
+    }
+  }
+
+  private String stubNameFor(TypeElement remoteClass) {
+    String packageName = packageOf(remoteClass);
+    String qualifiedName = remoteClass.getQualifiedName().toString();
+    String name = packageName.isEmpty() ? qualifiedName
+        : qualifiedName.substring(packageName.length() + 1);
+    return name.replace('.', '_') + STUB_SUFFIX;
+  }
+
+  private void generateStub(String stubPackage, String stubName, TypeElement remoteClass)
+      throws IOException {
+
+    String remoteClassName = remoteClass.getQualifiedName().toString();
+    List<ExecutableElement> methods = collectMethods(remoteClass);
+
+    Writer writer = processingEnv.getFiler()
+        .createSourceFile(stubPackage + "." + stubName, remoteClass).openWriter();
+
+    try (PrintWriter out = new PrintWriter(writer)) {
+
+      out.println("package " + stubPackage + ";");
+      out.println();
+      out.println("/**");
+      out.println(" * Stub for {@link " + remoteClassName + "} generated by "
+          + RemoteClassProcessor.class.getSimpleName() + ". Don't edit.");
+      out.println(" */");
+      printGeneratedAnnotation(out);
+      out.println("@SuppressWarnings({ \"unchecked\", \"rawtypes\", \"deprecation\" })");
+      out.println("public final class " + stubName + " implements " + remoteClassName + ", "
+          + STUB_INTERFACE + " {");
+      out.println();
+      out.println("  private static final java.lang.reflect.Method[] METHODS;");
+      out.println();
+      out.println("  static {");
+      out.println("    try {");
+      out.println("      METHODS = new java.lang.reflect.Method[] {");
+      for (int i = 0; i < methods.size(); i++) {
+        out.println("          " + methodLookup(remoteClassName, methods.get(i))
+            + (i < methods.size() - 1 ? "," : ""));
+      }
+      out.println("      };");
+      out.println("    } catch (NoSuchMethodException e) {");
+      out.println("      throw new ExceptionInInitializerError(e);");
+      out.println("    }");
+      out.println("  }");
+      out.println();
+      out.println("  private final " + HANDLER_CLASS + " handler;");
+      out.println();
+      out.println("  public " + stubName + "(" + HANDLER_CLASS + " handler) {");
+      out.println("    this.handler = handler;");
+      out.println("  }");
+      out.println();
+      out.println("  @Override");
+      out.println("  public " + HANDLER_CLASS + " getInvocationHandler() {");
+      out.println("    return handler;");
+      out.println("  }");
+
+      for (int i = 0; i < methods.size(); i++) {
+        out.println();
+        writeMethod(out, i, methods.get(i));
+      }
+
+      out.println();
+      out.println("  @Override");
+      out.println("  public String toString() {");
+      out.println("    return handler.toString();");
+      out.println("  }");
+      out.println();
+      out.println("  @Override");
+      out.println("  public int hashCode() {");
+      out.println("    return handler.hashCode();");
+      out.println("  }");
+      out.println();
+      out.println("  @Override");
+      out.println("  public boolean equals(Object obj) {");
+      out.println("    return handler.equals(obj);");
+      out.println("  }");
+      out.println();
+      out.println("}");
+    }
+  }
+
+  private List<ExecutableElement> collectMethods(TypeElement remoteClass) {
+
+    List<ExecutableElement> methods = new ArrayList<>();
+    Set<String> signatures = new HashSet<>();
+
+    for (ExecutableElement method : ElementFilter
+        .methodsIn(processingEnv.getElementUtils().getAllMembers(remoteClass))) {
+
+      Element owner = method.getEnclosingElement();
+      if (owner.getKind() != ElementKind.INTERFACE
+          || method.getModifiers().contains(Modifier.STATIC)
+          || method.getModifiers().contains(Modifier.DEFAULT)) {
+        continue;
+      }
+
+      String signature = erasedSignature(method);
+      if (signature.equals("toString()") || signature.equals("hashCode()")
+          || signature.equals("equals(java.lang.Object)")) {
+        continue;
+      }
+
+      if (signatures.add(signature)) {
+        methods.add(method);
+      }
+    }
+
+    return methods;
+  }
+
+  private String erasedSignature(ExecutableElement method) {
+    StringBuilder sb = new StringBuilder(method.getSimpleName()).append('(');
+    boolean first = true;
+    for (VariableElement param : method.getParameters()) {
+      if (!first) {
+        sb.append(',');
+      }
+      sb.append(erasure(param.asType()));
+      first = false;
+    }
+    return sb.append(')').toString();
+  }
+
+  private String erasure(TypeMirror type) {
+    return processingEnv.getTypeUtils().erasure(type).toString();
+  }
+
+  private String methodLookup(String remoteClassName, ExecutableElement method) {
+    StringBuilder sb = new StringBuilder(remoteClassName).append(".class.getMethod(\"")
+        .append(method.getSimpleName()).append('"');
+    for (VariableElement param : method.getParameters()) {
+      sb.append(", ").append(erasure(param.asType())).append(".class");
+    }
+    return sb.append(')').toString();
+  }
+
+  private void writeMethod(PrintWriter out, int index, ExecutableElement method) {
+
+    TypeMirror returnType = method.getReturnType();
+    List<? extends VariableElement> params = method.getParameters();
+
+    StringBuilder decl = new StringBuilder("  public ");
+
+    if (!method.getTypeParameters().isEmpty()) {
+      decl.append('<');
+      boolean first = true;
+      for (TypeParameterElement typeParam : method.getTypeParameters()) {
+        if (!first) {
+          decl.append(", ");
+        }
+        decl.append(typeParam.getSimpleName());
+        List<? extends TypeMirror> bounds = typeParam.getBounds();
+        if (!bounds.isEmpty() && !(bounds.size() == 1
+            && bounds.get(0).toString().equals("java.lang.Object"))) {
+          decl.append(" extends ");
+          for (int i = 0; i < bounds.size(); i++) {
+            decl.append(i > 0 ? " & " : "").append(bounds.get(i));
+          }
+        }
+        first = false;
+      }
+      decl.append("> ");
+    }
+
+    decl.append(returnType).append(' ').append(method.getSimpleName()).append('(');
+
+    StringBuilder args = new StringBuilder();
+    for (int i = 0; i < params.size(); i++) {
+      TypeMirror paramType = params.get(i).asType();
+      String typeName = paramType.toString();
+      if (method.isVarArgs() && i == params.size() - 1 && typeName.endsWith("[]")) {
+        typeName = typeName.substring(0, typeName.length() - 2) + "...";
+      }
+      decl.append(i > 0 ? ", " : "").append(typeName).append(" arg").append(i);
+      args.append(i > 0 ? ", " : "").append("arg").append(i);
+    }
+    decl.append(')');
+
+    Set<String> checkedExceptions = checkedExceptions(method);
+    if (!method.getThrownTypes().isEmpty()) {
+      decl.append(" throws ");
+      for (int i = 0; i < method.getThrownTypes().size(); i++) {
+        decl.append(i > 0 ? ", " : "").append(method.getThrownTypes().get(i));
+      }
+    }
+
+    String call = "handler.invoke(this, METHODS[" + index + "], "
+        + (params.isEmpty() ? "null" : "new Object[] { " + args + " }") + ")";
+
+    out.println("  @Override");
+    out.println(decl + " {");
+    out.println("    try {");
+    if (returnType.getKind() == TypeKind.VOID) {
+      out.println("      " + call + ";");
+    } else {
+      out.println("      return (" + boxed(returnType) + ") " + call + ";");
+    }
+    out.println("    } catch (RuntimeException | Error e) {");
+    out.println("      throw e;");
+    for (String exception : checkedExceptions) {
+      out.println("    } catch (" + exception + " e) {");
+      out.println("      throw e;");
+    }
+    if (!checkedExceptions.contains("java.lang.Throwable")) {
+      out.println("    } catch (Throwable e) {");
+      out.println("      throw new java.lang.reflect.UndeclaredThrowableException(e);");
+    }
+    out.println("    }");
+    out.println("  }");
+  }
+
+  private Set<String> checkedExceptions(ExecutableElement method) {
+
+    TypeMirror runtimeException = processingEnv.getElementUtils()
+        .getTypeElement("java.lang.RuntimeException").asType();
+    TypeMirror error = processingEnv.getElementUtils().getTypeElement("java.lang.Error").asType();
+
+    Set<String> result = new LinkedHashSet<>();
+    List<TypeMirror> added = new ArrayList<>();
+
+    for (TypeMirror thrown : method.getThrownTypes()) {
+      if (processingEnv.getTypeUtils().isSubtype(thrown, runtimeException)
+          || processingEnv.getTypeUtils().isSubtype(thrown, error)) {
+        continue;
+      }
+      boolean alreadyCaught = false;
+      for (TypeMirror other : added) {
+        if (processingEnv.getTypeUtils().isSubtype(thrown, other)) {
+          alreadyCaught = true;
+          break;
+        }
+      }
+      if (!alreadyCaught) {
+        added.add(thrown);
+        result.add(thrown.toString());
+      }
+    }
+
+    return result;
+  }
+
+  private String boxed(TypeMirror type) {
+    if (type.getKind().isPrimitive()) {
+      return processingEnv.getTypeUtils()
+          .boxedClass((javax.lang.model.type.PrimitiveType) type).getQualifiedName().toString();
+    }
+    return type.toString();
+  }
+
+  private void generateRegistry() throws IOException {
+
+    String registryName = registryPackage + "." + REGISTRY_CLASS;
+
+    Writer writer = processingEnv.getFiler().createSourceFile(registryName,
+        remoteClasses.toArray(new Element[0])).openWriter();
+
+    try (PrintWriter out = new PrintWriter(writer)) {
+
+      out.println("package " + registryPackage + ";");
+      out.println();
+      out.println("/**");
+      out.println(" * Registry of remote class stubs and module types generated by "
+          + RemoteClassProcessor.class.getSimpleName() + ". Don't edit.");
+      out.println(" */");
+      printGeneratedAnnotation(out);
+      out.println("@SuppressWarnings(\"deprecation\")");
+      out.println("public final class " + REGISTRY_CLASS + " implements " + REGISTRY_INTERFACE
+          + " {");
+      out.println();
+      out.println("  private static final java.util.Map<String, Class<?>> CLASSES ="
+          + " new java.util.HashMap<>();");
+      out.println();
+      out.println("  private static final java.util.Map<String, String> PACKAGES ="
+          + " new java.util.HashMap<>();");
+      out.println();
+      out.println("  static {");
+      for (String type : rootTypes) {
+        if (modulePackages.contains(packageOf(type)) && !isGenerated(type)) {
+          out.println("    CLASSES.put(\"" + type + "\", " + type + ".class);");
+        }
+      }
+      for (Map.Entry<String, String> moduleInfo : moduleInfos.entrySet()) {
+        out.println("    PACKAGES.put(\"" + moduleInfo.getKey() + "\", " + moduleInfo.getValue()
+            + ".getPackageName());");
+      }
+      out.println("  }");
+      out.println();
+      out.println("  @Override");
+      out.println("  public org.kurento.client.KurentoObject newStub(Class<?> remoteClass, "
+          + HANDLER_CLASS + " handler) {");
+      out.println("    switch (remoteClass.getName()) {");
+      for (Map.Entry<String, String> stub : stubs.entrySet()) {
+        String binaryName = processingEnv.getElementUtils()
+            .getBinaryName(processingEnv.getElementUtils().getTypeElement(stub.getKey()))
+            .toString();
+        out.println("      case \"" + binaryName + "\":");
+        out.println("        return remoteClass == " + stub.getKey() + ".class ? new "
+            + stub.getValue() + "(handler) : null;");
+      }
+      out.println("      default:");
+      out.println("        return null;");
+      out.println("    }");
+      out.println("  }");
+      out.println();
+      out.println("  @Override");
+      out.println("  public String getPackageName(String moduleName) {");
+      out.println("    return PACKAGES.get(moduleName);");
+      out.println("  }");
+      out.println();
+      out.println("  @Override");
+      out.println("  public Class<?> getClass(String className) {");
+      out.println("    return CLASSES.get(className);");
+      out.println("  }");
+      out.println();
+      out.println("}");
+    }
+
+    FileObject services = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT,
+        "", "META-INF/services/" + REGISTRY_INTERFACE);
+
+    try (PrintWriter out = new PrintWriter(services.openWriter())) {
+      out.println(registryName);
+    }
+  }
+
+  private boolean isGenerated(String type) {
+    return stubs.containsValue(type) || type.endsWith("." + REGISTRY_CLASS);
+  }
+
+  private String packageOf(Element element) {
+    PackageElement packageElement = processingEnv.getElementUtils().getPackageOf(element);
+    return packageElement.getQualifiedName().toString();
+  }
+
+  private String packageOf(String qualifiedName) {
+    int index = qualifiedName.lastIndexOf('.');
+    return index < 0 ? "" : qualifiedName.substring(0, index);
+  }
+
+}
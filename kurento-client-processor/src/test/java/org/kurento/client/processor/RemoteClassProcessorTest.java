@@ -0,0 +1,224 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.client.processor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Compiles a sample module with the processor, using minimal copies of the kurento-client types
+ * referenced by the generated code, and checks the generated stub and registry.
+ */
+public class RemoteClassProcessorTest {
+
+  private static final String REGISTRY = "org.sample.internal.stubs.RomStubRegistry";
+
+  private static Path genDir;
+  private static Path outDir;
+  private static List<Diagnostic<? extends JavaFileObject>> diagnostics;
+  private static boolean compiled;
+
+  private static class Source extends SimpleJavaFileObject {
+
+    private final String code;
+
+    public Source(String className, String code) {
+      super(URI.create("string:///" + className.replace('.', '/') + Kind.SOURCE.extension),
+          Kind.SOURCE);
+      this.code = code;
+    }
+
+    @Override
+    public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+      return code;
+    }
+  }
+
+  @BeforeClass
+  public static void compile() throws IOException {
+
+    List<JavaFileObject> sources = Arrays.<JavaFileObject> asList(
+        new Source("org.kurento.client.internal.RemoteClass",
+            "package org.kurento.client.internal;\n"
+                + "public @interface RemoteClass {}"),
+        new Source("org.kurento.client.internal.ModuleName",
+            "package org.kurento.client.internal;\n"
+                + "public @interface ModuleName { String value(); }"),
+        new Source("org.kurento.client.KurentoObject",
+            "package org.kurento.client;\n"
+                + "public interface KurentoObject { String getId(); }"),
+        new Source("org.kurento.client.internal.client.RemoteObjectStub",
+            "package org.kurento.client.internal.client;\n"
+                + "public interface RemoteObjectStub {\n"
+                + "  RemoteObjectInvocationHandler getInvocationHandler();\n"
+                + "}"),
+        new Source("org.kurento.client.internal.client.RemoteObjectInvocationHandler",
+            "package org.kurento.client.internal.client;\n"
+                + "public class RemoteObjectInvocationHandler {\n"
+                + "  public final java.util.List<String> calls = new java.util.ArrayList<>();\n"
+                + "  public Object invoke(Object proxy, java.lang.reflect.Method method,\n"
+                + "      Object[] args) throws Throwable {\n"
+                + "    calls.add(method.getName());\n"
+                + "    return args == null ? null : args[0];\n"
+                + "  }\n"
+                + "}"),
+        new Source("org.kurento.client.internal.RomRegistry",
+            "package org.kurento.client.internal;\n"
+                + "import org.kurento.client.KurentoObject;\n"
+                + "import org.kurento.client.internal.client.RemoteObjectInvocationHandler;\n"
+                + "public interface RomRegistry {\n"
+                + "  KurentoObject newStub(Class<?> remoteClass,\n"
+                + "      RemoteObjectInvocationHandler handler);\n"
+                + "  String getPackageName(String moduleName);\n"
+                + "  Class<?> getClass(String className);\n"
+                + "}"),
+        new Source("org.kurento.module.SampleModuleInfo",
+            "package org.kurento.module;\n"
+                + "public class SampleModuleInfo {\n"
+                + "  public static String getPackageName() { return \"org.sample\"; }\n"
+                + "}"),
+        new Source("org.sample.Sample",
+            "package org.sample;\n"
+                + "@org.kurento.client.internal.RemoteClass\n"
+                + "public interface Sample extends org.kurento.client.KurentoObject {\n"
+                + "  String echo(String value);\n"
+                + "  java.util.List<String> echoList(java.util.List<String> values);\n"
+                + "  @Deprecated\n"
+                + "  void oldMethod(OldParam param);\n"
+                + "}"),
+        new Source("org.sample.OldParam",
+            "package org.sample;\n"
+                + "@Deprecated\n"
+                + "@org.kurento.client.internal.ModuleName(\"sample\")\n"
+                + "public class OldParam {}"));
+
+    genDir = Files.createTempDirectory("processor-gen");
+    outDir = Files.createTempDirectory("processor-out");
+
+    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    DiagnosticCollector<JavaFileObject> collector = new DiagnosticCollector<>();
+
+    try (StandardJavaFileManager fileManager =
+        compiler.getStandardFileManager(collector, null, StandardCharsets.UTF_8)) {
+
+      JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, collector,
+          Arrays.asList("-d", outDir.toString(), "-s", genDir.toString(),
+              "-Xlint:deprecation,unchecked,rawtypes"),
+          null, sources);
+      task.setProcessors(Arrays.asList(new RemoteClassProcessor()));
+
+      compiled = task.call();
+    }
+
+    diagnostics = collector.getDiagnostics();
+  }
+
+  private static String read(Path dir, String file) throws IOException {
+    return new String(Files.readAllBytes(dir.resolve(file)), StandardCharsets.UTF_8);
+  }
+
+  @Test
+  public void compilesWithoutWarnings() {
+
+    List<String> warnings = new ArrayList<>();
+    for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics) {
+      if (diagnostic.getKind() != Diagnostic.Kind.NOTE) {
+        warnings.add(diagnostic.toString());
+      }
+    }
+
+    assertTrue("Compilation failed: " + warnings, compiled);
+    assertEquals("Unexpected diagnostics", new ArrayList<String>(), warnings);
+  }
+
+  @Test
+  public void stubAndRegistryAreGenerated() throws IOException {
+
+    String stub = read(genDir, "org/sample/internal/stubs/SampleStub.java");
+    assertTrue(stub.contains(
+        "public final class SampleStub implements org.sample.Sample, "
+            + "org.kurento.client.internal.client.RemoteObjectStub"));
+    assertTrue(stub.contains("\"deprecation\""));
+    assertTrue(stub.contains("Generated(\"" + RemoteClassProcessor.class.getName() + "\")"));
+
+    String registry = read(genDir, "org/sample/internal/stubs/RomStubRegistry.java");
+    assertTrue(registry.contains("case \"org.sample.Sample\":"));
+    assertTrue(registry.contains("CLASSES.put(\"org.sample.OldParam\", "
+        + "org.sample.OldParam.class);"));
+
+    assertEquals(REGISTRY,
+        read(outDir, "META-INF/services/org.kurento.client.internal.RomRegistry").trim());
+  }
+
+  @Test
+  public void generatedRegistryCreatesStubs() throws Exception {
+
+    try (URLClassLoader loader = new URLClassLoader(new URL[] { outDir.toUri().toURL() },
+        getClass().getClassLoader())) {
+
+      Class<?> registryInterface = loader.loadClass("org.kurento.client.internal.RomRegistry");
+      Class<?> handlerClass =
+          loader.loadClass("org.kurento.client.internal.client.RemoteObjectInvocationHandler");
+      Class<?> sampleClass = loader.loadClass("org.sample.Sample");
+
+      Object registry = loader.loadClass(REGISTRY).newInstance();
+
+      assertEquals("org.sample",
+          registryInterface.getMethod("getPackageName", String.class).invoke(registry, "sample"));
+      assertEquals(loader.loadClass("org.sample.OldParam"), registryInterface
+          .getMethod("getClass", String.class).invoke(registry, "org.sample.OldParam"));
+
+      Object handler = handlerClass.newInstance();
+      Object stub = registryInterface.getMethod("newStub", Class.class, handlerClass)
+          .invoke(registry, sampleClass, handler);
+      assertNotNull(stub);
+      assertTrue(sampleClass.isInstance(stub));
+
+      Method echo = sampleClass.getMethod("echo", String.class);
+      assertEquals("value", echo.invoke(stub, "value"));
+
+      Field calls = handlerClass.getField("calls");
+      assertEquals(Arrays.asList("echo"), calls.get(handler));
+    }
+  }
+}
@@ -90,14 +90,13 @@ public class AbstractBuilder<T> {
    **/
   public void buildAsync(final Continuation<T> continuation) {
 
-    manager.create(clazz.getSimpleName(), props, genericProperties,
+    manager.create(clazz.getSimpleName(), props, genericProperties, clazz,
         new DefaultContinuation<RemoteObject>(continuation) {
           @SuppressWarnings("unchecked")
           @Override
           public void onSuccess(RemoteObject remoteObject) {
             try {
-              continuation.onSuccess(
-                  (T) RemoteObjectInvocationHandler.newProxy(remoteObject, manager, clazz));
+              continuation.onSuccess((T) remoteObject.getKurentoObject());
             } catch (Exception e) {
               log.warn("[Continuation] error invoking onSuccess implemented by client", e);
             }
@@ -106,6 +105,22 @@ public class AbstractBuilder<T> {
 
   }
 
+  /**
+   * Builds an object without waiting for the media server. The returned object can be used right
+   * away as target or param of asynchronous operations, which are sent in the same request as its
+   * creation. Synchronous operations wait until it has been created.
+   *
+   * @return T a provisional object
+   *
+   **/
+  @SuppressWarnings("unchecked")
+  public T buildAsync() {
+
+    RemoteObject remoteObject = manager.createPipelined(clazz, props, genericProperties);
+
+    return (T) remoteObject.getKurentoObject();
+  }
+
   public AbstractBuilder<T> withProperties(Properties properties) {
     genericProperties.getMap().putAll(properties.getMap());
     return this;
@@ -0,0 +1,46 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.client;
+
+/**
+ * What to do when an event arrives for a listener whose queue of pending events is full. Only used
+ * when events are dispatched asynchronously (see
+ * {@link KurentoClient#enableAsyncEventDispatch(int, int)}).
+ */
+public enum EventOverflowPolicy {
+
+  /**
+   * The thread receiving events from the media server waits until the listener has room for the
+   * event. No events are lost, but a slow listener delays every event on the connection, and the
+   * responses received in the same thread.
+   */
+  BLOCK,
+
+  /**
+   * The oldest pending event of the listener is discarded to make room for the new one. This is the
+   * default policy.
+   */
+  DROP_OLDEST,
+
+  /**
+   * Pending events of the listener are replaced by the new one, so the listener only receives the
+   * most recent event of the type. Useful for events that report a state, where old values are
+   * superseded by new ones.
+   */
+  COALESCE
+}
@@ -20,14 +20,25 @@ package org.kurento.client;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import javax.annotation.PreDestroy;
 
 import org.kurento.client.internal.KmsUrlLoader;
 import org.kurento.client.internal.TransactionImpl;
+import org.kurento.client.internal.client.EventDispatcher;
+import org.kurento.client.internal.client.PropertyCache;
+import org.kurento.client.internal.client.RemoteObject;
+import org.kurento.client.internal.client.RemoteObjectInvocationHandler;
+import org.kurento.client.internal.client.RomClient;
 import org.kurento.client.internal.client.RomManager;
 import org.kurento.client.internal.transport.jsonrpc.RomClientJsonRpcClient;
+import org.kurento.client.internal.transport.jsonrpc.SharedRomConnection;
 import org.kurento.commons.PropertiesManager;
 import org.kurento.commons.exception.KurentoException;
 import org.kurento.jsonrpc.client.AbstractJsonRpcClientWebSocket;
@@ -67,6 +78,31 @@ public class KurentoClient {
   private long connectionTimeout =
       PropertiesManager.getProperty("kurento.client.connectionTimeout", 5000);
 
+  private long batchWindow = PropertiesManager.getProperty("kurento.client.batchWindow", 0);
+
+  private int batchMaxSize = PropertiesManager.getProperty("kurento.client.batchMaxSize", 100);
+
+  private int eventDispatchThreads =
+      PropertiesManager.getProperty("kurento.client.eventDispatchThreads", 0);
+
+  private int eventQueueSize = PropertiesManager.getProperty("kurento.client.eventQueueSize", 1000);
+
+  private EventOverflowPolicy eventOverflowPolicy =
+      PropertiesManager.getProperty("kurento.client.eventOverflowPolicy",
+          EventOverflowPolicy.DROP_OLDEST);
+
+  private boolean propertyCache =
+      PropertiesManager.getProperty("kurento.client.propertyCache", false);
+
+  private long pipelineWindow = PropertiesManager.getProperty("kurento.client.pipelineWindow", 1);
+
+  private RomClientJsonRpcClient romClient;
+
+  // Connection shared with other logical clients, if any
+  private SharedRomConnection sharedConnection;
+
+  private static final Map<String, SharedRomConnection> sharedConnections = new HashMap<>();
+
   private String id;
 
   private ServerManager serverManager;
@@ -240,7 +276,12 @@ public class KurentoClient {
 
   protected KurentoClient(JsonRpcClient client) {
     this.client = client;
-    this.manager = new RomManager(new RomClientJsonRpcClient(client));
+    this.romClient = new RomClientJsonRpcClient(client);
+    this.manager = new RomManager(romClient);
+    if (batchWindow > 0) {
+      romClient.enableBatching(batchWindow, batchMaxSize);
+    }
+    configureManager();
     client.setRequestTimeout(requesTimeout);
     client.setConnectionTimeout((int) connectionTimeout);
     if (client instanceof AbstractJsonRpcClientWebSocket) {
@@ -260,6 +301,91 @@ public class KurentoClient {
     }
   }
 
+  /**
+   * Creates a logical client over a connection shared with other logical clients.
+   */
+  protected KurentoClient(SharedRomConnection connection, RomClient logicalClient) {
+    this.client = connection.getJsonRpcClient();
+    this.romClient = connection.getRomClient();
+    this.sharedConnection = connection;
+    this.manager = new RomManager(logicalClient);
+    configureManager();
+    // The first logical client configures the connection
+    if (!connection.isConnected()) {
+      if (batchWindow > 0 && !romClient.isBatchingEnabled()) {
+        romClient.enableBatching(batchWindow, batchMaxSize);
+      }
+      client.setRequestTimeout(requesTimeout);
+      client.setConnectionTimeout((int) connectionTimeout);
+    }
+    try {
+      connection.connect();
+    } catch (Exception e) {
+      manager.destroy();
+      throw new KurentoException("Exception connecting to KMS", e);
+    }
+  }
+
+  private void configureManager() {
+    if (eventDispatchThreads > 0) {
+      enableAsyncEventDispatch(eventDispatchThreads, eventQueueSize);
+    }
+    if (propertyCache) {
+      enablePropertyCache();
+    }
+    manager.setPipelineWindow(pipelineWindow);
+  }
+
+  /**
+   * Creates a logical client that shares the connection with the other logical clients created
+   * with this method for the same URL. Sharing the connection saves the socket, heartbeat and
+   * threads of each client, e.g. when a client is created per tenant or per room.
+   *
+   * <p>
+   * Each logical client receives only the events it subscribed to. When it is destroyed, the
+   * objects it created are released, and the connection is closed with the last logical client.
+   * Request batching is a setting of the connection, so it affects all its logical clients.
+   * </p>
+   *
+   * @param websocketUrl
+   *          URL of the media server
+   * @return a new logical client
+   */
+  public static KurentoClient createShared(String websocketUrl) {
+    synchronized (sharedConnections) {
+      while (true) {
+        SharedRomConnection connection = sharedConnections.get(websocketUrl);
+        if (connection == null || connection.isClosed()) {
+          log.debug("Connecting to KMS in {} with a shared connection", websocketUrl);
+          JsonRpcClientNettyWebSocket client = new JsonRpcClientNettyWebSocket(websocketUrl);
+          configureJsonRpcClient(client);
+          connection = new SharedRomConnection(client);
+          sharedConnections.put(websocketUrl, connection);
+        }
+        RomClient logicalClient = connection.newLogicalClient();
+        if (logicalClient != null) {
+          return new KurentoClient(connection, logicalClient);
+        }
+      }
+    }
+  }
+
+  /**
+   * Creates a logical client over a connection that may be shared with other logical clients.
+   * See {@link #createShared(String)}.
+   */
+  public static KurentoClient createShared(SharedRomConnection connection) {
+    RomClient logicalClient = connection.newLogicalClient();
+    if (logicalClient == null) {
+      throw new KurentoException("Shared connection is already closed");
+    }
+    return new KurentoClient(connection, logicalClient);
+  }
+
+  public boolean isShared() {
+    return sharedConnection != null;
+  }
+
   /**
    * Creates a new {@link MediaPipeline} in the media server.
    *
@@ -326,10 +452,17 @@ public class KurentoClient {
     }
     log.debug("Closing KurentoClient");
     manager.destroy();
-    try {
-      client.close();
-    } catch (IOException e) {
-      log.error("Error while closing KurentoClient", e);
+    if (sharedConnection == null) {
+      try {
+        client.close();
+      } catch (IOException e) {
+        log.error("Error while closing KurentoClient", e);
+      }
+    } else if (sharedConnection.isClosed()) {
+      // It was the last logical client of the connection
+      synchronized (sharedConnections) {
+        sharedConnections.values().remove(sharedConnection);
+      }
     }
     if (kmsUrlLoader != null) {
       kmsUrlLoader.clientDestroyed(id);
@@ -344,6 +477,148 @@ public class KurentoClient {
     return new KurentoClient(jsonRpcClient);
   }
 
+  /**
+   * Enables transparent batching of asynchronous operations. Creates, invocations, releases and
+   * (un)subscriptions with a {@link Continuation} issued within windowMillis are sent to the media
+   * server as a single transaction request, or earlier if maxBatchSize operations are pending.
+   * Each continuation is still notified with the result of its own operation. Synchronous
+   * operations are never delayed, but they flush the pending batch before being sent.
+   *
+   * @param windowMillis
+   *          Maximum time an operation waits for other operations to be batched with
+   * @param maxBatchSize
+   *          Number of pending operations that causes the batch to be sent immediately
+   */
+  public void enableRequestBatching(long windowMillis, int maxBatchSize) {
+    romClient.enableBatching(windowMillis, maxBatchSize);
+  }
+
+  /**
+   * Disables batching of asynchronous operations, sending any pending batch.
+   */
+  public void disableRequestBatching() {
+    romClient.disableBatching();
+  }
+
+  public boolean isRequestBatchingEnabled() {
+    return romClient.isBatchingEnabled();
+  }
+
+  /**
+   * Delivers events to listeners in a pool of numThreads threads instead of the thread that
+   * receives them from the media server, so a slow listener doesn't delay other events. Each
+   * listener receives its events in order, and has its own queue of up to queueSize pending events.
+   * When the queue is full, the {@link EventOverflowPolicy} configured for the event type is
+   * applied (by default, {@link EventOverflowPolicy#DROP_OLDEST}, as
+   * {@link EventOverflowPolicy#BLOCK} would stall the thread that receives every event of the
+   * connection while a listener is slow).
+   *
+   * @param numThreads
+   *          Number of threads used to deliver events
+   * @param queueSize
+   *          Maximum number of events pending to be delivered to each listener
+   */
+  public void enableAsyncEventDispatch(int numThreads, int queueSize) {
+    EventDispatcher dispatcher = new EventDispatcher(numThreads, queueSize);
+    dispatcher.setDefaultOverflowPolicy(eventOverflowPolicy);
+    manager.setEventDispatcher(dispatcher);
+  }
+
+  /**
+   * Delivers events to listeners in the thread that receives them, as they arrive.
+   */
+  public void disableAsyncEventDispatch() {
+    manager.setEventDispatcher(null);
+  }
+
+  public boolean isAsyncEventDispatchEnabled() {
+    return manager.getEventDispatcher() != null;
+  }
+
+  /**
+   * Caches in the client the values of properties that only change when an event is fired, so
+   * reading them again doesn't reach the media server. The returned {@link PropertyCache} declares
+   * some properties of the media server API as cacheable, and more can be added to it.
+   *
+   * @return the declarations of cacheable properties
+   */
+  public PropertyCache enablePropertyCache() {
+    PropertyCache cache = PropertyCache.withDefaults();
+    manager.setPropertyCache(cache);
+    return cache;
+  }
+
+  public void disablePropertyCache() {
+    manager.setPropertyCache(null);
+  }
+
+  /**
+   * @return the declarations of cacheable properties, or null if the cache is not enabled
+   */
+  public PropertyCache getPropertyCache() {
+    return manager.getPropertyCache();
+  }
+
+  /**
+   * Sets how long operations on objects built with {@link AbstractBuilder#buildAsync()} wait for
+   * more operations before being sent together. Operations are also sent when a synchronous
+   * operation needs one of those objects, or when {@link #flushPipeline()} is called.
+   *
+   * @param windowMillis
+   *          Pipeline window in milliseconds
+   */
+  public void setPipelineWindow(long windowMillis) {
+    manager.setPipelineWindow(windowMillis);
+  }
+
+  /**
+   * Sends the pending operations on objects built with {@link AbstractBuilder#buildAsync()}.
+   */
+  public void flushPipeline() {
+    manager.flushPipeline();
+  }
+
+  /**
+   * Sets the policy applied when a listener of the given event type has too many pending events.
+   * It only has effect when events are dispatched asynchronously.
+   *
+   * @param eventType
+   *          Event type, e.g. "MediaStateChanged"
+   * @param policy
+   *          Policy for the event type, or null to use the default one
+   */
+  public void setEventOverflowPolicy(String eventType, EventOverflowPolicy policy) {
+    EventDispatcher dispatcher = manager.getEventDispatcher();
+    if (dispatcher == null) {
+      throw new IllegalStateException("Asynchronous event dispatch is not enabled");
+    }
+    dispatcher.setOverflowPolicy(eventType, policy);
+  }
+
+  /**
+   * Releases several objects with a single request. Objects contained in others of the collection
+   * (e.g. the elements of a released pipeline) don't need their own release, and their proxies are
+   * discarded locally along with their parent.
+   *
+   * @param objects
+   *          Objects to be released
+   */
+  public void releaseAll(Collection<? extends KurentoObject> objects) {
+    manager.release(getRemoteObjects(objects));
+  }
+
+  public void releaseAll(Collection<? extends KurentoObject> objects, Continuation<Void> cont) {
+    manager.release(getRemoteObjects(objects), cont);
+  }
+
+  private List<RemoteObject> getRemoteObjects(Collection<? extends KurentoObject> objects) {
+    List<RemoteObject> remoteObjects = new ArrayList<>(objects.size());
+    for (KurentoObject object : objects) {
+      remoteObjects.add(RemoteObjectInvocationHandler.getFor(object).getRemoteObject());
+    }
+    return remoteObjects;
+  }
+
   public Transaction beginTransaction() {
     return new TransactionImpl(manager);
   }
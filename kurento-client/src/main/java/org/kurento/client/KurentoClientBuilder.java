@@ -15,6 +15,12 @@ public class KurentoClientBuilder {
   private Long tryReconnectingMaxTime;
   private Long connectionTimeout;
 
+  private Long batchWindow;
+  private Integer batchMaxSize;
+
+  private Integer eventDispatchThreads;
+  private Integer eventQueueSize;
+
   public KurentoClientBuilder() {
   }
 
@@ -63,10 +69,30 @@ public class KurentoClientBuilder {
     return this;
   }
 
+  public KurentoClientBuilder setRequestBatching(long batchWindow, int batchMaxSize) {
+    this.batchWindow = batchWindow;
+    this.batchMaxSize = batchMaxSize;
+    return this;
+  }
+
+  public KurentoClientBuilder setAsyncEventDispatch(int eventDispatchThreads,
+      int eventQueueSize) {
+    this.eventDispatchThreads = eventDispatchThreads;
+    this.eventQueueSize = eventQueueSize;
+    return this;
+  }
+
   public KurentoClient connect() {
-    return KurentoClient.create(kmsWsUri, properties, connectedHandler, connectionFailedHandler,
-        reconnectingHandler, disconnectedHandler, reconnectedHandler, tryReconnectingMaxTime,
-        connectionTimeout);
+    KurentoClient client = KurentoClient.create(kmsWsUri, properties, connectedHandler,
+        connectionFailedHandler, reconnectingHandler, disconnectedHandler, reconnectedHandler,
+        tryReconnectingMaxTime, connectionTimeout);
+    if (batchWindow != null) {
+      client.enableRequestBatching(batchWindow, batchMaxSize);
+    }
+    if (eventDispatchThreads != null) {
+      client.enableAsyncEventDispatch(eventDispatchThreads, eventQueueSize);
+    }
+    return client;
   }
 
 }
@@ -0,0 +1,405 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.kurento.client;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.kurento.client.internal.TransactionImpl;
+import org.kurento.client.internal.client.RemoteObjectInvocationHandler;
+import org.kurento.client.internal.client.operation.RawInvokeOperation;
+import org.kurento.client.internal.server.KurentoServerException;
+import org.kurento.commons.ThreadFactoryCreator;
+import org.kurento.jsonrpc.Prop;
+import org.kurento.jsonrpc.Props;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * Collects the stats of many media elements at once. The {@code getStats} requests of all the
+ * elements are sent in a single transaction, so the cost of a collection does not grow with the
+ * number of round trips to the media server.
+ *
+ * <pre>
+ * StatsCollector collector = new StatsCollector(kurentoClient);
+ * Map&lt;MediaElement, Map&lt;String, Stats&gt;&gt; stats = collector.getStats(endpoints);
+ * </pre>
+ *
+ * When only numeric values are needed, {@link #getStatsValues(Collection, MediaType)} reads them
+ * directly from the response without building {@link Stats} objects, and
+ * {@link #startSampling(Collection, MediaType, long, SampleListener)} collects them periodically as
+ * compact time series.
+ */
+public class StatsCollector {
+
+  private static final Logger log = LoggerFactory.getLogger(StatsCollector.class);
+
+  // Samples a series can be missing from before it is retired from the sampler
+  private static final int SERIES_RETIRE_SAMPLES = 10;
+
+  private final KurentoClient kurentoClient;
+
+  public StatsCollector(KurentoClient kurentoClient) {
+    this.kurentoClient = kurentoClient;
+  }
+
+  public Map<MediaElement, Map<String, Stats>> getStats(
+      Collection<? extends MediaElement> elements) {
+    return getStats(elements, null);
+  }
+
+  /**
+   * Gets the stats of all the elements in one transaction.
+   *
+   * @param elements
+   *          the elements whose stats are requested
+   * @param mediaType
+   *          the media type of the stats, or null for all of them
+   * @return the stats of each element, in the same order as the elements
+   */
+  public Map<MediaElement, Map<String, Stats>> getStats(Collection<? extends MediaElement> elements,
+      MediaType mediaType) {
+
+    if (elements.isEmpty()) {
+      return Collections.emptyMap();
+    }
+
+    Transaction tx = kurentoClient.beginTransaction();
+    Map<MediaElement, TFuture<Map<String, Stats>>> futures = new LinkedHashMap<>();
+    for (MediaElement element : elements) {
+      futures.put(element,
+          mediaType == null ? element.getStats(tx) : element.getStats(tx, mediaType));
+    }
+    tx.commit();
+
+    Map<MediaElement, Map<String, Stats>> stats = new LinkedHashMap<>();
+    for (Entry<MediaElement, TFuture<Map<String, Stats>>> entry : futures.entrySet()) {
+      stats.put(entry.getKey(), entry.getValue().get());
+    }
+    return stats;
+  }
+
+  public Map<MediaElement, Map<String, Number>> getStatsValues(
+      Collection<? extends MediaElement> elements) {
+    return getStatsValues(elements, null);
+  }
+
+  /**
+   * Gets the numeric values of the stats of all the elements in one transaction. Values are keyed
+   * by stats id and field name, as in {@code "<statsId>.<field>"}. Stats are not decoded into
+   * {@link Stats} objects, and non-numeric fields are ignored.
+   *
+   * @param elements
+   *          the elements whose stats are requested
+   * @param mediaType
+   *          the media type of the stats, or null for all of them
+   * @return the values of each element, in the same order as the elements
+   */
+  public Map<MediaElement, Map<String, Number>> getStatsValues(
+      Collection<? extends MediaElement> elements, MediaType mediaType) {
+
+    if (elements.isEmpty()) {
+      return Collections.emptyMap();
+    }
+
+    Props params = mediaType == null ? null : new Props("mediaType", mediaType.name());
+
+    TransactionImpl tx = (TransactionImpl) kurentoClient.beginTransaction();
+    Map<MediaElement, ListenableFuture<Object>> futures = new LinkedHashMap<>();
+    for (MediaElement element : elements) {
+      RawInvokeOperation op = new RawInvokeOperation(element, "getStats", params);
+      tx.addOperation(op);
+      futures.put(element, op.getFuture().getFuture());
+    }
+    tx.commit();
+
+    Map<MediaElement, Map<String, Number>> values = new LinkedHashMap<>();
+    for (Entry<MediaElement, ListenableFuture<Object>> entry : futures.entrySet()) {
+      values.put(entry.getKey(), toValues(getDone(entry.getValue())));
+    }
+    return values;
+  }
+
+  /**
+   * Starts collecting the stats values of the elements every {@code periodMillis}. Each sample is
+   * obtained in one transaction and notified to the listener from the sampling thread.
+   *
+   * @return the sampler, that must be closed to stop sampling
+   */
+  public Sampler startSampling(Collection<? extends MediaElement> elements, MediaType mediaType,
+      long periodMillis, SampleListener listener) {
+
+    Sampler sampler = new Sampler(elements, mediaType, listener);
+    sampler.start(periodMillis);
+    return sampler;
+  }
+
+  private static Object getDone(ListenableFuture<Object> future) {
+    try {
+      return future.get();
+    } catch (Exception e) {
+      // The transaction has been committed, so the future is done
+      throw new IllegalStateException("Stats requested in transaction are not available", e);
+    }
+  }
+
+  private static String getObjectRef(MediaElement element) {
+    return RemoteObjectInvocationHandler.getFor(element).getRemoteObject().getObjectRef();
+  }
+
+  private static Map<String, Number> toValues(Object result) {
+
+    Map<String, Number> values = new HashMap<>();
+    if (result instanceof Props) {
+      for (Prop stats : (Props) result) {
+        if (stats.getValue() instanceof Props) {
+          for (Prop field : (Props) stats.getValue()) {
+            if (field.getValue() instanceof Number) {
+              values.put(stats.getName() + "." + field.getName(), (Number) field.getValue());
+            }
+          }
+        }
+      }
+    }
+    return values;
+  }
+
+  public interface SampleListener {
+
+    void onSample(Sample sample);
+  }
+
+  /**
+   * Stats values of all the sampled elements at a given time. Each value belongs to the series
+   * with the same index, named {@code "<elementId>/<statsId>.<field>"}. Indexes of series are kept
+   * between samples of the same sampler and new series are appended at the end, until series that
+   * have been missing for some samples (e.g. those of removed elements) are retired. Then the
+   * remaining series are compacted and the series of the following samples change.
+   */
+  public static class Sample {
+
+    private final long timestamp;
+    private final List<String> series;
+    private final double[] values;
+
+    Sample(long timestamp, List<String> series, double[] values) {
+      this.timestamp = timestamp;
+      this.series = series;
+      this.values = values;
+    }
+
+    public long getTimestamp() {
+      return timestamp;
+    }
+
+    public List<String> getSeries() {
+      return series;
+    }
+
+    /**
+     * @return the values of the series, with {@link Double#NaN} for those missing in this sample
+     */
+    public double[] getValues() {
+      return values;
+    }
+
+    public double getValue(String name) {
+      int index = series.indexOf(name);
+      return index < 0 ? Double.NaN : values[index];
+    }
+  }
+
+  /**
+   * Periodic collection of stats values. Elements can be added or removed while sampling; elements
+   * whose stats cannot be obtained (e.g. because they have been released) are removed.
+   */
+  public class Sampler implements Closeable {
+
+    private final List<MediaElement> elements;
+    private final MediaType mediaType;
+    private final SampleListener listener;
+
+    private final Map<String, Integer> seriesIndexes = new HashMap<>();
+    private List<String> series = new ArrayList<>();
+    // Number of the last sample with a value of each series, in the same order as series
+    private List<Long> lastSampled = new ArrayList<>();
+    private volatile List<String> seriesSnapshot = Collections.emptyList();
+    private long numSamples;
+
+    private ScheduledExecutorService executor;
+
+    private Sampler(Collection<? extends MediaElement> elements, MediaType mediaType,
+        SampleListener listener) {
+      this.elements = new CopyOnWriteArrayList<>(elements);
+      this.mediaType = mediaType;
+      this.listener = listener;
+    }
+
+    private void start(long periodMillis) {
+      executor = Executors
+          .newSingleThreadScheduledExecutor(ThreadFactoryCreator.create("StatsSampler"));
+      executor.scheduleWithFixedDelay(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            sample();
+          } catch (Exception e) {
+            log.warn("Exception collecting stats sample", e);
+          }
+        }
+      }, 0, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void addElement(MediaElement element) {
+      elements.add(element);
+    }
+
+    public void removeElement(MediaElement element) {
+      elements.remove(element);
+    }
+
+    public List<MediaElement> getElements() {
+      return Collections.unmodifiableList(elements);
+    }
+
+    private void sample() {
+
+      List<MediaElement> current = new ArrayList<>(elements);
+      if (current.isEmpty()) {
+        return;
+      }
+
+      Map<MediaElement, Map<String, Number>> values;
+      try {
+        values = getStatsValues(current, mediaType);
+      } catch (KurentoServerException e) {
+        values = sampleEachElement(current);
+      }
+
+      long timestamp = System.currentTimeMillis();
+      long sampleNumber = ++numSamples;
+
+      List<Double> sampleValues = new ArrayList<>(series.size());
+      for (Entry<MediaElement, Map<String, Number>> element : values.entrySet()) {
+        String elementId = getObjectRef(element.getKey());
+        for (Entry<String, Number> value : element.getValue().entrySet()) {
+          int index = getSeriesIndex(elementId + "/" + value.getKey());
+          lastSampled.set(index, sampleNumber);
+          while (sampleValues.size() <= index) {
+            sampleValues.add(Double.NaN);
+          }
+          sampleValues.set(index, value.getValue().doubleValue());
+        }
+      }
+
+      double[] sample = new double[series.size()];
+      for (int i = 0; i < sample.length; i++) {
+        sample[i] = i < sampleValues.size() ? sampleValues.get(i) : Double.NaN;
+      }
+
+      listener.onSample(new Sample(timestamp, seriesSnapshot, sample));
+
+      retireSeries(sampleNumber);
+    }
+
+    private Map<MediaElement, Map<String, Number>> sampleEachElement(List<MediaElement> current) {
+
+      Map<MediaElement, Map<String, Number>> values = new LinkedHashMap<>();
+      for (MediaElement element : current) {
+        try {
+          values.putAll(getStatsValues(Collections.singletonList(element), mediaType));
+        } catch (KurentoServerException e) {
+          log.warn("Stats of element {} not available, it will not be sampled any more",
+              getObjectRef(element), e);
+          elements.remove(element);
+        }
+      }
+      return values;
+    }
+
+    private int getSeriesIndex(String name) {
+      Integer index = seriesIndexes.get(name);
+      if (index == null) {
+        index = series.size();
+        series.add(name);
+        lastSampled.add(0L);
+        seriesIndexes.put(name, index);
+        seriesSnapshot = Collections.unmodifiableList(new ArrayList<>(series));
+      }
+      return index;
+    }
+
+    /**
+     * Removes the series missing from the last samples, once they are at least half of them, so
+     * the cost of compacting is amortized and the series do not grow with every element that has
+     * ever been sampled.
+     */
+    private void retireSeries(long sampleNumber) {
+
+      int retired = 0;
+      for (long last : lastSampled) {
+        if (sampleNumber - last > SERIES_RETIRE_SAMPLES) {
+          retired++;
+        }
+      }
+      if (retired == 0 || retired * 2 < series.size()) {
+        return;
+      }
+
+      List<String> liveSeries = new ArrayList<>(series.size() - retired);
+      List<Long> liveLastSampled = new ArrayList<>(series.size() - retired);
+      seriesIndexes.clear();
+      for (int i = 0; i < series.size(); i++) {
+        if (sampleNumber - lastSampled.get(i) <= SERIES_RETIRE_SAMPLES) {
+          seriesIndexes.put(series.get(i), liveSeries.size());
+          liveSeries.add(series.get(i));
+          liveLastSampled.add(lastSampled.get(i));
+        }
+      }
+      series = liveSeries;
+      lastSampled = liveLastSampled;
+      seriesSnapshot = Collections.unmodifiableList(new ArrayList<>(series));
+
+      log.debug("Retired {} stats series of sampler, {} remaining", retired, series.size());
+    }
+
+    /**
+     * @return the number of series of the next sample, including those not retired yet
+     */
+    public int getNumSeries() {
+      return seriesSnapshot.size();
+    }
+
+    @Override
+    public void close() {
+      executor.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,613 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.kurento.client;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.kurento.client.internal.TransactionImpl;
+import org.kurento.client.internal.client.RemoteObject;
+import org.kurento.client.internal.client.RemoteObjectInvocationHandler;
+import org.kurento.client.internal.client.RomManager;
+import org.kurento.client.internal.transport.serialization.ParamsFlattener;
+import org.kurento.commons.exception.KurentoException;
+import org.kurento.jsonrpc.JsonUtils;
+import org.kurento.jsonrpc.Props;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * Description of a set of media objects, the connections between them and the event listeners
+ * added to them. Deploying it creates everything in a single transaction, so it takes about one
+ * round trip with the media server no matter how many objects it has.
+ *
+ * <pre>
+ * Topology topology = new Topology();
+ * topology.element("pipeline", MediaPipeline.class);
+ * topology.element("webrtc", WebRtcEndpoint.class).ref("mediaPipeline", "pipeline");
+ * topology.element("recorder", RecorderEndpoint.class).ref("mediaPipeline", "pipeline")
+ *     .param("uri", "file:///tmp/call.webm");
+ * topology.connect("webrtc", "webrtc");
+ * topology.connect("webrtc", "recorder");
+ * topology.subscribe("webrtc", "IceCandidateFound", iceListener);
+ *
+ * Topology.Elements elements = topology.deploy(kurentoClient);
+ * WebRtcEndpoint webrtc = elements.get("webrtc", WebRtcEndpoint.class);
+ * </pre>
+ *
+ * <p>
+ * The same description can be read from JSON with {@link #fromJson(String)}:
+ * </p>
+ *
+ * <pre>
+ * {
+ *   "elements": [
+ *     { "name": "pipeline", "type": "MediaPipeline" },
+ *     { "name": "webrtc", "type": "WebRtcEndpoint",
+ *       "params": { "mediaPipeline": { "ref": "pipeline" } } }
+ *   ],
+ *   "connections": [ { "source": "webrtc", "sink": "webrtc", "mediaType": "VIDEO" } ],
+ *   "subscriptions": [ { "element": "webrtc", "event": "IceCandidateFound", "listener": "ice" } ]
+ * }
+ * </pre>
+ *
+ * <p>
+ * Types are names of remote classes, optionally qualified with their module (e.g.
+ * "kurento.WebRtcEndpoint") or fully qualified Java class names. Params are converted to the types
+ * declared for them in the builder of the class. Listeners of JSON subscriptions are provided by
+ * name with {@link #bindListener(String, EventListener)}.
+ * </p>
+ *
+ * <p>
+ * Elements are created in an order where each one comes after the elements it references. Then
+ * the listeners are added, before the connections, so no event of the new elements is lost.
+ * </p>
+ */
+public class Topology {
+
+  private static final String DEFAULT_MODULE = "kurento";
+
+  private static final ParamsFlattener FLATTENER = ParamsFlattener.getInstance();
+
+  /**
+   * Description of one media object of the topology.
+   */
+  public static class Element {
+
+    private final String name;
+    private final Class<? extends KurentoObject> type;
+    private final Props params = new Props();
+    private final Map<String, String> refs = new LinkedHashMap<>();
+    private final Properties properties = new Properties();
+
+    private Element(String name, Class<? extends KurentoObject> type) {
+      this.name = name;
+      this.type = type;
+    }
+
+    /**
+     * Sets a constructor param.
+     */
+    public Element param(String param, Object value) {
+      params.add(param, value);
+      return this;
+    }
+
+    /**
+     * Sets a constructor param to another element of the topology.
+     */
+    public Element ref(String param, String elementName) {
+      refs.put(param, elementName);
+      return this;
+    }
+
+    /**
+     * Sets a generic property of the object, as {@link AbstractBuilder#with(String, Object)}.
+     */
+    public Element property(String property, Object value) {
+      properties.add(property, value);
+      return this;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public Class<? extends KurentoObject> getType() {
+      return type;
+    }
+  }
+
+  /**
+   * Objects created when a topology is deployed, by element name.
+   */
+  public static class Elements {
+
+    private final Map<String, KurentoObject> objects;
+
+    private Elements(Map<String, KurentoObject> objects) {
+      this.objects = Collections.unmodifiableMap(objects);
+    }
+
+    public KurentoObject get(String name) {
+      KurentoObject object = objects.get(name);
+      if (object == null) {
+        throw new KurentoException("Element '" + name + "' doesn't exist in the topology");
+      }
+      return object;
+    }
+
+    public <T extends KurentoObject> T get(String name, Class<T> clazz) {
+      return clazz.cast(get(name));
+    }
+
+    public Set<String> getNames() {
+      return objects.keySet();
+    }
+  }
+
+  private static class Connection {
+
+    private final String source;
+    private final String sink;
+    private final String mediaType;
+
+    private Connection(String source, String sink, String mediaType) {
+      this.source = source;
+      this.sink = sink;
+      this.mediaType = mediaType;
+    }
+  }
+
+  private static class Subscription {
+
+    private final String element;
+    private final String eventType;
+    private final Class<? extends Event> eventClass;
+    private final EventListener<?> listener;
+    private final String listenerName;
+
+    private Subscription(String element, String eventType, Class<? extends Event> eventClass,
+        EventListener<?> listener, String listenerName) {
+      this.element = element;
+      this.eventType = eventType;
+      this.eventClass = eventClass;
+      this.listener = listener;
+      this.listenerName = listenerName;
+    }
+  }
+
+  private final Map<String, Element> elements = new LinkedHashMap<>();
+  private final List<Connection> connections = new ArrayList<>();
+  private final List<Subscription> subscriptions = new ArrayList<>();
+  private final Map<String, EventListener<?>> boundListeners = new HashMap<>();
+
+  /**
+   * Adds an element to the topology.
+   *
+   * @param name
+   *          Name of the element, unique in the topology
+   * @param type
+   *          Interface of the object, e.g. WebRtcEndpoint.class
+   * @return the element, to set its params
+   */
+  public Element element(String name, Class<? extends KurentoObject> type) {
+    if (elements.containsKey(name)) {
+      throw new IllegalArgumentException("Duplicated element '" + name + "' in topology");
+    }
+    Element element = new Element(name, type);
+    elements.put(name, element);
+    return element;
+  }
+
+  /**
+   * Connects all media of source to sink.
+   */
+  public Topology connect(String source, String sink) {
+    return connect(source, sink, null);
+  }
+
+  /**
+   * Connects the media of the given type (e.g. "AUDIO", "VIDEO") of source to sink.
+   */
+  public Topology connect(String source, String sink, String mediaType) {
+    connections.add(new Connection(source, sink, mediaType));
+    return this;
+  }
+
+  /**
+   * Adds a listener to an element. The event class is looked up as "eventType" + "Event" in the
+   * package of the element type, or {@link GenericMediaEvent} if it doesn't exist.
+   */
+  public Topology subscribe(String element, String eventType, EventListener<?> listener) {
+    subscriptions.add(new Subscription(element, eventType, null, listener, null));
+    return this;
+  }
+
+  public <E extends Event> Topology subscribe(String element, String eventType,
+      Class<E> eventClass, EventListener<? super E> listener) {
+    subscriptions.add(new Subscription(element, eventType, eventClass, listener, null));
+    return this;
+  }
+
+  /**
+   * Provides the listener referenced by name in the subscriptions of a JSON topology.
+   */
+  public Topology bindListener(String listenerName, EventListener<?> listener) {
+    boundListeners.put(listenerName, listener);
+    return this;
+  }
+
+  public Element getElement(String name) {
+    return elements.get(name);
+  }
+
+  /**
+   * Creates the topology in a single transaction, waiting for it to be executed.
+   */
+  public Elements deploy(KurentoClient kurentoClient) {
+    Transaction tx = kurentoClient.beginTransaction();
+    Elements deployed = addTo(tx);
+    tx.commit();
+    return deployed;
+  }
+
+  /**
+   * Creates the topology in a single transaction, without waiting for it.
+   */
+  public void deploy(KurentoClient kurentoClient, final Continuation<Elements> cont) {
+    Transaction tx = kurentoClient.beginTransaction();
+    final Elements deployed = addTo(tx);
+    tx.commit(new Continuation<Void>() {
+      @Override
+      public void onSuccess(Void result) throws Exception {
+        cont.onSuccess(deployed);
+      }
+
+      @Override
+      public void onError(Throwable cause) throws Exception {
+        cont.onError(cause);
+      }
+    });
+  }
+
+  /**
+   * Adds the operations that create the topology to a transaction. The returned objects can be
+   * used after the transaction is committed.
+   */
+  public Elements addTo(Transaction tx) {
+
+    // Nothing is added to the transaction if the topology is not valid
+    List<Element> sorted = sortByDependencies();
+    Map<Subscription, EventListener<?>> listeners = resolveSubscriptions();
+    validateConnections();
+
+    RomManager manager = ((TransactionImpl) tx).getRomManager();
+
+    Map<String, KurentoObject> created = new LinkedHashMap<>();
+
+    for (Element element : sorted) {
+
+      Props props = new Props();
+      for (Entry<String, Object> param : element.params.getMap().entrySet()) {
+        props.add(param.getKey(), param.getValue());
+      }
+      for (Entry<String, String> ref : element.refs.entrySet()) {
+        props.add(ref.getKey(), created.get(ref.getValue()));
+      }
+
+      Props genericProps = new Props();
+      genericProps.getMap().putAll(element.properties.getMap());
+
+      RemoteObject remoteObject = manager.createWithKurentoObject(element.type, props,
+          genericProps, tx);
+      created.put(element.name, remoteObject.getKurentoObject());
+    }
+
+    for (Entry<Subscription, EventListener<?>> entry : listeners.entrySet()) {
+
+      Subscription subscription = entry.getKey();
+      Element element = elements.get(subscription.element);
+      Class<? extends Event> eventClass = subscription.eventClass;
+      if (eventClass == null) {
+        eventClass = findEventClass(element.type, subscription.eventType);
+      }
+
+      getRemoteObject(created.get(element.name)).addEventListener(subscription.eventType,
+          eventClass, entry.getValue(), tx);
+    }
+
+    for (Connection connection : connections) {
+
+      KurentoObject source = created.get(connection.source);
+      KurentoObject sink = created.get(connection.sink);
+
+      Props params = new Props("sink", sink);
+      if (connection.mediaType != null) {
+        params.add("mediaType", connection.mediaType);
+      }
+      getRemoteObject(source).invoke("connect", params, (Type) void.class, tx);
+    }
+
+    return new Elements(created);
+  }
+
+  private List<Element> sortByDependencies() {
+
+    List<Element> sorted = new ArrayList<>(elements.size());
+    List<Element> pending = new ArrayList<>(elements.values());
+    Set<String> sortedNames = Collections.newSetFromMap(new HashMap<String, Boolean>());
+
+    while (!pending.isEmpty()) {
+
+      Element next = null;
+      for (Element element : pending) {
+        if (sortedNames.containsAll(element.refs.values())) {
+          next = element;
+          break;
+        }
+      }
+
+      if (next == null) {
+        for (Element element : pending) {
+          for (String ref : element.refs.values()) {
+            getExistingElement(ref);
+          }
+        }
+        List<String> names = new ArrayList<>();
+        for (Element element : pending) {
+          names.add(element.name);
+        }
+        throw new KurentoException("Cyclic references between elements " + names);
+      }
+
+      pending.remove(next);
+      sorted.add(next);
+      sortedNames.add(next.name);
+    }
+
+    return sorted;
+  }
+
+  /**
+   * @return the listener of each subscription, in the order they were added
+   */
+  private Map<Subscription, EventListener<?>> resolveSubscriptions() {
+
+    Map<Subscription, EventListener<?>> listeners = new LinkedHashMap<>();
+    for (Subscription subscription : subscriptions) {
+
+      getExistingElement(subscription.element);
+
+      EventListener<?> listener = subscription.listener;
+      if (listener == null) {
+        listener = boundListeners.get(subscription.listenerName);
+        if (listener == null) {
+          throw new KurentoException(
+              "Listener '" + subscription.listenerName + "' is not bound in topology");
+        }
+      }
+      listeners.put(subscription, listener);
+    }
+    return listeners;
+  }
+
+  private void validateConnections() {
+    for (Connection connection : connections) {
+      getExistingElement(connection.source);
+      getExistingElement(connection.sink);
+    }
+  }
+
+  private Element getExistingElement(String name) {
+    Element element = elements.get(name);
+    if (element == null) {
+      throw new KurentoException("Element '" + name + "' doesn't exist in the topology");
+    }
+    return element;
+  }
+
+  private static RemoteObject getRemoteObject(KurentoObject object) {
+    return RemoteObjectInvocationHandler.getFor(object).getRemoteObject();
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Class<? extends Event> findEventClass(Class<?> elementType, String eventType) {
+    try {
+      Class<?> eventClass = Class.forName(
+          elementType.getPackage().getName() + "." + eventType + "Event", true,
+          elementType.getClassLoader());
+      if (Event.class.isAssignableFrom(eventClass)) {
+        return (Class<? extends Event>) eventClass;
+      }
+    } catch (ClassNotFoundException e) {
+      // Events not known by the client are delivered as generic events
+    }
+    return GenericMediaEvent.class;
+  }
+
+  /**
+   * Reads a topology from its JSON description. See {@link Topology} for the format.
+   */
+  public static Topology fromJson(String json) {
+    return fromJson(new JsonParser().parse(json).getAsJsonObject());
+  }
+
+  public static Topology fromJson(JsonObject json) {
+
+    Topology topology = new Topology();
+
+    for (JsonElement elementJson : getArray(json, "elements")) {
+
+      JsonObject elementObject = elementJson.getAsJsonObject();
+      Element element = topology.element(getString(elementObject, "name"),
+          getTypeClass(getString(elementObject, "type")));
+
+      if (elementObject.has("params")) {
+        Map<String, Type> paramTypes = getParamTypes(element.type);
+        for (Entry<String, JsonElement> param : elementObject.getAsJsonObject("params")
+            .entrySet()) {
+          JsonElement value = param.getValue();
+          if (value.isJsonObject() && value.getAsJsonObject().has("ref")
+              && value.getAsJsonObject().size() == 1) {
+            element.ref(param.getKey(), value.getAsJsonObject().get("ref").getAsString());
+          } else {
+            element.param(param.getKey(),
+                convertParam(element, param.getKey(), value, paramTypes.get(param.getKey())));
+          }
+        }
+      }
+
+      if (elementObject.has("properties")) {
+        for (Entry<String, JsonElement> property : elementObject.getAsJsonObject("properties")
+            .entrySet()) {
+          element.property(property.getKey(),
+              JsonUtils.fromJson(property.getValue(), Object.class));
+        }
+      }
+    }
+
+    for (JsonElement connectionJson : getArray(json, "connections")) {
+      JsonObject connection = connectionJson.getAsJsonObject();
+      topology.connect(getString(connection, "source"), getString(connection, "sink"),
+          connection.has("mediaType") ? connection.get("mediaType").getAsString() : null);
+    }
+
+    for (JsonElement subscriptionJson : getArray(json, "subscriptions")) {
+      JsonObject subscription = subscriptionJson.getAsJsonObject();
+      topology.subscriptions.add(new Subscription(getString(subscription, "element"),
+          getString(subscription, "event"), null, null, getString(subscription, "listener")));
+    }
+
+    return topology;
+  }
+
+  /**
+   * Declared types of the params of a remote class, by param name. They are taken from the
+   * methods of its builder (withParam(type) for typed params, param() for flags) and from the
+   * getters of the class, as builder constructors don't keep the names of their params. Params of
+   * other elements are not included, as they are given as references.
+   */
+  private static Map<String, Type> getParamTypes(Class<? extends KurentoObject> type) {
+
+    Map<String, Type> paramTypes = new HashMap<>();
+
+    for (Class<?> nested : type.getClasses()) {
+      if (!AbstractBuilder.class.isAssignableFrom(nested)) {
+        continue;
+      }
+      for (Method method : nested.getDeclaredMethods()) {
+        if (!Modifier.isPublic(method.getModifiers()) || method.getReturnType() != nested) {
+          continue;
+        }
+        String name = method.getName();
+        Type[] types = method.getGenericParameterTypes();
+        if (types.length == 1 && name.startsWith("with") && name.length() > 4
+            && !name.equals("withProperties")) {
+          addParamType(paramTypes, name.substring(4), types[0]);
+        } else if (types.length == 0) {
+          addParamType(paramTypes, name, Boolean.class);
+        }
+      }
+    }
+
+    for (Method method : type.getMethods()) {
+      String name = method.getName();
+      if (method.getParameterTypes().length == 0 && name.startsWith("get") && name.length() > 3
+          && !name.equals("getClass")) {
+        String paramName = Character.toLowerCase(name.charAt(3)) + name.substring(4);
+        if (!paramTypes.containsKey(paramName)) {
+          addParamType(paramTypes, paramName, method.getGenericReturnType());
+        }
+      }
+    }
+
+    return paramTypes;
+  }
+
+  private static void addParamType(Map<String, Type> paramTypes, String name, Type type) {
+    if (type instanceof Class && KurentoObject.class.isAssignableFrom((Class<?>) type)) {
+      return;
+    }
+    paramTypes.put(Character.toLowerCase(name.charAt(0)) + name.substring(1), type);
+  }
+
+  /**
+   * Converts a JSON param to its declared type, so numbers are not sent as doubles to params
+   * declared as integers. Params without a known type are converted as in any JSON document.
+   */
+  private static Object convertParam(Element element, String name, JsonElement value,
+      Type type) {
+
+    if (type == null || value.isJsonNull()) {
+      return JsonUtils.fromJson(value, Object.class);
+    }
+
+    try {
+      return JsonUtils.fromJson(value, type);
+    } catch (Exception e) {
+      throw new KurentoException("Invalid value " + value + " for param '" + name
+          + "' of element '" + element.name + "'. Expected " + type, e);
+    }
+  }
+
+  private static JsonArray getArray(JsonObject json, String name) {
+    return json.has(name) ? json.getAsJsonArray(name) : new JsonArray();
+  }
+
+  private static String getString(JsonObject json, String name) {
+    JsonElement value = json.get(name);
+    if (value == null) {
+      throw new KurentoException("Property '" + name + "' is required in " + json);
+    }
+    return value.getAsString();
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Class<? extends KurentoObject> getTypeClass(String type) {
+
+    Class<?> clazz;
+    try {
+      if (type.indexOf('.') < 0) {
+        clazz = FLATTENER.getClassFor(DEFAULT_MODULE + "." + type);
+      } else if (type.indexOf('.') == type.lastIndexOf('.')) {
+        clazz = FLATTENER.getClassFor(type);
+      } else {
+        clazz = Class.forName(type);
+      }
+    } catch (Exception e) {
+      throw new KurentoException("Unknown type '" + type + "' in topology", e);
+    }
+
+    if (!KurentoObject.class.isAssignableFrom(clazz)) {
+      throw new KurentoException("Type '" + type + "' is not a remote class");
+    }
+    return (Class<? extends KurentoObject>) clazz;
+  }
+}
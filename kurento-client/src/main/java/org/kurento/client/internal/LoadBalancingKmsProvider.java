@@ -0,0 +1,488 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.kurento.client.internal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.kurento.client.KurentoClient;
+import org.kurento.client.ServerManager;
+import org.kurento.commons.PropertiesManager;
+import org.kurento.commons.ThreadFactoryCreator;
+import org.kurento.commons.exception.KurentoException;
+import org.kurento.jsonrpc.client.JsonRpcClientNettyWebSocket;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * {@link KmsProvider} that spreads clients across several media servers. It keeps the load points
+ * reserved in each server, so a server is not given more load than its capacity, and places each
+ * new client either in the least loaded server or, with consistent hashing, in the server that
+ * corresponds to its id, so clients with the same id go to the same server while it is available.
+ *
+ * <p>
+ * Servers are checked periodically. A server that doesn't answer is not used until it answers
+ * again, and the metrics of the servers that answer (used memory and number of pipelines) break
+ * ties between servers with the same reserved load.
+ * </p>
+ *
+ * <p>
+ * When it is the kms.url.provider of the config file of {@link KmsUrlLoader}, it is configured
+ * with these properties of the same file, or with system properties if they are not in the file:
+ * </p>
+ * <ul>
+ * <li>kms.balancer.urls: comma separated list of media server URLs</li>
+ * <li>kms.balancer.capacity: load points of each server (100 by default)</li>
+ * <li>kms.balancer.defaultLoadPoints: load points of clients that don't declare them (1)</li>
+ * <li>kms.balancer.placement: LEAST_LOAD (default) or CONSISTENT_HASH</li>
+ * <li>kms.balancer.healthCheckInterval: millis between checks, 0 to disable them (10000)</li>
+ * <li>kms.balancer.probeTimeout: millis to connect to a server and get its metrics (3000)</li>
+ * </ul>
+ *
+ * <p>
+ * Health checks run in a daemon thread, stopped by {@link #close()}.
+ * </p>
+ */
+public class LoadBalancingKmsProvider implements KmsProvider, Closeable {
+
+  private static final Logger log = LoggerFactory.getLogger(LoadBalancingKmsProvider.class);
+
+  public static final String URLS_PROPERTY = "kms.balancer.urls";
+  public static final String CAPACITY_PROPERTY = "kms.balancer.capacity";
+  public static final String DEFAULT_LOAD_POINTS_PROPERTY = "kms.balancer.defaultLoadPoints";
+  public static final String PLACEMENT_PROPERTY = "kms.balancer.placement";
+  public static final String HEALTH_CHECK_INTERVAL_PROPERTY = "kms.balancer.healthCheckInterval";
+  public static final String PROBE_TIMEOUT_PROPERTY = "kms.balancer.probeTimeout";
+
+  // Points of each server in the hash ring, so keys are spread evenly
+  private static final int VIRTUAL_NODES = 100;
+
+  private static final HashFunction HASH = Hashing.murmur3_32();
+
+  public enum Placement {
+    LEAST_LOAD, CONSISTENT_HASH
+  }
+
+  /**
+   * Metrics of a media server.
+   */
+  public static class Metrics {
+
+    private final long usedMemory;
+    private final int numPipelines;
+
+    public Metrics(long usedMemory, int numPipelines) {
+      this.usedMemory = usedMemory;
+      this.numPipelines = numPipelines;
+    }
+
+    public long getUsedMemory() {
+      return usedMemory;
+    }
+
+    public int getNumPipelines() {
+      return numPipelines;
+    }
+  }
+
+  /**
+   * Checks a media server.
+   */
+  public interface Probe {
+
+    /**
+     * @return the metrics of the media server
+     * @throws Exception
+     *           if the media server can't be reached
+     */
+    Metrics probe(String kmsUrl) throws Exception;
+  }
+
+  /**
+   * Obtains the metrics from the {@link ServerManager} of the media server. The client of each
+   * server is kept between probes, and discarded when a probe fails.
+   */
+  public static class ServerManagerProbe implements Probe, Closeable {
+
+    private final int timeoutMillis;
+    private final Map<String, KurentoClient> clients = new HashMap<>();
+
+    public ServerManagerProbe() {
+      this(PropertiesManager.getProperty(PROBE_TIMEOUT_PROPERTY, 3000));
+    }
+
+    /**
+     * @param timeoutMillis
+     *          Maximum time to connect to a server, and to wait for each of its responses
+     */
+    public ServerManagerProbe(int timeoutMillis) {
+      this.timeoutMillis = timeoutMillis;
+    }
+
+    @Override
+    public synchronized Metrics probe(String kmsUrl) throws Exception {
+      KurentoClient client = getClient(kmsUrl);
+      try {
+        ServerManager serverManager = client.getServerManager();
+        return new Metrics(serverManager.getUsedMemory(), serverManager.getPipelines().size());
+      } catch (Exception e) {
+        clients.remove(kmsUrl);
+        client.destroy();
+        throw e;
+      }
+    }
+
+    private KurentoClient getClient(String kmsUrl) throws Exception {
+
+      KurentoClient client = clients.get(kmsUrl);
+      if (client != null && !client.isClosed()) {
+        return client;
+      }
+
+      JsonRpcClientNettyWebSocket jsonRpcClient = new JsonRpcClientNettyWebSocket(kmsUrl);
+      jsonRpcClient.setConnectionTimeout(timeoutMillis);
+      try {
+        // Connected here, as KurentoClient would connect with its default timeout
+        jsonRpcClient.connect();
+      } catch (Exception e) {
+        jsonRpcClient.close();
+        throw e;
+      }
+
+      client = KurentoClient.createFromJsonRpcClient(jsonRpcClient);
+      jsonRpcClient.setConnectionTimeout(timeoutMillis);
+      jsonRpcClient.setRequestTimeout(timeoutMillis);
+      clients.put(kmsUrl, client);
+      return client;
+    }
+
+    @Override
+    public synchronized void close() {
+      for (KurentoClient client : clients.values()) {
+        client.destroy();
+      }
+      clients.clear();
+    }
+  }
+
+  private static class Server {
+
+    private final String url;
+    private int reservedPoints;
+    private volatile boolean healthy = true;
+    private volatile Metrics metrics;
+
+    private Server(String url) {
+      this.url = url;
+    }
+  }
+
+  private static class Reservation {
+
+    private final Server server;
+    private final int loadPoints;
+
+    private Reservation(Server server, int loadPoints) {
+      this.server = server;
+      this.loadPoints = loadPoints;
+    }
+  }
+
+  private final List<Server> servers = new ArrayList<>();
+  private final TreeMap<Integer, Server> ring = new TreeMap<>();
+  private final int capacity;
+  private final int defaultLoadPoints;
+  private final Placement placement;
+  private final Probe probe;
+  private ScheduledExecutorService healthChecker;
+
+  // Guarded by this
+  private final Map<String, Reservation> reservations = new HashMap<>();
+
+  /**
+   * Creates a provider configured with system properties. See {@link LoadBalancingKmsProvider}.
+   */
+  public LoadBalancingKmsProvider() {
+    this(new Properties());
+  }
+
+  /**
+   * Creates a provider configured with the given properties, e.g. those of the config file of
+   * {@link KmsUrlLoader}, or with system properties for those not given. See
+   * {@link LoadBalancingKmsProvider}.
+   */
+  public LoadBalancingKmsProvider(Properties config) {
+    this(getUrlsProperty(config), Integer.parseInt(getProperty(config, CAPACITY_PROPERTY, "100")),
+        Integer.parseInt(getProperty(config, DEFAULT_LOAD_POINTS_PROPERTY, "1")),
+        Placement.valueOf(getProperty(config, PLACEMENT_PROPERTY, Placement.LEAST_LOAD.name())),
+        new ServerManagerProbe(
+            Integer.parseInt(getProperty(config, PROBE_TIMEOUT_PROPERTY, "3000"))));
+    startHealthChecks(
+        Long.parseLong(getProperty(config, HEALTH_CHECK_INTERVAL_PROPERTY, "10000")));
+  }
+
+  /**
+   * Creates a provider without periodic health checks. They can be started with
+   * {@link #startHealthChecks(long)}, or executed with {@link #checkServers()}.
+   *
+   * @param urls
+   *          URLs of the media servers
+   * @param capacity
+   *          Load points of each server
+   * @param defaultLoadPoints
+   *          Load points of clients that don't declare them
+   * @param placement
+   *          How a server is chosen for a new client
+   * @param probe
+   *          Used to check the servers
+   */
+  public LoadBalancingKmsProvider(List<String> urls, int capacity, int defaultLoadPoints,
+      Placement placement, Probe probe) {
+
+    if (urls.isEmpty()) {
+      throw new KurentoException("At least one media server URL is required");
+    }
+
+    this.capacity = capacity;
+    this.defaultLoadPoints = defaultLoadPoints;
+    this.placement = placement;
+    this.probe = probe;
+
+    for (String url : urls) {
+      Server server = new Server(url);
+      servers.add(server);
+      for (int i = 0; i < VIRTUAL_NODES; i++) {
+        ring.put(hash(url + "#" + i), server);
+      }
+    }
+  }
+
+  private static String getProperty(Properties config, String name, String defaultValue) {
+    String value = config.getProperty(name);
+    if (value == null) {
+      value = PropertiesManager.getProperty(name, defaultValue);
+    }
+    return value.trim();
+  }
+
+  private static List<String> getUrlsProperty(Properties config) {
+    String urls = getProperty(config, URLS_PROPERTY, "");
+    if (urls.isEmpty()) {
+      throw new KurentoException(
+          "Property '" + URLS_PROPERTY + "' with the media server URLs is required");
+    }
+    List<String> result = new ArrayList<>();
+    for (String url : Arrays.asList(urls.split(","))) {
+      if (!url.trim().isEmpty()) {
+        result.add(url.trim());
+      }
+    }
+    return result;
+  }
+
+  private static int hash(String key) {
+    return HASH.hashUnencodedChars(key).asInt();
+  }
+
+  /**
+   * Checks the servers every intervalMillis, in a background thread.
+   */
+  public synchronized void startHealthChecks(long intervalMillis) {
+
+    if (intervalMillis <= 0 || healthChecker != null) {
+      return;
+    }
+
+    healthChecker = Executors
+        .newSingleThreadScheduledExecutor(ThreadFactoryCreator.create("KmsHealthCheck", true));
+    healthChecker.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        checkServers();
+      }
+    }, 0, intervalMillis, TimeUnit.MILLISECONDS);
+  }
+
+  public synchronized void stopHealthChecks() {
+    if (healthChecker != null) {
+      healthChecker.shutdownNow();
+      healthChecker = null;
+    }
+  }
+
+  /**
+   * Stops the health checks and closes the connections used to check the servers.
+   */
+  @Override
+  public void close() {
+    stopHealthChecks();
+    if (probe instanceof Closeable) {
+      try {
+        ((Closeable) probe).close();
+      } catch (IOException e) {
+        log.warn("Exception closing media server probe", e);
+      }
+    }
+  }
+
+  /**
+   * Checks all the servers, updating whether they can be used and their metrics.
+   */
+  public void checkServers() {
+    for (Server server : servers) {
+      try {
+        server.metrics = probe.probe(server.url);
+        if (!server.healthy) {
+          log.info("Media server {} is available again", server.url);
+        }
+        server.healthy = true;
+      } catch (Exception e) {
+        if (server.healthy) {
+          log.warn("Media server {} is not available: {}", server.url, e.getMessage());
+        }
+        server.healthy = false;
+      }
+    }
+  }
+
+  @Override
+  public String reserveKms(String id) throws NotEnoughResourcesException {
+    return reserveKms(id, defaultLoadPoints);
+  }
+
+  @Override
+  public synchronized String reserveKms(String id, int loadPoints)
+      throws NotEnoughResourcesException {
+
+    if (loadPoints < 0) {
+      loadPoints = defaultLoadPoints;
+    }
+
+    Reservation reservation = reservations.get(id);
+    if (reservation != null) {
+      return reservation.server.url;
+    }
+
+    Server server = placement == Placement.CONSISTENT_HASH ? findByHash(id, loadPoints)
+        : findLeastLoaded(loadPoints);
+
+    if (server == null) {
+      throw new NotEnoughResourcesException(
+          "No media server available with " + loadPoints + " free load points");
+    }
+
+    server.reservedPoints += loadPoints;
+    reservations.put(id, new Reservation(server, loadPoints));
+
+    log.debug("Reserved {} load points for {} in {} ({}/{})", loadPoints, id, server.url,
+        server.reservedPoints, capacity);
+
+    return server.url;
+  }
+
+  @Override
+  public synchronized void releaseKms(String id) throws NotEnoughResourcesException {
+    Reservation reservation = reservations.remove(id);
+    if (reservation != null) {
+      reservation.server.reservedPoints -= reservation.loadPoints;
+    }
+  }
+
+  private boolean canHost(Server server, int loadPoints) {
+    return server.healthy && server.reservedPoints + loadPoints <= capacity;
+  }
+
+  private Server findLeastLoaded(int loadPoints) {
+
+    Server best = null;
+    for (Server server : servers) {
+      if (canHost(server, loadPoints) && (best == null || compareLoad(server, best) < 0)) {
+        best = server;
+      }
+    }
+    return best;
+  }
+
+  private static int compareLoad(Server server, Server other) {
+
+    int result = Integer.compare(server.reservedPoints, other.reservedPoints);
+    if (result != 0) {
+      return result;
+    }
+
+    Metrics metrics = server.metrics;
+    Metrics otherMetrics = other.metrics;
+    if (metrics == null || otherMetrics == null) {
+      return 0;
+    }
+
+    result = Integer.compare(metrics.numPipelines, otherMetrics.numPipelines);
+    if (result != 0) {
+      return result;
+    }
+    return Long.compare(metrics.usedMemory, otherMetrics.usedMemory);
+  }
+
+  private Server findByHash(String id, int loadPoints) {
+
+    // Walks the ring from the position of the id until a server can host the client
+    List<Entry<Integer, Server>> entries = new ArrayList<>(ring.tailMap(hash(id)).entrySet());
+    entries.addAll(ring.headMap(hash(id)).entrySet());
+
+    for (Entry<Integer, Server> entry : entries) {
+      if (canHost(entry.getValue(), loadPoints)) {
+        return entry.getValue();
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return the load points reserved in each server
+   */
+  public synchronized Map<String, Integer> getReservedLoad() {
+    Map<String, Integer> load = new HashMap<>();
+    for (Server server : servers) {
+      load.put(server.url, server.reservedPoints);
+    }
+    return Collections.unmodifiableMap(load);
+  }
+
+  public boolean isAvailable(String kmsUrl) {
+    for (Server server : servers) {
+      if (server.url.equals(kmsUrl)) {
+        return server.healthy;
+      }
+    }
+    return false;
+  }
+}
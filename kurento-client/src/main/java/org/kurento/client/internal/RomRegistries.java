@@ -0,0 +1,118 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.kurento.client.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+import org.kurento.client.KurentoObject;
+import org.kurento.client.internal.client.RemoteObjectInvocationHandler;
+import org.kurento.commons.PropertiesManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Access to all {@link RomRegistry} found in the classpath. If none is found, or they are disabled
+ * with the property kurento.client.generatedStubs, callers fall back to dynamic proxies and
+ * reflective class lookups.
+ */
+public class RomRegistries {
+
+  private static final Logger log = LoggerFactory.getLogger(RomRegistries.class);
+
+  public static final String GENERATED_STUBS_PROPERTY = "kurento.client.generatedStubs";
+
+  private static volatile List<RomRegistry> registries;
+
+  private static List<RomRegistry> getRegistries() {
+
+    List<RomRegistry> result = registries;
+
+    if (result == null) {
+      synchronized (RomRegistries.class) {
+        result = registries;
+        if (result == null) {
+          result = loadRegistries();
+          registries = result;
+        }
+      }
+    }
+
+    return result;
+  }
+
+  private static List<RomRegistry> loadRegistries() {
+
+    if (!PropertiesManager.getProperty(GENERATED_STUBS_PROPERTY, true)) {
+      log.debug("Generated stubs disabled, using dynamic proxies");
+      return Collections.emptyList();
+    }
+
+    List<RomRegistry> result = new ArrayList<>();
+    try {
+      for (RomRegistry registry : ServiceLoader.load(RomRegistry.class,
+          RomRegistries.class.getClassLoader())) {
+        result.add(registry);
+      }
+    } catch (ServiceConfigurationError e) {
+      log.warn("Error loading generated ROM registries, using dynamic proxies", e);
+      return Collections.emptyList();
+    }
+
+    log.debug("Loaded {} generated ROM registries", result.size());
+
+    return Collections.unmodifiableList(result);
+  }
+
+  public static KurentoObject newStub(Class<?> remoteClass,
+      RemoteObjectInvocationHandler handler) {
+
+    for (RomRegistry registry : getRegistries()) {
+      KurentoObject stub = registry.newStub(remoteClass, handler);
+      if (stub != null) {
+        return stub;
+      }
+    }
+    return null;
+  }
+
+  public static String getPackageName(String moduleName) {
+
+    for (RomRegistry registry : getRegistries()) {
+      String packageName = registry.getPackageName(moduleName);
+      if (packageName != null) {
+        return packageName;
+      }
+    }
+    return null;
+  }
+
+  public static Class<?> getClass(String className) {
+
+    for (RomRegistry registry : getRegistries()) {
+      Class<?> clazz = registry.getClass(className);
+      if (clazz != null) {
+        return clazz;
+      }
+    }
+    return null;
+  }
+
+}
@@ -0,0 +1,44 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.kurento.client.internal;
+
+import org.kurento.client.KurentoObject;
+import org.kurento.client.internal.client.RemoteObjectInvocationHandler;
+
+/**
+ * Registry generated at compile time by the kurento-client-processor for the remote classes and
+ * module types of a compilation unit. Implementations are discovered with
+ * {@link java.util.ServiceLoader}.
+ */
+public interface RomRegistry {
+
+  /**
+   * @return a new stub for the remote class, or null if it was not generated by this registry
+   */
+  KurentoObject newStub(Class<?> remoteClass, RemoteObjectInvocationHandler handler);
+
+  /**
+   * @return the package of the module classes, or null if the module is not known
+   */
+  String getPackageName(String moduleName);
+
+  /**
+   * @return the class with that fully qualified name, or null if it is not known
+   */
+  Class<?> getClass(String className);
+
+}
@@ -39,6 +39,14 @@ public class TransactionImpl implements Transaction {
     this.operations.add(op);
   }
 
+  public RomManager getRomManager() {
+    return manager;
+  }
+
+  public List<Operation> getOperations() {
+    return operations;
+  }
+
   @Override
   public void commit() {
     manager.transaction(operations);
@@ -0,0 +1,69 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.kurento.client.internal.client;
+
+import org.kurento.client.Event;
+import org.kurento.client.EventListener;
+import org.kurento.jsonrpc.Props;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Listener that receives events already decoded. When several of them are registered for the same
+ * event, {@link RemoteObject#fireEvent(String, Props)} decodes it only once and delivers the same
+ * instance to all of them, so listeners must not modify the events they receive.
+ */
+class DecodedEventListener implements RemoteObjectEventListener {
+
+  private static final Logger log = LoggerFactory.getLogger(DecodedEventListener.class);
+
+  private final RemoteObject remoteObject;
+  private final EventDecoder decoder;
+  private final EventListener<?> listener;
+
+  DecodedEventListener(RemoteObject remoteObject, Class<? extends Event> eventClass,
+      EventListener<?> listener) {
+    this.remoteObject = remoteObject;
+    this.decoder = EventDecoder.of(eventClass);
+    this.listener = listener;
+  }
+
+  EventDecoder getDecoder() {
+    return decoder;
+  }
+
+  @Override
+  public void onEvent(String eventType, Props data) {
+
+    Event event;
+    try {
+      event = decoder.decode(remoteObject.getObjectRef(), data, remoteObject.getRomManager());
+    } catch (Exception e) {
+      log.error("Exception while processing event '" + decoder.getEventClass().getSimpleName()
+          + "' with params '" + data + "'", e);
+      return;
+    }
+
+    onEvent(event);
+  }
+
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  void onEvent(Event event) {
+    ((EventListener) listener).onEvent(event);
+  }
+
+}
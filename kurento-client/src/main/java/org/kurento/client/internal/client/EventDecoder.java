@@ -0,0 +1,80 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.kurento.client.internal.client;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Type;
+
+import org.kurento.client.Event;
+import org.kurento.client.internal.ParamAnnotationUtils;
+import org.kurento.client.internal.server.Param;
+import org.kurento.client.internal.transport.serialization.ParamsFlattener;
+import org.kurento.jsonrpc.Props;
+
+/**
+ * Builds events of one class from the data received from the media server. The constructor and
+ * the names and types of its params are resolved once and the decoder is cached per event class.
+ */
+final class EventDecoder {
+
+  private static final ClassValue<EventDecoder> DECODERS = new ClassValue<EventDecoder>() {
+    @Override
+    @SuppressWarnings("unchecked")
+    protected EventDecoder computeValue(Class<?> eventClass) {
+      return new EventDecoder((Class<? extends Event>) eventClass);
+    }
+  };
+
+  private final Class<? extends Event> eventClass;
+  private final Constructor<?> constructor;
+  private final String[] paramNames;
+  private final Type[] paramTypes;
+
+  static EventDecoder of(Class<? extends Event> eventClass) {
+    return DECODERS.get(eventClass);
+  }
+
+  private EventDecoder(Class<? extends Event> eventClass) {
+
+    this.eventClass = eventClass;
+    this.constructor = eventClass.getConstructors()[0];
+    this.paramTypes = constructor.getGenericParameterTypes();
+
+    Annotation[][] annotations = constructor.getParameterAnnotations();
+    this.paramNames = new String[annotations.length];
+    for (int i = 0; i < annotations.length; i++) {
+      Param param = ParamAnnotationUtils.getParamAnnotation(annotations[i]);
+      paramNames[i] = param != null ? param.value() : null;
+    }
+  }
+
+  Class<? extends Event> getEventClass() {
+    return eventClass;
+  }
+
+  Event decode(String sourceRef, Props data, RomManager manager) throws Exception {
+
+    data.add("source", sourceRef);
+
+    Object[] params = ParamsFlattener.getInstance().unflattenParams(paramNames, paramTypes, data,
+        manager);
+
+    return (Event) constructor.newInstance(params);
+  }
+
+}
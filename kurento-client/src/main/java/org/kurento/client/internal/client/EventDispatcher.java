@@ -0,0 +1,89 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.client.internal.client;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.kurento.client.EventOverflowPolicy;
+import org.kurento.commons.ThreadFactoryCreator;
+
+/**
+ * Delivers events to listeners in a shared pool of threads, so a slow listener doesn't delay the
+ * thread that receives events from the media server. Each listener has its own bounded queue,
+ * drained by one thread at a time, so it receives the events of its object in the order they
+ * arrived. When a queue is full, the {@link EventOverflowPolicy} configured for the event type
+ * decides what happens ({@link EventOverflowPolicy#DROP_OLDEST} by default).
+ */
+public class EventDispatcher {
+
+  private final ExecutorService executor;
+  private final int queueCapacity;
+
+  // Not BLOCK, as it would stall the transport thread (and every other event) on a slow listener
+  private volatile EventOverflowPolicy defaultPolicy = EventOverflowPolicy.DROP_OLDEST;
+  private final ConcurrentMap<String, EventOverflowPolicy> policies = new ConcurrentHashMap<>();
+
+  public EventDispatcher(int numThreads, int queueCapacity) {
+    if (numThreads <= 0) {
+      throw new IllegalArgumentException("numThreads must be positive");
+    }
+    if (queueCapacity <= 0) {
+      throw new IllegalArgumentException("queueCapacity must be positive");
+    }
+    this.executor = Executors.newFixedThreadPool(numThreads,
+        ThreadFactoryCreator.create("EventDispatcher"));
+    this.queueCapacity = queueCapacity;
+  }
+
+  public int getQueueCapacity() {
+    return queueCapacity;
+  }
+
+  public void setDefaultOverflowPolicy(EventOverflowPolicy policy) {
+    this.defaultPolicy = policy;
+  }
+
+  public EventOverflowPolicy getDefaultOverflowPolicy() {
+    return defaultPolicy;
+  }
+
+  public void setOverflowPolicy(String eventType, EventOverflowPolicy policy) {
+    if (policy == null) {
+      policies.remove(eventType);
+    } else {
+      policies.put(eventType, policy);
+    }
+  }
+
+  public EventOverflowPolicy getOverflowPolicy(String eventType) {
+    EventOverflowPolicy policy = policies.get(eventType);
+    return policy != null ? policy : defaultPolicy;
+  }
+
+  EventQueue newQueue(RemoteObjectEventListener listener) {
+    return new EventQueue(listener, this, executor, queueCapacity);
+  }
+
+  public void shutdown() {
+    executor.shutdown();
+  }
+
+}
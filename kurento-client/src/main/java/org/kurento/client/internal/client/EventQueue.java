@@ -0,0 +1,221 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.client.internal.client;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.kurento.client.Event;
+import org.kurento.client.EventOverflowPolicy;
+import org.kurento.jsonrpc.Props;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded queue of the events pending to be delivered to a listener. It is drained in the executor
+ * by at most one task at a time, so events are delivered in order.
+ */
+class EventQueue implements Runnable {
+
+  private static final Logger log = LoggerFactory.getLogger(EventQueue.class);
+
+  // Events delivered in a single task before giving other queues a chance to run
+  private static final int MAX_EVENTS_PER_RUN = 64;
+
+  private static class PendingEvent {
+
+    private final String type;
+    private final Props data;
+    private final Event event;
+
+    PendingEvent(String type, Props data, Event event) {
+      this.type = type;
+      this.data = data;
+      this.event = event;
+    }
+  }
+
+  private final RemoteObjectEventListener listener;
+  private final EventDispatcher dispatcher;
+  private final Executor executor;
+  private final int capacity;
+
+  private final Deque<PendingEvent> pending = new ArrayDeque<>();
+  private boolean scheduled;
+  private boolean closed;
+
+  EventQueue(RemoteObjectEventListener listener, EventDispatcher dispatcher, Executor executor,
+      int capacity) {
+    this.listener = listener;
+    this.dispatcher = dispatcher;
+    this.executor = executor;
+    this.capacity = capacity;
+  }
+
+  /**
+   * @return true if the queue delivers its events in the threads of the given dispatcher
+   */
+  boolean isBoundTo(EventDispatcher dispatcher) {
+    return this.dispatcher == dispatcher;
+  }
+
+  /**
+   * Queues an event for the listener. If the listener is a {@link DecodedEventListener}, event is
+   * the already decoded event; otherwise it is null and the listener receives type and data.
+   */
+  void offer(String type, Props data, Event event, EventOverflowPolicy policy) {
+
+    PendingEvent pendingEvent = new PendingEvent(type, data, event);
+
+    synchronized (this) {
+
+      if (closed) {
+        return;
+      }
+
+      switch (policy) {
+        case COALESCE:
+          if (!pending.isEmpty()) {
+            log.trace("Coalescing {} pending events of type {}", pending.size(), type);
+            pending.clear();
+          }
+          break;
+        case DROP_OLDEST:
+          if (pending.size() >= capacity) {
+            log.debug("Event queue full for listener {}. Dropping oldest event of type {}",
+                listener, pending.peekFirst().type);
+            pending.pollFirst();
+          }
+          break;
+        default:
+          boolean interrupted = false;
+          while (pending.size() >= capacity && !closed) {
+            try {
+              wait();
+            } catch (InterruptedException e) {
+              interrupted = true;
+            }
+          }
+          if (interrupted) {
+            Thread.currentThread().interrupt();
+          }
+          if (closed) {
+            return;
+          }
+          break;
+      }
+
+      pending.addLast(pendingEvent);
+
+      if (scheduled) {
+        return;
+      }
+      scheduled = true;
+    }
+
+    schedule();
+  }
+
+  /**
+   * Discards the pending events. Events offered after this are ignored.
+   */
+  synchronized void close() {
+    closed = true;
+    pending.clear();
+    notifyAll();
+  }
+
+  /**
+   * Closes this queue, moving its pending events to the end of other, so they are not lost when the
+   * dispatcher is replaced.
+   */
+  void transferTo(EventQueue other) {
+
+    List<PendingEvent> events;
+    synchronized (this) {
+      closed = true;
+      events = new ArrayList<>(pending);
+      pending.clear();
+      notifyAll();
+    }
+
+    if (events.isEmpty()) {
+      return;
+    }
+
+    synchronized (other) {
+      if (other.closed) {
+        return;
+      }
+      other.pending.addAll(events);
+      if (other.scheduled) {
+        return;
+      }
+      other.scheduled = true;
+    }
+
+    other.schedule();
+  }
+
+  private void schedule() {
+    try {
+      executor.execute(this);
+    } catch (RejectedExecutionException e) {
+      log.warn("Event dispatcher is shut down. Discarding events for listener {}", listener);
+      close();
+    }
+  }
+
+  @Override
+  public void run() {
+
+    for (int i = 0; i < MAX_EVENTS_PER_RUN; i++) {
+
+      PendingEvent pendingEvent;
+      synchronized (this) {
+        pendingEvent = pending.pollFirst();
+        if (pendingEvent == null) {
+          scheduled = false;
+          return;
+        }
+        notifyAll();
+      }
+
+      deliver(pendingEvent);
+    }
+
+    schedule();
+  }
+
+  private void deliver(PendingEvent pendingEvent) {
+    try {
+      if (pendingEvent.event != null) {
+        ((DecodedEventListener) listener).onEvent(pendingEvent.event);
+      } else {
+        listener.onEvent(pendingEvent.type, pendingEvent.data);
+      }
+    } catch (Exception e) {
+      log.error("Exception executing event listener", e);
+    }
+  }
+
+}
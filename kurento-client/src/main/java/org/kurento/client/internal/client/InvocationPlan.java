@@ -0,0 +1,231 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.kurento.client.internal.client;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.kurento.client.Continuation;
+import org.kurento.client.Event;
+import org.kurento.client.Transaction;
+import org.kurento.client.internal.ParamAnnotationUtils;
+import org.kurento.client.internal.server.EventSubscription;
+import org.kurento.client.internal.transport.serialization.ParamsFlattener;
+import org.kurento.jsonrpc.Props;
+
+/**
+ * Everything {@link RemoteObjectInvocationHandler} needs to know about a proxied method, resolved
+ * once from its signature and annotations and cached per declaring class.
+ */
+final class InvocationPlan {
+
+  enum Kind {
+    INVOKE, RELEASE, SUBSCRIBE, UNSUBSCRIBE
+  }
+
+  enum CallStyle {
+    SYNC, ASYNC, TRANSACTION
+  }
+
+  private static final ClassValue<ConcurrentMap<Method, InvocationPlan>> PLANS =
+      new ClassValue<ConcurrentMap<Method, InvocationPlan>>() {
+        @Override
+        protected ConcurrentMap<Method, InvocationPlan> computeValue(Class<?> type) {
+          return new ConcurrentHashMap<>();
+        }
+      };
+
+  private final String operationName;
+  private final Kind kind;
+  private final CallStyle callStyle;
+  private final List<String> paramNames;
+  private final int argsOffset;
+  private final Type returnType;
+  private final Type flattenType;
+  private final Class<? extends Event> eventClass;
+  private final String eventName;
+
+  static InvocationPlan of(Method method) {
+
+    ConcurrentMap<Method, InvocationPlan> plans = PLANS.get(method.getDeclaringClass());
+
+    InvocationPlan plan = plans.get(method);
+    if (plan == null) {
+      plan = new InvocationPlan(method);
+      InvocationPlan oldPlan = plans.putIfAbsent(method, plan);
+      if (oldPlan != null) {
+        plan = oldPlan;
+      }
+    }
+    return plan;
+  }
+
+  private InvocationPlan(Method method) {
+
+    this.operationName = method.getName();
+
+    Class<?>[] paramTypes = method.getParameterTypes();
+    List<String> names = ParamAnnotationUtils.getParamNames(method);
+
+    int numParams = paramTypes.length;
+
+    if (numParams > 0 && Continuation.class.isAssignableFrom(paramTypes[numParams - 1])) {
+      this.callStyle = CallStyle.ASYNC;
+      this.argsOffset = 0;
+      names = names.subList(0, names.size() - 1);
+    } else if (numParams > 0 && Transaction.class.isAssignableFrom(paramTypes[0])) {
+      this.callStyle = CallStyle.TRANSACTION;
+      this.argsOffset = 1;
+      names = names.subList(1, names.size());
+    } else {
+      this.callStyle = CallStyle.SYNC;
+      this.argsOffset = 0;
+    }
+
+    // Names can be null for params without @Param, so ImmutableList can't be used
+    this.paramNames = Collections.unmodifiableList(new ArrayList<>(names));
+
+    EventSubscription eventSubscription = method.getAnnotation(EventSubscription.class);
+
+    if (operationName.equals("release")) {
+      this.kind = Kind.RELEASE;
+      this.eventClass = null;
+      this.eventName = null;
+    } else if (eventSubscription != null) {
+      if (operationName.startsWith("add")) {
+        this.kind = Kind.SUBSCRIBE;
+      } else if (operationName.startsWith("remove")) {
+        this.kind = Kind.UNSUBSCRIBE;
+      } else {
+        throw new IllegalStateException("Method " + operationName + " undefined for events");
+      }
+      this.eventClass = eventSubscription.value();
+      String simpleName = eventClass.getSimpleName();
+      this.eventName = simpleName.substring(0, simpleName.length() - "Event".length());
+    } else {
+      this.kind = Kind.INVOKE;
+      this.eventClass = null;
+      this.eventName = null;
+    }
+
+    this.returnType = calculateReturnType(method, callStyle);
+    this.flattenType = calculateFlattenType(kind, callStyle, returnType);
+  }
+
+  private static Type calculateReturnType(Method method, CallStyle callStyle) {
+
+    switch (callStyle) {
+      case ASYNC:
+        Type[] paramTypes = method.getGenericParameterTypes();
+        Type contType = paramTypes[paramTypes.length - 1];
+        if (contType instanceof ParameterizedType) {
+          return ((ParameterizedType) contType).getActualTypeArguments()[0];
+        }
+        return Object.class;
+      case TRANSACTION:
+        Type futureType = method.getGenericReturnType();
+        if (futureType instanceof ParameterizedType) {
+          return ((ParameterizedType) futureType).getActualTypeArguments()[0];
+        }
+        return Void.class;
+      default:
+        return method.getGenericReturnType();
+    }
+  }
+
+  private static Type calculateFlattenType(Kind kind, CallStyle callStyle, Type returnType) {
+
+    if (kind != Kind.INVOKE || callStyle == CallStyle.TRANSACTION) {
+      return null;
+    }
+
+    try {
+      return ParamsFlattener.getInstance().calculateFlattenType(returnType);
+    } catch (RuntimeException e) {
+      // Reported when the method is actually invoked, as it was before plans were cached
+      return null;
+    }
+  }
+
+  /**
+   * Builds the operation params from the proxy call arguments, skipping the continuation or
+   * transaction argument without copying the array.
+   */
+  Props extractProps(Object[] args) {
+
+    if (paramNames.isEmpty()) {
+      return null;
+    }
+
+    Props props = new Props();
+    for (int i = 0; i < paramNames.size(); i++) {
+      props.add(paramNames.get(i), args[i + argsOffset]);
+    }
+    return props;
+  }
+
+  Object getOperationArg(Object[] args, int index) {
+    return args[index + argsOffset];
+  }
+
+  Continuation<?> getContinuation(Object[] args) {
+    return callStyle == CallStyle.ASYNC ? (Continuation<?>) args[args.length - 1] : null;
+  }
+
+  Transaction getTransaction(Object[] args) {
+    return callStyle == CallStyle.TRANSACTION ? (Transaction) args[0] : null;
+  }
+
+  String getOperationName() {
+    return operationName;
+  }
+
+  Kind getKind() {
+    return kind;
+  }
+
+  CallStyle getCallStyle() {
+    return callStyle;
+  }
+
+  List<String> getParamNames() {
+    return paramNames;
+  }
+
+  Type getReturnType() {
+    return returnType;
+  }
+
+  Type getFlattenType() {
+    return flattenType;
+  }
+
+  Class<? extends Event> getEventClass() {
+    return eventClass;
+  }
+
+  String getEventName() {
+    return eventName;
+  }
+
+}
@@ -24,12 +24,24 @@ public class ListenerSubscriptionImpl implements ListenerSubscription {
   private String subscriptionId;
   private String type;
   private RemoteObjectEventListener listener;
+  private boolean shared;
 
   public ListenerSubscriptionImpl(String subscription, String type,
       RemoteObjectEventListener listener) {
+    this(subscription, type, listener, false);
+  }
+
+  /**
+   * @param shared
+   *          true if the subscription in the media server is shared with other listeners of the
+   *          same object and event type
+   */
+  public ListenerSubscriptionImpl(String subscription, String type,
+      RemoteObjectEventListener listener, boolean shared) {
     this.subscriptionId = subscription;
     this.type = type;
     this.listener = listener;
+    this.shared = shared;
   }
 
   public ListenerSubscriptionImpl(String type, RemoteObjectEventListener listener) {
@@ -49,6 +61,10 @@ public class ListenerSubscriptionImpl implements ListenerSubscription {
     return listener;
   }
 
+  public boolean isShared() {
+    return shared;
+  }
+
   @Override
   public String getSubscriptionId() {
     return subscriptionId;
@@ -0,0 +1,147 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.client.internal.client;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.kurento.client.KurentoObject;
+
+/**
+ * Declares which properties of remote objects can be cached in the client, and which events
+ * invalidate them. Reading a cacheable property through its getter only reaches the media server
+ * the first time; later reads return the cached value until one of the events of the property is
+ * received for the object, or another method is invoked on it from this client. Properties without
+ * events never change, so they are cached during the whole life of the object.
+ *
+ * <p>
+ * Concurrent reads of a property that is not cached yet are sent to the media server only once.
+ * </p>
+ */
+public class PropertyCache {
+
+  // Remote class name -> getter -> events
+  private final ConcurrentMap<String, Map<String, Set<String>>> properties =
+      new ConcurrentHashMap<>();
+
+  // Cacheable properties of each class, taking into account its superclasses
+  private final ConcurrentMap<Class<?>, Map<String, Set<String>>> resolved =
+      new ConcurrentHashMap<>();
+
+  /**
+   * Creates a cache for the properties of the media server API that are known to change only
+   * when an event is fired.
+   */
+  public static PropertyCache withDefaults() {
+    PropertyCache cache = new PropertyCache();
+    cache.setCacheable("MediaObject", "getMediaPipeline");
+    cache.setCacheable("MediaObject", "getParent");
+    cache.setCacheable("MediaObject", "getCreationTime");
+    cache.setCacheable("BaseRtpEndpoint", "getMediaState", "MediaStateChanged");
+    cache.setCacheable("BaseRtpEndpoint", "getConnectionState", "ConnectionStateChanged");
+    return cache;
+  }
+
+  public void setCacheable(Class<? extends KurentoObject> remoteClass, String getter,
+      String... invalidatingEvents) {
+    setCacheable(remoteClass.getSimpleName(), getter, invalidatingEvents);
+  }
+
+  /**
+   * Declares a property as cacheable in the objects of the given remote class and its subclasses.
+   *
+   * @param remoteClass
+   *          Name of the remote class, e.g. "WebRtcEndpoint"
+   * @param getter
+   *          Name of the method used to read the property, e.g. "getMediaState"
+   * @param invalidatingEvents
+   *          Event types that invalidate the cached value. If none, the value never changes.
+   */
+  public synchronized void setCacheable(String remoteClass, String getter,
+      String... invalidatingEvents) {
+
+    Map<String, Set<String>> getters = new HashMap<>();
+    Map<String, Set<String>> oldGetters = properties.get(remoteClass);
+    if (oldGetters != null) {
+      getters.putAll(oldGetters);
+    }
+    getters.put(getter,
+        Collections.unmodifiableSet(new HashSet<>(Arrays.asList(invalidatingEvents))));
+
+    properties.put(remoteClass, Collections.unmodifiableMap(getters));
+    resolved.clear();
+  }
+
+  public synchronized void removeCacheable(String remoteClass, String getter) {
+
+    Map<String, Set<String>> oldGetters = properties.get(remoteClass);
+    if (oldGetters == null || !oldGetters.containsKey(getter)) {
+      return;
+    }
+
+    Map<String, Set<String>> getters = new HashMap<>(oldGetters);
+    getters.remove(getter);
+    properties.put(remoteClass, Collections.unmodifiableMap(getters));
+    resolved.clear();
+  }
+
+  /**
+   * @return the events that invalidate the property read by getter in objects of objectClass, or
+   *         null if the property is not cacheable
+   */
+  Set<String> getInvalidatingEvents(Class<?> objectClass, String getter) {
+
+    Map<String, Set<String>> getters = resolved.get(objectClass);
+    if (getters == null) {
+      getters = new HashMap<>();
+      resolve(objectClass, getters);
+      resolved.put(objectClass, getters);
+    }
+
+    return getters.get(getter);
+  }
+
+  private void resolve(Class<?> clazz, Map<String, Set<String>> getters) {
+
+    if (clazz == null || clazz == Object.class) {
+      return;
+    }
+
+    // Subclasses override the declarations of their superclasses
+    Map<String, Set<String>> declared = properties.get(clazz.getSimpleName());
+    if (declared != null) {
+      for (Map.Entry<String, Set<String>> entry : declared.entrySet()) {
+        if (!getters.containsKey(entry.getKey())) {
+          getters.put(entry.getKey(), entry.getValue());
+        }
+      }
+    }
+
+    resolve(clazz.getSuperclass(), getters);
+    for (Class<?> superInterface : clazz.getInterfaces()) {
+      resolve(superInterface, getters);
+    }
+  }
+
+}
@@ -20,10 +20,23 @@ package org.kurento.client.internal.client;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 
 import org.kurento.client.Continuation;
+import org.kurento.client.Event;
+import org.kurento.client.EventListener;
+import org.kurento.client.EventOverflowPolicy;
 import org.kurento.client.KurentoObject;
 import org.kurento.client.TFuture;
 import org.kurento.client.Transaction;
@@ -36,13 +49,22 @@ import org.kurento.client.internal.client.operation.ReleaseOperation;
 import org.kurento.client.internal.client.operation.SubscriptionOperation;
 import org.kurento.client.internal.client.operation.UnsubscriptionOperation;
 import org.kurento.client.internal.transport.serialization.ParamsFlattener;
+import org.kurento.commons.exception.KurentoException;
+import org.kurento.jsonrpc.Prop;
 import org.kurento.jsonrpc.Props;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.base.Throwables;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Multimaps;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
 
 public class RemoteObject {
 
@@ -54,6 +76,14 @@ public class RemoteObject {
 
   private static ParamsFlattener FLATTENER = ParamsFlattener.getInstance();
 
+  // Keeps the subscriptions to the events that invalidate cached properties
+  private static final RemoteObjectEventListener CACHE_INVALIDATION_LISTENER =
+      new RemoteObjectEventListener() {
+        @Override
+        public void onEvent(String eventType, Props data) {
+        }
+      };
+
   private String objectRef;
   private final String type;
   private ObjectStatus objectStatus;
@@ -70,19 +100,41 @@ public class RemoteObject {
   private final Multimap<String, RemoteObjectEventListener> listeners = Multimaps
       .synchronizedMultimap(multi);
 
+  // Subscriptions in the media server, by event type. Guarded by itself
+  private final Map<String, RemoteSubscription> remoteSubscriptions = new HashMap<>(2);
+
+  // Values of cacheable properties by getter, and events subscribed to invalidate them
+  private volatile ConcurrentMap<String, SettableFuture<Object>> cachedValues;
+  private final Set<String> cacheSubscriptions = new HashSet<>();
+
+  // Only used when events are dispatched asynchronously
+  private final ConcurrentMap<RemoteObjectEventListener, EventQueue> eventQueues =
+      new ConcurrentHashMap<>(2);
+
   private TransactionExecutionException transactionException;
 
+  // Set while the object is provisional, i.e. its creation is pipelined but not executed yet
+  private volatile RequestPipeline pipeline;
+  private List<Continuation<RemoteObject>> creationWaiters;
+
   public RemoteObject(String objectRef, String type, RomManager manager) {
     this(objectRef, type, true, manager);
   }
 
   public RemoteObject(String objectRef, String type, boolean created, RomManager manager) {
+    this(objectRef, type, created, manager, true);
+  }
+
+  RemoteObject(String objectRef, String type, boolean created, RomManager manager,
+      boolean register) {
     this.objectRef = objectRef;
     this.manager = manager;
     this.type = type;
     this.objectStatus = created ? ObjectStatus.CREATED : ObjectStatus.NOT_COMMITED;
 
-    this.manager.registerObject(objectRef, this);
+    if (register) {
+      this.manager.registerObject(objectRef, this);
+    }
   }
 
   public boolean isCommited() {
@@ -174,6 +226,14 @@ public class RemoteObject {
   }
 
   public Object invoke(String method, Props params, Type type) {
+    return invoke(method, params, type, (Type) null);
+  }
+
+  /**
+   * Invokes the method, using flattenType to read the result if it's not null. Callers that
+   * invoke the same method repeatedly can calculate it once in advance.
+   */
+  public Object invoke(String method, Props params, Type type, Type flattenType) {
 
     checkCreated();
 
@@ -181,15 +241,26 @@ public class RemoteObject {
       return objectRef;
     }
 
-    Type flattenType = FLATTENER.calculateFlattenType(type);
+    if (flattenType == null) {
+      flattenType = FLATTENER.calculateFlattenType(type);
+    }
 
-    Object obj = manager.invoke(objectRef, method, params, flattenType);
+    Object obj;
+    Set<String> invalidatingEvents = getInvalidatingEvents(method, params);
+    if (invalidatingEvents != null) {
+      obj = readCachedProperty(method, params, invalidatingEvents, flattenType);
+    } else {
+      obj = manager.invoke(objectRef, method, params, flattenType);
+    }
 
     return FLATTENER.unflattenValue("return", type, obj, manager);
   }
 
   public TFuture<Object> invoke(String method, Props params, Type type, Transaction tx) {
 
+    // Invalidates cached values if the method may change them
+    getInvalidatingEvents(method, params);
+
     TransactionImpl txImpl = (TransactionImpl) tx;
     InvokeOperation op = new InvokeOperation(getKurentoObject(), method, params, type);
     txImpl.addOperation(op);
@@ -198,10 +269,54 @@ public class RemoteObject {
 
   @SuppressWarnings("rawtypes")
   public void invoke(String method, Props params, final Type type, final Continuation cont) {
+    invoke(method, params, type, null, cont);
+  }
+
+  @SuppressWarnings("rawtypes")
+  public void invoke(String method, Props params, final Type type, Type flattenType,
+      final Continuation cont) {
+
+    RequestPipeline requestPipeline = findPipeline(params);
+    if (requestPipeline != null) {
+      invokePipelined(requestPipeline, method, params, type, cont);
+      return;
+    }
 
     checkCreated();
 
-    Type flattenType = FLATTENER.calculateFlattenType(type);
+    if (flattenType == null) {
+      flattenType = FLATTENER.calculateFlattenType(type);
+    }
+
+    // Asynchronous reads use cached values and reads in progress, but don't fill the cache
+    ListenableFuture<Object> cachedValue = null;
+    if (getInvalidatingEvents(method, params) != null && cachedValues != null) {
+      cachedValue = cachedValues.get(method);
+    }
+
+    if (cachedValue != null) {
+      Futures.addCallback(cachedValue, new FutureCallback<Object>() {
+        @SuppressWarnings("unchecked")
+        @Override
+        public void onSuccess(Object result) {
+          try {
+            cont.onSuccess(FLATTENER.unflattenValue("return", type, result, manager));
+          } catch (Exception e) {
+            log.warn("[Continuation] error invoking onSuccess implemented by client", e);
+          }
+        }
+
+        @Override
+        public void onFailure(Throwable cause) {
+          try {
+            cont.onError(cause);
+          } catch (Exception e) {
+            log.warn("[Continuation] error invoking onError implemented by client", e);
+          }
+        }
+      }, MoreExecutors.directExecutor());
+      return;
+    }
 
     manager.invoke(objectRef, method, params, flattenType, new DefaultContinuation<Object>(cont) {
       @SuppressWarnings("unchecked")
@@ -216,6 +331,45 @@ public class RemoteObject {
     });
   }
 
+  /**
+   * Sends an invocation that depends on provisional objects in the same request as their
+   * creation, so it doesn't wait for the creation round trip.
+   */
+  @SuppressWarnings("rawtypes")
+  private void invokePipelined(RequestPipeline requestPipeline, final String method, Props params,
+      final Type type, final Continuation cont) {
+
+    getInvalidatingEvents(method, params);
+
+    InvokeOperation op = new InvokeOperation(getKurentoObject(), method, params, type);
+    requestPipeline.addOperation(op);
+
+    Futures.addCallback(op.getFuture().getFuture(), new FutureCallback<Object>() {
+      @SuppressWarnings("unchecked")
+      @Override
+      public void onSuccess(Object result) {
+        try {
+          cont.onSuccess(result);
+        } catch (Exception e) {
+          log.warn("[Continuation] error invoking onSuccess implemented by client", e);
+        }
+      }
+
+      @Override
+      public void onFailure(Throwable cause) {
+        if (cause instanceof CancellationException) {
+          cause = new TransactionRollbackException(
+              "Pipelined invocation of method '" + method + "' was not executed");
+        }
+        try {
+          cont.onError(cause);
+        } catch (Exception e) {
+          log.warn("[Continuation] error invoking onError implemented by client", e);
+        }
+      }
+    }, MoreExecutors.directExecutor());
+  }
+
   public void release() {
 
     checkCreated();
@@ -230,6 +384,16 @@ public class RemoteObject {
 
   public void release(final Continuation<Void> cont) {
 
+    boolean deferred = deferUntilCreated(new Runnable() {
+      @Override
+      public void run() {
+        release(cont);
+      }
+    }, cont);
+    if (deferred) {
+      return;
+    }
+
     checkCreated();
 
     manager.release(objectRef, new DefaultContinuation<Void>(cont) {
@@ -244,16 +408,47 @@ public class RemoteObject {
     });
   }
 
+  /**
+   * Adds a listener for the event type. Only the first listener of each type subscribes to the
+   * event in the media server; the rest share its subscription.
+   */
   public ListenerSubscriptionImpl addEventListener(String eventType,
       RemoteObjectEventListener listener) {
 
     checkCreated();
 
-    String subscription = manager.subscribe(objectRef, eventType);
-
+    // Added first, so events received before the response of the subscription are not lost
     listeners.put(eventType, listener);
 
-    return new ListenerSubscriptionImpl(subscription, eventType, listener);
+    RemoteSubscription remoteSubscription = retainRemoteSubscription(eventType);
+
+    String subscription;
+    try {
+      if (remoteSubscription.markRequested()) {
+        try {
+          subscription = manager.subscribe(objectRef, eventType);
+        } catch (RuntimeException e) {
+          failRemoteSubscription(eventType, remoteSubscription, e);
+          throw e;
+        }
+        remoteSubscription.complete(subscription);
+      } else {
+        subscription = remoteSubscription.await();
+      }
+    } catch (RuntimeException e) {
+      listeners.remove(eventType, listener);
+      throw e;
+    }
+
+    return new ListenerSubscriptionImpl(subscription, eventType, listener, true);
+  }
+
+  /**
+   * Adds a listener that receives events decoded as instances of eventClass.
+   */
+  public ListenerSubscriptionImpl addEventListener(String eventType,
+      Class<? extends Event> eventClass, EventListener<?> listener, Transaction tx) {
+    return addEventListener(eventType, new DecodedEventListener(this, eventClass, listener), tx);
   }
 
   public ListenerSubscriptionImpl addEventListener(String eventType,
@@ -267,16 +462,42 @@ public class RemoteObject {
   public void addEventListener(final String eventType, final RemoteObjectEventListener listener,
       final Continuation<ListenerSubscriptionImpl> cont) {
 
+    boolean deferred = deferUntilCreated(new Runnable() {
+      @Override
+      public void run() {
+        addEventListener(eventType, listener, cont);
+      }
+    }, cont);
+    if (deferred) {
+      return;
+    }
+
     checkCreated();
 
     listeners.put(eventType, listener);
 
-    manager.subscribe(objectRef, eventType, new DefaultContinuation<String>(cont) {
+    final RemoteSubscription remoteSubscription = retainRemoteSubscription(eventType);
+
+    if (remoteSubscription.markRequested()) {
+      manager.subscribe(objectRef, eventType, new Continuation<String>() {
+        @Override
+        public void onSuccess(String subscription) {
+          remoteSubscription.complete(subscription);
+        }
+
+        @Override
+        public void onError(Throwable cause) {
+          failRemoteSubscription(eventType, remoteSubscription, cause);
+        }
+      });
+    }
+
+    remoteSubscription.whenCompleted(new DefaultContinuation<String>(cont) {
       @Override
       public void onSuccess(String subscription) {
 
         try {
-          cont.onSuccess(new ListenerSubscriptionImpl(subscription, eventType, listener));
+          cont.onSuccess(new ListenerSubscriptionImpl(subscription, eventType, listener, true));
         } catch (Exception e) {
           log.warn("[Continuation] error invoking onSuccess implemented by client", e);
         }
@@ -284,17 +505,33 @@ public class RemoteObject {
     });
   }
 
+  /**
+   * Adds a listener whose subscription in the media server has already been made, e.g. as part of
+   * a transaction.
+   */
+  public void addSubscribedEventListener(String eventType, RemoteObjectEventListener listener) {
+    listeners.put(eventType, listener);
+  }
+
   public void removeEventListener(ListenerSubscriptionImpl listenerSubscription) {
 
     checkCreated();
 
-    listeners.remove(listenerSubscription.getType(), listenerSubscription.getListener());
-
-    manager.unsubscribe(objectRef, listenerSubscription.getSubscriptionId());
-
+    if (removeListener(listenerSubscription)) {
+      manager.unsubscribe(objectRef, listenerSubscription.getSubscriptionId());
+    }
   }
 
   public void removeEventListener(ListenerSubscriptionImpl listenerSubscription, Transaction tx) {
+
+    if (listenerSubscription.isShared()) {
+      // Other listeners may still need the subscription, so the listener is removed now and the
+      // subscription is cancelled in the transaction only if it was the last one
+      if (!removeListener(listenerSubscription)) {
+        return;
+      }
+    }
+
     TransactionImpl txImpl = (TransactionImpl) tx;
     UnsubscriptionOperation op = new UnsubscriptionOperation(getKurentoObject(),
         listenerSubscription);
@@ -306,7 +543,14 @@ public class RemoteObject {
 
     checkCreated();
 
-    listeners.remove(listenerSubscription.getType(), listenerSubscription);
+    if (!removeListener(listenerSubscription)) {
+      try {
+        cont.onSuccess(null);
+      } catch (Exception e) {
+        log.warn("[Continuation] error invoking onSuccess implemented by client", e);
+      }
+      return;
+    }
 
     manager.unsubscribe(objectRef, listenerSubscription.getSubscriptionId(),
         new DefaultContinuation<Void>(cont) {
@@ -323,8 +567,64 @@ public class RemoteObject {
         });
   }
 
+  private RemoteSubscription retainRemoteSubscription(String eventType) {
+    synchronized (remoteSubscriptions) {
+      RemoteSubscription remoteSubscription = remoteSubscriptions.get(eventType);
+      if (remoteSubscription == null) {
+        remoteSubscription = new RemoteSubscription();
+        remoteSubscriptions.put(eventType, remoteSubscription);
+      }
+      remoteSubscription.retain();
+      return remoteSubscription;
+    }
+  }
+
+  private void failRemoteSubscription(String eventType, RemoteSubscription remoteSubscription,
+      Throwable cause) {
+    synchronized (remoteSubscriptions) {
+      if (remoteSubscriptions.get(eventType) == remoteSubscription) {
+        remoteSubscriptions.remove(eventType);
+      }
+    }
+    remoteSubscription.fail(cause);
+  }
+
+  /**
+   * Removes the listener locally.
+   *
+   * @return true if the subscription of the listener has to be cancelled in the media server
+   */
+  private boolean removeListener(ListenerSubscriptionImpl listenerSubscription) {
+
+    String eventType = listenerSubscription.getType();
+
+    if (!listeners.remove(eventType, listenerSubscription.getListener())) {
+      return false;
+    }
+    closeEventQueue(listenerSubscription.getListener());
+
+    if (!listenerSubscription.isShared()) {
+      return true;
+    }
+
+    synchronized (remoteSubscriptions) {
+      RemoteSubscription remoteSubscription = remoteSubscriptions.get(eventType);
+      if (remoteSubscription == null || !listenerSubscription.getSubscriptionId()
+          .equals(remoteSubscription.getSubscriptionId())) {
+        return false;
+      }
+      if (remoteSubscription.release() > 0) {
+        return false;
+      }
+      remoteSubscriptions.remove(eventType);
+      return true;
+    }
+  }
+
   public void fireEvent(String type, Props data) {
 
+    invalidateCachedProperties(type);
+
     Collection<RemoteObjectEventListener> typeListeners;
     synchronized (this.listeners) {
       typeListeners = new ArrayList<>(this.listeners.get(type));
@@ -340,21 +640,233 @@ public class RemoteObject {
 
     } else {
 
+      // Each event is decoded once for all the listeners that want it decoded
+      Map<EventDecoder, Event> decodedEvents = null;
+
+      EventDispatcher dispatcher = manager.getEventDispatcher();
+      EventOverflowPolicy policy = dispatcher != null ? dispatcher.getOverflowPolicy(type) : null;
+
       for (RemoteObjectEventListener eventListener : typeListeners) {
+
+        Event event = null;
+        if (eventListener instanceof DecodedEventListener) {
+
+          EventDecoder decoder = ((DecodedEventListener) eventListener).getDecoder();
+
+          if (decodedEvents == null) {
+            decodedEvents = new IdentityHashMap<>(2);
+          }
+
+          if (decodedEvents.containsKey(decoder)) {
+            event = decodedEvents.get(decoder);
+          } else {
+            event = decodeEvent(decoder, data);
+            decodedEvents.put(decoder, event);
+          }
+
+          if (event == null) {
+            continue;
+          }
+        }
+
+        if (dispatcher != null) {
+          getEventQueue(eventListener, dispatcher).offer(type, data, event, policy);
+        } else {
+          deliverEvent(eventListener, type, data, event);
+        }
+      }
+    }
+  }
+
+  private void deliverEvent(RemoteObjectEventListener eventListener, String type, Props data,
+      Event event) {
+    try {
+      if (event != null) {
+        ((DecodedEventListener) eventListener).onEvent(event);
+      } else {
+        eventListener.onEvent(type, data);
+      }
+    } catch (Exception e) {
+      log.error("Exception executing event listener", e);
+    }
+  }
+
+  private EventQueue getEventQueue(RemoteObjectEventListener eventListener,
+      EventDispatcher dispatcher) {
+    while (true) {
+      EventQueue queue = eventQueues.get(eventListener);
+      if (queue != null && queue.isBoundTo(dispatcher)) {
+        return queue;
+      }
+      // The queue is missing, or bound to a dispatcher replaced since it was created
+      EventQueue newQueue = dispatcher.newQueue(eventListener);
+      if (queue == null) {
+        if (eventQueues.putIfAbsent(eventListener, newQueue) == null) {
+          return newQueue;
+        }
+      } else if (eventQueues.replace(eventListener, queue, newQueue)) {
+        queue.transferTo(newQueue);
+        return newQueue;
+      }
+    }
+  }
+
+  private void closeEventQueue(RemoteObjectEventListener eventListener) {
+    EventQueue queue = eventQueues.remove(eventListener);
+    if (queue != null) {
+      queue.close();
+    }
+  }
+
+  /**
+   * @return the events that invalidate the value returned by method if it reads a cacheable
+   *         property, or null otherwise. Invoking any other method invalidates the cached values,
+   *         as it may change them.
+   */
+  private Set<String> getInvalidatingEvents(String method, Props params) {
+
+    PropertyCache propertyCache = manager.getPropertyCache();
+    if (propertyCache == null || kurentoObject == null) {
+      return null;
+    }
+
+    Set<String> invalidatingEvents = null;
+    if (params == null || params.getMap().isEmpty()) {
+      invalidatingEvents = propertyCache.getInvalidatingEvents(kurentoObject.getClass(), method);
+    }
+
+    if (invalidatingEvents == null) {
+      invalidateCachedProperties();
+    }
+    return invalidatingEvents;
+  }
+
+  private Object readCachedProperty(String method, Props params, Set<String> invalidatingEvents,
+      Type flattenType) {
+
+    ConcurrentMap<String, SettableFuture<Object>> values = cachedValues;
+    if (values == null) {
+      synchronized (this) {
+        values = cachedValues;
+        if (values == null) {
+          values = new ConcurrentHashMap<>();
+          cachedValues = values;
+        }
+      }
+    }
+
+    SettableFuture<Object> value = values.get(method);
+
+    if (value == null) {
+
+      SettableFuture<Object> newValue = SettableFuture.create();
+      value = values.putIfAbsent(method, newValue);
+
+      if (value == null) {
+
+        // The subscription is made before reading, so no change can be missed
+        boolean cacheable = subscribeCacheInvalidation(invalidatingEvents);
+
+        Object result;
         try {
-          eventListener.onEvent(type, data);
-        } catch (Exception e) {
-          log.error("Exception executing event listener", e);
+          result = manager.invoke(objectRef, method, params, flattenType);
+        } catch (RuntimeException e) {
+          values.remove(method, newValue);
+          newValue.setException(e);
+          throw e;
         }
+
+        newValue.set(result);
+        if (!cacheable) {
+          values.remove(method, newValue);
+        }
+        return result;
+      }
+    }
+
+    try {
+      return Uninterruptibles.getUninterruptibly(value);
+    } catch (ExecutionException e) {
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new KurentoException("Exception reading property with " + method, e.getCause());
+    }
+  }
+
+  /**
+   * Makes sure the events that invalidate a cached property are received.
+   *
+   * @return false if some of them can't be subscribed to, so the property can't be cached
+   */
+  private boolean subscribeCacheInvalidation(Set<String> invalidatingEvents) {
+
+    synchronized (cacheSubscriptions) {
+      for (String eventType : invalidatingEvents) {
+
+        if (cacheSubscriptions.contains(eventType)) {
+          continue;
+        }
+
+        try {
+          addEventListener(eventType, CACHE_INVALIDATION_LISTENER);
+        } catch (RuntimeException e) {
+          log.warn("Exception subscribing to {} in object {}. Properties invalidated by it won't"
+              + " be cached", eventType, objectRef, e);
+          return false;
+        }
+
+        cacheSubscriptions.add(eventType);
+      }
+    }
+
+    return true;
+  }
+
+  void invalidateCachedProperties() {
+    ConcurrentMap<String, SettableFuture<Object>> values = cachedValues;
+    if (values != null && !values.isEmpty()) {
+      values.clear();
+    }
+  }
+
+  private void invalidateCachedProperties(String eventType) {
+
+    ConcurrentMap<String, SettableFuture<Object>> values = cachedValues;
+    PropertyCache propertyCache = manager.getPropertyCache();
+    if (values == null || values.isEmpty()) {
+      return;
+    }
+    if (propertyCache == null) {
+      values.clear();
+      return;
+    }
+
+    for (String method : values.keySet()) {
+      Set<String> invalidatingEvents = propertyCache.getInvalidatingEvents(kurentoObject.getClass(),
+          method);
+      if (invalidatingEvents == null || invalidatingEvents.contains(eventType)) {
+        values.remove(method);
       }
     }
   }
 
+  private Event decodeEvent(EventDecoder decoder, Props data) {
+    try {
+      return decoder.decode(objectRef, data, manager);
+    } catch (Exception e) {
+      log.error("Exception while processing event '" + decoder.getEventClass().getSimpleName()
+          + "' with params '" + data + "'", e);
+      return null;
+    }
+  }
+
   public Transaction beginTransaction() {
     return new TransactionImpl(manager);
   }
 
   private void checkCreated() {
+    if (objectStatus == ObjectStatus.NOT_COMMITED && pipeline != null) {
+      awaitPipelinedCreation();
+    }
     if (objectStatus == ObjectStatus.NOT_COMMITED) {
       throw new TransactionNotCommitedException();
     } else if (objectStatus == ObjectStatus.ROLLBACK) {
@@ -393,17 +905,172 @@ public class RemoteObject {
   }
 
   public void setCreatedObjectRef(String objectRef) {
+    String provisionalRef = this.objectRef;
     this.objectRef = objectRef;
     this.objectStatus = ObjectStatus.CREATED;
+    // Events and references received from the media server use the final reference
+    manager.registerObject(objectRef, this);
+    manager.getObjectManager().unregisterObject(provisionalRef, this);
     createReadyLatchIfNecessary();
     readyLatch.countDown();
     if (whenContinuation != null) {
       execWhenCommited();
     }
+    creationFinished();
   }
 
   public void rollbackTransaction(TransactionExecutionException transactionException) {
     this.objectStatus = ObjectStatus.ROLLBACK;
     this.transactionException = transactionException;
+    if (pipeline != null) {
+      createReadyLatchIfNecessary();
+      readyLatch.countDown();
+    }
+    creationFinished();
+  }
+
+  void setPipeline(RequestPipeline pipeline) {
+    this.pipeline = pipeline;
+  }
+
+  /**
+   * Sends the pipelined creation of this object, if it has not been sent yet, and waits for it.
+   *
+   * @return true if the object has been created
+   */
+  public boolean awaitPipelinedCreation() {
+
+    RequestPipeline currentPipeline = pipeline;
+    if (currentPipeline != null) {
+      currentPipeline.flush();
+      try {
+        waitCommited();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    return isCommited();
+  }
+
+  /**
+   * Notifies cont when the pipelined creation of this object is executed, or immediately if the
+   * object is not provisional.
+   */
+  void whenCreated(Continuation<RemoteObject> cont) {
+
+    synchronized (this) {
+      if (pipeline != null) {
+        if (creationWaiters == null) {
+          creationWaiters = new ArrayList<>(2);
+        }
+        creationWaiters.add(cont);
+        return;
+      }
+    }
+
+    notifyCreation(cont);
+  }
+
+  private void creationFinished() {
+
+    RequestPipeline finishedPipeline;
+    List<Continuation<RemoteObject>> waiters;
+    synchronized (this) {
+      finishedPipeline = pipeline;
+      pipeline = null;
+      waiters = creationWaiters;
+      creationWaiters = null;
+    }
+
+    if (finishedPipeline == null) {
+      return;
+    }
+
+    finishedPipeline.objectResolved();
+
+    if (waiters != null) {
+      for (Continuation<RemoteObject> cont : waiters) {
+        notifyCreation(cont);
+      }
+    }
+  }
+
+  private void notifyCreation(Continuation<RemoteObject> cont) {
+    try {
+      if (objectStatus == ObjectStatus.CREATED) {
+        cont.onSuccess(this);
+      } else {
+        cont.onError(transactionException != null ? transactionException
+            : new TransactionRollbackException("Creation of object of type " + type + " failed"));
+      }
+    } catch (Exception e) {
+      log.warn("[Continuation] error invoking continuation implemented by client", e);
+    }
+  }
+
+  /**
+   * Defers an asynchronous operation on a provisional object until it is created.
+   *
+   * @return false if the object is not provisional, so the operation can be executed now
+   */
+  private boolean deferUntilCreated(final Runnable operation, final Continuation<?> cont) {
+
+    if (pipeline == null || objectStatus != ObjectStatus.NOT_COMMITED) {
+      return false;
+    }
+
+    whenCreated(new Continuation<RemoteObject>() {
+      @Override
+      public void onSuccess(RemoteObject result) {
+        operation.run();
+      }
+
+      @Override
+      public void onError(Throwable cause) throws Exception {
+        cont.onError(cause);
+      }
+    });
+    return true;
+  }
+
+  /**
+   * @return the pipeline of the provisional object that is the target or a param of an operation,
+   *         if any
+   */
+  private RequestPipeline findPipeline(Props params) {
+
+    RequestPipeline targetPipeline = pipeline;
+    if (targetPipeline != null && objectStatus == ObjectStatus.NOT_COMMITED) {
+      return targetPipeline;
+    }
+
+    if (params != null) {
+      for (Prop prop : params) {
+        RequestPipeline paramPipeline = findPipeline(prop.getValue());
+        if (paramPipeline != null) {
+          return paramPipeline;
+        }
+      }
+    }
+    return null;
+  }
+
+  private static RequestPipeline findPipeline(Object value) {
+
+    if (value instanceof KurentoObject) {
+      RemoteObjectInvocationHandler handler = RemoteObjectInvocationHandler.getFor(value);
+      RemoteObject remoteObject = handler != null ? handler.getRemoteObject() : null;
+      if (remoteObject != null && !remoteObject.isCommited()) {
+        return remoteObject.pipeline;
+      }
+    } else if (value instanceof List) {
+      for (Object element : (List<?>) value) {
+        RequestPipeline pipeline = findPipeline(element);
+        if (pipeline != null) {
+          return pipeline;
+        }
+      }
+    }
+    return null;
   }
 }
@@ -17,14 +17,8 @@
 
 package org.kurento.client.internal.client;
 
-import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
-import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Proxy;
-import java.lang.reflect.Type;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.List;
 import java.util.Set;
 
 import org.kurento.client.Continuation;
@@ -34,9 +28,7 @@ import org.kurento.client.GenericMediaElement;
 import org.kurento.client.GenericMediaEvent;
 import org.kurento.client.KurentoObject;
 import org.kurento.client.Transaction;
-import org.kurento.client.internal.ParamAnnotationUtils;
-import org.kurento.client.internal.server.EventSubscription;
-import org.kurento.client.internal.transport.serialization.ParamsFlattener;
+import org.kurento.client.internal.RomRegistries;
 import org.kurento.jsonrpc.Props;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -60,8 +52,12 @@ public class RemoteObjectInvocationHandler extends DefaultInvocationHandler {
     RemoteObjectInvocationHandler handler = new RemoteObjectInvocationHandler(remoteObject,
         manager);
 
-    KurentoObject kurentoObject = (KurentoObject) Proxy.newProxyInstance(clazz.getClassLoader(),
-        new Class[] { clazz }, handler);
+    KurentoObject kurentoObject = RomRegistries.newStub(clazz, handler);
+
+    if (kurentoObject == null) {
+      kurentoObject = (KurentoObject) Proxy.newProxyInstance(clazz.getClassLoader(),
+          new Class[] { clazz }, handler);
+    }
 
     remoteObject.setKurentoObject(kurentoObject);
 
@@ -69,6 +65,9 @@ public class RemoteObjectInvocationHandler extends DefaultInvocationHandler {
   }
 
   public static RemoteObjectInvocationHandler getFor(Object object) {
+    if (object instanceof RemoteObjectStub) {
+      return ((RemoteObjectStub) object).getInvocationHandler();
+    }
     return (RemoteObjectInvocationHandler) Proxy.getInvocationHandler(object);
   }
 
@@ -88,58 +87,39 @@ public class RemoteObjectInvocationHandler extends DefaultInvocationHandler {
 
     Continuation<?> cont = null;
     Transaction tx = null;
-    List<String> paramNames = Collections.emptyList();
-
-	if (proxy instanceof GenericMediaElement) {
-		switch(method.getName()) {
-		case "invoke":
-			return genericMediaElementInvoke(args);
-		case "addEventListener":
-			return genericSubscribeEventListener((String) args[0], proxy, args, cont, tx);
-		case "removeEventListener":
-			return unsubscribeEventListener(null, args, null, null, cont, tx);
-		}
-	}
-
-    log.trace("Invoking method {} on object {}", method, proxy);
-
-    if (args != null && args.length > 0) {
-
-      paramNames = ParamAnnotationUtils.getParamNames(method);
-
-      if (args[args.length - 1] instanceof Continuation) {
-
-        cont = (Continuation<?>) args[args.length - 1];
-        args = Arrays.copyOf(args, args.length - 1);
-        paramNames = paramNames.subList(0, paramNames.size() - 1);
-
-      } else if (args != null && args.length > 0 && args[0] instanceof Transaction) {
 
-        tx = (Transaction) args[0];
-        args = Arrays.copyOfRange(args, 1, args.length);
-        paramNames = paramNames.subList(1, paramNames.size());
+    if (proxy instanceof GenericMediaElement) {
+      switch (method.getName()) {
+        case "invoke":
+          return genericMediaElementInvoke(args);
+        case "addEventListener":
+          return genericSubscribeEventListener((String) args[0], args, cont, tx);
+        case "removeEventListener":
+          return unsubscribeEventListener(args[0], cont, tx);
+        default:
+          break;
       }
     }
 
-    if (methodName.equals("release")) {
-
-      return release(cont, tx);
-
-    } else if (method.getAnnotation(EventSubscription.class) != null) {
-
-      EventSubscription eventSubscription = method.getAnnotation(EventSubscription.class);
+    log.trace("Invoking method {} on object {}", method, proxy);
 
-      if (methodName.startsWith("add")) {
-        return subscribeEventListener(proxy, args, methodName, eventSubscription.value(), cont, tx);
-      } else if (methodName.startsWith("remove")) {
-        return unsubscribeEventListener(proxy, args, methodName, eventSubscription.value(), cont, tx);
-      } else {
-        throw new IllegalStateException("Method " + methodName + " undefined for events");
-      }
+    InvocationPlan plan = InvocationPlan.of(method);
 
-    } else {
+    if (args != null) {
+      cont = plan.getContinuation(args);
+      tx = plan.getTransaction(args);
+    }
 
-      return invoke(method, paramNames, args, cont, tx);
+    switch (plan.getKind()) {
+      case RELEASE:
+        return release(cont, tx);
+      case SUBSCRIBE:
+        return subscribeEventListener(plan.getOperationArg(args, 0), plan.getEventName(),
+            plan.getEventClass(), cont, tx);
+      case UNSUBSCRIBE:
+        return unsubscribeEventListener(plan.getOperationArg(args, 0), cont, tx);
+      default:
+        return invoke(plan, args, cont, tx);
     }
   }
 
@@ -152,34 +132,25 @@ public class RemoteObjectInvocationHandler extends DefaultInvocationHandler {
     return remoteObject.invoke(methodName, props, JsonElement.class);
   }
 
-  private Object invoke(Method method, List<String> paramNames, Object[] args, Continuation<?> cont,
+  private Object invoke(InvocationPlan plan, Object[] args, Continuation<?> cont,
       Transaction tx) {
 
-    Props props = ParamAnnotationUtils.extractProps(paramNames, args);
+    Props props = args != null ? plan.extractProps(args) : null;
 
     if (cont != null) {
 
-      Type[] paramTypes = method.getGenericParameterTypes();
-      ParameterizedType contType = (ParameterizedType) paramTypes[paramTypes.length - 1];
-      Type returnType = contType.getActualTypeArguments()[0];
-      remoteObject.invoke(method.getName(), props, returnType, cont);
+      remoteObject.invoke(plan.getOperationName(), props, plan.getReturnType(),
+          plan.getFlattenType(), cont);
       return null;
 
     } else if (tx != null) {
 
-      Type returnType = method.getGenericReturnType();
-
-      if (returnType instanceof ParameterizedType) {
-        ParameterizedType futureType = (ParameterizedType) returnType;
-        Type methodReturnType = futureType.getActualTypeArguments()[0];
-        return remoteObject.invoke(method.getName(), props, methodReturnType, tx);
-      } else {
-        return remoteObject.invoke(method.getName(), props, Void.class, tx);
-      }
+      return remoteObject.invoke(plan.getOperationName(), props, plan.getReturnType(), tx);
 
     } else {
 
-      return remoteObject.invoke(method.getName(), props, method.getGenericReturnType());
+      return remoteObject.invoke(plan.getOperationName(), props, plan.getReturnType(),
+          plan.getFlattenType());
     }
   }
 
@@ -196,18 +167,29 @@ public class RemoteObjectInvocationHandler extends DefaultInvocationHandler {
   }
 
   @SuppressWarnings("unchecked")
-  private Object subscribeEventListener(final Object proxy, final Object[] args, String methodName,
-      final Class<? extends Event> eventClass, Continuation<?> cont, Transaction tx) {
+  private Object subscribeEventListener(Object eventListener, String eventName,
+      Class<? extends Event> eventClass, Continuation<?> cont, Transaction tx) {
 
-    String eventName = eventClass.getSimpleName().substring(0,
-        eventClass.getSimpleName().length() - "Event".length());
+    RemoteObjectEventListener listener = new DecodedEventListener(remoteObject, eventClass,
+        (EventListener<?>) eventListener);
 
-    RemoteObjectEventListener listener = new RemoteObjectEventListener() {
-      @Override
-      public void onEvent(String eventType, Props data) {
-        propagateEventTo(proxy, eventClass, data, (EventListener<?>) args[0]);
-      }
-    };
+    if (cont != null) {
+      remoteObject.addEventListener(eventName, listener,
+          (Continuation<ListenerSubscriptionImpl>) cont);
+      return null;
+    } else if (tx != null) {
+      return remoteObject.addEventListener(eventName, listener, tx);
+    } else {
+      return remoteObject.addEventListener(eventName, listener);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private Object genericSubscribeEventListener(String eventName, Object[] args,
+      Continuation<?> cont, Transaction tx) {
+
+    RemoteObjectEventListener listener = new DecodedEventListener(remoteObject,
+        GenericMediaEvent.class, (EventListener<?>) args[1]);
 
     if (cont != null) {
       remoteObject.addEventListener(eventName, listener,
@@ -219,34 +201,12 @@ public class RemoteObjectInvocationHandler extends DefaultInvocationHandler {
       return remoteObject.addEventListener(eventName, listener);
     }
   }
-  
-  	@SuppressWarnings("unchecked")
-	private Object genericSubscribeEventListener(String eventName, final Object proxy, final Object[] args,
-			Continuation<?> cont, Transaction tx) {
-	
-		RemoteObjectEventListener listener = new RemoteObjectEventListener() {
-			@Override
-			public void onEvent(String eventType, Props data) {
-				propagateEventTo(proxy, GenericMediaEvent.class, data, (EventListener<?>) args[1]);
-			}
-		};
-	
-		if (cont != null) {
-			remoteObject.addEventListener(eventName, listener, (Continuation<ListenerSubscriptionImpl>) cont);
-			return null;
-		} else if (tx != null) {
-			return remoteObject.addEventListener(eventName, listener, tx);
-		} else {
-			return remoteObject.addEventListener(eventName, listener);
-		}
-	}
 
   @SuppressWarnings("unchecked")
-  private Object unsubscribeEventListener(final Object proxy, final Object[] args,
-      String methodName, final Class<? extends Event> eventClass, Continuation<?> cont,
+  private Object unsubscribeEventListener(Object subscription, Continuation<?> cont,
       Transaction tx) {
 
-    ListenerSubscriptionImpl listenerSubscription = (ListenerSubscriptionImpl) args[0];
+    ListenerSubscriptionImpl listenerSubscription = (ListenerSubscriptionImpl) subscription;
     if (cont != null) {
       remoteObject.removeEventListener(listenerSubscription, (Continuation<Void>) cont);
     } else if (tx != null) {
@@ -262,22 +222,13 @@ public class RemoteObjectInvocationHandler extends DefaultInvocationHandler {
   protected void propagateEventTo(Object object, Class<? extends Event> eventClass, Props data,
       EventListener<?> listener) {
 
-    // TODO Optimize this to create only one event for all listeners
-
     try {
 
       log.debug("Event class '" + eventClass.getSimpleName() + " Data: " + data);
 
-      Constructor<?> constructor = eventClass.getConstructors()[0];
-
-      data.add("source", ((KurentoObject) object).getId());
-
-      Object[] params = ParamsFlattener.getInstance().unflattenParams(
-          constructor.getParameterAnnotations(), constructor.getGenericParameterTypes(), data,
+      Event event = EventDecoder.of(eventClass).decode(((KurentoObject) object).getId(), data,
           manager);
 
-      Event event = (Event) constructor.newInstance(params);
-
       ((EventListener) listener).onEvent(event);
 
     } catch (Exception e) {
@@ -0,0 +1,154 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.client.internal.client;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.kurento.client.Continuation;
+import org.kurento.commons.exception.KurentoException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Subscription in the media server to an event type of an object, shared by all the listeners of
+ * that type in the client. The first listener sends the subscription request and the others wait
+ * for its result; the subscription is cancelled when its last listener is removed.
+ */
+class RemoteSubscription {
+
+  private static final Logger log = LoggerFactory.getLogger(RemoteSubscription.class);
+
+  // Guarded by the map of subscriptions of the RemoteObject
+  private int numListeners;
+
+  private boolean requested;
+  private boolean completed;
+  private String subscriptionId;
+  private Throwable error;
+  private List<Continuation<String>> waiting;
+
+  int retain() {
+    return ++numListeners;
+  }
+
+  int release() {
+    return --numListeners;
+  }
+
+  /**
+   * @return true only for the first caller, which has to send the subscription request
+   */
+  synchronized boolean markRequested() {
+    if (requested) {
+      return false;
+    }
+    requested = true;
+    return true;
+  }
+
+  synchronized String getSubscriptionId() {
+    return subscriptionId;
+  }
+
+  void complete(String subscriptionId) {
+    finish(subscriptionId, null);
+  }
+
+  void fail(Throwable error) {
+    finish(null, error);
+  }
+
+  private void finish(String subscriptionId, Throwable error) {
+
+    List<Continuation<String>> toNotify;
+    synchronized (this) {
+      this.subscriptionId = subscriptionId;
+      this.error = error;
+      this.completed = true;
+      toNotify = waiting;
+      waiting = null;
+      notifyAll();
+    }
+
+    if (toNotify != null) {
+      for (Continuation<String> cont : toNotify) {
+        notify(cont, subscriptionId, error);
+      }
+    }
+  }
+
+  /**
+   * Waits for the subscription request sent by the first listener.
+   */
+  String await() {
+
+    synchronized (this) {
+      boolean interrupted = false;
+      while (!completed) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    if (error instanceof RuntimeException) {
+      throw (RuntimeException) error;
+    } else if (error != null) {
+      throw new KurentoException("Exception subscribing to event", error);
+    }
+    return subscriptionId;
+  }
+
+  /**
+   * Notifies cont when the subscription request sent by the first listener finishes, or
+   * immediately if it has already finished.
+   */
+  void whenCompleted(Continuation<String> cont) {
+
+    synchronized (this) {
+      if (!completed) {
+        if (waiting == null) {
+          waiting = new ArrayList<>(2);
+        }
+        waiting.add(cont);
+        return;
+      }
+    }
+
+    notify(cont, subscriptionId, error);
+  }
+
+  private void notify(Continuation<String> cont, String subscriptionId, Throwable error) {
+    try {
+      if (error == null) {
+        cont.onSuccess(subscriptionId);
+      } else {
+        cont.onError(error);
+      }
+    } catch (Exception e) {
+      log.warn("[Continuation] error invoking continuation implemented by client", e);
+    }
+  }
+
+}
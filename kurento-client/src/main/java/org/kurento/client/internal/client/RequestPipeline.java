@@ -0,0 +1,186 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.client.internal.client;
+
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.kurento.client.Continuation;
+import org.kurento.client.TransactionExecutionException;
+import org.kurento.client.internal.TransactionImpl;
+import org.kurento.client.internal.client.operation.MediaObjectCreationOperation;
+import org.kurento.client.internal.client.operation.Operation;
+import org.kurento.jsonrpc.Props;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Implicit transaction that collects the creation of objects returned before they exist in the
+ * media server (provisional objects), and the asynchronous operations that depend on them. Inside
+ * the transaction, provisional objects are referenced with the "newref" references of explicit
+ * transactions, so a whole sequence of dependent operations is sent in a single request.
+ *
+ * <p>
+ * The transaction is committed windowMillis after its first operation, or when a synchronous
+ * operation needs one of its objects. A transaction is not committed while objects of the previous
+ * one are waiting for their references, so its requests can use them.
+ * </p>
+ */
+class RequestPipeline {
+
+  private static final Logger log = LoggerFactory.getLogger(RequestPipeline.class);
+
+  private final RomManager manager;
+  private final ScheduledExecutorService scheduler;
+  private volatile long windowMillis;
+
+  // Guarded by this
+  private TransactionImpl current;
+  private ScheduledFuture<?> flushTask;
+  private int unresolvedObjects;
+  private boolean flushRequested;
+
+  RequestPipeline(RomManager manager, ScheduledExecutorService scheduler, long windowMillis) {
+    this.manager = manager;
+    this.scheduler = scheduler;
+    this.windowMillis = windowMillis;
+  }
+
+  void setWindowMillis(long windowMillis) {
+    this.windowMillis = windowMillis;
+  }
+
+  synchronized RemoteObject create(Class<?> clazz, Props constructorParams,
+      Props genericProps) {
+
+    RemoteObject remoteObject = manager.create(clazz.getSimpleName(), constructorParams,
+        genericProps, getTransaction(), clazz);
+    remoteObject.setPipeline(this);
+    return remoteObject;
+  }
+
+  synchronized void addOperation(Operation op) {
+    getTransaction().addOperation(op);
+  }
+
+  private TransactionImpl getTransaction() {
+
+    if (current == null) {
+      current = new TransactionImpl(manager);
+      try {
+        flushTask = scheduler.schedule(new Runnable() {
+          @Override
+          public void run() {
+            flush();
+          }
+        }, windowMillis, TimeUnit.MILLISECONDS);
+      } catch (RejectedExecutionException e) {
+        log.warn("Request pipeline is shut down. Operations will be sent when needed");
+      }
+    }
+    return current;
+  }
+
+  /**
+   * Commits the current transaction, or as soon as the objects of the previous one are resolved.
+   */
+  void flush() {
+
+    TransactionImpl tx;
+    synchronized (this) {
+
+      if (current == null) {
+        return;
+      }
+
+      if (unresolvedObjects > 0) {
+        flushRequested = true;
+        return;
+      }
+
+      tx = current;
+      current = null;
+      flushRequested = false;
+      if (flushTask != null) {
+        flushTask.cancel(false);
+        flushTask = null;
+      }
+
+      for (Operation op : tx.getOperations()) {
+        if (op instanceof MediaObjectCreationOperation) {
+          unresolvedObjects++;
+        }
+      }
+    }
+
+    commit(tx.getOperations());
+  }
+
+  private void commit(final List<Operation> operations) {
+
+    for (Operation op : operations) {
+      op.setManager(manager);
+    }
+
+    try {
+      manager.getRomClient().transaction(operations, new Continuation<Void>() {
+        @Override
+        public void onSuccess(Void result) {
+        }
+
+        @Override
+        public void onError(Throwable cause) {
+          rollback(operations, cause);
+        }
+      });
+    } catch (Exception e) {
+      rollback(operations, e);
+    }
+  }
+
+  private void rollback(List<Operation> operations, Throwable cause) {
+
+    log.warn("Exception executing pipelined operations", cause);
+
+    // Operations have already been rolled back if the media server rejected any of them
+    if (!(cause instanceof TransactionExecutionException)) {
+      for (Operation op : operations) {
+        op.rollback(null);
+      }
+    }
+  }
+
+  /**
+   * Called when a provisional object gets its reference, or fails to be created.
+   */
+  void objectResolved() {
+
+    synchronized (this) {
+      unresolvedObjects--;
+      if (unresolvedObjects > 0 || !flushRequested) {
+        return;
+      }
+    }
+
+    flush();
+  }
+
+}
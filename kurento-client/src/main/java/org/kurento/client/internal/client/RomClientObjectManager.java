@@ -17,7 +17,12 @@
 
 package org.kurento.client.internal.client;
 
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.kurento.client.internal.transport.serialization.ObjectRefsManager;
 import org.kurento.jsonrpc.Props;
@@ -25,13 +30,24 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.collect.MapMaker;
+import com.google.common.collect.Sets;
 
 public class RomClientObjectManager implements RomEventHandler, ObjectRefsManager {
 
   private static final Logger log = LoggerFactory.getLogger(RomClientObjectManager.class);
 
+  // Children whose proxies have been garbage collected are pruned every this many registrations,
+  // as the weak values of objects are evicted without notice
+  private static final int PRUNE_INTERVAL = 1024;
+
   private final ConcurrentMap<String, RemoteObject> objects = new MapMaker().weakValues().makeMap();
 
+  // References of the registered children of each object. Media server references contain the
+  // reference of the parent, e.g. "pipelineRef/elementRef"
+  private final ConcurrentMap<String, Set<String>> childrenByParent = new ConcurrentHashMap<>();
+
+  private final AtomicInteger registrationsSincePrune = new AtomicInteger();
+
   private final RomClient client;
 
   public RomClientObjectManager(RomClient client) {
@@ -60,10 +76,133 @@ public class RomClientObjectManager implements RomEventHandler, ObjectRefsManage
 
   public void registerObject(String objectRef, RemoteObject remoteObject) {
     this.objects.put(objectRef, remoteObject);
+    addToParent(objectRef);
+  }
+
+  /**
+   * Unregisters the object only if it is registered with that reference, e.g. when its provisional
+   * reference is replaced.
+   */
+  public void unregisterObject(String objectRef, RemoteObject remoteObject) {
+    this.objects.remove(objectRef, remoteObject);
   }
 
+  /**
+   * Registers the object only if no other object is registered with the same reference.
+   *
+   * @return the object already registered with that reference, or null if remoteObject was
+   *         registered
+   */
+  public RemoteObject registerObjectIfAbsent(String objectRef, RemoteObject remoteObject) {
+    RemoteObject previous = this.objects.putIfAbsent(objectRef, remoteObject);
+    if (previous == null) {
+      addToParent(objectRef);
+    }
+    return previous;
+  }
+
+  private void addToParent(String objectRef) {
+
+    String parentRef = getParentRef(objectRef);
+    if (parentRef != null) {
+      while (true) {
+        Set<String> children = childrenByParent.get(parentRef);
+        if (children == null) {
+          Set<String> newChildren = Sets.newConcurrentHashSet();
+          children = childrenByParent.putIfAbsent(parentRef, newChildren);
+          if (children == null) {
+            children = newChildren;
+          }
+        }
+        // Retried if the set has been removed for being empty
+        synchronized (children) {
+          if (childrenByParent.get(parentRef) == children) {
+            children.add(objectRef);
+            break;
+          }
+        }
+      }
+    }
+
+    if (registrationsSincePrune.incrementAndGet() >= PRUNE_INTERVAL) {
+      registrationsSincePrune.set(0);
+      pruneChildren();
+    }
+  }
+
+  /**
+   * Removes the children whose proxies have been garbage collected, and the parents left without
+   * children.
+   */
+  void pruneChildren() {
+    for (Entry<String, Set<String>> entry : childrenByParent.entrySet()) {
+      Set<String> children = entry.getValue();
+      // Children registered again meanwhile are added after the lock is released
+      synchronized (children) {
+        Iterator<String> it = children.iterator();
+        while (it.hasNext()) {
+          if (!objects.containsKey(it.next())) {
+            it.remove();
+          }
+        }
+        removeIfEmpty(entry.getKey(), children);
+      }
+    }
+  }
+
+  private void removeIfEmpty(String parentRef, Set<String> children) {
+    synchronized (children) {
+      if (children.isEmpty()) {
+        childrenByParent.remove(parentRef, children);
+      }
+    }
+  }
+
+  int getNumTrackedParents() {
+    return childrenByParent.size();
+  }
+
+  /**
+   * @return the reference of the object that contains the given one, or null if it has no parent
+   */
+  public static String getParentRef(String objectRef) {
+    int index = objectRef.lastIndexOf('/');
+    return index > 0 ? objectRef.substring(0, index) : null;
+  }
+
+  public void invalidateCachedProperties() {
+    for (RemoteObject object : objects.values()) {
+      object.invalidateCachedProperties();
+    }
+  }
+
+  /**
+   * Unregisters the object and its descendants, as the media server releases them with it.
+   */
   public void releaseObject(String objectRef) {
+
     this.objects.remove(objectRef);
+
+    String parentRef = getParentRef(objectRef);
+    if (parentRef != null) {
+      Set<String> siblings = childrenByParent.get(parentRef);
+      if (siblings != null) {
+        siblings.remove(objectRef);
+        removeIfEmpty(parentRef, siblings);
+      }
+    }
+
+    releaseChildren(objectRef);
+  }
+
+  private void releaseChildren(String objectRef) {
+    Set<String> children = childrenByParent.remove(objectRef);
+    if (children != null) {
+      for (String childRef : children) {
+        this.objects.remove(childRef);
+        releaseChildren(childRef);
+      }
+    }
   }
 
   public RemoteObject getRemoteObject(String objectRef) {
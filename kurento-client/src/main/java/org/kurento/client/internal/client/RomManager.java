@@ -18,15 +18,26 @@
 package org.kurento.client.internal.client;
 
 import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
 import org.kurento.client.Continuation;
 import org.kurento.client.Transaction;
+import org.kurento.client.TransactionExecutionException;
 import org.kurento.client.internal.TransactionImpl;
 import org.kurento.client.internal.client.operation.MediaObjectCreationOperation;
 import org.kurento.client.internal.client.operation.Operation;
+import org.kurento.client.internal.client.operation.ReleaseOperation;
 import org.kurento.client.internal.transport.serialization.ObjectRefsManager;
 import org.kurento.client.internal.transport.serialization.ParamsFlattener;
+import org.kurento.commons.ThreadFactoryCreator;
 import org.kurento.jsonrpc.Props;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -40,6 +51,16 @@ public class RomManager implements ObjectRefsManager {
   private final RomClientObjectManager manager;
   private final RomClient client;
 
+  private volatile EventDispatcher eventDispatcher;
+
+  private volatile PropertyCache propertyCache;
+
+  private volatile long pipelineWindowMillis;
+
+  // Created with the first provisional object
+  private RequestPipeline pipeline;
+  private ScheduledExecutorService pipelineScheduler;
+
   public RomManager(RomClient client) {
     this.client = client;
     this.manager = new RomClientObjectManager(client);
@@ -48,9 +69,13 @@ public class RomManager implements ObjectRefsManager {
     }
   }
 
-  // FIXME: Improve concurrency
-  public synchronized RemoteObject create(String remoteClassName, Props constructorParams,
+  public RemoteObject create(String remoteClassName, Props constructorParams,
       Props genericProps) {
+    return create(remoteClassName, constructorParams, genericProps, (Class<?>) null);
+  }
+
+  private RemoteObject create(String remoteClassName, Props constructorParams,
+      Props genericProps, Class<?> clazz) {
 	  
 	if(remoteClassName.equals("GenericMediaElement")) {
 		remoteClassName = (String) constructorParams.removeProp("mediaElementClassName");
@@ -58,16 +83,21 @@ public class RomManager implements ObjectRefsManager {
 	  
     String objectRef = client.create(remoteClassName, constructorParams, genericProps);
 
-    return new RemoteObject(objectRef, remoteClassName, this);
+    return publish(new RemoteObject(objectRef, remoteClassName, true, this, false), clazz);
   }
 
-  public synchronized RemoteObject create(String remoteClassName, Props constructorParams,
+  public RemoteObject create(String remoteClassName, Props constructorParams,
       Props genericProps, Transaction tx) {
+    return create(remoteClassName, constructorParams, genericProps, tx, null);
+  }
+
+  RemoteObject create(String remoteClassName, Props constructorParams, Props genericProps,
+      Transaction tx, Class<?> clazz) {
 
     TransactionImpl txImpl = (TransactionImpl) tx;
 
-    RemoteObject remoteObject = new RemoteObject(txImpl.nextObjectRef(), remoteClassName, false,
-        this);
+    RemoteObject remoteObject = publish(
+        new RemoteObject(txImpl.nextObjectRef(), remoteClassName, false, this, false), clazz);
 
     MediaObjectCreationOperation op = new MediaObjectCreationOperation(remoteClassName,
         constructorParams, genericProps, remoteObject);
@@ -78,18 +108,47 @@ public class RomManager implements ObjectRefsManager {
 
   }
 
-  public synchronized RemoteObject create(String remoteClassName) {
+  /**
+   * Attaches the proxy of the given class, if any, to a new object and then registers it, so a
+   * concurrent lookup never sees a RemoteObject without its KurentoObject.
+   *
+   * @return the registered object, that is the already registered one if another thread has
+   *         registered the same reference first
+   */
+  private RemoteObject publish(RemoteObject newObject, Class<?> clazz) {
+
+    if (clazz != null) {
+      RemoteObjectInvocationHandler.newProxy(newObject, this, clazz);
+    }
+
+    RemoteObject remoteObject = manager.registerObjectIfAbsent(newObject.getObjectRef(),
+        newObject);
+
+    return remoteObject != null ? remoteObject : newObject;
+  }
+
+  public RemoteObject create(String remoteClassName) {
     return create(remoteClassName, (Props) null, null);
   }
 
-  public synchronized void create(final String remoteClassName, final Props constructorParams,
+  public void create(final String remoteClassName, final Props constructorParams,
       Props genericProps, final Continuation<RemoteObject> cont) {
+    create(remoteClassName, constructorParams, genericProps, null, cont);
+  }
+
+  /**
+   * Creates an object asynchronously. If clazz is not null, the proxy of that class is attached to
+   * the object before registering it and passing it to the continuation.
+   */
+  public void create(final String remoteClassName, final Props constructorParams,
+      Props genericProps, final Class<?> clazz, final Continuation<RemoteObject> cont) {
 
     client.create(remoteClassName, constructorParams, genericProps, new Continuation<String>() {
       @Override
       public void onSuccess(String objectRef) {
         try {
-          cont.onSuccess(new RemoteObject(objectRef, remoteClassName, RomManager.this));
+          cont.onSuccess(publish(
+              new RemoteObject(objectRef, remoteClassName, true, RomManager.this, false), clazz));
         } catch (Exception e) {
           log.warn("[Continuation] error invoking onSuccess implemented by client", e);
         }
@@ -106,17 +165,17 @@ public class RomManager implements ObjectRefsManager {
     });
   }
 
-  public synchronized void create(String remoteClassName, Continuation<RemoteObject> cont) {
+  public void create(String remoteClassName, Continuation<RemoteObject> cont) {
     create(remoteClassName, null, null, cont);
   }
 
   @Override
-  public synchronized Object getObject(String objectRef) {
+  public Object getObject(String objectRef) {
     return manager.getObject(objectRef);
   }
 
   @SuppressWarnings("unchecked")
-  public synchronized <T> T getById(String objectRef, Class<T> clazz) {
+  public <T> T getById(String objectRef, Class<T> clazz) {
 
     RemoteObject remoteObject = (RemoteObject) this.getObject(objectRef);
 
@@ -124,9 +183,18 @@ public class RomManager implements ObjectRefsManager {
 
       clazz = obtainConcreteClass(objectRef, clazz);
 
-      remoteObject = new RemoteObject(objectRef, clazz.getSimpleName(), this);
+      // The proxy is attached before publishing the object, so a concurrent lookup never sees a
+      // RemoteObject without its KurentoObject. If another thread registers the same reference
+      // first, its object is returned and this one is discarded.
+      RemoteObject newObject = new RemoteObject(objectRef, clazz.getSimpleName(), true, this,
+          false);
 
-      RemoteObjectInvocationHandler.newProxy(remoteObject, this, clazz);
+      RemoteObjectInvocationHandler.newProxy(newObject, this, clazz);
+
+      remoteObject = manager.registerObjectIfAbsent(objectRef, newObject);
+      if (remoteObject == null) {
+        remoteObject = newObject;
+      }
     }
 
     return (T) remoteObject.getKurentoObject();
@@ -145,13 +213,95 @@ public class RomManager implements ObjectRefsManager {
     }
   }
 
-  public synchronized void registerObject(String objectRef, RemoteObject remoteObject) {
+  public void registerObject(String objectRef, RemoteObject remoteObject) {
     this.manager.registerObject(objectRef, remoteObject);
   }
 
   public void destroy() {
     log.debug("Closing RomManager");
     this.client.destroy();
+    setEventDispatcher(null);
+    synchronized (this) {
+      if (pipelineScheduler != null) {
+        pipelineScheduler.shutdownNow();
+      }
+    }
+  }
+
+  /**
+   * Creates an object that is returned before it exists in the media server. Its creation is sent
+   * together with the asynchronous operations that use it, in a single request.
+   */
+  public RemoteObject createPipelined(Class<?> clazz, Props props, Props genericProps) {
+
+    return getPipeline().create(clazz, props, genericProps);
+  }
+
+  /**
+   * Sends the pipelined operations without waiting for the end of the pipeline window.
+   */
+  public void flushPipeline() {
+    RequestPipeline currentPipeline;
+    synchronized (this) {
+      currentPipeline = pipeline;
+    }
+    if (currentPipeline != null) {
+      currentPipeline.flush();
+    }
+  }
+
+  /**
+   * Sets the time pipelined operations wait for more operations before being sent.
+   */
+  public synchronized void setPipelineWindow(long windowMillis) {
+    this.pipelineWindowMillis = windowMillis;
+    if (pipeline != null) {
+      pipeline.setWindowMillis(windowMillis);
+    }
+  }
+
+  public long getPipelineWindow() {
+    return pipelineWindowMillis;
+  }
+
+  private synchronized RequestPipeline getPipeline() {
+    if (pipeline == null) {
+      pipelineScheduler = Executors
+          .newSingleThreadScheduledExecutor(ThreadFactoryCreator.create("RequestPipeline"));
+      pipeline = new RequestPipeline(this, pipelineScheduler, pipelineWindowMillis);
+    }
+    return pipeline;
+  }
+
+  /**
+   * Sets the dispatcher used to deliver events to listeners. If null, listeners are invoked in the
+   * thread that receives the events. The previous dispatcher, if any, is shut down, and the queues
+   * created by it are replaced, keeping their pending events, the next time their listener receives
+   * an event.
+   */
+  public void setEventDispatcher(EventDispatcher eventDispatcher) {
+    EventDispatcher oldDispatcher = this.eventDispatcher;
+    this.eventDispatcher = eventDispatcher;
+    if (oldDispatcher != null && oldDispatcher != eventDispatcher) {
+      oldDispatcher.shutdown();
+    }
+  }
+
+  public EventDispatcher getEventDispatcher() {
+    return eventDispatcher;
+  }
+
+  /**
+   * Sets the declarations of the properties cached in the client, or null to disable the cache.
+   * Values cached until now are discarded.
+   */
+  public void setPropertyCache(PropertyCache propertyCache) {
+    this.propertyCache = propertyCache;
+    manager.invalidateCachedProperties();
+  }
+
+  public PropertyCache getPropertyCache() {
+    return propertyCache;
   }
 
   public <E> E invoke(String objectRef, String methodName, Props params, Class<E> clazz) {
@@ -186,6 +336,59 @@ public class RomManager implements ObjectRefsManager {
     });
   }
 
+  /**
+   * Releases several objects in a single transaction. Objects contained in other objects of the
+   * collection are released by the media server with them, so no request is sent for them.
+   */
+  public void release(Collection<RemoteObject> remoteObjects) {
+    List<Operation> operations = createReleaseOperations(remoteObjects);
+    if (!operations.isEmpty()) {
+      transaction(operations);
+    }
+  }
+
+  public void release(Collection<RemoteObject> remoteObjects, Continuation<Void> cont) {
+    List<Operation> operations = createReleaseOperations(remoteObjects);
+    if (!operations.isEmpty()) {
+      transaction(operations, cont);
+    } else {
+      try {
+        cont.onSuccess(null);
+      } catch (Exception e) {
+        log.warn("[Continuation] error invoking onSuccess implemented by client", e);
+      }
+    }
+  }
+
+  private List<Operation> createReleaseOperations(Collection<RemoteObject> remoteObjects) {
+
+    Map<String, RemoteObject> objectsByRef = new LinkedHashMap<>();
+    for (RemoteObject remoteObject : remoteObjects) {
+      if (!remoteObject.isCommited()) {
+        remoteObject.awaitPipelinedCreation();
+      }
+      objectsByRef.put(remoteObject.getObjectRef(), remoteObject);
+    }
+
+    List<Operation> operations = new ArrayList<>(objectsByRef.size());
+    for (Entry<String, RemoteObject> entry : objectsByRef.entrySet()) {
+      if (!hasAncestorIn(entry.getKey(), objectsByRef.keySet())) {
+        operations.add(new ReleaseOperation(entry.getValue().getKurentoObject()));
+      }
+    }
+    return operations;
+  }
+
+  private static boolean hasAncestorIn(String objectRef, Set<String> objectRefs) {
+    for (String parentRef = RomClientObjectManager.getParentRef(objectRef); parentRef != null;
+        parentRef = RomClientObjectManager.getParentRef(parentRef)) {
+      if (objectRefs.contains(parentRef)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   public String subscribe(String objectRef, String eventType) {
     return client.subscribe(objectRef, eventType);
   }
@@ -231,7 +434,12 @@ public class RomManager implements ObjectRefsManager {
 
       @Override
       public void onError(Throwable cause) throws Exception {
-        transaction(operations, continuation);
+        if (cause instanceof TransactionExecutionException) {
+          // The operations have already been rolled back
+          continuation.onError(cause);
+        } else {
+          transaction(operations, continuation);
+        }
       }
     });
   }
@@ -240,26 +448,14 @@ public class RomManager implements ObjectRefsManager {
     return client;
   }
 
-  public synchronized RemoteObject createWithKurentoObject(Class<?> clazz, Props props,
+  public RemoteObject createWithKurentoObject(Class<?> clazz, Props props,
       Props genericProps, Transaction transaction) {
-
-    RemoteObject remoteObject = this.create(clazz.getSimpleName(), props, genericProps,
-        transaction);
-
-    RemoteObjectInvocationHandler.newProxy(remoteObject, this, clazz);
-
-    return remoteObject;
+    return this.create(clazz.getSimpleName(), props, genericProps, transaction, clazz);
   }
 
-  public synchronized RemoteObject createWithKurentoObject(Class<?> clazz, Props props,
+  public RemoteObject createWithKurentoObject(Class<?> clazz, Props props,
       Props genericProps) {
-
-    RemoteObject remoteObject = this.create(clazz.getSimpleName(), props, genericProps);
-
-    RemoteObjectInvocationHandler.newProxy(remoteObject, this, clazz);
-
-    return remoteObject;
-
+    return this.create(clazz.getSimpleName(), props, genericProps, clazz);
   }
 
 }
@@ -59,6 +59,8 @@ public class InvokeOperation extends Operation {
     if (returnType != Void.class && returnType != void.class) {
 
       future.getFuture().set(FLATTENER.unflattenValue("return", returnType, result, manager));
+    } else if (future != null) {
+      future.getFuture().set(null);
     }
   }
 
@@ -38,6 +38,10 @@ public class MediaObjectCreationOperation extends Operation {
     this.remoteObject = remoteObject;
   }
 
+  public RemoteObject getRemoteObject() {
+    return remoteObject;
+  }
+
   @Override
   public RequestAndResponseType createRequest(RomClientJsonRpcClient romClientJsonRpcClient) {
     return romClientJsonRpcClient.createCreateRequest(className, constructorParams, genericProps,
@@ -0,0 +1,63 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.kurento.client.internal.client.operation;
+
+import org.kurento.client.KurentoObject;
+import org.kurento.client.internal.client.RemoteObjectInvocationHandler;
+import org.kurento.client.internal.transport.jsonrpc.RomClientJsonRpcClient;
+import org.kurento.client.internal.transport.jsonrpc.RomClientJsonRpcClient.RequestAndResponseType;
+import org.kurento.jsonrpc.Props;
+
+/**
+ * Invocation whose result is not decoded into Java types. It is kept as it is read from JSON:
+ * {@link Props} for objects, lists and primitive values. Complex types are not instantiated, so
+ * it is cheaper when only some values of the result are needed.
+ */
+public class RawInvokeOperation extends Operation {
+
+  private KurentoObject kurentoObject;
+  private String method;
+  private Props params;
+
+  public RawInvokeOperation(KurentoObject object, String method, Props params) {
+    super();
+    this.kurentoObject = object;
+    this.method = method;
+    this.params = params;
+  }
+
+  @Override
+  public RequestAndResponseType createRequest(RomClientJsonRpcClient romClientJsonRpcClient) {
+
+    return romClientJsonRpcClient.createInvokeRequest(
+        RemoteObjectInvocationHandler.getFor(kurentoObject).getRemoteObject().getObjectRef(),
+        method, params, Props.class, true);
+  }
+
+  @Override
+  public void processResponse(Object result) {
+    if (future != null) {
+      future.getFuture().set(result);
+    }
+  }
+
+  @Override
+  public String getDescription() {
+    return "Invoking method '" + method + "' in object " + getObjectRef(kurentoObject)
+        + "' with params " + params;
+  }
+}
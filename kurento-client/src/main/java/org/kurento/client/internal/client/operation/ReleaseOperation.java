@@ -24,24 +24,39 @@ import org.kurento.client.internal.transport.jsonrpc.RomClientJsonRpcClient.Requ
 public class ReleaseOperation extends Operation {
 
   private KurentoObject kurentoObject;
+  private String objectRef;
 
   public ReleaseOperation(KurentoObject mediaObject) {
     this.kurentoObject = mediaObject;
   }
 
+  /**
+   * Releases an object that may not have a proxy in the client.
+   */
+  public ReleaseOperation(String objectRef) {
+    this.objectRef = objectRef;
+  }
+
   @Override
   public RequestAndResponseType createRequest(RomClientJsonRpcClient romClientJsonRpcClient) {
 
-    return romClientJsonRpcClient.createReleaseRequest(getObjectRef(kurentoObject));
+    return romClientJsonRpcClient.createReleaseRequest(getReleasedObjectRef());
   }
 
   @Override
   public void processResponse(Object response) {
-    manager.release(getObjectRef(kurentoObject));
+    // The object has already been released in the media server
+    if (manager != null) {
+      manager.getObjectManager().releaseObject(getReleasedObjectRef());
+    }
+  }
+
+  public String getReleasedObjectRef() {
+    return objectRef != null ? objectRef : getObjectRef(kurentoObject);
   }
 
   @Override
   public String getDescription() {
-    return "Release object '" + getObjectRef(kurentoObject) + "'";
+    return "Release object '" + getReleasedObjectRef() + "'";
   }
 }
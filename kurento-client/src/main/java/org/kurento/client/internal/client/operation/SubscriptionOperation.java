@@ -52,7 +52,7 @@ public class SubscriptionOperation extends Operation {
   public void processResponse(Object response) {
 
     listenerSubscription.setSubscription((String) response);
-    getRemoteObject(kurentoObject).addEventListener(eventType, listener);
+    getRemoteObject(kurentoObject).addSubscribedEventListener(eventType, listener);
   }
 
   @Override
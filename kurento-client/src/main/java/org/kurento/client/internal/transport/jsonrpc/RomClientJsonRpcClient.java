@@ -44,6 +44,8 @@ import java.io.IOException;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
 import org.kurento.client.Continuation;
 import org.kurento.client.TransactionExecutionException;
@@ -53,7 +55,10 @@ import org.kurento.client.internal.client.RomEventHandler;
 import org.kurento.client.internal.client.operation.Operation;
 import org.kurento.client.internal.server.KurentoServerException;
 import org.kurento.client.internal.server.KurentoServerTransportException;
+import org.kurento.client.internal.transport.jsonrpc.RomRequestBatcher.BatchSender;
+import org.kurento.client.internal.transport.jsonrpc.RomRequestBatcher.BatchedRequest;
 import org.kurento.client.internal.transport.serialization.ParamsFlattener;
+import org.kurento.commons.ThreadFactoryCreator;
 import org.kurento.jsonrpc.DefaultJsonRpcHandler;
 import org.kurento.jsonrpc.JsonRpcErrorException;
 import org.kurento.jsonrpc.JsonUtils;
@@ -88,10 +93,60 @@ public class RomClientJsonRpcClient implements RomClient {
 
   private final JsonRpcClient client;
 
+  private volatile RomRequestBatcher batcher;
+  private ScheduledExecutorService batchScheduler;
+
   public RomClientJsonRpcClient(JsonRpcClient client) {
     this.client = client;
   }
 
+  // Batching
+
+  /**
+   * Sends asynchronous invokes, creates, releases, subscribes and unsubscribes issued within
+   * windowMillis as a single transaction request, or as soon as maxBatchSize requests are pending.
+   * Each request is still completed independently with its own response.
+   */
+  public synchronized void enableBatching(long windowMillis, int maxBatchSize) {
+
+    if (batchScheduler == null) {
+      batchScheduler = Executors
+          .newSingleThreadScheduledExecutor(ThreadFactoryCreator.create("RomRequestBatcher"));
+    }
+
+    RomRequestBatcher oldBatcher = batcher;
+
+    batcher = new RomRequestBatcher(new BatchSender() {
+      @Override
+      public void sendBatch(List<BatchedRequest> batch) {
+        RomClientJsonRpcClient.this.sendBatch(batch);
+      }
+    }, batchScheduler, windowMillis, maxBatchSize);
+
+    if (oldBatcher != null) {
+      oldBatcher.flush();
+    }
+  }
+
+  public synchronized void disableBatching() {
+
+    RomRequestBatcher oldBatcher = batcher;
+    batcher = null;
+
+    if (oldBatcher != null) {
+      oldBatcher.flush();
+    }
+
+    if (batchScheduler != null) {
+      batchScheduler.shutdown();
+      batchScheduler = null;
+    }
+  }
+
+  public boolean isBatchingEnabled() {
+    return batcher != null;
+  }
+
   // Operations
 
   @Override
@@ -114,7 +169,7 @@ public class RomClientJsonRpcClient implements RomClient {
     RequestAndResponseType reqres = createInvokeRequest(objectRef, operationName, operationParams,
         type, false);
 
-    return sendRequest(reqres.request, reqres.responseType, null, cont);
+    return sendBatchableRequest(reqres, cont);
   }
 
   @Override
@@ -127,7 +182,7 @@ public class RomClientJsonRpcClient implements RomClient {
 
     RequestAndResponseType reqres = createSubscribeRequest(objectRef, eventType);
 
-    return sendRequest(reqres.request, reqres.responseType, null, cont);
+    return sendBatchableRequest(reqres, cont);
   }
 
   @Override
@@ -139,7 +194,7 @@ public class RomClientJsonRpcClient implements RomClient {
   public void unsubscribe(String objectRef, String listenerSubscription, Continuation<Void> cont) {
 
     RequestAndResponseType reqres = createUnsubscribeRequest(objectRef, listenerSubscription);
-    sendRequest(reqres.request, reqres.responseType, null, cont);
+    sendBatchableRequest(reqres, cont);
   }
 
   @Override
@@ -154,7 +209,7 @@ public class RomClientJsonRpcClient implements RomClient {
     RequestAndResponseType reqres = createCreateRequest(remoteClassName, constructorParams,
         genericProperties, false);
 
-    return this.<String, String> sendRequest(reqres.request, reqres.responseType, null, cont);
+    return sendBatchableRequest(reqres, cont);
   }
 
   @Override
@@ -166,7 +221,7 @@ public class RomClientJsonRpcClient implements RomClient {
   public void release(String objectRef, Continuation<Void> cont) {
 
     RequestAndResponseType reqres = createReleaseRequest(objectRef);
-    sendRequest(reqres.request, reqres.responseType, null, cont);
+    sendBatchableRequest(reqres, cont);
   }
 
   // Other methods
@@ -209,6 +264,7 @@ public class RomClientJsonRpcClient implements RomClient {
   @Override
   public void destroy() {
     log.debug("Destroying RomClientJsonRpc");
+    disableBatching();
     try {
       client.close();
     } catch (IOException e) {
@@ -216,10 +272,29 @@ public class RomClientJsonRpcClient implements RomClient {
     }
   }
 
+  @SuppressWarnings("unchecked")
+  private <R> R sendBatchableRequest(RequestAndResponseType reqres, Continuation<R> cont) {
+
+    RomRequestBatcher currentBatcher = batcher;
+
+    if (cont != null && currentBatcher != null) {
+      currentBatcher.add(reqres, cont);
+      return null;
+    }
+
+    return (R) sendRequest(reqres.request, reqres.responseType, null, cont);
+  }
+
   @SuppressWarnings("unchecked")
   private <P, R> R sendRequest(Request<JsonObject> request, final Type responseType,
       final Function<P, R> processor, final Continuation<R> cont) {
 
+    RomRequestBatcher currentBatcher = batcher;
+    if (currentBatcher != null) {
+      // Requests collected before this one have to reach the server first
+      currentBatcher.flush();
+    }
+
     try {
 
       if (cont == null) {
@@ -373,7 +448,12 @@ public class RomClientJsonRpcClient implements RomClient {
       wrappedContinuation = new DefaultContinuation<List<Response<JsonElement>>>(continuation) {
         @Override
         public void onSuccess(List<Response<JsonElement>> responses) throws Exception {
-          processTransactionResponse(operations, opReqres, responses);
+          try {
+            processTransactionResponse(operations, opReqres, responses);
+          } catch (TransactionExecutionException e) {
+            continuation.onError(e);
+            return;
+          }
           continuation.onSuccess(null);
         }
       };
@@ -422,6 +502,91 @@ public class RomClientJsonRpcClient implements RomClient {
     }
   }
 
+  @SuppressWarnings("serial")
+  private void sendBatch(final List<BatchedRequest> batch) {
+
+    JsonArray opJsons = new JsonArray();
+
+    int numReq = 0;
+    for (BatchedRequest batched : batch) {
+      Request<JsonObject> request = batched.reqres.request;
+      request.setId(numReq);
+      opJsons.add(JsonUtils.toJsonElement(request));
+      numReq++;
+    }
+
+    JsonObject params = new JsonObject();
+    params.add(TRANSACTION_OPERATIONS, opJsons);
+
+    Continuation<List<Response<JsonElement>>> batchContinuation =
+        new Continuation<List<Response<JsonElement>>>() {
+          @Override
+          public void onSuccess(List<Response<JsonElement>> responses) {
+            processBatchResponse(batch, responses);
+          }
+
+          @Override
+          public void onError(Throwable cause) {
+            failBatch(batch, cause);
+          }
+        };
+
+    try {
+      this.sendRequest(new Request<>(TRANSACTION_METHOD, params),
+          new TypeToken<List<Response<JsonElement>>>() {
+          }.getType(), null, batchContinuation);
+    } catch (Exception e) {
+      failBatch(batch, e);
+    }
+  }
+
+  private void processBatchResponse(List<BatchedRequest> batch,
+      List<Response<JsonElement>> responses) {
+
+    // Unlike an explicit transaction, batched requests are unrelated to each other, so each one is
+    // completed with its own response and no rollback is done
+    for (int i = 0; i < batch.size(); i++) {
+
+      BatchedRequest batched = batch.get(i);
+      Response<JsonElement> response = responses != null && i < responses.size()
+          ? responses.get(i) : null;
+
+      if (response == null) {
+        notifyError(batched.cont, new KurentoServerTransportException(
+            "No response received for batched request " + batched.reqres.request.getMethod()));
+      } else if (response.isError()) {
+        notifyError(batched.cont, new KurentoServerException(response.getError()));
+      } else {
+        Object result;
+        try {
+          result = processReqResult(batched.reqres.responseType, null, response.getResult());
+        } catch (Exception e) {
+          notifyError(batched.cont, e);
+          continue;
+        }
+        try {
+          batched.cont.onSuccess(result);
+        } catch (Exception e) {
+          log.warn("[Continuation] error invoking OnSuccess implemented by client", e);
+        }
+      }
+    }
+  }
+
+  private void failBatch(List<BatchedRequest> batch, Throwable cause) {
+    for (BatchedRequest batched : batch) {
+      notifyError(batched.cont, cause);
+    }
+  }
+
+  private void notifyError(Continuation<?> cont, Throwable cause) {
+    try {
+      cont.onError(cause);
+    } catch (Exception e) {
+      log.warn("[Continuation] error invoking onError implemented by client", e);
+    }
+  }
+
   @Override
   public boolean isClosed() {
     return this.client.isClosedByUser();
@@ -0,0 +1,132 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.kurento.client.internal.transport.jsonrpc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.kurento.client.Continuation;
+import org.kurento.client.internal.transport.jsonrpc.RomClientJsonRpcClient.RequestAndResponseType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Collects asynchronous ROM requests issued within a short window and hands them to the client to
+ * be sent together as a single transaction request. A batch is sent when the window expires, when
+ * it reaches the maximum size or when a request that can't be batched has to be sent, so requests
+ * never overtake each other.
+ */
+public class RomRequestBatcher {
+
+  public static class BatchedRequest {
+
+    public final RequestAndResponseType reqres;
+    public final Continuation<Object> cont;
+
+    public BatchedRequest(RequestAndResponseType reqres, Continuation<Object> cont) {
+      this.reqres = reqres;
+      this.cont = cont;
+    }
+  }
+
+  public interface BatchSender {
+    void sendBatch(List<BatchedRequest> batch);
+  }
+
+  private static final Logger log = LoggerFactory.getLogger(RomRequestBatcher.class);
+
+  private final BatchSender sender;
+  private final ScheduledExecutorService scheduler;
+  private final long windowMillis;
+  private final int maxBatchSize;
+
+  private List<BatchedRequest> pending = new ArrayList<>();
+  private ScheduledFuture<?> flushTask;
+
+  public RomRequestBatcher(BatchSender sender, ScheduledExecutorService scheduler,
+      long windowMillis, int maxBatchSize) {
+
+    if (windowMillis <= 0) {
+      throw new IllegalArgumentException("Batching window must be positive: " + windowMillis);
+    }
+
+    if (maxBatchSize <= 0) {
+      throw new IllegalArgumentException("Max batch size must be positive: " + maxBatchSize);
+    }
+
+    this.sender = sender;
+    this.scheduler = scheduler;
+    this.windowMillis = windowMillis;
+    this.maxBatchSize = maxBatchSize;
+  }
+
+  public long getWindowMillis() {
+    return windowMillis;
+  }
+
+  public int getMaxBatchSize() {
+    return maxBatchSize;
+  }
+
+  @SuppressWarnings("unchecked")
+  public synchronized void add(RequestAndResponseType reqres, Continuation<?> cont) {
+
+    pending.add(new BatchedRequest(reqres, (Continuation<Object>) cont));
+
+    if (pending.size() >= maxBatchSize) {
+      flush();
+    } else if (flushTask == null) {
+      flushTask = scheduler.schedule(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            flush();
+          } catch (Exception e) {
+            log.warn("Exception sending batch of requests", e);
+          }
+        }
+      }, windowMillis, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * Sends pending requests, if any. The batch is sent holding the lock so batches are written in
+   * the same order they were collected.
+   */
+  public synchronized void flush() {
+
+    if (flushTask != null) {
+      flushTask.cancel(false);
+      flushTask = null;
+    }
+
+    if (pending.isEmpty()) {
+      return;
+    }
+
+    List<BatchedRequest> batch = pending;
+    pending = new ArrayList<>();
+
+    log.trace("Sending batch of {} requests", batch.size());
+
+    sender.sendBatch(batch);
+  }
+
+}
@@ -26,32 +26,58 @@ import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.
 import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.INVOKE_OPERATION_PARAMS;
 import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.RELEASE_METHOD;
 import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.RELEASE_OBJECT;
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.SUBSCRIBE_METHOD;
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.SUBSCRIBE_OBJECT;
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.SUBSCRIBE_TYPE;
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.TRANSACTION_METHOD;
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.TRANSACTION_OPERATIONS;
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.UNSUBSCRIBE_LISTENER;
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.UNSUBSCRIBE_METHOD;
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.UNSUBSCRIBE_OBJECT;
 
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
 
 import org.kurento.client.internal.server.ProtocolException;
 import org.kurento.client.internal.server.RomServer;
 import org.kurento.jsonrpc.DefaultJsonRpcHandler;
 import org.kurento.jsonrpc.JsonUtils;
 import org.kurento.jsonrpc.Props;
+import org.kurento.jsonrpc.Session;
 import org.kurento.jsonrpc.Transaction;
 import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.message.Response;
+import org.kurento.jsonrpc.message.ResponseError;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
 
 public class RomServerJsonRpcHandler extends DefaultJsonRpcHandler<JsonObject> {
 
   private static Logger LOG = LoggerFactory.getLogger(RomServerJsonRpcHandler.class);
 
+  private static final String NEW_REF_PREFIX = "newref:";
+
   private final RomServer server;
 
   public RomServerJsonRpcHandler(String packageName, String classSuffix) {
     server = new RomServer(packageName, classSuffix);
   }
 
+  /**
+   * Constructor for handlers that implement the object operations themselves, overriding
+   * {@link #create}, {@link #invoke} and {@link #release}.
+   */
+  protected RomServerJsonRpcHandler() {
+    server = null;
+  }
+
   @Override
   public void handleRequest(Transaction transaction, Request<JsonObject> request) throws Exception {
 
@@ -80,6 +106,13 @@ public class RomServerJsonRpcHandler extends DefaultJsonRpcHandler<JsonObject> {
 
           handleCreateCommand(transaction, type, params.getAsJsonObject(CREATE_CONSTRUCTOR_PARAMS));
           break;
+        case TRANSACTION_METHOD:
+          handleTransactionCommand(transaction, params.getAsJsonArray(TRANSACTION_OPERATIONS));
+          break;
+        case SUBSCRIBE_METHOD:
+        case UNSUBSCRIBE_METHOD:
+          transaction.sendResponse(executeOperation(transaction.getSession(), method, params));
+          break;
         default:
           LOG.warn("Unknown request method '{}'", method);
 
@@ -113,22 +146,144 @@ public class RomServerJsonRpcHandler extends DefaultJsonRpcHandler<JsonObject> {
   private void handleCreateCommand(Transaction transaction, String type,
       JsonObject constructorParams) throws IOException {
 
-    Object result = server.create(type, JsonUtils.fromJson(constructorParams, Props.class));
+    Object result = create(type, JsonUtils.fromJson(constructorParams, Props.class));
 
     transaction.sendResponse(result);
   }
 
   private void handleReleaseCommand(Transaction transaction, String objectRef) {
-    server.release(objectRef);
+    release(objectRef);
+  }
+
+  private void handleTransactionCommand(Transaction transaction, JsonArray operations)
+      throws IOException {
+
+    if (operations == null) {
+      throw new ProtocolException("It is necessary a property '" + TRANSACTION_OPERATIONS
+          + "' with the operations of the transaction");
+    }
+
+    JsonArray responses = new JsonArray();
+
+    // Objects created in the transaction are referenced as "newref:N" by later operations, N
+    // being the order of their creation in the transaction
+    Map<String, String> newRefs = new HashMap<>();
+    int numCreations = 0;
+
+    for (JsonElement operation : operations) {
+
+      if (!newRefs.isEmpty()) {
+        operation = resolveNewRefs(operation, newRefs);
+      }
+
+      Request<JsonObject> request = JsonUtils.fromJsonRequest((JsonObject) operation,
+          JsonObject.class);
+
+      Response<JsonElement> response;
+      try {
+        Object result = executeOperation(transaction.getSession(), request.getMethod(),
+            request.getParams());
+        if (CREATE_METHOD.equals(request.getMethod())) {
+          newRefs.put(NEW_REF_PREFIX + numCreations, (String) result);
+        }
+        response = new Response<>(request.getId(), JsonUtils.toJsonElement(result));
+      } catch (Exception e) {
+        response = new Response<>(request.getId(), ResponseError.newFromException(e));
+      }
+
+      if (CREATE_METHOD.equals(request.getMethod())) {
+        numCreations++;
+      }
+
+      responses.add(JsonUtils.toJsonElement(response));
+    }
+
+    transaction.sendResponse(responses);
+  }
+
+  private JsonElement resolveNewRefs(JsonElement element, Map<String, String> newRefs) {
+
+    if (element.isJsonPrimitive()) {
+      if (element.getAsJsonPrimitive().isString()) {
+        String newRef = element.getAsString();
+        if (newRef.startsWith(NEW_REF_PREFIX) && newRefs.containsKey(newRef)) {
+          return new JsonPrimitive(newRefs.get(newRef));
+        }
+      }
+    } else if (element.isJsonObject()) {
+      JsonObject resolved = new JsonObject();
+      for (Entry<String, JsonElement> entry : element.getAsJsonObject().entrySet()) {
+        resolved.add(entry.getKey(), resolveNewRefs(entry.getValue(), newRefs));
+      }
+      return resolved;
+    } else if (element.isJsonArray()) {
+      JsonArray resolved = new JsonArray();
+      for (JsonElement child : element.getAsJsonArray()) {
+        resolved.add(resolveNewRefs(child, newRefs));
+      }
+      return resolved;
+    }
+    return element;
+  }
+
+  private Object executeOperation(Session session, String method, JsonObject params) {
+
+    switch (method) {
+      case INVOKE_METHOD:
+        return invoke(getAsString(params, INVOKE_OBJECT, "object reference"),
+            getAsString(params, INVOKE_OPERATION_NAME, "method to be invoked"),
+            JsonUtils.fromJson(params.getAsJsonObject(INVOKE_OPERATION_PARAMS), Props.class));
+      case RELEASE_METHOD:
+        release(getAsString(params, RELEASE_OBJECT, "object reference to be released"));
+        return null;
+      case CREATE_METHOD:
+        return create(getAsString(params, CREATE_TYPE, "RemoteClass of the object to be created"),
+            JsonUtils.fromJson(params.getAsJsonObject(CREATE_CONSTRUCTOR_PARAMS), Props.class));
+      case SUBSCRIBE_METHOD:
+        return subscribe(session, getAsString(params, SUBSCRIBE_OBJECT, "object reference"),
+            getAsString(params, SUBSCRIBE_TYPE, "event type"));
+      case UNSUBSCRIBE_METHOD:
+        unsubscribe(getAsString(params, UNSUBSCRIBE_OBJECT, "object reference"),
+            getAsString(params, UNSUBSCRIBE_LISTENER, "subscription"));
+        return null;
+      default:
+        throw new ProtocolException("Unknown operation method '" + method + "' in transaction");
+    }
   }
 
   private void handleInvokeCommand(Transaction transaction, String objectRef, String operationName,
       JsonObject operationParams) throws IOException {
 
-    Object result = server.invoke(objectRef, operationName,
-        JsonUtils.fromJson(operationParams, Props.class), Object.class);
+    Object result = invoke(objectRef, operationName,
+        JsonUtils.fromJson(operationParams, Props.class));
 
     transaction.sendResponse(result);
   }
 
+  protected String create(String type, Props constructorParams) {
+    return server.create(type, constructorParams);
+  }
+
+  protected Object invoke(String objectRef, String operationName, Props operationParams) {
+    return server.invoke(objectRef, operationName, operationParams, Object.class);
+  }
+
+  protected void release(String objectRef) {
+    server.release(objectRef);
+  }
+
+  /**
+   * Subscribes the session to the events of the given type raised by the object.
+   *
+   * @return the subscription id, used in the events and to unsubscribe
+   */
+  protected String subscribe(Session session, String objectRef, String eventType) {
+    LOG.warn("Events are not supported. Ignoring subscription to {} in {}", eventType, objectRef);
+    return null;
+  }
+
+  protected void unsubscribe(String objectRef, String subscription) {
+    LOG.warn("Events are not supported. Ignoring unsubscription of {}", subscription);
+  }
+
 }
\ No newline at end of file
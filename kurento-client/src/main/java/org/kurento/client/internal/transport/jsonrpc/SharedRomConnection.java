@@ -0,0 +1,430 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.kurento.client.internal.transport.jsonrpc;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.kurento.client.Continuation;
+import org.kurento.client.internal.client.DefaultContinuation;
+import org.kurento.client.internal.client.RomClient;
+import org.kurento.client.internal.client.RomClientObjectManager;
+import org.kurento.client.internal.client.RomEventHandler;
+import org.kurento.client.internal.client.operation.MediaObjectCreationOperation;
+import org.kurento.client.internal.client.operation.Operation;
+import org.kurento.client.internal.client.operation.ReleaseOperation;
+import org.kurento.client.internal.client.operation.SubscriptionOperation;
+import org.kurento.commons.PropertiesManager;
+import org.kurento.jsonrpc.Props;
+import org.kurento.jsonrpc.client.JsonRpcClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Sets;
+
+/**
+ * JSON-RPC session with the media server shared by several logical clients, so each of them
+ * doesn't need its own connection, heartbeat and threads.
+ *
+ * <p>
+ * Each logical client is a {@link RomClient} with its own {@link RomEventHandler}. Events are
+ * delivered only to the logical client that made the subscription. Events received before the
+ * response of their subscription are held until it is processed. Objects created by a logical
+ * client are released when it is destroyed, as the media server would do with the objects of a
+ * closed session. The connection is closed when its last logical client is destroyed.
+ * </p>
+ */
+public class SharedRomConnection {
+
+  private static final Logger log = LoggerFactory.getLogger(SharedRomConnection.class);
+
+  // How long events of unknown subscriptions are kept waiting for their subscription to be
+  // recorded, as responses and events are processed in different threads
+  private static final long UNROUTED_EVENT_TIMEOUT_MILLIS =
+      PropertiesManager.getProperty("kurento.client.unroutedEventTimeout", 5000L);
+
+  private static final int MAX_UNROUTED_EVENTS = 1000;
+
+  private static class UnroutedEvent {
+
+    private final String objectRef;
+    private final String subscription;
+    private final String type;
+    private final Props data;
+    private final long receivedAt = System.currentTimeMillis();
+
+    UnroutedEvent(String objectRef, String subscription, String type, Props data) {
+      this.objectRef = objectRef;
+      this.subscription = subscription;
+      this.type = type;
+      this.data = data;
+    }
+  }
+
+  private final JsonRpcClient client;
+  private final RomClientJsonRpcClient romClient;
+  private final List<LogicalRomClient> logicalClients = new CopyOnWriteArrayList<>();
+
+  // Guarded by itself
+  private final Deque<UnroutedEvent> unroutedEvents = new ArrayDeque<>();
+
+  // Guarded by this
+  private boolean connected;
+  private boolean closed;
+
+  public SharedRomConnection(JsonRpcClient client) {
+    this.client = client;
+    this.romClient = new RomClientJsonRpcClient(client);
+    this.romClient.addRomEventHandler(new RomEventHandler() {
+      @Override
+      public void processEvent(String objectRef, String subscription, String type, Props data) {
+        routeEvent(objectRef, subscription, type, data);
+      }
+    });
+  }
+
+  public JsonRpcClient getJsonRpcClient() {
+    return client;
+  }
+
+  public RomClientJsonRpcClient getRomClient() {
+    return romClient;
+  }
+
+  /**
+   * Connects to the media server, if it is not connected yet.
+   */
+  public synchronized void connect() throws IOException {
+    if (!connected) {
+      client.connect();
+      connected = true;
+    }
+  }
+
+  public synchronized boolean isConnected() {
+    return connected;
+  }
+
+  /**
+   * @return a new logical client, or null if the connection has already been closed
+   */
+  public synchronized RomClient newLogicalClient() {
+    if (closed) {
+      return null;
+    }
+    LogicalRomClient logicalClient = new LogicalRomClient();
+    logicalClients.add(logicalClient);
+    return logicalClient;
+  }
+
+  public synchronized boolean isClosed() {
+    return closed || romClient.isClosed();
+  }
+
+  public int getNumLogicalClients() {
+    return logicalClients.size();
+  }
+
+  private synchronized void detach(LogicalRomClient logicalClient) {
+    logicalClients.remove(logicalClient);
+    if (logicalClients.isEmpty() && !closed) {
+      closed = true;
+      synchronized (unroutedEvents) {
+        unroutedEvents.clear();
+      }
+      log.debug("Closing shared connection after destroying its last logical client");
+      romClient.destroy();
+    }
+  }
+
+  private void routeEvent(String objectRef, String subscription, String type, Props data) {
+
+    LogicalRomClient owner = findOwner(subscription);
+
+    if (owner == null) {
+      synchronized (unroutedEvents) {
+        // Checked again, as the subscription is recorded holding this lock
+        owner = findOwner(subscription);
+        if (owner == null) {
+          // The response of the subscription may not have been processed yet
+          log.debug("Holding event {} with unknown subscription '{}'", type, subscription);
+          discardExpiredEvents();
+          if (unroutedEvents.size() >= MAX_UNROUTED_EVENTS) {
+            discard(unroutedEvents.pollFirst());
+          }
+          unroutedEvents.addLast(new UnroutedEvent(objectRef, subscription, type, data));
+          return;
+        }
+      }
+    }
+
+    owner.processEvent(objectRef, subscription, type, data);
+  }
+
+  private LogicalRomClient findOwner(String subscription) {
+    for (LogicalRomClient logicalClient : logicalClients) {
+      if (logicalClient.subscriptions.contains(subscription)) {
+        return logicalClient;
+      }
+    }
+    return null;
+  }
+
+  // Guarded by unroutedEvents
+  private void discardExpiredEvents() {
+    long expiredAt = System.currentTimeMillis() - UNROUTED_EVENT_TIMEOUT_MILLIS;
+    while (!unroutedEvents.isEmpty() && unroutedEvents.peekFirst().receivedAt < expiredAt) {
+      discard(unroutedEvents.pollFirst());
+    }
+  }
+
+  private void discard(UnroutedEvent event) {
+    log.warn("Discarding event {} of object {} with unknown subscription '{}'", event.type,
+        event.objectRef, event.subscription);
+  }
+
+  /**
+   * @return the number of events held until the response of their subscription is processed
+   */
+  public int getNumUnroutedEvents() {
+    synchronized (unroutedEvents) {
+      return unroutedEvents.size();
+    }
+  }
+
+  private class LogicalRomClient implements RomClient {
+
+    private final Set<String> createdRefs = Sets.newConcurrentHashSet();
+    private final Set<String> subscriptions = Sets.newConcurrentHashSet();
+    private volatile RomEventHandler eventHandler;
+    private volatile boolean destroyed;
+
+    private void processEvent(String objectRef, String subscription, String type, Props data) {
+      RomEventHandler handler = eventHandler;
+      if (handler != null) {
+        handler.processEvent(objectRef, subscription, type, data);
+      }
+    }
+
+    /**
+     * Records the subscription and delivers the events received for it before it was recorded.
+     */
+    private void addSubscription(String subscription) {
+
+      List<UnroutedEvent> events = null;
+      synchronized (unroutedEvents) {
+        subscriptions.add(subscription);
+        Iterator<UnroutedEvent> it = unroutedEvents.iterator();
+        while (it.hasNext()) {
+          UnroutedEvent event = it.next();
+          if (event.subscription.equals(subscription)) {
+            if (events == null) {
+              events = new ArrayList<>();
+            }
+            events.add(event);
+            it.remove();
+          }
+        }
+      }
+
+      if (events != null) {
+        for (UnroutedEvent event : events) {
+          processEvent(event.objectRef, event.subscription, event.type, event.data);
+        }
+      }
+    }
+
+    @Override
+    public String create(String remoteClassName, Props constructorParams, Props genericProps) {
+      String objectRef = romClient.create(remoteClassName, constructorParams, genericProps);
+      createdRefs.add(objectRef);
+      return objectRef;
+    }
+
+    @Override
+    public String create(String remoteClassName, Props constructorParams, Props genericProps,
+        final Continuation<String> cont) {
+      return romClient.create(remoteClassName, constructorParams, genericProps,
+          new DefaultContinuation<String>(cont) {
+            @Override
+            public void onSuccess(String objectRef) throws Exception {
+              createdRefs.add(objectRef);
+              cont.onSuccess(objectRef);
+            }
+          });
+    }
+
+    @Override
+    public <E> E invoke(String objectRef, String methodName, Props params, Class<E> clazz) {
+      return romClient.invoke(objectRef, methodName, params, clazz);
+    }
+
+    @Override
+    public Object invoke(String objectRef, String operationName, Props operationParams,
+        Type type) {
+      return romClient.invoke(objectRef, operationName, operationParams, type);
+    }
+
+    @Override
+    public Object invoke(String objectRef, String operationName, Props operationParams, Type type,
+        Continuation<?> cont) {
+      return romClient.invoke(objectRef, operationName, operationParams, type, cont);
+    }
+
+    @Override
+    public void release(String objectRef) {
+      romClient.release(objectRef);
+      released(objectRef);
+    }
+
+    @Override
+    public void release(final String objectRef, final Continuation<Void> cont) {
+      romClient.release(objectRef, new DefaultContinuation<Void>(cont) {
+        @Override
+        public void onSuccess(Void result) throws Exception {
+          released(objectRef);
+          cont.onSuccess(result);
+        }
+      });
+    }
+
+    @Override
+    public String subscribe(String objectRef, String eventType) {
+      String subscription = romClient.subscribe(objectRef, eventType);
+      addSubscription(subscription);
+      return subscription;
+    }
+
+    @Override
+    public String subscribe(String objectRef, String type, final Continuation<String> cont) {
+      return romClient.subscribe(objectRef, type, new DefaultContinuation<String>(cont) {
+        @Override
+        public void onSuccess(String subscription) throws Exception {
+          addSubscription(subscription);
+          cont.onSuccess(subscription);
+        }
+      });
+    }
+
+    @Override
+    public void unsubscribe(String objectRef, String listenerSubscription) {
+      romClient.unsubscribe(objectRef, listenerSubscription);
+      subscriptions.remove(listenerSubscription);
+    }
+
+    @Override
+    public void unsubscribe(String objectRef, final String listenerSubscription,
+        final Continuation<Void> cont) {
+      romClient.unsubscribe(objectRef, listenerSubscription, new DefaultContinuation<Void>(cont) {
+        @Override
+        public void onSuccess(Void result) throws Exception {
+          subscriptions.remove(listenerSubscription);
+          cont.onSuccess(result);
+        }
+      });
+    }
+
+    @Override
+    public void transaction(List<Operation> operations) {
+      romClient.transaction(operations);
+      executed(operations);
+    }
+
+    @Override
+    public void transaction(final List<Operation> operations,
+        final Continuation<Void> continuation) {
+      romClient.transaction(operations, new DefaultContinuation<Void>(continuation) {
+        @Override
+        public void onSuccess(Void result) throws Exception {
+          executed(operations);
+          continuation.onSuccess(result);
+        }
+      });
+    }
+
+    private void executed(List<Operation> operations) {
+      for (Operation op : operations) {
+        if (op instanceof MediaObjectCreationOperation) {
+          createdRefs.add(((MediaObjectCreationOperation) op).getRemoteObject().getObjectRef());
+        } else if (op instanceof SubscriptionOperation) {
+          addSubscription(
+              ((SubscriptionOperation) op).getListenerSubscription().getSubscription());
+        } else if (op instanceof ReleaseOperation) {
+          released(((ReleaseOperation) op).getReleasedObjectRef());
+        }
+      }
+    }
+
+    private void released(String objectRef) {
+      createdRefs.remove(objectRef);
+      for (String createdRef : createdRefs) {
+        if (createdRef.startsWith(objectRef + "/")) {
+          createdRefs.remove(createdRef);
+        }
+      }
+    }
+
+    @Override
+    public void addRomEventHandler(RomEventHandler eventHandler) {
+      this.eventHandler = eventHandler;
+    }
+
+    @Override
+    public void destroy() {
+
+      synchronized (this) {
+        if (destroyed) {
+          return;
+        }
+        destroyed = true;
+      }
+
+      // Objects contained in others are released with them
+      List<Operation> operations = new ArrayList<>();
+      for (String objectRef : createdRefs) {
+        String parentRef = RomClientObjectManager.getParentRef(objectRef);
+        if (parentRef == null || !createdRefs.contains(parentRef)) {
+          operations.add(new ReleaseOperation(objectRef));
+        }
+      }
+
+      if (!operations.isEmpty() && !romClient.isClosed()) {
+        try {
+          romClient.transaction(operations);
+        } catch (Exception e) {
+          log.warn("Exception releasing objects of destroyed logical client", e);
+        }
+      }
+      createdRefs.clear();
+      subscriptions.clear();
+
+      detach(this);
+    }
+
+    @Override
+    public boolean isClosed() {
+      return destroyed || romClient.isClosed();
+    }
+  }
+}
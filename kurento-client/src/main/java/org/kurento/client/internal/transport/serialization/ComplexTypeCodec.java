@@ -0,0 +1,165 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.client.internal.transport.serialization;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.kurento.client.internal.ModuleName;
+import org.kurento.client.internal.ParamAnnotationUtils;
+import org.kurento.client.internal.server.ProtocolException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reflection metadata needed to flatten and unflatten the values of a complex type, resolved once
+ * per class: the getters of its properties and the constructor used to rebuild it with the names
+ * and types of its params.
+ */
+final class ComplexTypeCodec {
+
+  private static final Logger log = LoggerFactory.getLogger(ComplexTypeCodec.class);
+
+  private static final ClassValue<ComplexTypeCodec> CODECS = new ClassValue<ComplexTypeCodec>() {
+    @Override
+    protected ComplexTypeCodec computeValue(Class<?> clazz) {
+      return new ComplexTypeCodec(clazz);
+    }
+  };
+
+  private final Class<?> clazz;
+  private final String typeName;
+  private final String moduleName;
+
+  private final String[] propNames;
+  private final Method[] getters;
+
+  // Resolved on first use, as only values received from the other side need it
+  private volatile Constructor<?> constructor;
+  private String[] paramNames;
+  private Type[] paramTypes;
+
+  static ComplexTypeCodec of(Class<?> clazz) {
+    return CODECS.get(clazz);
+  }
+
+  private ComplexTypeCodec(Class<?> clazz) {
+
+    this.clazz = clazz;
+    this.typeName = clazz.getSimpleName();
+    ModuleName name = clazz.getAnnotation(ModuleName.class);
+    this.moduleName = name != null ? name.value() : null;
+
+    List<String> names = new ArrayList<>();
+    List<Method> methods = new ArrayList<>();
+    for (Method method : clazz.getMethods()) {
+
+      String propName = null;
+
+      String methodName = method.getName();
+      if (methodName.startsWith("is")) {
+        propName = methodName.substring(2, methodName.length());
+      } else if (methodName.startsWith("get") && !methodName.equals("getClass")) {
+        propName = methodName.substring(3, methodName.length());
+      }
+
+      if (propName == null) {
+        continue;
+      }
+
+      // They can't be invoked as getters. Logged once per class instead of on every value
+      if (propName.isEmpty() || method.getParameterTypes().length > 0) {
+        log.warn("Method '{}' of complex type {} is not a property getter. It is not serialized",
+            methodName, clazz.getName());
+        continue;
+      }
+
+      names.add(Character.toLowerCase(propName.charAt(0)) + propName.substring(1));
+      methods.add(method);
+    }
+
+    this.propNames = names.toArray(new String[names.size()]);
+    this.getters = methods.toArray(new Method[methods.size()]);
+  }
+
+  String getTypeName() {
+    return typeName;
+  }
+
+  /**
+   * @throws ProtocolException
+   *           if the type is not annotated with {@link ModuleName}, as the other side could not
+   *           resolve its class
+   */
+  String getModuleName() {
+    if (moduleName == null) {
+      throw new ProtocolException(
+          "Complex type '" + clazz.getName() + "' is not annotated with @ModuleName");
+    }
+    return moduleName;
+  }
+
+  int getNumProps() {
+    return propNames.length;
+  }
+
+  String getPropName(int index) {
+    return propNames[index];
+  }
+
+  Object getPropValue(int index, Object value) throws Exception {
+    return getters[index].invoke(value);
+  }
+
+  Constructor<?> getConstructor() {
+    resolveConstructor();
+    return constructor;
+  }
+
+  String[] getParamNames() {
+    resolveConstructor();
+    return paramNames;
+  }
+
+  Type[] getParamTypes() {
+    resolveConstructor();
+    return paramTypes;
+  }
+
+  private void resolveConstructor() {
+
+    if (constructor != null) {
+      return;
+    }
+
+    synchronized (this) {
+      if (constructor == null) {
+        Constructor<?> newConstructor = clazz.getConstructors()[0];
+        List<String> names = ParamAnnotationUtils.getParamNames(newConstructor);
+        paramNames = names.toArray(new String[names.size()]);
+        // Generic types are kept, so List<String> params are unflattened element by element
+        paramTypes = newConstructor.getGenericParameterTypes();
+        constructor = newConstructor;
+      }
+    }
+  }
+
+}
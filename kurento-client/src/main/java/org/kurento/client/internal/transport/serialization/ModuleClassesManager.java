@@ -22,6 +22,7 @@ import java.lang.reflect.Method;
 import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
 
+import org.kurento.client.internal.RomRegistries;
 import org.kurento.client.internal.server.ProtocolException;
 
 public class ModuleClassesManager {
@@ -45,7 +46,11 @@ public class ModuleClassesManager {
 
       if (packageName == null) {
 
-        packageName = getPackageNameWithModuleInfoClass(moduleName);
+        packageName = RomRegistries.getPackageName(moduleName);
+
+        if (packageName == null) {
+          packageName = getPackageNameWithModuleInfoClass(moduleName);
+        }
 
         pkgNamesByModuleName.put(moduleName, packageName);
       }
@@ -55,7 +60,10 @@ public class ModuleClassesManager {
       Class<?> clazz = classesByClassName.get(className);
 
       if (clazz == null) {
-        clazz = Class.forName(className);
+        clazz = RomRegistries.getClass(className);
+        if (clazz == null) {
+          clazz = Class.forName(className);
+        }
         classesByClassName.put(className, clazz);
       }
 
@@ -18,9 +18,7 @@
 package org.kurento.client.internal.transport.serialization;
 
 import java.lang.annotation.Annotation;
-import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationHandler;
-import java.lang.reflect.Method;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Proxy;
 import java.lang.reflect.Type;
@@ -31,11 +29,11 @@ import java.util.Map;
 import java.util.Map.Entry;
 
 import org.kurento.client.TransactionNotCommitedException;
-import org.kurento.client.internal.ModuleName;
 import org.kurento.client.internal.ParamAnnotationUtils;
 import org.kurento.client.internal.RemoteClass;
 import org.kurento.client.internal.client.RemoteObject;
 import org.kurento.client.internal.client.RemoteObjectInvocationHandler;
+import org.kurento.client.internal.client.RemoteObjectStub;
 import org.kurento.client.internal.client.RomManager;
 import org.kurento.client.internal.server.ProtocolException;
 import org.kurento.client.internal.server.RemoteObjectManager;
@@ -44,8 +42,6 @@ import org.kurento.jsonrpc.Props;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import sun.reflect.generics.reflectiveObjects.ParameterizedTypeImpl;
-
 public class ParamsFlattener {
 
   private static final String MODULE_PROPERTY = "__module__";
@@ -174,6 +170,11 @@ public class ParamsFlattener {
 
       processedParam = flattenRemoteObject((RemoteObject) param, inTx);
 
+    } else if (param instanceof RemoteObjectStub) {
+
+      processedParam = flattenRemoteObject(
+          ((RemoteObjectStub) param).getInvocationHandler().getRemoteObject(), inTx);
+
     } else if (param instanceof Proxy) {
 
       InvocationHandler handler = Proxy.getInvocationHandler(param);
@@ -206,7 +207,7 @@ public class ParamsFlattener {
 
   private Object flattenRemoteObject(RemoteObject remoteObject, boolean inTx) {
     Object processedParam;
-    if (!remoteObject.isCommited() && !inTx) {
+    if (!remoteObject.isCommited() && !inTx && !remoteObject.awaitPipelinedCreation()) {
       throw new TransactionNotCommitedException(
           "Trying to invoke an operation with a non commited object of type '"
               + remoteObject.getType() + "' outside a transaction");
@@ -247,33 +248,22 @@ public class ParamsFlattener {
   // this but with params instead result
   private Object extractResultAsProps(Object result, RemoteObjectManager manager) {
 
-    Map<String, Object> propsMap = new HashMap<>();
-    for (Method method : result.getClass().getMethods()) {
+    ComplexTypeCodec codec = ComplexTypeCodec.of(result.getClass());
 
-      String propName = null;
+    Map<String, Object> propsMap = new HashMap<>(codec.getNumProps() + 2);
+    for (int i = 0; i < codec.getNumProps(); i++) {
+      String propName = codec.getPropName(i);
+      try {
+        Object value = flattenResult(codec.getPropValue(i, result), manager);
+        propsMap.put(propName, value);
 
-      String methodName = method.getName();
-      if (methodName.startsWith("is")) {
-        propName = methodName.substring(2, methodName.length());
-      } else if (methodName.startsWith("get") && !methodName.equals("getClass")) {
-        propName = methodName.substring(3, methodName.length());
-      }
-
-      if (propName != null) {
-        try {
-          propName = Character.toLowerCase(propName.charAt(0)) + propName.substring(1);
-          Object value = flattenResult(method.invoke(result), manager);
-          propsMap.put(propName, value);
-
-        } catch (Exception e) {
-          log.warn("Exception while accessing prop '{}' in param object: {}", propName, result, e);
-        }
+      } catch (Exception e) {
+        log.warn("Exception while accessing prop '{}' in param object: {}", propName, result, e);
       }
     }
 
-    propsMap.put(TYPE_PROPERTY, result.getClass().getSimpleName());
-    ModuleName name = result.getClass().getAnnotation(ModuleName.class);
-    propsMap.put(MODULE_PROPERTY, name.value());
+    propsMap.put(TYPE_PROPERTY, codec.getTypeName());
+    propsMap.put(MODULE_PROPERTY, codec.getModuleName());
 
     return new Props(propsMap);
   }
@@ -299,32 +289,21 @@ public class ParamsFlattener {
    */
   private Object extractParamAsProps(Object param, boolean inTx) {
 
-    Map<String, Object> propsMap = new HashMap<>();
-    for (Method method : param.getClass().getMethods()) {
-
-      String propName = null;
+    ComplexTypeCodec codec = ComplexTypeCodec.of(param.getClass());
 
-      String methodName = method.getName();
-      if (methodName.startsWith("is")) {
-        propName = methodName.substring(2, methodName.length());
-      } else if (methodName.startsWith("get") && !methodName.equals("getClass")) {
-        propName = methodName.substring(3, methodName.length());
-      }
+    Map<String, Object> propsMap = new HashMap<>(codec.getNumProps() + 2);
+    for (int i = 0; i < codec.getNumProps(); i++) {
+      String propName = codec.getPropName(i);
+      try {
+        Object value = flattenParam(codec.getPropValue(i, param), inTx);
+        propsMap.put(propName, value);
 
-      if (propName != null) {
-        try {
-          propName = Character.toLowerCase(propName.charAt(0)) + propName.substring(1);
-          Object value = flattenParam(method.invoke(param), inTx);
-          propsMap.put(propName, value);
-
-        } catch (Exception e) {
-          log.warn("Exception while accessing prop '{}' in param object: {}", propName, param, e);
-        }
+      } catch (Exception e) {
+        log.warn("Exception while accessing prop '{}' in param object: {}", propName, param, e);
       }
     }
-    propsMap.put(TYPE_PROPERTY, param.getClass().getSimpleName());
-    ModuleName name = param.getClass().getAnnotation(ModuleName.class);
-    propsMap.put(MODULE_PROPERTY, name.value());
+    propsMap.put(TYPE_PROPERTY, codec.getTypeName());
+    propsMap.put(MODULE_PROPERTY, codec.getModuleName());
     return new Props(propsMap);
   }
 
@@ -336,6 +315,21 @@ public class ParamsFlattener {
   public Object[] unflattenParams(Annotation[][] paramAnnotations, Type[] paramTypes, Props params,
       ObjectRefsManager manager) {
 
+    String[] paramNames = new String[paramAnnotations.length];
+    for (int i = 0; i < paramNames.length; i++) {
+      paramNames[i] = ParamAnnotationUtils.getParamAnnotation(paramAnnotations[i]).value();
+    }
+
+    return unflattenParams(paramNames, paramTypes, params, manager);
+  }
+
+  /**
+   * Same as {@link #unflattenParams(Annotation[][], Type[], Props, ObjectRefsManager)}, with the
+   * names of the params already extracted from their annotations.
+   */
+  public Object[] unflattenParams(String[] paramNames, Type[] paramTypes, Props params,
+      ObjectRefsManager manager) {
+
     if (params == null) {
       return null;
     }
@@ -344,7 +338,7 @@ public class ParamsFlattener {
 
     for (int i = 0; i < paramTypes.length; i++) {
 
-      String paramName = ParamAnnotationUtils.getParamAnnotation(paramAnnotations[i]).value();
+      String paramName = paramNames[i];
       
       if ("genericData".equals(paramName)) {
     	  returnParams[i] = params;
@@ -443,32 +437,20 @@ public class ParamsFlattener {
 
   private Object unflattedComplexType(Class<?> clazz, Props props, ObjectRefsManager manager) {
 
-    Constructor<?> constructor = clazz.getConstructors()[0];
-    
-    List<Type> constClasses = new ArrayList<>();
-    Class<?>[] parameterTypes = constructor.getParameterTypes();
-    Type[] parameterGenericTypes = constructor.getGenericParameterTypes();
-    for (int i = 0; i < parameterGenericTypes.length; i++) {
-    	if (parameterGenericTypes[i] instanceof ParameterizedTypeImpl) {
-    		// This is a class with a generic type
-    		// (for example, a java.util.List<java.lang.String>)
-    		constClasses.add(parameterGenericTypes[i]);
-    	} else {
-    		constClasses.add(parameterTypes[i]);
-    	}
-    }
-    
-    Object[] constParams = new Object[parameterTypes.length];
-    List<String> paramNames = ParamAnnotationUtils.getParamNames(constructor);
+    ComplexTypeCodec codec = ComplexTypeCodec.of(clazz);
+
+    String[] paramNames = codec.getParamNames();
+    Type[] paramTypes = codec.getParamTypes();
 
+    Object[] constParams = new Object[paramTypes.length];
     for (int i = 0; i < constParams.length; i++) {
-      String paramName = paramNames.get(i);
-      constParams[i] = unflattenValue(paramName, constClasses.get(i), props.getProp(paramName),
+      String paramName = paramNames[i];
+      constParams[i] = unflattenValue(paramName, paramTypes[i], props.getProp(paramName),
           manager);
     }
 
     try {
-      return constructor.newInstance(constParams);
+      return codec.getConstructor().newInstance(constParams);
     } catch (Exception e) {
       throw new ProtocolException(
           "Exception while creating an object for the class '" + clazz.getSimpleName() + "'", e);
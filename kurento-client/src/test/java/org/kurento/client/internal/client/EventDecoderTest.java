@@ -0,0 +1,116 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.client.internal.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.kurento.client.ErrorEvent;
+import org.kurento.client.EventListener;
+import org.kurento.client.MediaObject;
+import org.kurento.client.internal.test.AbstractLocalRomTest;
+import org.kurento.client.internal.test.CountingRomHandler;
+import org.kurento.jsonrpc.Props;
+
+public class EventDecoderTest extends AbstractLocalRomTest<CountingRomHandler> {
+
+  private static final String OBJECT_REF = "obj_MediaObject";
+
+  private static class RecordingListener implements EventListener<ErrorEvent> {
+
+    private final List<ErrorEvent> events = new ArrayList<>();
+
+    @Override
+    public synchronized void onEvent(ErrorEvent event) {
+      events.add(event);
+    }
+
+    public synchronized List<ErrorEvent> getEvents() {
+      return new ArrayList<>(events);
+    }
+  }
+
+  private MediaObject obj;
+  private RemoteObject remoteObject;
+
+  @Override
+  protected CountingRomHandler createHandler() {
+    return new CountingRomHandler();
+  }
+
+  @Before
+  public void init() {
+    obj = manager.getById(OBJECT_REF, MediaObject.class);
+    remoteObject = (RemoteObject) manager.getObject(OBJECT_REF);
+  }
+
+  private Props errorData(int errorCode) {
+    Props data = new Props();
+    data.add("timestamp", "0");
+    data.add("timestampMillis", "0");
+    data.add("tags", new ArrayList<Object>());
+    data.add("description", "error");
+    data.add("errorCode", errorCode);
+    data.add("type", "TEST");
+    return data;
+  }
+
+  @Test
+  public void decoderIsCachedPerEventClass() {
+
+    DecodedEventListener listener1 =
+        new DecodedEventListener(remoteObject, ErrorEvent.class, new RecordingListener());
+    DecodedEventListener listener2 =
+        new DecodedEventListener(remoteObject, ErrorEvent.class, new RecordingListener());
+
+    assertSame(EventDecoder.of(ErrorEvent.class), listener1.getDecoder());
+    assertSame(listener1.getDecoder(), listener2.getDecoder());
+  }
+
+  @Test
+  public void listenersOfSameEventClassReceiveSameInstance() {
+
+    RecordingListener listener1 = new RecordingListener();
+    RecordingListener listener2 = new RecordingListener();
+    obj.addErrorListener(listener1);
+    obj.addErrorListener(listener2);
+
+    remoteObject.fireEvent("Error", errorData(1));
+    remoteObject.fireEvent("Error", errorData(2));
+
+    List<ErrorEvent> events1 = listener1.getEvents();
+    List<ErrorEvent> events2 = listener2.getEvents();
+    assertEquals(2, events1.size());
+    assertEquals(2, events2.size());
+
+    // Each event is decoded once, and the decoder is reused for the following events
+    assertSame(events1.get(0), events2.get(0));
+    assertSame(events1.get(1), events2.get(1));
+    assertNotSame(events1.get(0), events1.get(1));
+
+    assertEquals(1, events1.get(0).getErrorCode());
+    assertEquals(2, events1.get(1).getErrorCode());
+    assertSame(obj, events1.get(0).getSource());
+  }
+}
@@ -0,0 +1,104 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.client.internal.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class RomClientObjectManagerTest {
+
+  private final RomManager manager = new RomManager(null);
+  private final RomClientObjectManager objectManager = manager.getObjectManager();
+
+  private static void collectGarbage(RomClientObjectManager objectManager, List<String> refs)
+      throws InterruptedException {
+    for (int i = 0; i < 50; i++) {
+      System.gc();
+      boolean collected = true;
+      for (String ref : refs) {
+        collected &= objectManager.getRemoteObject(ref) == null;
+      }
+      if (collected) {
+        return;
+      }
+      Thread.sleep(20);
+    }
+  }
+
+  private List<String> registerChildren(String parentRef, int numChildren) {
+    List<String> refs = new ArrayList<>();
+    for (int i = 0; i < numChildren; i++) {
+      String ref = parentRef + "/child" + i;
+      new RemoteObject(ref, null, manager);
+      refs.add(ref);
+    }
+    return refs;
+  }
+
+  @Test
+  public void collectedChildrenArePruned() throws InterruptedException {
+
+    RemoteObject parent = new RemoteObject("parent", null, manager);
+    List<String> refs = registerChildren("parent", 10);
+    refs.addAll(registerChildren("collectedParent", 10));
+    assertEquals(2, objectManager.getNumTrackedParents());
+
+    collectGarbage(objectManager, refs);
+    for (String ref : refs) {
+      assertNull(objectManager.getRemoteObject(ref));
+    }
+
+    objectManager.pruneChildren();
+
+    assertEquals(0, objectManager.getNumTrackedParents());
+    assertEquals(parent, objectManager.getRemoteObject("parent"));
+  }
+
+  @Test
+  public void childrenArePrunedWhileRegistering() throws InterruptedException {
+
+    List<String> refs = registerChildren("parent", 1000);
+
+    collectGarbage(objectManager, refs);
+
+    // Enough registrations to reach the prune interval, under other parents. The objects are
+    // kept in a list so they are not collected
+    List<RemoteObject> others = new ArrayList<>();
+    for (int i = 0; i < 1024; i++) {
+      others.add(new RemoteObject("other" + i + "/child", null, manager));
+    }
+
+    assertEquals(others.size(), objectManager.getNumTrackedParents());
+  }
+
+  @Test
+  public void releasedChildrenAreRemovedFromTheirParent() {
+
+    RemoteObject child = new RemoteObject("parent/child", null, manager);
+    assertEquals(1, objectManager.getNumTrackedParents());
+
+    objectManager.releaseObject(child.getObjectRef());
+
+    assertEquals(0, objectManager.getNumTrackedParents());
+  }
+}
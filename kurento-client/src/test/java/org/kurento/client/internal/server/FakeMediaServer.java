@@ -0,0 +1,644 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.kurento.client.internal.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.kurento.client.internal.transport.jsonrpc.RomServerJsonRpcHandler;
+import org.kurento.commons.ThreadFactoryCreator;
+import org.kurento.jsonrpc.JsonUtils;
+import org.kurento.jsonrpc.Props;
+import org.kurento.jsonrpc.Session;
+import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.message.Response;
+import org.kurento.jsonrpc.message.ResponseError;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonObject;
+
+/**
+ * In-process stand-in for Kurento Media Server, to test and benchmark clients without a real
+ * media server. It is a JSON-RPC handler, so it can be published in any JSON-RPC server:
+ *
+ * <pre>
+ * FakeMediaServer fakeKms = new FakeMediaServer();
+ * fakeKms.setLatency(1, 5);
+ * JsonRpcNettyServer server = new JsonRpcNettyServer(8888);
+ * server.addHandler(fakeKms, "/kurento");
+ * server.start();
+ * KurentoClient kurento = KurentoClient.create("ws://localhost:8888/kurento");
+ * </pre>
+ *
+ * <p>
+ * Objects of any type can be created, with references in the format of the media server. Media
+ * elements belong to the pipeline given in their constructor and are released with it. Besides
+ * the operations of all media objects (parent, children, tags...), it imitates the SDP
+ * negotiation and ICE gathering of endpoints, raising their events, the stats of elements and the
+ * metrics of the ServerManager. Other getters return the values given to the setters, and other
+ * operations do nothing.
+ * </p>
+ *
+ * <p>
+ * The latency of the responses and the rate of the events raised for each subscription can be
+ * configured. As objects are kept in the handler, clients can reconnect after the JSON-RPC server
+ * is restarted.
+ * </p>
+ *
+ * <p>
+ * It is not part of the client library: other modules get it from the test jar of kurento-client
+ * (type {@code test-jar}).
+ * </p>
+ */
+public class FakeMediaServer extends RomServerJsonRpcHandler implements Closeable {
+
+  private static final Logger log = LoggerFactory.getLogger(FakeMediaServer.class);
+
+  public static final String SERVER_MANAGER_REF = "manager_ServerManager";
+
+  private static final String MODULE = "kurento";
+
+  private static final String ON_EVENT_METHOD = "onEvent";
+
+  // Estimated memory used by each object, reported by the ServerManager
+  private static final long OBJECT_MEMORY = 64 * 1024;
+
+  private static final int NUM_ICE_CANDIDATES = 2;
+
+  private static class FakeObject {
+
+    private final String ref;
+    private final String type;
+    private final FakeObject parent;
+    private final long creationTime = System.currentTimeMillis();
+    private final List<FakeObject> children = new CopyOnWriteArrayList<>();
+    private final Map<String, Object> properties = new ConcurrentHashMap<>();
+    private final Map<String, String> tags = new ConcurrentHashMap<>();
+    private final Set<String> sinks =
+        Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    private FakeObject(String ref, String type, FakeObject parent) {
+      this.ref = ref;
+      this.type = type;
+      this.parent = parent;
+    }
+
+    private FakeObject getPipeline() {
+      return parent == null ? this : parent.getPipeline();
+    }
+  }
+
+  private static class Subscription {
+
+    private final String id;
+    private final FakeObject source;
+    private final String eventType;
+    private final Session session;
+    private volatile ScheduledFuture<?> eventStream;
+
+    private Subscription(String id, FakeObject source, String eventType, Session session) {
+      this.id = id;
+      this.source = source;
+      this.eventType = eventType;
+      this.session = session;
+    }
+  }
+
+  private static class EventRate {
+
+    private final long periodMicros;
+    private final Props data;
+
+    private EventRate(long periodMicros, Props data) {
+      this.periodMicros = periodMicros;
+      this.data = data;
+    }
+  }
+
+  private final Map<String, FakeObject> objects = new ConcurrentHashMap<>();
+  private final Map<String, Subscription> subscriptions = new ConcurrentHashMap<>();
+  private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+  private final Map<String, EventRate> eventRates = new ConcurrentHashMap<>();
+  private final AtomicLong sdpVersion = new AtomicLong();
+
+  private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(
+      Runtime.getRuntime().availableProcessors(), ThreadFactoryCreator.create("FakeMediaServer"));
+
+  private volatile long minLatency;
+  private volatile long maxLatency;
+
+  public FakeMediaServer() {
+    objects.put(SERVER_MANAGER_REF, new FakeObject(SERVER_MANAGER_REF, "ServerManager", null));
+  }
+
+  /**
+   * Delays each response a random time between minMillis and maxMillis. Requests are executed
+   * in the order they arrive, only their responses are delayed.
+   */
+  public void setLatency(long minMillis, long maxMillis) {
+    this.minLatency = minMillis;
+    this.maxLatency = Math.max(minMillis, maxMillis);
+  }
+
+  /**
+   * Raises eventsPerSecond events of the given type for each subscription to it made from now on.
+   *
+   * @param data
+   *          fields of the event besides source, type, timestamps and tags. Can be null
+   */
+  public void setEventRate(String eventType, double eventsPerSecond, Props data) {
+    if (eventsPerSecond <= 0) {
+      eventRates.remove(eventType);
+    } else {
+      eventRates.put(eventType,
+          new EventRate(Math.max(1, (long) (1000000 / eventsPerSecond)), data));
+    }
+  }
+
+  public void setEventRate(String eventType, double eventsPerSecond) {
+    setEventRate(eventType, eventsPerSecond, null);
+  }
+
+  public int getNumObjects() {
+    return objects.size() - 1;
+  }
+
+  public int getNumSubscriptions() {
+    return subscriptions.size();
+  }
+
+  @Override
+  public void afterConnectionEstablished(Session session) throws Exception {
+    sessions.put(session.getSessionId(), session);
+  }
+
+  @Override
+  public void afterConnectionClosed(Session session, String status) throws Exception {
+    sessions.remove(session.getSessionId());
+    for (Subscription subscription : subscriptions.values()) {
+      if (subscription.session == session) {
+        cancel(subscription);
+      }
+    }
+  }
+
+  @Override
+  public void handleRequest(Transaction transaction, Request<JsonObject> request)
+      throws Exception {
+
+    long latency = maxLatency == 0 ? 0
+        : ThreadLocalRandom.current().nextLong(minLatency, maxLatency + 1);
+
+    if (latency == 0 || transaction.isNotification()) {
+      super.handleRequest(transaction, request);
+      return;
+    }
+
+    transaction.startAsync();
+    DelayedTransaction delayed = new DelayedTransaction(transaction, request.getId(), latency);
+    try {
+      super.handleRequest(delayed, request);
+    } catch (Exception e) {
+      delayed.sendError(e);
+    }
+    delayed.sendIfNotResponded();
+  }
+
+  @Override
+  protected String create(String type, Props constructorParams) {
+
+    type = type.substring(type.lastIndexOf('.') + 1);
+
+    FakeObject parent = null;
+    String ref = UUID.randomUUID() + "_" + MODULE + "." + type;
+
+    if (constructorParams != null && constructorParams.getProp("mediaPipeline") != null) {
+      parent = getObject((String) constructorParams.getProp("mediaPipeline"));
+      ref = parent.ref + "/" + ref;
+    }
+
+    FakeObject object = new FakeObject(ref, type, parent);
+    if (constructorParams != null) {
+      for (Entry<String, Object> param : constructorParams.getMap().entrySet()) {
+        object.properties.put(param.getKey(), param.getValue());
+      }
+    }
+
+    objects.put(ref, object);
+    if (parent != null) {
+      parent.children.add(object);
+    }
+
+    log.trace("Created {}", ref);
+    return ref;
+  }
+
+  @Override
+  protected void release(String objectRef) {
+
+    FakeObject object = getObject(objectRef);
+    if (object.parent != null) {
+      object.parent.children.remove(object);
+    }
+    releaseTree(object);
+  }
+
+  private void releaseTree(FakeObject object) {
+
+    for (FakeObject child : object.children) {
+      releaseTree(child);
+    }
+    objects.remove(object.ref);
+
+    for (Subscription subscription : subscriptions.values()) {
+      if (subscription.source == object) {
+        cancel(subscription);
+      }
+    }
+    log.trace("Released {}", object.ref);
+  }
+
+  @Override
+  protected String subscribe(Session session, String objectRef, String eventType) {
+
+    final Subscription subscription = new Subscription(UUID.randomUUID().toString(),
+        getObject(objectRef), eventType, session);
+    subscriptions.put(subscription.id, subscription);
+
+    final EventRate rate = eventRates.get(eventType);
+    if (rate != null) {
+      subscription.eventStream = scheduler.scheduleAtFixedRate(new Runnable() {
+        @Override
+        public void run() {
+          sendEvent(subscription, rate.data);
+        }
+      }, rate.periodMicros, rate.periodMicros, TimeUnit.MICROSECONDS);
+    }
+
+    return subscription.id;
+  }
+
+  @Override
+  protected void unsubscribe(String objectRef, String subscriptionId) {
+    Subscription subscription = subscriptions.get(subscriptionId);
+    if (subscription != null) {
+      cancel(subscription);
+    }
+  }
+
+  private void cancel(Subscription subscription) {
+    subscriptions.remove(subscription.id);
+    ScheduledFuture<?> eventStream = subscription.eventStream;
+    if (eventStream != null) {
+      eventStream.cancel(false);
+    }
+  }
+
+  @Override
+  protected Object invoke(String objectRef, String operationName, Props operationParams) {
+
+    FakeObject object = getObject(objectRef);
+    Props params = operationParams != null ? operationParams : new Props();
+
+    if (object.ref.equals(SERVER_MANAGER_REF)) {
+      Object result = invokeServerManager(operationName);
+      if (result != null) {
+        return result;
+      }
+    }
+
+    switch (operationName) {
+      case "getId":
+        return object.ref;
+      case "getMediaPipeline":
+        return object.getPipeline().ref;
+      case "getParent":
+        return object.parent != null ? object.parent.ref : null;
+      case "getChildren":
+        List<String> children = new ArrayList<>();
+        for (FakeObject child : object.children) {
+          children.add(child.ref);
+        }
+        return children;
+      case "getCreationTime":
+        return (int) (object.creationTime / 1000);
+      case "getName":
+        Object name = object.properties.get("name");
+        return name != null ? name : object.ref;
+      case "addTag":
+        object.tags.put((String) params.getProp("key"), (String) params.getProp("value"));
+        return null;
+      case "removeTag":
+        object.tags.remove(params.getProp("key"));
+        return null;
+      case "getTag":
+        return object.tags.get(params.getProp("key"));
+      case "getTags":
+        List<Props> tags = new ArrayList<>();
+        for (Entry<String, String> tag : object.tags.entrySet()) {
+          tags.add(complexType("Tag").add("key", tag.getKey()).add("value", tag.getValue()));
+        }
+        return tags;
+      case "connect":
+        object.sinks.add((String) params.getProp("sink"));
+        return null;
+      case "disconnect":
+        object.sinks.remove(params.getProp("sink"));
+        return null;
+      case "getSinkConnections":
+      case "getSourceConnections":
+        return Collections.emptyList();
+      case "generateOffer":
+        return localSdp(object, "offer");
+      case "processOffer":
+        object.properties.put("remoteSessionDescriptor", params.getProp("offer"));
+        return localSdp(object, "answer");
+      case "processAnswer":
+        object.properties.put("remoteSessionDescriptor", params.getProp("answer"));
+        return object.properties.get("localSessionDescriptor");
+      case "gatherCandidates":
+        gatherCandidates(object);
+        return null;
+      case "getStats":
+        return stats(object);
+      default:
+        return invokeProperty(object, operationName, params);
+    }
+  }
+
+  private Object invokeServerManager(String operationName) {
+
+    switch (operationName) {
+      case "getPipelines":
+        List<String> pipelines = new ArrayList<>();
+        for (FakeObject object : objects.values()) {
+          if ("MediaPipeline".equals(object.type)) {
+            pipelines.add(object.ref);
+          }
+        }
+        return pipelines;
+      case "getSessions":
+        return new ArrayList<>(sessions.keySet());
+      case "getUsedMemory":
+        return getNumObjects() * OBJECT_MEMORY;
+      case "getCpuCount":
+        return Runtime.getRuntime().availableProcessors();
+      case "getInfo":
+        return complexType("ServerInfo").add("version", "6.0.0-fake")
+            .add("modules", Collections.emptyList()).add("type", "KMS")
+            .add("capabilities", Collections.singletonList("transactions"));
+      default:
+        return null;
+    }
+  }
+
+  private Object invokeProperty(FakeObject object, String operationName, Props params) {
+
+    if (operationName.length() > 3 && operationName.startsWith("get")) {
+      return object.properties.get(Character.toLowerCase(operationName.charAt(3))
+          + operationName.substring(4));
+    }
+
+    if (operationName.length() > 3 && operationName.startsWith("set")) {
+      for (Entry<String, Object> param : params.getMap().entrySet()) {
+        if (param.getValue() != null) {
+          object.properties.put(param.getKey(), param.getValue());
+        }
+      }
+    }
+
+    return null;
+  }
+
+  private String localSdp(FakeObject object, String kind) {
+
+    String sdp = "v=0\r\no=- " + sdpVersion.incrementAndGet() + " 0 IN IP4 127.0.0.1\r\n"
+        + "s=Fake Kurento " + kind + "\r\nc=IN IP4 127.0.0.1\r\nt=0 0\r\n"
+        + "m=audio 9 UDP/TLS/RTP/SAVPF 96\r\na=rtpmap:96 opus/48000/2\r\n"
+        + "m=video 9 UDP/TLS/RTP/SAVPF 97\r\na=rtpmap:97 VP8/90000\r\n";
+
+    object.properties.put("localSessionDescriptor", sdp);
+    return sdp;
+  }
+
+  private Props stats(FakeObject object) {
+
+    if (object.parent == null) {
+      throw new ProtocolException("Object '" + object.ref + "' is not a media element");
+    }
+
+    boolean endpoint = object.type.endsWith("Endpoint");
+    long now = System.currentTimeMillis();
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+
+    Props stats = complexType(endpoint ? "EndpointStats" : "ElementStats")
+        .add("id", object.ref + "_" + (endpoint ? "endpoint" : "element"))
+        .add("type", endpoint ? "endpoint" : "element").add("timestamp", now / 1000.0)
+        .add("timestampMillis", now).add("inputAudioLatency", random.nextDouble(1, 20))
+        .add("inputVideoLatency", random.nextDouble(1, 40))
+        .add("inputLatency", Collections.emptyList());
+    if (endpoint) {
+      stats.add("audioE2ELatency", random.nextDouble(10, 50))
+          .add("videoE2ELatency", random.nextDouble(10, 80))
+          .add("E2ELatency", Collections.emptyList());
+    }
+
+    return new Props((String) stats.getProp("id"), stats);
+  }
+
+  private void gatherCandidates(final FakeObject object) {
+
+    // Raised after the response, as the media server does
+    scheduler.schedule(new Runnable() {
+      @Override
+      public void run() {
+        for (int i = 0; i < NUM_ICE_CANDIDATES; i++) {
+          Props candidate = complexType("IceCandidate")
+              .add("candidate", "candidate:" + (i + 1) + " 1 UDP 2013266431 127.0.0.1 "
+                  + (50000 + i) + " typ host")
+              .add("sdpMid", i == 0 ? "audio" : "video").add("sdpMLineIndex", i);
+          raiseEvent(object, "IceCandidateFound", new Props("candidate", candidate));
+        }
+        raiseEvent(object, "IceGatheringDone", null);
+      }
+    }, maxLatency + 1, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Raises an event in the object, sent to the sessions subscribed to its type.
+   *
+   * @param data
+   *          fields of the event besides source, type, timestamps and tags. Can be null
+   */
+  public void raiseEvent(String objectRef, String eventType, Props data) {
+    raiseEvent(getObject(objectRef), eventType, data);
+  }
+
+  private void raiseEvent(FakeObject object, String eventType, Props data) {
+    for (Subscription subscription : subscriptions.values()) {
+      if (subscription.source == object && subscription.eventType.equals(eventType)) {
+        sendEvent(subscription, data);
+      }
+    }
+  }
+
+  private void sendEvent(Subscription subscription, Props data) {
+
+    long now = System.currentTimeMillis();
+
+    Props eventData = new Props("source", subscription.source.ref)
+        .add("type", subscription.eventType).add("timestamp", Long.toString(now / 1000))
+        .add("timestampMillis", Long.toString(now)).add("tags", Collections.emptyList());
+    if (data != null) {
+      eventData.getMap().putAll(data.getMap());
+    }
+
+    Props value = new Props("object", subscription.source.ref)
+        .add("type", subscription.eventType).add("subscription", subscription.id)
+        .add("data", eventData);
+
+    try {
+      subscription.session.sendNotification(ON_EVENT_METHOD,
+          JsonUtils.toJsonObject(new Props("value", value)));
+    } catch (Exception e) {
+      log.debug("Exception sending event {} of {}: {}", subscription.eventType,
+          subscription.source.ref, e.getMessage());
+    }
+  }
+
+  private Props complexType(String typeName) {
+    Map<String, Object> props = new HashMap<>();
+    props.put("__type__", typeName);
+    props.put("__module__", MODULE);
+    return new Props(props);
+  }
+
+  private FakeObject getObject(String objectRef) {
+    FakeObject object = objects.get(objectRef);
+    if (object == null) {
+      throw new ProtocolException("Object '" + objectRef + "' not found");
+    }
+    return object;
+  }
+
+  @Override
+  public void close() {
+    scheduler.shutdownNow();
+  }
+
+  /**
+   * Sends the responses of a transaction after the configured latency.
+   */
+  private class DelayedTransaction implements Transaction {
+
+    private final Transaction transaction;
+    private final Integer requestId;
+    private final long delayMillis;
+    private boolean responded;
+
+    private DelayedTransaction(Transaction transaction, Integer requestId, long delayMillis) {
+      this.transaction = transaction;
+      this.requestId = requestId;
+      this.delayMillis = delayMillis;
+    }
+
+    @Override
+    public void sendResponseObject(final Response<? extends Object> response) {
+
+      responded = true;
+      scheduler.schedule(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            transaction.sendResponseObject(response);
+          } catch (IOException e) {
+            log.warn("Exception sending response {}", response, e);
+          }
+        }
+      }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void sendIfNotResponded() {
+      if (!responded) {
+        sendVoidResponse();
+      }
+    }
+
+    @Override
+    public void sendVoidResponse() {
+      sendResponse(null);
+    }
+
+    @Override
+    public void sendResponse(Object result) {
+      sendResponseObject(new Response<>(requestId, result));
+    }
+
+    @Override
+    public void sendError(int code, String type, String data) {
+      sendError(new ResponseError(code, type, data));
+    }
+
+    @Override
+    public void sendError(int code, String type, String message, String data) {
+      sendError(new ResponseError(code, type, message, data));
+    }
+
+    @Override
+    public void sendError(Throwable e) {
+      sendError(ResponseError.newFromException(e));
+    }
+
+    @Override
+    public void sendError(ResponseError error) {
+      sendResponseObject(new Response<>(requestId, error));
+    }
+
+    @Override
+    public Session getSession() {
+      return transaction.getSession();
+    }
+
+    @Override
+    public void startAsync() {
+      // Already asynchronous
+    }
+
+    @Override
+    public boolean isNotification() {
+      return transaction.isNotification();
+    }
+  }
+}
@@ -0,0 +1,50 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.client.internal.test;
+
+import org.junit.After;
+import org.junit.Before;
+import org.kurento.client.internal.client.RomManager;
+import org.kurento.client.internal.transport.jsonrpc.RomClientJsonRpcClient;
+import org.kurento.jsonrpc.JsonRpcHandler;
+import org.kurento.jsonrpc.client.JsonRpcClientLocal;
+
+/**
+ * Base of the tests using a {@link RomManager} connected to a handler in the same JVM. The manager
+ * is created before each test, and destroyed after it.
+ */
+public abstract class AbstractLocalRomTest<H extends JsonRpcHandler<?>> {
+
+  protected H handler;
+  protected RomClientJsonRpcClient romClient;
+  protected RomManager manager;
+
+  protected abstract H createHandler();
+
+  @Before
+  public void initManager() {
+    handler = createHandler();
+    romClient = new RomClientJsonRpcClient(new JsonRpcClientLocal(handler));
+    manager = new RomManager(romClient);
+  }
+
+  @After
+  public void destroyManager() {
+    manager.destroy();
+  }
+}
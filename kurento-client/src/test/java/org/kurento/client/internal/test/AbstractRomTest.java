@@ -19,6 +19,7 @@ package org.kurento.client.internal.test;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -26,6 +27,7 @@ import java.util.Arrays;
 import java.util.List;
 
 import org.junit.Test;
+import org.kurento.client.internal.client.RemoteObjectStub;
 import org.kurento.client.internal.client.RomManager;
 import org.kurento.client.internal.test.model.client.ComplexParam;
 import org.kurento.client.internal.test.model.client.SampleClass;
@@ -75,6 +77,9 @@ public abstract class AbstractRomTest {
     SampleClass obj = new SampleClass.Builder("XXX", false, manager).withAtt3(0.5f).withAtt4(22)
         .build();
 
+    // Remote classes are implemented with the stubs generated by the annotation processor
+    assertTrue(obj instanceof RemoteObjectStub);
+
     for (int i = 0; i < 5; i++) {
 
       assertEquals(obj.getAtt1(), "XXX");
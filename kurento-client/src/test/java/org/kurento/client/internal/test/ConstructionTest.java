@@ -18,9 +18,24 @@
 package org.kurento.client.internal.test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.BeforeClass;
 import org.junit.Test;
+import org.kurento.client.Continuation;
+import org.kurento.client.internal.client.RemoteObject;
 import org.kurento.client.internal.client.RomManager;
 import org.kurento.client.internal.test.model.Sample2;
 import org.kurento.client.internal.transport.jsonrpc.RomClientJsonRpcClient;
@@ -56,4 +71,73 @@ public class ConstructionTest {
 
   }
 
+  @Test
+  public void concurrentCreation() throws Exception {
+
+    int numThreads = 8;
+    int objectsPerThread = 25;
+
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+
+    try {
+      List<Future<List<Sample2>>> futures = new ArrayList<>();
+      for (int i = 0; i < numThreads; i++) {
+        final int thread = i;
+        futures.add(executor.submit(new Callable<List<Sample2>>() {
+          @Override
+          public List<Sample2> call() throws Exception {
+            List<Sample2> created = new ArrayList<>();
+            for (int j = 0; j < objectsPerThread; j++) {
+              created.add(new Sample2.Builder("T" + thread + "-" + j, j, manager).withAtt3(0.5f)
+                  .att4().build());
+            }
+            return created;
+          }
+        }));
+      }
+
+      List<String> ids = new ArrayList<>();
+      for (int i = 0; i < numThreads; i++) {
+        List<Sample2> created = futures.get(i).get();
+        for (int j = 0; j < objectsPerThread; j++) {
+          Sample2 obj = created.get(j);
+          assertEquals("T" + i + "-" + j, obj.getAtt1());
+          String id = obj.getId();
+          assertTrue("Duplicated object id " + id, !ids.contains(id));
+          ids.add(id);
+          assertSame(obj, manager.getById(id, Sample2.class));
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void objectsAreRegisteredWithTheirProxy() throws Exception {
+
+    Sample2 obj = new Sample2.Builder("XXX", 33, manager).withAtt3(0.5f).att4().build();
+    assertSame(obj, ((RemoteObject) manager.getObject(obj.getId())).getKurentoObject());
+
+    final BlockingQueue<Sample2> asyncObjects = new ArrayBlockingQueue<>(1);
+    new Sample2.Builder("YYY", 34, manager).withAtt3(0.5f).att4()
+        .buildAsync(new Continuation<Sample2>() {
+          @Override
+          public void onSuccess(Sample2 result) throws Exception {
+            // The object is registered before being passed to the continuation
+            assertSame(result,
+                ((RemoteObject) manager.getObject(result.getId())).getKurentoObject());
+            asyncObjects.add(result);
+          }
+
+          @Override
+          public void onError(Throwable cause) throws Exception {
+          }
+        });
+
+    Sample2 asyncObj = asyncObjects.poll(5, TimeUnit.SECONDS);
+    assertNotNull(asyncObj);
+    assertEquals("YYY", asyncObj.getAtt1());
+  }
+
 }
@@ -0,0 +1,110 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.client.internal.test;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants;
+import org.kurento.client.internal.transport.jsonrpc.RomServerJsonRpcHandler;
+import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.message.Request;
+
+import com.google.gson.JsonObject;
+
+/**
+ * Handler of a local media server used in tests. It counts the requests received by method.
+ * Subscriptions are answered without reaching the model objects, as most of them have no events.
+ */
+public class CountingRomHandler extends RomServerJsonRpcHandler {
+
+  public static final String MODEL_PACKAGE = "org.kurento.client.internal.test.model";
+  public static final String SERVER_MODEL_PACKAGE = "org.kurento.client.internal.test.model.server";
+
+  private final ConcurrentHashMap<String, AtomicInteger> counters = new ConcurrentHashMap<>();
+  private final AtomicInteger requests = new AtomicInteger();
+
+  private volatile long invokeDelay;
+
+  public CountingRomHandler() {
+    this(MODEL_PACKAGE);
+  }
+
+  public CountingRomHandler(String modelPackage) {
+    super(modelPackage, "Impl");
+  }
+
+  @Override
+  public void handleRequest(Transaction transaction, Request<JsonObject> request)
+      throws Exception {
+
+    requests.incrementAndGet();
+    int count = increment(request.getMethod());
+
+    switch (request.getMethod()) {
+      case RomJsonRpcConstants.SUBSCRIBE_METHOD:
+        transaction.sendResponse("subscription" + count);
+        break;
+      case RomJsonRpcConstants.UNSUBSCRIBE_METHOD:
+        transaction.sendResponse(null);
+        break;
+      case RomJsonRpcConstants.INVOKE_METHOD:
+        if (invokeDelay > 0) {
+          Thread.sleep(invokeDelay);
+        }
+        super.handleRequest(transaction, request);
+        break;
+      default:
+        super.handleRequest(transaction, request);
+    }
+  }
+
+  private int increment(String method) {
+    AtomicInteger counter = counters.get(method);
+    if (counter == null) {
+      AtomicInteger newCounter = new AtomicInteger();
+      counter = counters.putIfAbsent(method, newCounter);
+      if (counter == null) {
+        counter = newCounter;
+      }
+    }
+    return counter.incrementAndGet();
+  }
+
+  /**
+   * @return the number of requests received with the given method
+   */
+  public int getCount(String method) {
+    AtomicInteger counter = counters.get(method);
+    return counter == null ? 0 : counter.get();
+  }
+
+  /**
+   * @return the number of requests received with any method
+   */
+  public int getRequests() {
+    return requests.get();
+  }
+
+  /**
+   * Delays the invocations of methods, to simulate a slow media server.
+   */
+  public void setInvokeDelay(long invokeDelay) {
+    this.invokeDelay = invokeDelay;
+  }
+}
@@ -0,0 +1,207 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.client.internal.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.kurento.client.EventOverflowPolicy;
+import org.kurento.client.internal.client.EventDispatcher;
+import org.kurento.client.internal.client.RemoteObject;
+import org.kurento.client.internal.client.RemoteObjectEventListener;
+import org.kurento.client.internal.test.model.Sample2;
+import org.kurento.jsonrpc.Props;
+
+
+public class EventDispatchTest extends AbstractLocalRomTest<CountingRomHandler> {
+
+  private static final String EVENT_TYPE = "Sample";
+
+  @Override
+  protected CountingRomHandler createHandler() {
+    return new CountingRomHandler();
+  }
+
+  private static class RecordingListener implements RemoteObjectEventListener {
+
+    private final List<Integer> values = new ArrayList<>();
+    private final CountDownLatch firstEventReceived = new CountDownLatch(1);
+    private final CountDownLatch released;
+    private final CountDownLatch expectedEvents;
+
+    public RecordingListener(int expectedEvents, boolean blockOnFirstEvent) {
+      this.expectedEvents = new CountDownLatch(expectedEvents);
+      this.released = new CountDownLatch(blockOnFirstEvent ? 1 : 0);
+    }
+
+    @Override
+    public void onEvent(String eventType, Props data) {
+      synchronized (this) {
+        values.add((Integer) data.getProp("value"));
+      }
+      firstEventReceived.countDown();
+      try {
+        released.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      expectedEvents.countDown();
+    }
+
+    public synchronized List<Integer> getValues() {
+      return new ArrayList<>(values);
+    }
+  }
+
+  private RemoteObject remoteObject;
+
+  @Before
+  public void init() {
+    Sample2 obj = new Sample2.Builder("E", 0, manager).withAtt3(0.5f).att4().build();
+    remoteObject = (RemoteObject) manager.getObject(obj.getId());
+  }
+
+  private void fireEvents(int from, int to) {
+    for (int i = from; i < to; i++) {
+      remoteObject.fireEvent(EVENT_TYPE, new Props("value", i));
+    }
+  }
+
+  @Test
+  public void eventsAreDeliveredInOrderInDispatcherThreads() throws InterruptedException {
+
+    manager.setEventDispatcher(new EventDispatcher(4, 1000));
+
+    RecordingListener listener1 = new RecordingListener(500, false);
+    RecordingListener listener2 = new RecordingListener(500, false);
+    remoteObject.addEventListener(EVENT_TYPE, listener1);
+    remoteObject.addEventListener(EVENT_TYPE, listener2);
+
+    fireEvents(0, 500);
+
+    assertTrue(listener1.expectedEvents.await(5, TimeUnit.SECONDS));
+    assertTrue(listener2.expectedEvents.await(5, TimeUnit.SECONDS));
+
+    for (RecordingListener listener : Arrays.asList(listener1, listener2)) {
+      List<Integer> values = listener.getValues();
+      assertEquals(500, values.size());
+      for (int i = 0; i < 500; i++) {
+        assertEquals(i, (int) values.get(i));
+      }
+    }
+  }
+
+  @Test
+  public void queuesAreReboundWhenDispatcherChanges() throws InterruptedException {
+
+    manager.setEventDispatcher(new EventDispatcher(1, 100));
+
+    RecordingListener listener = new RecordingListener(10, false);
+    remoteObject.addEventListener(EVENT_TYPE, listener);
+
+    fireEvents(0, 5);
+
+    // The previous dispatcher is shut down, and its pending events move to the new one
+    manager.setEventDispatcher(new EventDispatcher(1, 100));
+    fireEvents(5, 8);
+
+    // Events are delivered synchronously while there is no dispatcher
+    manager.setEventDispatcher(null);
+    fireEvents(8, 9);
+
+    manager.setEventDispatcher(new EventDispatcher(1, 100));
+    fireEvents(9, 10);
+
+    assertTrue(listener.expectedEvents.await(5, TimeUnit.SECONDS));
+    List<Integer> values = listener.getValues();
+    Collections.sort(values);
+    assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), values);
+  }
+
+  @Test
+  public void defaultPolicyDoesNotBlock() throws InterruptedException {
+
+    EventDispatcher dispatcher = new EventDispatcher(1, 2);
+    manager.setEventDispatcher(dispatcher);
+    assertEquals(EventOverflowPolicy.DROP_OLDEST, dispatcher.getOverflowPolicy(EVENT_TYPE));
+
+    RecordingListener listener = new RecordingListener(3, true);
+    remoteObject.addEventListener(EVENT_TYPE, listener);
+
+    fireEvents(0, 1);
+    assertTrue(listener.firstEventReceived.await(5, TimeUnit.SECONDS));
+
+    // Doesn't wait for the blocked listener
+    fireEvents(1, 10);
+    listener.released.countDown();
+
+    assertTrue(listener.expectedEvents.await(5, TimeUnit.SECONDS));
+    assertEquals(Arrays.asList(0, 8, 9), listener.getValues());
+  }
+
+  @Test
+  public void slowListenerDropsOldestEvents() throws InterruptedException {
+
+    EventDispatcher dispatcher = new EventDispatcher(2, 2);
+    dispatcher.setOverflowPolicy(EVENT_TYPE, EventOverflowPolicy.DROP_OLDEST);
+    manager.setEventDispatcher(dispatcher);
+
+    RecordingListener listener = new RecordingListener(3, true);
+    remoteObject.addEventListener(EVENT_TYPE, listener);
+
+    fireEvents(0, 1);
+    assertTrue(listener.firstEventReceived.await(5, TimeUnit.SECONDS));
+
+    // The listener is blocked, so these events don't fit in its queue
+    fireEvents(1, 5);
+    listener.released.countDown();
+
+    assertTrue(listener.expectedEvents.await(5, TimeUnit.SECONDS));
+    assertEquals(Arrays.asList(0, 3, 4), listener.getValues());
+  }
+
+  @Test
+  public void slowListenerCoalescesEvents() throws InterruptedException {
+
+    EventDispatcher dispatcher = new EventDispatcher(2, 100);
+    dispatcher.setOverflowPolicy(EVENT_TYPE, EventOverflowPolicy.COALESCE);
+    manager.setEventDispatcher(dispatcher);
+
+    RecordingListener listener = new RecordingListener(2, true);
+    remoteObject.addEventListener(EVENT_TYPE, listener);
+
+    fireEvents(0, 1);
+    assertTrue(listener.firstEventReceived.await(5, TimeUnit.SECONDS));
+
+    fireEvents(1, 10);
+    listener.released.countDown();
+
+    assertTrue(listener.expectedEvents.await(5, TimeUnit.SECONDS));
+    assertEquals(Arrays.asList(0, 9), listener.getValues());
+  }
+
+}
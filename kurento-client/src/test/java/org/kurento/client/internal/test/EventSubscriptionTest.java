@@ -0,0 +1,134 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.client.internal.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.kurento.client.Continuation;
+import org.kurento.client.internal.client.ListenerSubscriptionImpl;
+import org.kurento.client.internal.client.RemoteObject;
+import org.kurento.client.internal.client.RemoteObjectEventListener;
+import org.kurento.client.internal.test.model.Sample2;
+import org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants;
+import org.kurento.jsonrpc.Props;
+
+
+public class EventSubscriptionTest extends AbstractLocalRomTest<CountingRomHandler> {
+
+  @Override
+  protected CountingRomHandler createHandler() {
+    return new CountingRomHandler();
+  }
+
+  private static class CountingListener implements RemoteObjectEventListener {
+
+    private final AtomicInteger events = new AtomicInteger();
+
+    @Override
+    public void onEvent(String eventType, Props data) {
+      events.incrementAndGet();
+    }
+  }
+
+  private RemoteObject remoteObject;
+
+  @Before
+  public void init() {
+
+    Sample2 obj = new Sample2.Builder("S", 0, manager).withAtt3(0.5f).att4().build();
+    remoteObject = (RemoteObject) manager.getObject(obj.getId());
+  }
+
+  @Test
+  public void listenersOfSameTypeShareSubscription() {
+
+    List<CountingListener> listeners = new ArrayList<>();
+    List<ListenerSubscriptionImpl> subscriptions = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      CountingListener listener = new CountingListener();
+      listeners.add(listener);
+      subscriptions.add(remoteObject.addEventListener("Sample", listener));
+    }
+    remoteObject.addEventListener("Other", new CountingListener());
+
+    assertEquals(2, handler.getCount(RomJsonRpcConstants.SUBSCRIBE_METHOD));
+
+    remoteObject.fireEvent("Sample", new Props());
+    for (CountingListener listener : listeners) {
+      assertEquals(1, listener.events.get());
+    }
+
+    remoteObject.removeEventListener(subscriptions.get(0));
+    remoteObject.removeEventListener(subscriptions.get(1));
+    assertEquals(0, handler.getCount(RomJsonRpcConstants.UNSUBSCRIBE_METHOD));
+
+    // Removing twice the same listener doesn't release the subscription of the others
+    remoteObject.removeEventListener(subscriptions.get(1));
+    assertEquals(0, handler.getCount(RomJsonRpcConstants.UNSUBSCRIBE_METHOD));
+
+    remoteObject.removeEventListener(subscriptions.get(2));
+    assertEquals(1, handler.getCount(RomJsonRpcConstants.UNSUBSCRIBE_METHOD));
+
+    // A new listener subscribes again
+    remoteObject.addEventListener("Sample", new CountingListener());
+    assertEquals(3, handler.getCount(RomJsonRpcConstants.SUBSCRIBE_METHOD));
+  }
+
+  @Test
+  public void asyncListenersShareSubscription() throws InterruptedException {
+
+    final CountDownLatch latch = new CountDownLatch(4);
+    final List<ListenerSubscriptionImpl> subscriptions = new ArrayList<>();
+
+    for (int i = 0; i < 4; i++) {
+      remoteObject.addEventListener("Sample", new CountingListener(),
+          new Continuation<ListenerSubscriptionImpl>() {
+            @Override
+            public void onSuccess(ListenerSubscriptionImpl result) {
+              synchronized (subscriptions) {
+                subscriptions.add(result);
+              }
+              latch.countDown();
+            }
+
+            @Override
+            public void onError(Throwable cause) {
+            }
+          });
+    }
+
+    assertTrue(latch.await(5, TimeUnit.SECONDS));
+    assertEquals(1, handler.getCount(RomJsonRpcConstants.SUBSCRIBE_METHOD));
+
+    for (ListenerSubscriptionImpl subscription : subscriptions) {
+      assertEquals("subscription1", subscription.getSubscriptionId());
+      remoteObject.removeEventListener(subscription);
+    }
+    assertEquals(1, handler.getCount(RomJsonRpcConstants.UNSUBSCRIBE_METHOD));
+  }
+
+}
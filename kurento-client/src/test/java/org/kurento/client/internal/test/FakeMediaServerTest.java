@@ -0,0 +1,158 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.kurento.client.internal.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.kurento.client.EventListener;
+import org.kurento.client.IceCandidateFoundEvent;
+import org.kurento.client.IceGatheringDoneEvent;
+import org.kurento.client.KurentoClient;
+import org.kurento.client.MediaFlowInStateChangeEvent;
+import org.kurento.client.MediaFlowState;
+import org.kurento.client.MediaPipeline;
+import org.kurento.client.WebRtcEndpoint;
+import org.kurento.client.internal.LoadBalancingKmsProvider.Metrics;
+import org.kurento.client.internal.LoadBalancingKmsProvider.ServerManagerProbe;
+import org.kurento.client.internal.server.FakeMediaServer;
+import org.kurento.jsonrpc.Props;
+import org.kurento.jsonrpc.server.JsonRpcNettyServer;
+
+public class FakeMediaServerTest {
+
+  private FakeMediaServer fakeKms;
+  private JsonRpcNettyServer server;
+  private String url;
+  private KurentoClient kurento;
+
+  @Before
+  public void start() throws InterruptedException {
+    fakeKms = new FakeMediaServer();
+    server = new JsonRpcNettyServer("localhost", 0);
+    server.addHandler(fakeKms, "/kurento");
+    server.start();
+    url = "ws://localhost:" + server.getPort() + "/kurento";
+    kurento = KurentoClient.create(url);
+  }
+
+  @After
+  public void stop() {
+    kurento.destroy();
+    server.close();
+    fakeKms.close();
+  }
+
+  @Test
+  public void testPipelineLifecycle() throws Exception {
+
+    MediaPipeline pipeline = kurento.createMediaPipeline();
+    WebRtcEndpoint webRtc = new WebRtcEndpoint.Builder(pipeline).build();
+    WebRtcEndpoint other = new WebRtcEndpoint.Builder(pipeline).build();
+
+    assertEquals(pipeline.getId(), webRtc.getMediaPipeline().getId());
+    assertEquals(2, pipeline.getChildren().size());
+
+    webRtc.connect(other);
+    String offer = webRtc.generateOffer();
+    String answer = other.processOffer(offer);
+    assertTrue(answer.startsWith("v=0"));
+    assertEquals(offer, webRtc.processAnswer(answer));
+
+    webRtc.setMaxVideoSendBandwidth(500);
+    assertEquals(500, webRtc.getMaxVideoSendBandwidth());
+
+    assertEquals(1, kurento.getServerManager().getPipelines().size());
+    ServerManagerProbe probe = new ServerManagerProbe();
+    try {
+      Metrics metrics = probe.probe(url);
+      assertEquals(1, metrics.getNumPipelines());
+      assertTrue(metrics.getUsedMemory() > 0);
+    } finally {
+      probe.close();
+    }
+
+    pipeline.release();
+    assertEquals(0, fakeKms.getNumObjects());
+  }
+
+  @Test
+  public void testIceGatheringEvents() throws InterruptedException {
+
+    MediaPipeline pipeline = kurento.createMediaPipeline();
+    WebRtcEndpoint webRtc = new WebRtcEndpoint.Builder(pipeline).build();
+
+    final CountDownLatch candidates = new CountDownLatch(2);
+    final CountDownLatch gatheringDone = new CountDownLatch(1);
+
+    webRtc.addIceCandidateFoundListener(new EventListener<IceCandidateFoundEvent>() {
+      @Override
+      public void onEvent(IceCandidateFoundEvent event) {
+        assertNotNull(event.getCandidate().getCandidate());
+        candidates.countDown();
+      }
+    });
+    webRtc.addIceGatheringDoneListener(new EventListener<IceGatheringDoneEvent>() {
+      @Override
+      public void onEvent(IceGatheringDoneEvent event) {
+        gatheringDone.countDown();
+      }
+    });
+
+    webRtc.gatherCandidates();
+
+    assertTrue(candidates.await(5, TimeUnit.SECONDS));
+    assertTrue(gatheringDone.await(5, TimeUnit.SECONDS));
+
+    pipeline.release();
+    assertEquals(0, fakeKms.getNumSubscriptions());
+  }
+
+  @Test
+  public void testLatencyAndEventRate() throws InterruptedException {
+
+    fakeKms.setLatency(100, 100);
+    fakeKms.setEventRate("MediaFlowInStateChange", 50, new Props("state", "FLOWING")
+        .add("padName", "default").add("mediaType", "VIDEO"));
+
+    long start = System.nanoTime();
+    MediaPipeline pipeline = kurento.createMediaPipeline();
+    assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+
+    WebRtcEndpoint webRtc = new WebRtcEndpoint.Builder(pipeline).build();
+
+    final CountDownLatch events = new CountDownLatch(10);
+    webRtc.addMediaFlowInStateChangeListener(new EventListener<MediaFlowInStateChangeEvent>() {
+      @Override
+      public void onEvent(MediaFlowInStateChangeEvent event) {
+        assertEquals(MediaFlowState.FLOWING, event.getState());
+        events.countDown();
+      }
+    });
+
+    assertTrue(events.await(5, TimeUnit.SECONDS));
+
+    pipeline.release();
+  }
+}
@@ -0,0 +1,253 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.client.internal.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.kurento.client.Continuation;
+import org.kurento.client.ErrorEvent;
+import org.kurento.client.EventListener;
+import org.kurento.client.ListenerSubscription;
+import org.kurento.client.MediaObject;
+import org.kurento.client.TFuture;
+import org.kurento.client.internal.TransactionImpl;
+import org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants;
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.JsonUtils;
+import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.message.Response;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * Checks that proxy calls are sent as the operations expected from the signature of the called
+ * method: sync, async and transactional variants, with their params and event (un)subscriptions.
+ * Every call is made twice, so the second one uses the invocation plan cached by the first.
+ */
+public class InvocationPlanTest
+    extends AbstractLocalRomTest<InvocationPlanTest.RecordingHandler> {
+
+  private static final String OBJECT_REF = "obj_MediaObject";
+
+  // Answers every operation without a media server, recording the operations
+  static class RecordingHandler extends DefaultJsonRpcHandler<JsonObject> {
+
+    private final List<String> methods = new ArrayList<>();
+    private final List<JsonObject> params = new ArrayList<>();
+
+    @Override
+    public synchronized void handleRequest(Transaction transaction, Request<JsonObject> request)
+        throws Exception {
+
+      if (RomJsonRpcConstants.TRANSACTION_METHOD.equals(request.getMethod())) {
+        JsonArray responses = new JsonArray();
+        for (JsonElement operation : request.getParams()
+            .getAsJsonArray(RomJsonRpcConstants.TRANSACTION_OPERATIONS)) {
+          JsonObject operationObject = operation.getAsJsonObject();
+          String method = operationObject.get("method").getAsString();
+          record(method, operationObject.getAsJsonObject("params"));
+          responses.add(JsonUtils.toJsonElement(new Response<>(
+              operationObject.get("id").getAsInt(), JsonUtils.toJsonElement(result(method)))));
+        }
+        transaction.sendResponse(responses);
+      } else {
+        record(request.getMethod(), request.getParams());
+        transaction.sendResponse(result(request.getMethod()));
+      }
+    }
+
+    private void record(String method, JsonObject operationParams) {
+      methods.add(method);
+      params.add(operationParams);
+    }
+
+    private Object result(String method) {
+      switch (method) {
+        case RomJsonRpcConstants.INVOKE_METHOD:
+          return "value";
+        case RomJsonRpcConstants.SUBSCRIBE_METHOD:
+          return "subscription";
+        default:
+          return null;
+      }
+    }
+
+    private synchronized int size() {
+      return methods.size();
+    }
+
+    private synchronized String getMethod(int index) {
+      return methods.get(index);
+    }
+
+    private synchronized JsonObject getParams(int index) {
+      return params.get(index);
+    }
+  }
+
+  private static class ResultContinuation<E> implements Continuation<E> {
+
+    private final CountDownLatch latch = new CountDownLatch(1);
+    private final AtomicReference<Object> result = new AtomicReference<>();
+
+    @Override
+    public void onSuccess(E value) {
+      result.set(value);
+      latch.countDown();
+    }
+
+    @Override
+    public void onError(Throwable cause) {
+      result.set(cause);
+      latch.countDown();
+    }
+
+    public Object get() throws InterruptedException {
+      assertTrue("Continuation not called", latch.await(5, TimeUnit.SECONDS));
+      return result.get();
+    }
+  }
+
+  private static final EventListener<ErrorEvent> LISTENER = new EventListener<ErrorEvent>() {
+    @Override
+    public void onEvent(ErrorEvent event) {
+    }
+  };
+
+  private MediaObject obj;
+
+  @Override
+  protected RecordingHandler createHandler() {
+    return new RecordingHandler();
+  }
+
+  @Before
+  public void init() {
+    obj = manager.getById(OBJECT_REF, MediaObject.class);
+  }
+
+  private void assertInvoke(int index, String operation, String paramName, String paramValue) {
+    assertEquals(RomJsonRpcConstants.INVOKE_METHOD, handler.getMethod(index));
+    JsonObject params = handler.getParams(index);
+    assertEquals(OBJECT_REF, params.get(RomJsonRpcConstants.INVOKE_OBJECT).getAsString());
+    assertEquals(operation, params.get(RomJsonRpcConstants.INVOKE_OPERATION_NAME).getAsString());
+    JsonObject operationParams =
+        params.getAsJsonObject(RomJsonRpcConstants.INVOKE_OPERATION_PARAMS);
+    if (paramName == null) {
+      assertTrue(operationParams == null || operationParams.entrySet().isEmpty());
+    } else {
+      assertEquals(1, operationParams.entrySet().size());
+      assertEquals(paramValue, operationParams.get(paramName).getAsString());
+    }
+  }
+
+  @Test
+  public void syncCallsAreInvokes() {
+
+    for (int i = 0; i < 2; i++) {
+      assertEquals("value", obj.getName());
+      assertInvoke(handler.size() - 1, "getName", null, null);
+
+      assertEquals("value", obj.getTag("key1"));
+      assertInvoke(handler.size() - 1, "getTag", "key", "key1");
+    }
+
+    assertEquals(4, handler.size());
+  }
+
+  @Test
+  public void continuationIsNotSentAsParam() throws InterruptedException {
+
+    for (int i = 0; i < 2; i++) {
+      ResultContinuation<String> name = new ResultContinuation<>();
+      obj.getName(name);
+      assertEquals("value", name.get());
+      assertInvoke(handler.size() - 1, "getName", null, null);
+
+      ResultContinuation<String> tag = new ResultContinuation<>();
+      obj.getTag("key1", tag);
+      assertEquals("value", tag.get());
+      assertInvoke(handler.size() - 1, "getTag", "key", "key1");
+    }
+
+    assertEquals(4, handler.size());
+  }
+
+  @Test
+  public void transactionIsNotSentAsParam() throws InterruptedException {
+
+    for (int i = 0; i < 2; i++) {
+      TransactionImpl tx = new TransactionImpl(manager);
+      TFuture<String> name = obj.getName(tx);
+      TFuture<String> tag = obj.getTag(tx, "key1");
+      assertEquals("Nothing is sent before commit", 2 * i, handler.size());
+
+      tx.commit();
+
+      assertEquals("value", name.get());
+      assertEquals("value", tag.get());
+      assertInvoke(handler.size() - 2, "getName", null, null);
+      assertInvoke(handler.size() - 1, "getTag", "key", "key1");
+    }
+
+    assertEquals(4, handler.size());
+  }
+
+  @Test
+  public void eventListenersAreSubscriptions() throws InterruptedException {
+
+    for (int i = 0; i < 2; i++) {
+      ListenerSubscription subscription = obj.addErrorListener(LISTENER);
+      assertEquals(RomJsonRpcConstants.SUBSCRIBE_METHOD, handler.getMethod(handler.size() - 1));
+      assertEquals("Error", handler.getParams(handler.size() - 1)
+          .get(RomJsonRpcConstants.SUBSCRIBE_TYPE).getAsString());
+
+      obj.removeErrorListener(subscription);
+      assertEquals(RomJsonRpcConstants.UNSUBSCRIBE_METHOD,
+          handler.getMethod(handler.size() - 1));
+      assertEquals("subscription", handler.getParams(handler.size() - 1)
+          .get(RomJsonRpcConstants.UNSUBSCRIBE_LISTENER).getAsString());
+
+      ResultContinuation<ListenerSubscription> asyncSubscription = new ResultContinuation<>();
+      obj.addErrorListener(LISTENER, asyncSubscription);
+      Object asyncResult = asyncSubscription.get();
+      assertTrue(asyncResult instanceof ListenerSubscription);
+      assertEquals(RomJsonRpcConstants.SUBSCRIBE_METHOD, handler.getMethod(handler.size() - 1));
+
+      ResultContinuation<Void> asyncUnsubscription = new ResultContinuation<>();
+      obj.removeErrorListener((ListenerSubscription) asyncResult, asyncUnsubscription);
+      asyncUnsubscription.get();
+      assertEquals(RomJsonRpcConstants.UNSUBSCRIBE_METHOD,
+          handler.getMethod(handler.size() - 1));
+    }
+
+    assertEquals(8, handler.size());
+  }
+}
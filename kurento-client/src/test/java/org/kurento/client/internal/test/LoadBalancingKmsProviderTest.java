@@ -0,0 +1,250 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.kurento.client.internal.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.kurento.client.internal.KmsUrlLoader;
+import org.kurento.client.internal.LoadBalancingKmsProvider;
+import org.kurento.client.internal.LoadBalancingKmsProvider.Metrics;
+import org.kurento.client.internal.LoadBalancingKmsProvider.Placement;
+import org.kurento.client.internal.LoadBalancingKmsProvider.Probe;
+import org.kurento.client.internal.LoadBalancingKmsProvider.ServerManagerProbe;
+import org.kurento.client.internal.NotEnoughResourcesException;
+
+public class LoadBalancingKmsProviderTest {
+
+  private static final List<String> URLS = Arrays.asList("ws://kms1", "ws://kms2", "ws://kms3");
+
+  // Stand-in for the media servers, reporting the given metrics or failing when they are down
+  private static class FakeServers implements Probe {
+
+    private final Map<String, Metrics> metrics = new HashMap<>();
+    private final Set<String> down = new HashSet<>();
+    private final AtomicInteger probes = new AtomicInteger();
+    private volatile boolean daemonThread = true;
+
+    @Override
+    public Metrics probe(String kmsUrl) throws Exception {
+      probes.incrementAndGet();
+      daemonThread &= Thread.currentThread().isDaemon();
+      if (down.contains(kmsUrl)) {
+        throw new Exception("Connection refused");
+      }
+      Metrics result = metrics.get(kmsUrl);
+      return result != null ? result : new Metrics(0, 0);
+    }
+  }
+
+  @Test
+  public void testLeastLoadSpreadsClients() {
+
+    LoadBalancingKmsProvider provider = new LoadBalancingKmsProvider(URLS, 100, 1,
+        Placement.LEAST_LOAD, new FakeServers());
+
+    for (int i = 0; i < 6; i++) {
+      provider.reserveKms("client" + i, 10);
+    }
+
+    for (String url : URLS) {
+      assertEquals(20, (int) provider.getReservedLoad().get(url));
+    }
+
+    // The same client keeps its server
+    assertEquals(provider.reserveKms("client0", 10), provider.reserveKms("client0", 10));
+    assertEquals(20, (int) provider.getReservedLoad().get("ws://kms1"));
+  }
+
+  @Test
+  public void testMetricsBreakTies() {
+
+    FakeServers servers = new FakeServers();
+    servers.metrics.put("ws://kms1", new Metrics(1000, 5));
+    servers.metrics.put("ws://kms2", new Metrics(1000, 1));
+    servers.metrics.put("ws://kms3", new Metrics(500, 5));
+
+    LoadBalancingKmsProvider provider = new LoadBalancingKmsProvider(URLS, 100, 1,
+        Placement.LEAST_LOAD, servers);
+    provider.checkServers();
+
+    assertEquals("ws://kms2", provider.reserveKms("a"));
+    assertEquals("ws://kms3", provider.reserveKms("b"));
+    assertEquals("ws://kms1", provider.reserveKms("c"));
+  }
+
+  @Test
+  public void testCapacityAndRelease() {
+
+    LoadBalancingKmsProvider provider = new LoadBalancingKmsProvider(URLS.subList(0, 2), 10, 1,
+        Placement.LEAST_LOAD, new FakeServers());
+
+    provider.reserveKms("a", 10);
+    provider.reserveKms("b", 6);
+
+    try {
+      provider.reserveKms("c", 5);
+      fail("NotEnoughResourcesException should be thrown");
+    } catch (NotEnoughResourcesException e) {
+      // Expected
+    }
+
+    assertEquals("ws://kms2", provider.reserveKms("d", 4));
+
+    provider.releaseKms("a");
+    assertEquals("ws://kms1", provider.reserveKms("c", 5));
+    assertEquals(5, (int) provider.getReservedLoad().get("ws://kms1"));
+  }
+
+  @Test
+  public void testUnavailableServersAreSkipped() {
+
+    FakeServers servers = new FakeServers();
+    LoadBalancingKmsProvider provider = new LoadBalancingKmsProvider(URLS, 100, 1,
+        Placement.LEAST_LOAD, servers);
+
+    servers.down.add("ws://kms1");
+    servers.down.add("ws://kms2");
+    provider.checkServers();
+    assertFalse(provider.isAvailable("ws://kms1"));
+
+    for (int i = 0; i < 5; i++) {
+      assertEquals("ws://kms3", provider.reserveKms("client" + i));
+    }
+
+    servers.down.clear();
+    provider.checkServers();
+    assertTrue(provider.isAvailable("ws://kms1"));
+    assertNotEquals("ws://kms3", provider.reserveKms("other"));
+  }
+
+  @Test
+  public void testConfiguredFromKmsUrlLoaderFile() throws IOException {
+
+    Path configFile = Files.createTempFile("kms-balancer", ".properties");
+    try {
+      Files.write(configFile, Arrays.asList(
+          KmsUrlLoader.KMS_URL_PROVIDER_PROPERTY + "=" + LoadBalancingKmsProvider.class.getName(),
+          LoadBalancingKmsProvider.URLS_PROPERTY + "=ws://kms1, ws://kms2",
+          LoadBalancingKmsProvider.CAPACITY_PROPERTY + "=1",
+          LoadBalancingKmsProvider.HEALTH_CHECK_INTERVAL_PROPERTY + "=0"),
+          StandardCharsets.UTF_8);
+
+      KmsUrlLoader loader = new KmsUrlLoader(configFile);
+
+      Set<String> urls = new HashSet<>();
+      urls.add(loader.getKmsUrlLoad("a", 1));
+      urls.add(loader.getKmsUrlLoad("b", 1));
+      assertEquals(new HashSet<>(Arrays.asList("ws://kms1", "ws://kms2")), urls);
+
+      try {
+        loader.getKmsUrlLoad("c", 1);
+        fail("NotEnoughResourcesException should be thrown");
+      } catch (NotEnoughResourcesException e) {
+        // Expected, as the capacity of the file is used
+      }
+
+    } finally {
+      Files.delete(configFile);
+    }
+  }
+
+  @Test
+  public void testHealthChecksStopOnClose() throws InterruptedException {
+
+    FakeServers servers = new FakeServers();
+    LoadBalancingKmsProvider provider = new LoadBalancingKmsProvider(URLS, 100, 1,
+        Placement.LEAST_LOAD, servers);
+
+    provider.startHealthChecks(10);
+    while (servers.probes.get() < 2 * URLS.size()) {
+      Thread.sleep(10);
+    }
+    assertTrue(servers.daemonThread);
+
+    provider.close();
+    Thread.sleep(50);
+    int probes = servers.probes.get();
+    Thread.sleep(100);
+    assertEquals(probes, servers.probes.get());
+  }
+
+  @Test
+  public void testServerManagerProbeFailsFast() {
+
+    ServerManagerProbe probe = new ServerManagerProbe(1000);
+    long start = System.currentTimeMillis();
+    try {
+      probe.probe("ws://127.0.0.1:1/kurento");
+      fail("Probe of a server that is down should fail");
+    } catch (Exception e) {
+      // Expected
+    } finally {
+      probe.close();
+    }
+    assertTrue(System.currentTimeMillis() - start < 5000);
+  }
+
+  @Test
+  public void testConsistentHashing() {
+
+    FakeServers servers = new FakeServers();
+    LoadBalancingKmsProvider provider = new LoadBalancingKmsProvider(URLS, 1000, 1,
+        Placement.CONSISTENT_HASH, servers);
+
+    Map<String, String> placements = new HashMap<>();
+    for (int i = 0; i < 100; i++) {
+      placements.put("room" + i, provider.reserveKms("room" + i));
+    }
+    assertEquals(3, new HashSet<>(placements.values()).size());
+
+    // Releasing and reserving again gives the same server
+    for (String id : placements.keySet()) {
+      provider.releaseKms(id);
+      assertEquals(placements.get(id), provider.reserveKms(id));
+      provider.releaseKms(id);
+    }
+
+    // Only the clients of an unavailable server are moved
+    servers.down.add("ws://kms2");
+    provider.checkServers();
+    for (Map.Entry<String, String> placement : placements.entrySet()) {
+      String url = provider.reserveKms(placement.getKey());
+      if (placement.getValue().equals("ws://kms2")) {
+        assertNotEquals("ws://kms2", url);
+      } else {
+        assertEquals(placement.getValue(), url);
+      }
+    }
+  }
+}
@@ -0,0 +1,137 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.kurento.client.internal.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.kurento.client.internal.client.RemoteObject;
+import org.kurento.client.internal.client.RemoteObjectInvocationHandler;
+import org.kurento.client.internal.test.model.client.SampleClass;
+import org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants;
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.JsonUtils;
+import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.message.Response;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+public class ObjectRegistryTest extends AbstractLocalRomTest<ObjectRegistryTest.RecordingHandler> {
+
+  private static final String PIPELINE = "p_SampleClass";
+  private static final String ELEMENT = PIPELINE + "/e_SampleClass";
+  private static final String PORT = ELEMENT + "/h_SampleClass";
+  private static final String OTHER = "o_SampleClass";
+
+  // Answers releases without executing them, recording the released objects
+  static class RecordingHandler extends DefaultJsonRpcHandler<JsonObject> {
+
+    private final List<String> released = new ArrayList<>();
+    private int requests;
+
+    @Override
+    public void handleRequest(Transaction transaction, Request<JsonObject> request)
+        throws Exception {
+
+      requests++;
+
+      if (RomJsonRpcConstants.RELEASE_METHOD.equals(request.getMethod())) {
+        released.add(request.getParams().get(RomJsonRpcConstants.RELEASE_OBJECT).getAsString());
+        transaction.sendResponse(null);
+        return;
+      }
+
+      JsonArray responses = new JsonArray();
+      for (JsonElement operation : request.getParams()
+          .getAsJsonArray(RomJsonRpcConstants.TRANSACTION_OPERATIONS)) {
+        JsonObject operationObject = operation.getAsJsonObject();
+        released.add(operationObject.getAsJsonObject("params")
+            .get(RomJsonRpcConstants.RELEASE_OBJECT).getAsString());
+        responses.add(JsonUtils.toJsonElement(
+            new Response<>(operationObject.get("id").getAsInt(), JsonUtils.toJsonElement(null))));
+      }
+      transaction.sendResponse(responses);
+    }
+  }
+
+  @Override
+  protected RecordingHandler createHandler() {
+    return new RecordingHandler();
+  }
+
+  @Test
+  public void releasingParentDiscardsDescendants() {
+
+    SampleClass pipeline = manager.getById(PIPELINE, SampleClass.class);
+    manager.getById(ELEMENT, SampleClass.class);
+    manager.getById(PORT, SampleClass.class);
+    manager.getById(OTHER, SampleClass.class);
+
+    pipeline.release();
+
+    assertEquals(Arrays.asList(PIPELINE), handler.released);
+    assertNull(manager.getObject(PIPELINE));
+    assertNull(manager.getObject(ELEMENT));
+    assertNull(manager.getObject(PORT));
+    assertNotNull(manager.getObject(OTHER));
+  }
+
+  @Test
+  public void releasingChildKeepsParent() {
+
+    manager.getById(PIPELINE, SampleClass.class);
+    SampleClass element = manager.getById(ELEMENT, SampleClass.class);
+
+    element.release();
+
+    assertNotNull(manager.getObject(PIPELINE));
+    assertNull(manager.getObject(ELEMENT));
+
+    // A new proxy is registered as child again
+    manager.getById(ELEMENT, SampleClass.class);
+    manager.getObjectManager().releaseObject(PIPELINE);
+    assertNull(manager.getObject(ELEMENT));
+  }
+
+  @Test
+  public void batchReleaseSendsOneTransaction() {
+
+    List<RemoteObject> objects = new ArrayList<>();
+    for (String ref : Arrays.asList(PORT, ELEMENT, PIPELINE, OTHER)) {
+      objects.add(RemoteObjectInvocationHandler.getFor(manager.getById(ref, SampleClass.class))
+          .getRemoteObject());
+    }
+
+    manager.release(objects);
+
+    // Objects contained in others of the batch are released by the media server with them
+    assertEquals(1, handler.requests);
+    assertEquals(Arrays.asList(PIPELINE, OTHER), handler.released);
+    for (String ref : Arrays.asList(PORT, ELEMENT, PIPELINE, OTHER)) {
+      assertNull(manager.getObject(ref));
+    }
+  }
+}
@@ -0,0 +1,153 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.client.internal.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Test;
+import org.kurento.client.internal.ModuleName;
+import org.kurento.client.internal.server.ProtocolException;
+import org.kurento.client.internal.test.model.client.ComplexParam;
+import org.kurento.client.internal.test.model.client.NestedComplexParam;
+import org.kurento.client.internal.transport.serialization.ParamsFlattener;
+import org.kurento.jsonrpc.Props;
+
+public class ParamsFlattenerTest {
+
+  @ModuleName("complexParam")
+  public static class NotGetters {
+
+    public int getValue() {
+      return 1;
+    }
+
+    public boolean isEnabled() {
+      return true;
+    }
+
+    public int getValueAt(int index) {
+      return index;
+    }
+
+    public boolean is() {
+      return false;
+    }
+
+    public int get() {
+      return 0;
+    }
+  }
+
+  public static class WithoutModule {
+
+    public int getValue() {
+      return 1;
+    }
+  }
+
+  private final ParamsFlattener flattener = ParamsFlattener.getInstance();
+
+  private ComplexParam complexParam(String prop1, int prop2) {
+    return new ComplexParam(prop1, prop2);
+  }
+
+  private Object roundTrip(Object value) {
+    Props flattened = flattener.flattenParams(new Props("value", value));
+    return flattener.unflattenValue("value", value.getClass(), flattened.getProp("value"), null);
+  }
+
+  private void assertComplexParam(String prop1, int prop2, ComplexParam param) {
+    assertEquals(prop1, param.getProp1());
+    assertEquals(prop2, param.getProp2());
+  }
+
+  @Test
+  public void complexTypeIsFlattenedWithTypeAndModule() {
+
+    Props props = (Props) flattener.flattenParams(new Props("value", complexParam("a", 1)))
+        .getProp("value");
+
+    assertEquals("ComplexParam", props.getProp("__type__"));
+    assertEquals("complexParam", props.getProp("__module__"));
+    assertEquals("a", props.getProp("prop1"));
+    assertEquals(1, props.getProp("prop2"));
+  }
+
+  @Test
+  public void complexTypeRoundTrip() {
+
+    ComplexParam param = (ComplexParam) roundTrip(complexParam("a", 1));
+
+    assertComplexParam("a", 1, param);
+  }
+
+  @Test
+  public void nestedComplexTypesRoundTrip() {
+
+    NestedComplexParam param = new NestedComplexParam("nested", complexParam("main", 1),
+        Arrays.asList(complexParam("other1", 2), complexParam("other2", 3)),
+        Arrays.asList("tag1", "tag2"));
+
+    NestedComplexParam result = (NestedComplexParam) roundTrip(param);
+
+    assertEquals("nested", result.getName());
+    assertComplexParam("main", 1, result.getMain());
+
+    List<ComplexParam> others = result.getOthers();
+    assertEquals(2, others.size());
+    assertComplexParam("other1", 2, others.get(0));
+    assertComplexParam("other2", 3, others.get(1));
+
+    assertEquals(Arrays.asList("tag1", "tag2"), result.getTags());
+  }
+
+  @Test
+  public void emptyAndNullValuesRoundTrip() {
+
+    NestedComplexParam param = new NestedComplexParam(null, null,
+        Arrays.<ComplexParam> asList(), Arrays.<String> asList());
+
+    NestedComplexParam result = (NestedComplexParam) roundTrip(param);
+
+    assertEquals(null, result.getName());
+    assertEquals(null, result.getMain());
+    assertTrue(result.getOthers().isEmpty());
+    assertTrue(result.getTags().isEmpty());
+  }
+
+  @Test
+  public void onlyPropertyGettersAreFlattened() {
+
+    Props props = (Props) flattener.flattenParams(new Props("value", new NotGetters()))
+        .getProp("value");
+
+    assertEquals(new HashSet<>(Arrays.asList("value", "enabled", "__type__", "__module__")),
+        new HashSet<>(props.getMap().keySet()));
+  }
+
+  @Test(expected = ProtocolException.class)
+  public void complexTypeWithoutModuleNameIsRejected() {
+    flattener.flattenParams(new Props("value", new WithoutModule()));
+  }
+
+}
@@ -0,0 +1,107 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.kurento.client.internal.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.kurento.client.Continuation;
+import org.kurento.client.internal.test.model.client.SampleClass;
+import org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants;
+
+
+public class PipeliningTest extends AbstractLocalRomTest<CountingRomHandler> {
+
+  @Override
+  protected CountingRomHandler createHandler() {
+    return new CountingRomHandler(CountingRomHandler.SERVER_MODEL_PACKAGE);
+  }
+
+  private static class ResultContinuation<E> implements Continuation<E> {
+
+    private final CountDownLatch latch = new CountDownLatch(1);
+    private final AtomicReference<Object> result = new AtomicReference<>();
+
+    @Override
+    public void onSuccess(E value) {
+      result.set(value);
+      latch.countDown();
+    }
+
+    @Override
+    public void onError(Throwable cause) {
+      result.set(cause);
+      latch.countDown();
+    }
+
+    public Object get() throws InterruptedException {
+      assertTrue("Continuation not called", latch.await(5, TimeUnit.SECONDS));
+      return result.get();
+    }
+  }
+
+  @Before
+  public void init() {
+    // Operations are only sent when flushed
+    manager.setPipelineWindow(TimeUnit.MINUTES.toMillis(1));
+  }
+
+  @Test
+  public void dependentOperationsAreSentInOneRequest() throws InterruptedException {
+
+    SampleClass obj = new SampleClass.Builder("XXX", false, manager).withAtt3(0.5f)
+        .withAtt4(22).buildAsync();
+    ResultContinuation<String> att1 = new ResultContinuation<>();
+    obj.getAtt1(att1);
+
+    SampleClass other = new SampleClass.Builder("YYY", true, manager).withAtt3(0.5f)
+        .withAtt4(22).buildAsync();
+    ResultContinuation<SampleClass> echo = new ResultContinuation<>();
+    obj.echoObjectRef(other, echo);
+
+    assertEquals(0, handler.getRequests());
+
+    manager.flushPipeline();
+
+    assertEquals("XXX", att1.get());
+    assertSame(other, echo.get());
+    assertEquals(1, handler.getRequests());
+    assertEquals(1, handler.getCount(RomJsonRpcConstants.TRANSACTION_METHOD));
+
+    // Once created, objects are used with their final references
+    assertEquals("YYY", other.getAtt1());
+    assertEquals(2, handler.getRequests());
+  }
+
+  @Test
+  public void synchronousOperationWaitsForCreation() {
+
+    SampleClass obj = new SampleClass.Builder("XXX", false, manager).withAtt3(0.5f)
+        .withAtt4(22).buildAsync();
+
+    assertEquals("XXX", obj.getAtt1());
+    assertEquals(1, handler.getCount(RomJsonRpcConstants.TRANSACTION_METHOD));
+    assertEquals(2, handler.getRequests());
+  }
+}
@@ -0,0 +1,129 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.client.internal.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.kurento.client.internal.client.PropertyCache;
+import org.kurento.client.internal.client.RemoteObject;
+import org.kurento.client.internal.test.model.Sample2;
+import org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants;
+import org.kurento.jsonrpc.Props;
+
+
+public class PropertyCacheTest extends AbstractLocalRomTest<CountingRomHandler> {
+
+  @Override
+  protected CountingRomHandler createHandler() {
+    return new CountingRomHandler();
+  }
+
+
+  private Sample2 obj;
+  private RemoteObject remoteObject;
+
+  @Before
+  public void init() {
+    PropertyCache cache = new PropertyCache();
+    cache.setCacheable(Sample2.class, "getAtt1", "Att1Changed");
+    cache.setCacheable(Sample2.class, "getAtt2");
+    manager.setPropertyCache(cache);
+
+    obj = new Sample2.Builder("C", 3, manager).withAtt3(0.5f).att4().build();
+    remoteObject = (RemoteObject) manager.getObject(obj.getId());
+  }
+
+  @Test
+  public void cachedPropertyIsReadOnce() {
+
+    for (int i = 0; i < 5; i++) {
+      assertEquals("C", obj.getAtt1());
+      assertEquals(3, obj.getAtt2());
+    }
+
+    assertEquals(2, handler.getCount(RomJsonRpcConstants.INVOKE_METHOD));
+    // Only getAtt1 is invalidated by an event
+    assertEquals(1, handler.getCount(RomJsonRpcConstants.SUBSCRIBE_METHOD));
+  }
+
+  @Test
+  public void eventInvalidatesCachedProperty() {
+
+    obj.getAtt1();
+    obj.getAtt2();
+    assertEquals(2, handler.getCount(RomJsonRpcConstants.INVOKE_METHOD));
+
+    remoteObject.fireEvent("Att1Changed", new Props());
+
+    obj.getAtt1();
+    obj.getAtt2();
+    assertEquals(3, handler.getCount(RomJsonRpcConstants.INVOKE_METHOD));
+
+    // Other events don't invalidate it
+    remoteObject.fireEvent("Other", new Props());
+    obj.getAtt1();
+    assertEquals(3, handler.getCount(RomJsonRpcConstants.INVOKE_METHOD));
+  }
+
+  @Test
+  public void invokingOtherMethodInvalidatesCachedProperties() {
+
+    obj.getAtt1();
+    obj.getAtt3();
+    obj.getAtt1();
+
+    assertEquals(3, handler.getCount(RomJsonRpcConstants.INVOKE_METHOD));
+  }
+
+  @Test
+  public void concurrentReadsAreSentOnce() throws Exception {
+
+    handler.setInvokeDelay(200);
+
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<String>> results = new ArrayList<>();
+      for (int i = 0; i < 8; i++) {
+        results.add(executor.submit(new Callable<String>() {
+          @Override
+          public String call() throws Exception {
+            return obj.getAtt1();
+          }
+        }));
+      }
+
+      for (Future<String> result : results) {
+        assertEquals("C", result.get());
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertEquals(1, handler.getCount(RomJsonRpcConstants.INVOKE_METHOD));
+  }
+
+}
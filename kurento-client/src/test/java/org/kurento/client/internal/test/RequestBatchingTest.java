@@ -0,0 +1,136 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.kurento.client.internal.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.kurento.client.Continuation;
+import org.kurento.client.internal.test.model.Sample2;
+import org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants;
+
+
+public class RequestBatchingTest extends AbstractLocalRomTest<CountingRomHandler> {
+
+  @Override
+  protected CountingRomHandler createHandler() {
+    return new CountingRomHandler();
+  }
+
+  private static class ResultCollector implements Continuation<Sample2> {
+
+    private final CountDownLatch latch;
+    private final List<Sample2> results = new ArrayList<>();
+    private final List<Throwable> errors = new ArrayList<>();
+
+    public ResultCollector(int expected) {
+      latch = new CountDownLatch(expected);
+    }
+
+    @Override
+    public synchronized void onSuccess(Sample2 result) {
+      results.add(result);
+      latch.countDown();
+    }
+
+    @Override
+    public synchronized void onError(Throwable cause) {
+      errors.add(cause);
+      latch.countDown();
+    }
+  }
+
+  @Test
+  public void asyncCreatesAreSentInOneTransaction() throws InterruptedException {
+
+    romClient.enableBatching(10000, 5);
+
+    ResultCollector collector = new ResultCollector(5);
+    for (int i = 0; i < 5; i++) {
+      new Sample2.Builder("B" + i, i, manager).withAtt3(0.5f).att4().buildAsync(collector);
+    }
+
+    assertTrue(collector.latch.await(5, TimeUnit.SECONDS));
+    assertTrue(collector.errors.isEmpty());
+    assertEquals(5, collector.results.size());
+    assertEquals(1, handler.getCount(RomJsonRpcConstants.TRANSACTION_METHOD));
+    assertEquals(0, handler.getCount(RomJsonRpcConstants.CREATE_METHOD));
+
+    for (int i = 0; i < 5; i++) {
+      Sample2 obj = collector.results.get(i);
+      assertNotNull(obj.getId());
+      assertEquals("B" + i, obj.getAtt1());
+    }
+  }
+
+  @Test
+  public void batchIsSentWhenWindowExpires() throws InterruptedException {
+
+    romClient.enableBatching(50, 100);
+
+    ResultCollector collector = new ResultCollector(2);
+    new Sample2.Builder("W0", 0, manager).withAtt3(0.5f).att4().buildAsync(collector);
+    new Sample2.Builder("W1", 1, manager).withAtt3(0.5f).att4().buildAsync(collector);
+
+    assertTrue(collector.latch.await(5, TimeUnit.SECONDS));
+    assertEquals(2, collector.results.size());
+    assertEquals(1, handler.getCount(RomJsonRpcConstants.TRANSACTION_METHOD));
+  }
+
+  @Test
+  public void syncRequestFlushesPendingBatch() throws InterruptedException {
+
+    romClient.enableBatching(10000, 100);
+
+    ResultCollector collector = new ResultCollector(1);
+    new Sample2.Builder("S0", 0, manager).withAtt3(0.5f).att4().buildAsync(collector);
+
+    assertEquals(0, handler.getCount(RomJsonRpcConstants.TRANSACTION_METHOD));
+
+    Sample2 obj = new Sample2.Builder("S1", 1, manager).withAtt3(0.5f).att4().build();
+
+    assertTrue(collector.latch.await(5, TimeUnit.SECONDS));
+    assertEquals(1, handler.getCount(RomJsonRpcConstants.TRANSACTION_METHOD));
+    assertEquals(1, handler.getCount(RomJsonRpcConstants.CREATE_METHOD));
+    assertEquals("S1", obj.getAtt1());
+    assertEquals("S0", collector.results.get(0).getAtt1());
+  }
+
+  @Test
+  public void failedOperationOnlyFailsItsCaller() throws InterruptedException {
+
+    romClient.enableBatching(10000, 3);
+
+    ResultCollector collector = new ResultCollector(3);
+    new Sample2.Builder("F0", 0, manager).withAtt3(0.5f).att4().buildAsync(collector);
+    new Sample2.Builder("F1", 1, manager).buildAsync(collector);
+    new Sample2.Builder("F2", 2, manager).withAtt3(0.5f).att4().buildAsync(collector);
+
+    assertTrue(collector.latch.await(5, TimeUnit.SECONDS));
+    assertEquals(2, collector.results.size());
+    assertEquals(1, collector.errors.size());
+    assertEquals(1, handler.getCount(RomJsonRpcConstants.TRANSACTION_METHOD));
+  }
+
+}
@@ -0,0 +1,218 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.kurento.client.internal.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.kurento.client.KurentoClient;
+import org.kurento.client.internal.client.RemoteObject;
+import org.kurento.client.internal.client.RemoteObjectEventListener;
+import org.kurento.client.internal.client.RomManager;
+import org.kurento.client.internal.test.model.client.SampleClass;
+import org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants;
+import org.kurento.client.internal.transport.jsonrpc.SharedRomConnection;
+import org.kurento.jsonrpc.Props;
+import org.kurento.jsonrpc.JsonRpcHandler;
+import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.client.JsonRpcClientLocal;
+import org.kurento.jsonrpc.message.Request;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+public class SharedConnectionTest {
+
+  private static class RecordingHandler extends CountingRomHandler {
+
+    private final List<String> released = new ArrayList<>();
+
+    public RecordingHandler() {
+      super(SERVER_MODEL_PACKAGE);
+    }
+
+    @Override
+    public void handleRequest(Transaction transaction, Request<JsonObject> request)
+        throws Exception {
+
+      if (RomJsonRpcConstants.TRANSACTION_METHOD.equals(request.getMethod())) {
+        for (JsonElement operation : request.getParams()
+            .getAsJsonArray(RomJsonRpcConstants.TRANSACTION_OPERATIONS)) {
+          JsonObject operationObject = operation.getAsJsonObject();
+          if (RomJsonRpcConstants.RELEASE_METHOD
+              .equals(operationObject.get("method").getAsString())) {
+            released.add(operationObject.getAsJsonObject("params")
+                .get(RomJsonRpcConstants.RELEASE_OBJECT).getAsString());
+          }
+        }
+      }
+      super.handleRequest(transaction, request);
+    }
+  }
+
+  // Captures the handler of requests from the media server, as the local client can't send them
+  private static class EventClient extends JsonRpcClientLocal {
+
+    private JsonRpcHandler<JsonObject> eventHandler;
+
+    public EventClient(JsonRpcHandler<?> handler) {
+      super(handler);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void setServerRequestHandler(JsonRpcHandler<?> handler) {
+      super.setServerRequestHandler(handler);
+      this.eventHandler = (JsonRpcHandler<JsonObject>) handler;
+    }
+
+    private void sendEvent(String objectRef, String subscription) throws Exception {
+      JsonObject value = new JsonObject();
+      value.addProperty(RomJsonRpcConstants.ONEVENT_OBJECT, objectRef);
+      value.addProperty(RomJsonRpcConstants.ONEVENT_TYPE, "Sample");
+      value.addProperty(RomJsonRpcConstants.ONEVENT_SUBSCRIPTION, subscription);
+      value.add(RomJsonRpcConstants.ONEVENT_DATA, new JsonObject());
+      JsonObject params = new JsonObject();
+      params.add("value", value);
+      eventHandler.handleRequest(null,
+          new Request<JsonObject>(RomJsonRpcConstants.ONEVENT_METHOD, params));
+    }
+  }
+
+  private static class CountingListener implements RemoteObjectEventListener {
+
+    private final AtomicInteger events = new AtomicInteger();
+
+    @Override
+    public void onEvent(String eventType, Props data) {
+      events.incrementAndGet();
+    }
+  }
+
+  private RecordingHandler handler;
+  private EventClient client;
+  private SharedRomConnection connection;
+
+  @Before
+  public void init() {
+    handler = new RecordingHandler();
+    client = new EventClient(handler);
+    connection = new SharedRomConnection(client);
+  }
+
+  private SampleClass createObject(RomManager manager) {
+    return new SampleClass.Builder("XXX", false, manager).withAtt3(0.5f).withAtt4(22).build();
+  }
+
+  @Test
+  public void eventsAreDeliveredToSubscribingClient() throws Exception {
+
+    RomManager manager1 = new RomManager(connection.newLogicalClient());
+    RomManager manager2 = new RomManager(connection.newLogicalClient());
+
+    SampleClass obj = createObject(manager1);
+    RemoteObject remoteObject1 = (RemoteObject) manager1.getObject(obj.getId());
+    // The other logical client also has a proxy of the object, with its own subscription
+    RemoteObject remoteObject2 = new RemoteObject(obj.getId(), "SampleClass", manager2);
+
+    CountingListener listener1 = new CountingListener();
+    CountingListener listener2 = new CountingListener();
+    String subscription1 = remoteObject1.addEventListener("Sample", listener1).getSubscription();
+    String subscription2 = remoteObject2.addEventListener("Sample", listener2).getSubscription();
+
+    client.sendEvent(obj.getId(), subscription1);
+    assertEquals(1, listener1.events.get());
+    assertEquals(0, listener2.events.get());
+
+    client.sendEvent(obj.getId(), subscription2);
+    assertEquals(1, listener1.events.get());
+    assertEquals(1, listener2.events.get());
+  }
+
+  @Test
+  public void eventsBeforeSubscriptionResponseAreHeld() throws Exception {
+
+    RomManager manager1 = new RomManager(connection.newLogicalClient());
+    RomManager manager2 = new RomManager(connection.newLogicalClient());
+
+    SampleClass obj = createObject(manager1);
+    RemoteObject remoteObject1 = (RemoteObject) manager1.getObject(obj.getId());
+    RemoteObject remoteObject2 = new RemoteObject(obj.getId(), "SampleClass", manager2);
+    CountingListener listener1 = new CountingListener();
+    CountingListener listener2 = new CountingListener();
+    remoteObject2.addEventListener("Sample", listener2);
+
+    // Subscription that the media server is about to return to the first client
+    client.sendEvent(obj.getId(), "subscription2");
+    assertEquals(1, connection.getNumUnroutedEvents());
+    assertEquals(0, listener2.events.get());
+
+    String subscription = remoteObject1.addEventListener("Sample", listener1).getSubscription();
+
+    assertEquals("subscription2", subscription);
+    assertEquals(1, listener1.events.get());
+    assertEquals(0, listener2.events.get());
+    assertEquals(0, connection.getNumUnroutedEvents());
+  }
+
+  @Test
+  public void destroyingClientReleasesItsObjects() {
+
+    RomManager manager1 = new RomManager(connection.newLogicalClient());
+    RomManager manager2 = new RomManager(connection.newLogicalClient());
+
+    SampleClass obj1 = createObject(manager1);
+    SampleClass obj2 = createObject(manager2);
+    SampleClass released = createObject(manager1);
+    released.release();
+
+    manager1.destroy();
+
+    assertEquals(Arrays.asList(obj1.getId()), handler.released);
+    assertFalse(connection.isClosed());
+    assertEquals("XXX", obj2.getAtt1());
+
+    manager2.destroy();
+
+    assertEquals(Arrays.asList(obj1.getId(), obj2.getId()), handler.released);
+    assertTrue(connection.isClosed());
+  }
+
+  @Test
+  public void connectionIsClosedWithLastKurentoClient() {
+
+    KurentoClient client1 = KurentoClient.createShared(connection);
+    KurentoClient client2 = KurentoClient.createShared(connection);
+    assertTrue(client1.isShared());
+    assertEquals(2, connection.getNumLogicalClients());
+
+    client1.destroy();
+    assertTrue(client1.isClosed());
+    assertFalse(client2.isClosed());
+
+    client2.destroy();
+    assertTrue(connection.isClosed());
+  }
+}
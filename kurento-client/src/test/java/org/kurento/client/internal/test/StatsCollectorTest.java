@@ -0,0 +1,206 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.kurento.client.internal.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.kurento.client.EndpointStats;
+import org.kurento.client.KurentoClient;
+import org.kurento.client.MediaElement;
+import org.kurento.client.MediaPipeline;
+import org.kurento.client.Stats;
+import org.kurento.client.StatsCollector;
+import org.kurento.client.StatsCollector.Sample;
+import org.kurento.client.StatsCollector.SampleListener;
+import org.kurento.client.StatsCollector.Sampler;
+import org.kurento.client.StatsType;
+import org.kurento.client.WebRtcEndpoint;
+import org.kurento.client.internal.server.FakeMediaServer;
+import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.server.JsonRpcNettyServer;
+
+import com.google.gson.JsonObject;
+
+public class StatsCollectorTest {
+
+  private final AtomicInteger requests = new AtomicInteger();
+
+  private FakeMediaServer fakeKms;
+  private JsonRpcNettyServer server;
+  private KurentoClient kurento;
+  private List<MediaElement> endpoints;
+
+  @Before
+  public void start() throws InterruptedException {
+    fakeKms = new FakeMediaServer() {
+      @Override
+      public void handleRequest(Transaction transaction, Request<JsonObject> request)
+          throws Exception {
+        requests.incrementAndGet();
+        super.handleRequest(transaction, request);
+      }
+    };
+    server = new JsonRpcNettyServer("localhost", 0);
+    server.addHandler(fakeKms, "/kurento");
+    server.start();
+    kurento = KurentoClient.create("ws://localhost:" + server.getPort() + "/kurento");
+
+    MediaPipeline pipeline = kurento.createMediaPipeline();
+    endpoints = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      endpoints.add(new WebRtcEndpoint.Builder(pipeline).build());
+    }
+  }
+
+  @After
+  public void stop() {
+    kurento.destroy();
+    server.close();
+    fakeKms.close();
+  }
+
+  @Test
+  public void testStatsInOneTransaction() {
+
+    StatsCollector collector = new StatsCollector(kurento);
+
+    requests.set(0);
+    Map<MediaElement, Map<String, Stats>> stats = collector.getStats(endpoints);
+    assertEquals(1, requests.get());
+
+    assertEquals(endpoints.size(), stats.size());
+    for (MediaElement endpoint : endpoints) {
+      Map<String, Stats> elementStats = stats.get(endpoint);
+      assertEquals(1, elementStats.size());
+      Stats endpointStats = elementStats.values().iterator().next();
+      assertTrue(endpointStats instanceof EndpointStats);
+      assertEquals(StatsType.endpoint, endpointStats.getType());
+      assertTrue(((EndpointStats) endpointStats).getVideoE2ELatency() > 0);
+    }
+  }
+
+  @Test
+  public void testStatsValues() {
+
+    StatsCollector collector = new StatsCollector(kurento);
+
+    requests.set(0);
+    Map<MediaElement, Map<String, Number>> values = collector.getStatsValues(endpoints);
+    assertEquals(1, requests.get());
+
+    assertEquals(endpoints.size(), values.size());
+    for (MediaElement endpoint : endpoints) {
+      Map<String, Number> elementValues = values.get(endpoint);
+      String statsId = collector.getStats(endpoints).get(endpoint).keySet().iterator().next();
+      assertTrue(elementValues.get(statsId + ".videoE2ELatency").doubleValue() > 0);
+      assertTrue(elementValues.containsKey(statsId + ".timestampMillis"));
+      assertFalse(elementValues.containsKey(statsId + ".type"));
+    }
+  }
+
+  @Test
+  public void testSampling() throws InterruptedException {
+
+    final BlockingQueue<Sample> samples = new LinkedBlockingQueue<>();
+    Sampler sampler = new StatsCollector(kurento).startSampling(endpoints, null, 20,
+        new SampleListener() {
+          @Override
+          public void onSample(Sample sample) {
+            samples.add(sample);
+          }
+        });
+
+    try {
+      Sample first = samples.poll(5, TimeUnit.SECONDS);
+      Sample second = samples.poll(5, TimeUnit.SECONDS);
+      assertSame(first.getSeries(), second.getSeries());
+      assertEquals(first.getSeries().size(), second.getValues().length);
+      for (double value : second.getValues()) {
+        assertFalse(Double.isNaN(value));
+      }
+
+      // Released elements are no longer sampled
+      MediaElement released = endpoints.get(0);
+      released.release();
+      samples.clear();
+      Sample sample = samples.poll(5, TimeUnit.SECONDS);
+      assertEquals(endpoints.size() - 1, sampler.getElements().size());
+      assertFalse(sampler.getElements().contains(released));
+      String series = first.getSeries().get(0);
+      assertTrue(Double.isNaN(sample.getValue(series)));
+    } finally {
+      sampler.close();
+    }
+  }
+
+  @Test
+  public void testSeriesOfReleasedElementsAreRetired() throws InterruptedException {
+
+    final BlockingQueue<Sample> samples = new LinkedBlockingQueue<>();
+    Sampler sampler = new StatsCollector(kurento).startSampling(endpoints, null, 5,
+        new SampleListener() {
+          @Override
+          public void onSample(Sample sample) {
+            samples.add(sample);
+          }
+        });
+
+    try {
+      Sample first = samples.poll(5, TimeUnit.SECONDS);
+      int seriesPerElement = first.getSeries().size() / endpoints.size();
+
+      List<MediaElement> released = endpoints.subList(0, 3);
+      for (MediaElement element : released) {
+        element.release();
+      }
+
+      long deadline = System.currentTimeMillis() + 5000;
+      while (sampler.getNumSeries() > 2 * seriesPerElement
+          && System.currentTimeMillis() < deadline) {
+        samples.poll(100, TimeUnit.MILLISECONDS);
+      }
+      assertEquals(2 * seriesPerElement, sampler.getNumSeries());
+
+      samples.clear();
+      Sample sample = samples.poll(5, TimeUnit.SECONDS);
+      assertEquals(2 * seriesPerElement, sample.getValues().length);
+      for (double value : sample.getValues()) {
+        assertFalse(Double.isNaN(value));
+      }
+      for (String series : first.getSeries().subList(0, 3 * seriesPerElement)) {
+        assertFalse(sample.getSeries().contains(series));
+      }
+    } finally {
+      sampler.close();
+    }
+  }
+}
@@ -0,0 +1,246 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.kurento.client.internal.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.kurento.client.EventListener;
+import org.kurento.client.Topology;
+import org.kurento.client.internal.TransactionImpl;
+import org.kurento.client.internal.test.model.Sample2;
+import org.kurento.client.internal.test.model.SampleRemoteClass;
+import org.kurento.client.internal.test.model.client.SampleClass;
+import org.kurento.client.internal.test.model.client.events.SampleEvent;
+import org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants;
+import org.kurento.commons.exception.KurentoException;
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.JsonUtils;
+import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.message.Response;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+public class TopologyTest extends AbstractLocalRomTest<TopologyTest.RecordingHandler> {
+
+  // Answers transactions without executing them, recording their operations
+  static class RecordingHandler extends DefaultJsonRpcHandler<JsonObject> {
+
+    private final List<JsonObject> operations = new ArrayList<>();
+    private int requests;
+
+    @Override
+    public void handleRequest(Transaction transaction, Request<JsonObject> request)
+        throws Exception {
+
+      requests++;
+
+      JsonArray responses = new JsonArray();
+      int numCreations = 0;
+      for (JsonElement operation : request.getParams()
+          .getAsJsonArray(RomJsonRpcConstants.TRANSACTION_OPERATIONS)) {
+
+        JsonObject operationObject = operation.getAsJsonObject();
+        operations.add(operationObject);
+
+        String method = operationObject.get("method").getAsString();
+        Object result = null;
+        if (RomJsonRpcConstants.CREATE_METHOD.equals(method)) {
+          result = "ref-" + numCreations++;
+        } else if (RomJsonRpcConstants.SUBSCRIBE_METHOD.equals(method)) {
+          result = "subscription";
+        }
+        responses.add(JsonUtils.toJsonElement(
+            new Response<>(operationObject.get("id").getAsInt(), JsonUtils.toJsonElement(result))));
+      }
+      transaction.sendResponse(responses);
+    }
+
+    private String getMethod(int index) {
+      return operations.get(index).get("method").getAsString();
+    }
+
+    private JsonObject getParams(int index) {
+      return operations.get(index).getAsJsonObject("params");
+    }
+  }
+
+  private static final EventListener<SampleEvent> LISTENER = new EventListener<SampleEvent>() {
+    @Override
+    public void onEvent(SampleEvent event) {
+    }
+  };
+
+  @Override
+  protected RecordingHandler createHandler() {
+    return new RecordingHandler();
+  }
+
+  @Test
+  public void topologyIsDeployedInOneTransaction() {
+
+    Topology topology = new Topology();
+    topology.element("endpoint", SampleClass.class).ref("mediaPipeline", "pipeline")
+        .param("att1", "XXX");
+    topology.element("pipeline", SampleRemoteClass.class);
+    topology.connect("endpoint", "endpoint", "VIDEO");
+    topology.subscribe("endpoint", "Sample", SampleEvent.class, LISTENER);
+
+    Topology.Elements elements = deploy(topology);
+
+    assertEquals(1, handler.requests);
+    assertEquals(4, handler.operations.size());
+    assertDeployed(elements);
+
+    JsonObject endpointParams = handler.getParams(1)
+        .getAsJsonObject(RomJsonRpcConstants.CREATE_CONSTRUCTOR_PARAMS);
+    assertEquals("XXX", endpointParams.get("att1").getAsString());
+  }
+
+  @Test
+  public void topologyIsReadFromJson() {
+
+    Topology topology = Topology.fromJson("{"
+        + "'elements': ["
+        + "  {'name': 'endpoint', 'type': '" + SampleClass.class.getName() + "',"
+        + "   'params': {'mediaPipeline': {'ref': 'pipeline'}}},"
+        + "  {'name': 'pipeline', 'type': '" + SampleRemoteClass.class.getName() + "'}],"
+        + "'connections': [{'source': 'endpoint', 'sink': 'endpoint', 'mediaType': 'VIDEO'}],"
+        + "'subscriptions': [{'element': 'endpoint', 'event': 'Sample', 'listener': 'sample'}]"
+        + "}");
+    topology.bindListener("sample", LISTENER);
+
+    assertDeployed(deploy(topology));
+  }
+
+  @Test(expected = KurentoException.class)
+  public void cyclicReferencesAreRejected() {
+
+    Topology topology = new Topology();
+    topology.element("a", SampleClass.class).ref("param", "b");
+    topology.element("b", SampleClass.class).ref("param", "a");
+
+    deploy(topology);
+  }
+
+  @Test
+  public void jsonParamsAreConvertedToDeclaredTypes() {
+
+    Topology topology = Topology.fromJson("{'elements': [{'name': 'sample', 'type': '"
+        + Sample2.class.getName() + "', "
+        + "'params': {'att1': 'XXX', 'att2': 3, 'att3': 0.5, 'att4': true, 'other': 4}}]}");
+
+    deploy(topology);
+
+    JsonObject params = handler.getParams(0)
+        .getAsJsonObject(RomJsonRpcConstants.CREATE_CONSTRUCTOR_PARAMS);
+    assertEquals("\"XXX\"", params.get("att1").toString());
+    assertEquals("3", params.get("att2").toString());
+    assertEquals("0.5", params.get("att3").toString());
+    assertEquals("true", params.get("att4").toString());
+    // Params without a declared type are kept as read
+    assertEquals("4.0", params.get("other").toString());
+  }
+
+  @Test(expected = KurentoException.class)
+  public void jsonParamsOfWrongTypeAreRejected() {
+    Topology.fromJson("{'elements': [{'name': 'sample', 'type': '" + Sample2.class.getName()
+        + "', 'params': {'att2': 'XXX'}}]}");
+  }
+
+  @Test
+  public void unboundListenersAreRejected() {
+
+    Topology topology = Topology.fromJson("{'elements': [{'name': 'a', 'type': '"
+        + SampleClass.class.getName() + "'}], "
+        + "'subscriptions': [{'element': 'a', 'event': 'Sample', 'listener': 'sample'}]}");
+
+    assertRejected(topology);
+  }
+
+  @Test
+  public void unknownElementsInSubscriptionsAreRejected() {
+
+    Topology topology = new Topology();
+    topology.element("a", SampleClass.class);
+    topology.subscribe("b", "Sample", SampleEvent.class, LISTENER);
+
+    assertRejected(topology);
+  }
+
+  @Test
+  public void unknownElementsInConnectionsAreRejected() {
+
+    Topology topology = new Topology();
+    topology.element("a", SampleClass.class);
+    topology.connect("a", "b");
+
+    assertRejected(topology);
+  }
+
+  // The topology is validated before adding any operation to the transaction
+  private void assertRejected(Topology topology) {
+    TransactionImpl tx = new TransactionImpl(manager);
+    try {
+      topology.addTo(tx);
+      fail("Invalid topology was deployed");
+    } catch (KurentoException e) {
+      assertTrue(tx.getOperations().isEmpty());
+    }
+  }
+
+  private Topology.Elements deploy(Topology topology) {
+    TransactionImpl tx = new TransactionImpl(manager);
+    Topology.Elements elements = topology.addTo(tx);
+    tx.commit();
+    return elements;
+  }
+
+  private void assertDeployed(Topology.Elements elements) {
+
+    // Referenced elements are created first
+    assertEquals(RomJsonRpcConstants.CREATE_METHOD, handler.getMethod(0));
+    assertEquals("SampleRemoteClass",
+        handler.getParams(0).get(RomJsonRpcConstants.CREATE_TYPE).getAsString());
+    assertEquals(RomJsonRpcConstants.CREATE_METHOD, handler.getMethod(1));
+    assertEquals("newref:0", handler.getParams(1)
+        .getAsJsonObject(RomJsonRpcConstants.CREATE_CONSTRUCTOR_PARAMS).get("mediaPipeline")
+        .getAsString());
+
+    // Listeners are added before connecting elements
+    assertEquals(RomJsonRpcConstants.SUBSCRIBE_METHOD, handler.getMethod(2));
+    assertEquals("Sample",
+        handler.getParams(2).get(RomJsonRpcConstants.SUBSCRIBE_TYPE).getAsString());
+
+    assertEquals(RomJsonRpcConstants.INVOKE_METHOD, handler.getMethod(3));
+    JsonObject connectParams = handler.getParams(3)
+        .getAsJsonObject(RomJsonRpcConstants.INVOKE_OPERATION_PARAMS);
+    assertEquals("newref:1", connectParams.get("sink").getAsString());
+    assertEquals("VIDEO", connectParams.get("mediaType").getAsString());
+
+    assertEquals("ref-0", elements.get("pipeline", SampleRemoteClass.class).getId());
+    assertEquals("ref-1", elements.get("endpoint", SampleClass.class).getId());
+  }
+}
@@ -0,0 +1,56 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.client.internal.test.model.client;
+
+import java.util.List;
+
+import org.kurento.client.internal.server.Param;
+
+@org.kurento.client.internal.ModuleName("complexParam")
+public class NestedComplexParam {
+
+  private String name;
+  private ComplexParam main;
+  private List<ComplexParam> others;
+  private List<String> tags;
+
+  public NestedComplexParam(@Param("name") String name, @Param("main") ComplexParam main,
+      @Param("others") List<ComplexParam> others, @Param("tags") List<String> tags) {
+    this.name = name;
+    this.main = main;
+    this.others = others;
+    this.tags = tags;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public ComplexParam getMain() {
+    return main;
+  }
+
+  public List<ComplexParam> getOthers() {
+    return others;
+  }
+
+  public List<String> getTags() {
+    return tags;
+  }
+
+}
@@ -26,8 +26,17 @@ public class ThreadFactoryCreator {
   private static final AtomicLong numExecutor = new AtomicLong(0);
 
   public static ThreadFactory create(String name) {
+    return create(name, false);
+  }
+
+  /**
+   * @param daemon
+   *          Whether the threads are daemon threads, so they don't prevent the JVM from exiting
+   */
+  public static ThreadFactory create(String name, boolean daemon) {
     return new ThreadFactoryBuilder()
-        .setNameFormat(name + "-e" + numExecutor.incrementAndGet() + "-t%d").build();
+        .setNameFormat(name + "-e" + numExecutor.incrementAndGet() + "-t%d").setDaemon(daemon)
+        .build();
   }
 
 }
@@ -37,6 +37,9 @@ public abstract class UrlServiceLoader<P> {
   private String serviceProviderClassName;
   private String staticUrl;
 
+  // Properties of the config file, given to the service provider
+  private final Properties config = new Properties();
+
   private P serviceProvider;
 
   public UrlServiceLoader(Path configFile, String urlProperty, String urlProviderProperty,
@@ -60,12 +63,11 @@ public abstract class UrlServiceLoader<P> {
 
       if (configFile != null && Files.exists(configFile)) {
 
-        Properties properties = new Properties();
         try (BufferedReader reader = Files.newBufferedReader(configFile, StandardCharsets.UTF_8)) {
-          properties.load(reader);
+          config.load(reader);
         }
 
-        String kmsUrl = properties.getProperty(urlProperty);
+        String kmsUrl = config.getProperty(urlProperty);
 
         if (kmsUrl != null) {
           log.debug("Using static url from property {}={} configured in config file {}", urlProperty,
@@ -73,7 +75,7 @@ public abstract class UrlServiceLoader<P> {
           return kmsUrl;
         }
 
-        serviceProviderClassName = properties.getProperty(urlProviderProperty);
+        serviceProviderClassName = config.getProperty(urlProviderProperty);
 
         if (serviceProviderClassName == null) {
           log.warn("The file {} lacks property '{}' or '{}'. The default url '{}' will be used",
@@ -105,13 +107,21 @@ public abstract class UrlServiceLoader<P> {
     return staticUrl;
   }
 
+  /**
+   * Creates the service provider with its constructor that receives the properties of the config
+   * file, if it has one, or with its default constructor otherwise.
+   */
   @SuppressWarnings("unchecked")
   private P createUrlProvider() {
     try {
 
       Class<?> providerClass = Class.forName(serviceProviderClassName);
 
-      return (P) providerClass.newInstance();
+      try {
+        return (P) providerClass.getConstructor(Properties.class).newInstance(config);
+      } catch (NoSuchMethodException e) {
+        return (P) providerClass.newInstance();
+      }
 
     } catch (Exception e) {
       throw new RuntimeException("Exception loading url provider class " + serviceProviderClassName,
@@ -0,0 +1,103 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc.test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.client.JsonRpcClient;
+import org.kurento.jsonrpc.internal.server.SessionsManager;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.test.base.JsonRpcConnectorBaseTest;
+import org.springframework.beans.factory.annotation.Autowired;
+
+public class BroadcastNotificationTest extends JsonRpcConnectorBaseTest {
+
+  private static final String GROUP = "room";
+
+  private static CountDownLatch notificationLatch;
+
+  public static class Handler extends DefaultJsonRpcHandler<String> {
+
+    @Autowired
+    private SessionsManager sessionsManager;
+
+    @Override
+    public void handleRequest(Transaction transaction, Request<String> request)
+        throws Exception {
+
+      switch (request.getMethod()) {
+        case "join":
+          sessionsManager.joinGroup(GROUP, transaction.getSession());
+          transaction.sendResponse(GROUP);
+          break;
+        case "leave":
+          sessionsManager.leaveGroup(GROUP, transaction.getSession());
+          transaction.sendResponse(GROUP);
+          break;
+        case "broadcast":
+          transaction.sendResponse(
+              sessionsManager.broadcastNotification(GROUP, "news", request.getParams()));
+          break;
+        default:
+          transaction.sendError(0, "UNKNOWN_METHOD", "Unknown method " + request.getMethod());
+      }
+    }
+  }
+
+  @Test
+  public void test() throws IOException, InterruptedException {
+
+    notificationLatch = new CountDownLatch(3);
+
+    List<JsonRpcClient> clients = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      JsonRpcClient client = createJsonRpcClient("/broadcast");
+      client.setServerRequestHandler(new DefaultJsonRpcHandler<String>() {
+        @Override
+        public void handleRequest(Transaction transaction, Request<String> request)
+            throws Exception {
+          if ("news".equals(request.getMethod()) && "hello".equals(request.getParams())) {
+            notificationLatch.countDown();
+          }
+        }
+      });
+      client.sendRequest("join", String.class);
+      clients.add(client);
+    }
+
+    clients.get(3).sendRequest("leave", String.class);
+
+    int sent = clients.get(0).sendRequest("broadcast", "hello", Integer.class);
+
+    Assert.assertEquals(3, sent);
+    Assert.assertTrue("Broadcasted notifications not received",
+        notificationLatch.await(5000, TimeUnit.MILLISECONDS));
+
+    for (JsonRpcClient client : clients) {
+      client.close();
+    }
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc.test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.Session;
+import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.client.JsonRpcClientWebSocket;
+import org.kurento.jsonrpc.internal.server.ServerSession;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.test.base.JsonRpcConnectorBaseTest;
+
+import com.google.gson.JsonElement;
+
+public class SessionResumptionTest extends JsonRpcConnectorBaseTest {
+
+  private static final int NUM_NOTIFICATIONS = 5;
+
+  private static volatile Session serverSession;
+
+  public static class Handler extends DefaultJsonRpcHandler<String> {
+
+    @Override
+    public void handleRequest(Transaction transaction, Request<String> request)
+        throws Exception {
+      serverSession = transaction.getSession();
+      transaction.sendResponse(request.getParams());
+    }
+
+    @Override
+    public void afterConnectionEstablished(Session session) throws Exception {
+      session.setReconnectionTimeout(10000);
+    }
+  }
+
+  @Before
+  public void enableReplay() {
+    System.setProperty(ServerSession.REPLAY_BUFFER_SIZE_PROP, "100");
+    System.setProperty("jsonRpcClientWebSocket.replayBufferSize", "100");
+  }
+
+  @After
+  public void disableReplay() {
+    System.clearProperty(ServerSession.REPLAY_BUFFER_SIZE_PROP);
+    System.clearProperty("jsonRpcClientWebSocket.replayBufferSize");
+  }
+
+  @Test
+  public void givenResumedSession_whenNotificationsAreSentWhileDisconnected_thenTheyAreReplayed()
+      throws Exception {
+
+    final List<Integer> received = new CopyOnWriteArrayList<>();
+    final CountDownLatch latch = new CountDownLatch(NUM_NOTIFICATIONS);
+
+    try (JsonRpcClientWebSocket client =
+        new JsonRpcClientWebSocket("ws://localhost:" + getPort() + "/resumption")) {
+
+      client.setConcurrentServerRequest(false);
+      client.setServerRequestHandler(new DefaultJsonRpcHandler<JsonElement>() {
+        @Override
+        public void handleRequest(Transaction transaction, Request<JsonElement> request)
+            throws Exception {
+          received.add(request.getParams().getAsInt());
+          latch.countDown();
+        }
+      });
+
+      assertThat(client.sendRequest("echo", "first", String.class)).isEqualTo("first");
+
+      client.closeNativeClient();
+
+      // Wait for the server to detect the disconnection
+      Thread.sleep(500);
+
+      for (int i = 0; i < NUM_NOTIFICATIONS; i++) {
+        serverSession.sendNotification("news", i);
+      }
+
+      // Any request reconnects the client, resuming the session
+      assertThat(client.sendRequest("echo", "second", String.class)).isEqualTo("second");
+
+      assertThat(latch.await(5, TimeUnit.SECONDS)).isTrue();
+      assertThat(received).containsExactly(0, 1, 2, 3, 4);
+    }
+  }
+}
@@ -23,6 +23,7 @@ import org.kurento.jsonrpc.server.JsonRpcHandlerRegistry;
 import org.kurento.jsonrpc.test.AsyncServerTest;
 import org.kurento.jsonrpc.test.BidirectionalMultiTest;
 import org.kurento.jsonrpc.test.BidirectionalTest;
+import org.kurento.jsonrpc.test.BroadcastNotificationTest;
 import org.kurento.jsonrpc.test.CloseSessionTest;
 import org.kurento.jsonrpc.test.ErrorServerTest;
 import org.kurento.jsonrpc.test.LargePackageTest;
@@ -32,6 +33,7 @@ import org.kurento.jsonrpc.test.NotificationTest;
 import org.kurento.jsonrpc.test.PingPongTest;
 import org.kurento.jsonrpc.test.ReconnectionFromServerTest;
 import org.kurento.jsonrpc.test.ReconnectionTest;
+import org.kurento.jsonrpc.test.SessionResumptionTest;
 import org.kurento.jsonrpc.test.ServerEventsTest;
 import org.kurento.jsonrpc.test.handler.EchoJsonRpcHandler;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
@@ -80,6 +82,10 @@ public class BootTestApplication implements JsonRpcConfigurer {
 
     registry.addHandler(new NotificationTest.Handler(), "/notification");
 
+    registry.addHandler(broadcastHandler(), "/broadcast");
+
+    registry.addHandler(new SessionResumptionTest.Handler(), "/resumption");
+
   }
 
   @Bean
@@ -93,6 +99,11 @@ public class BootTestApplication implements JsonRpcConfigurer {
     return new DemoBean();
   }
 
+  @Bean
+  public BroadcastNotificationTest.Handler broadcastHandler() {
+    return new BroadcastNotificationTest.Handler();
+  }
+
   @Bean
   public JsonRpcHandler<?> echoJsonRpcHandler() {
     return new EchoJsonRpcHandler();
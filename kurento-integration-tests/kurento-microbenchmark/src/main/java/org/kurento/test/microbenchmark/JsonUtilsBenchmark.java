@@ -0,0 +1,120 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.kurento.test.microbenchmark;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.kurento.jsonrpc.JsonUtils;
+import org.kurento.jsonrpc.Props;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.message.Response;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * Encoding and decoding of the JSON-RPC messages exchanged with the media server: an invocation
+ * request, its response and an event notification.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 2, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+@State(Scope.Thread)
+public class JsonUtilsBenchmark {
+
+  private static final String OBJECT_REF =
+      "5a6d2a0b-8c1e-4b5e-9f5c-2f4a1e3d7c9b_kurento.MediaPipeline/"
+          + "0c4f1e2d-3b5a-4c6d-8e7f-9a0b1c2d3e4f_kurento.WebRtcEndpoint";
+
+  private Request<JsonObject> request;
+  private Response<JsonElement> response;
+  private Request<JsonObject> event;
+
+  private String requestJson;
+  private String responseJson;
+  private String eventJson;
+
+  @Setup
+  public void setup() {
+
+    Props operationParams = new Props("candidate",
+        new Props("__type__", "IceCandidate").add("__module__", "kurento")
+            .add("candidate", "candidate:1 1 UDP 2013266431 192.168.1.10 50000 typ host")
+            .add("sdpMid", "audio").add("sdpMLineIndex", 0));
+
+    request = new Request<>(1234, "invoke",
+        JsonUtils.toJsonObject(new Props("object", OBJECT_REF).add("operation", "addIceCandidate")
+            .add("operationParams", operationParams).add("sessionId", "s3ss10n")));
+
+    response = new Response<>(1234,
+        JsonUtils.toJsonElement(new Props("value", OBJECT_REF).add("sessionId", "s3ss10n")));
+
+    Props eventData = new Props("source", OBJECT_REF).add("type", "IceCandidateFound")
+        .add("timestamp", "1571234567").add("timestampMillis", "1571234567890")
+        .add("tags", Collections.emptyList()).add("candidate", operationParams.getProp("candidate"));
+
+    event = new Request<>("onEvent", JsonUtils.toJsonObject(new Props("value",
+        new Props("object", OBJECT_REF).add("type", "IceCandidateFound").add("data", eventData))));
+
+    requestJson = JsonUtils.toJsonRequest(request);
+    responseJson = JsonUtils.toJsonResponse(response);
+    eventJson = JsonUtils.toJsonRequest(event);
+  }
+
+  @Benchmark
+  public String encodeRequest() {
+    return JsonUtils.toJsonRequest(request);
+  }
+
+  @Benchmark
+  public Request<JsonObject> decodeRequest() {
+    return JsonUtils.fromJsonRequest(requestJson, JsonObject.class);
+  }
+
+  @Benchmark
+  public String encodeResponse() {
+    return JsonUtils.toJsonResponse(response);
+  }
+
+  @Benchmark
+  public Response<JsonElement> decodeResponse() {
+    return JsonUtils.fromJsonResponse(responseJson, JsonElement.class);
+  }
+
+  @Benchmark
+  public String encodeEvent() {
+    return JsonUtils.toJsonRequest(event);
+  }
+
+  @Benchmark
+  public Request<JsonObject> decodeEvent() {
+    return JsonUtils.fromJsonRequest(eventJson, JsonObject.class);
+  }
+}
@@ -0,0 +1,103 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.kurento.test.microbenchmark;
+
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.kurento.client.IceCandidate;
+import org.kurento.client.KurentoClient;
+import org.kurento.client.MediaType;
+import org.kurento.client.Tag;
+import org.kurento.client.WebRtcEndpoint;
+import org.kurento.client.internal.server.FakeMediaServer;
+import org.kurento.client.internal.transport.serialization.ParamsFlattener;
+import org.kurento.client.internal.transport.serialization.ParamsFlattener.GenericListType;
+import org.kurento.jsonrpc.Props;
+import org.kurento.jsonrpc.client.JsonRpcClientLocal;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Conversion between Java values and the params sent to the media server: a remote object, an
+ * enum, a complex type and a list of complex types.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 2, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+@State(Scope.Thread)
+public class ParamsFlattenerBenchmark {
+
+  private static final String[] PARAM_NAMES = { "candidate", "mediaType", "tags" };
+
+  private static final Type[] PARAM_TYPES =
+      { IceCandidate.class, MediaType.class, new GenericListType(Tag.class) };
+
+  private final ParamsFlattener flattener = ParamsFlattener.getInstance();
+
+  private FakeMediaServer fakeKms;
+  private KurentoClient kurento;
+
+  private Props params;
+  private Props flatParams;
+
+  @Setup
+  public void setup() {
+
+    fakeKms = new FakeMediaServer();
+    kurento = KurentoClient.createFromJsonRpcClient(new JsonRpcClientLocal(fakeKms));
+    WebRtcEndpoint sink = new WebRtcEndpoint.Builder(kurento.createMediaPipeline()).build();
+
+    params = new Props("sink", sink)
+        .add("candidate",
+            new IceCandidate("candidate:1 1 UDP 2013266431 192.168.1.10 50000 typ host", "audio",
+                0))
+        .add("mediaType", MediaType.VIDEO)
+        .add("tags", Arrays.asList(new Tag("room", "r1"), new Tag("user", "u1")));
+
+    flatParams = flattener.flattenParams(params);
+    flatParams.removeProp("sink");
+  }
+
+  @TearDown
+  public void tearDown() {
+    kurento.destroy();
+    fakeKms.close();
+  }
+
+  @Benchmark
+  public Props flatten() {
+    return flattener.flattenParams(params);
+  }
+
+  @Benchmark
+  public Object[] unflatten() {
+    return flattener.unflattenParams(PARAM_NAMES, PARAM_TYPES, flatParams, null);
+  }
+}
@@ -0,0 +1,77 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.kurento.test.microbenchmark;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.kurento.jsonrpc.internal.ws.PendingRequests;
+import org.kurento.jsonrpc.message.Response;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonPrimitive;
+
+/**
+ * Registration and completion of pending requests, alone and with several threads sharing the
+ * same {@link PendingRequests}, as happens when many threads use the same client.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 2, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+@State(Scope.Benchmark)
+public class PendingRequestsBenchmark {
+
+  private static final JsonElement RESULT = new JsonPrimitive("result");
+
+  private final PendingRequests pendingRequests = new PendingRequests();
+  private final AtomicInteger ids = new AtomicInteger();
+
+  private Response<JsonElement> putAndComplete()
+      throws InterruptedException, ExecutionException {
+
+    Integer id = ids.incrementAndGet();
+    ListenableFuture<Response<JsonElement>> future = pendingRequests.prepareResponse(id);
+    pendingRequests.handleResponse(new Response<>(id, RESULT));
+    return future.get();
+  }
+
+  @Benchmark
+  @Threads(1)
+  public Response<JsonElement> uncontended() throws InterruptedException, ExecutionException {
+    return putAndComplete();
+  }
+
+  @Benchmark
+  @Threads(8)
+  public Response<JsonElement> contended() throws InterruptedException, ExecutionException {
+    return putAndComplete();
+  }
+}
@@ -0,0 +1,93 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.kurento.test.microbenchmark;
+
+import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+
+import org.kurento.jsonrpc.Prop;
+import org.kurento.jsonrpc.Props;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Building and iterating {@link Props}, as done with the params of every request. Iterating the
+ * backing map is the baseline of the iteration through {@link Prop}s.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 2, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+@State(Scope.Thread)
+public class PropsBenchmark {
+
+  private static final int NUM_PROPS = 8;
+
+  private String[] names;
+  private Props props;
+
+  @Setup
+  public void setup() {
+    names = new String[NUM_PROPS];
+    for (int i = 0; i < NUM_PROPS; i++) {
+      names[i] = "param" + i;
+    }
+    props = build();
+  }
+
+  @Benchmark
+  public Props build() {
+    Props result = new Props();
+    for (int i = 0; i < NUM_PROPS; i++) {
+      result.add(names[i], i);
+    }
+    return result;
+  }
+
+  @Benchmark
+  public void iterate(Blackhole blackhole) {
+    for (Prop prop : props) {
+      blackhole.consume(prop.getName());
+      blackhole.consume(prop.getValue());
+    }
+  }
+
+  @Benchmark
+  public void iterateMap(Blackhole blackhole) {
+    for (Entry<String, Object> entry : props.getMap().entrySet()) {
+      blackhole.consume(entry.getKey());
+      blackhole.consume(entry.getValue());
+    }
+  }
+
+  @Benchmark
+  public void lookup(Blackhole blackhole) {
+    for (int i = 0; i < NUM_PROPS; i++) {
+      blackhole.consume(props.getProp(names[i]));
+    }
+  }
+}
@@ -0,0 +1,164 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.kurento.test.microbenchmark;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.internal.client.TransactionImpl.ResponseSender;
+import org.kurento.jsonrpc.internal.server.ProtocolManager;
+import org.kurento.jsonrpc.internal.server.ProtocolManager.ServerSessionFactory;
+import org.kurento.jsonrpc.internal.server.ServerSession;
+import org.kurento.jsonrpc.internal.server.SessionsManager;
+import org.kurento.jsonrpc.message.Message;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.message.Response;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * Processing of messages received by the server, from the raw JSON until the response is sent:
+ * a ping, answered in the transport thread, and a request, answered by a handler in the session
+ * executor.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 2, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+@State(Scope.Thread)
+public class ProtocolManagerBenchmark {
+
+  private static final String TRANSPORT_ID = "benchmark-transport";
+
+  private static class BenchmarkSession extends ServerSession {
+
+    public BenchmarkSession(String sessionId, Object registerInfo,
+        SessionsManager sessionsManager) {
+      super(sessionId, registerInfo, sessionsManager, TRANSPORT_ID);
+    }
+
+    @Override
+    public void handleResponse(Response<JsonElement> response) {
+    }
+
+    @Override
+    public void closeNativeSession(String reason) {
+    }
+
+    @Override
+    public void sendSerializedMessage(String jsonMessage) throws IOException {
+    }
+  }
+
+  private final ServerSessionFactory sessionFactory = new ServerSessionFactory() {
+    @Override
+    public ServerSession createSession(String sessionId, Object registerInfo,
+        SessionsManager sessionsManager) {
+      return new BenchmarkSession(sessionId, registerInfo, sessionsManager);
+    }
+
+    @Override
+    public void updateSessionOnReconnection(ServerSession session) {
+    }
+  };
+
+  private final ResponseSender responseSender = new ResponseSender() {
+    @Override
+    public void sendResponse(Message message) throws IOException {
+      response.set(message);
+    }
+
+    @Override
+    public void sendPingResponse(Message message) throws IOException {
+      response.set(message);
+    }
+  };
+
+  private ThreadPoolTaskScheduler taskScheduler;
+  private ProtocolManager protocolManager;
+  private volatile SettableFuture<Message> response;
+
+  private String requestJson;
+  private String pingJson;
+
+  @Setup
+  public void setup() throws Exception {
+
+    taskScheduler = new ThreadPoolTaskScheduler();
+    taskScheduler.initialize();
+
+    protocolManager = new ProtocolManager(new DefaultJsonRpcHandler<JsonObject>() {
+      @Override
+      public void handleRequest(Transaction transaction, Request<JsonObject> request)
+          throws Exception {
+        transaction.sendResponse(request.getParams());
+      }
+    }, new SessionsManager(), taskScheduler);
+
+    JsonObject params = new JsonObject();
+    params.addProperty("object", "5a6d2a0b-8c1e-4b5e-9f5c-2f4a1e3d7c9b_kurento.MediaPipeline");
+    params.addProperty("operation", "getName");
+    requestJson = new Request<>(1, "invoke", params).toString();
+
+    JsonObject pingParams = new JsonObject();
+    pingParams.addProperty("interval", 240000);
+    pingJson = new Request<>(1, "ping", pingParams).toString();
+
+    // Creates the session, so the benchmarks measure only the processing of messages
+    process(requestJson);
+  }
+
+  @TearDown
+  public void tearDown() {
+    taskScheduler.shutdown();
+  }
+
+  private Message process(String messageJson)
+      throws IOException, InterruptedException, ExecutionException {
+    response = SettableFuture.create();
+    protocolManager.processMessage(messageJson, sessionFactory, responseSender, TRANSPORT_ID);
+    return response.get();
+  }
+
+  @Benchmark
+  public Message ping() throws IOException, InterruptedException, ExecutionException {
+    return process(pingJson);
+  }
+
+  @Benchmark
+  public Message request() throws IOException, InterruptedException, ExecutionException {
+    return process(requestJson);
+  }
+}
@@ -0,0 +1,86 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.kurento.test.microbenchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.kurento.client.KurentoClient;
+import org.kurento.client.MediaPipeline;
+import org.kurento.client.WebRtcEndpoint;
+import org.kurento.client.internal.server.FakeMediaServer;
+import org.kurento.jsonrpc.client.JsonRpcClientLocal;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Synchronous invocations through the proxies of remote objects. The client is connected to a
+ * {@link FakeMediaServer} in the same JVM without a network transport, so the cost of the
+ * client (proxy, serialization and request handling) dominates the results.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 2, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+@State(Scope.Thread)
+public class RemoteInvocationBenchmark {
+
+  private FakeMediaServer fakeKms;
+  private KurentoClient kurento;
+  private MediaPipeline pipeline;
+  private WebRtcEndpoint webRtc;
+  private WebRtcEndpoint sink;
+
+  @Setup
+  public void setup() {
+    fakeKms = new FakeMediaServer();
+    kurento = KurentoClient.createFromJsonRpcClient(new JsonRpcClientLocal(fakeKms));
+    pipeline = kurento.createMediaPipeline();
+    webRtc = new WebRtcEndpoint.Builder(pipeline).build();
+    sink = new WebRtcEndpoint.Builder(pipeline).build();
+  }
+
+  @TearDown
+  public void tearDown() {
+    kurento.destroy();
+    fakeKms.close();
+  }
+
+  @Benchmark
+  public String getter() {
+    return pipeline.getName();
+  }
+
+  @Benchmark
+  public void operationWithParams() {
+    webRtc.addTag("room", "r1");
+  }
+
+  @Benchmark
+  public void operationWithRemoteObject() {
+    webRtc.connect(sink);
+  }
+}
@@ -18,6 +18,7 @@
 package org.kurento.jsonrpc;
 
 import static org.kurento.jsonrpc.internal.JsonRpcConstants.DATA_PROPERTY;
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.DEADLINE_PROPERTY;
 import static org.kurento.jsonrpc.internal.JsonRpcConstants.ERROR_PROPERTY;
 import static org.kurento.jsonrpc.internal.JsonRpcConstants.ID_PROPERTY;
 import static org.kurento.jsonrpc.internal.JsonRpcConstants.JSON_RPC_PROPERTY;
@@ -573,8 +574,15 @@ class JsonRpcRequestDeserializer implements JsonDeserializer<Request<?>> {
 
     ParameterizedType parameterizedType = (ParameterizedType) typeOfT;
 
-    return new Request<>(id, jObject.get(METHOD_PROPERTY).getAsString(), context
-        .deserialize(jObject.get(PARAMS_PROPERTY), parameterizedType.getActualTypeArguments()[0]));
+    Request<Object> request = new Request<>(id, jObject.get(METHOD_PROPERTY).getAsString(),
+        context.deserialize(jObject.get(PARAMS_PROPERTY),
+            parameterizedType.getActualTypeArguments()[0]));
+
+    if (jObject.has(DEADLINE_PROPERTY)) {
+      request.setDeadline(jObject.get(DEADLINE_PROPERTY).getAsLong());
+    }
+
+    return request;
 
   }
 }
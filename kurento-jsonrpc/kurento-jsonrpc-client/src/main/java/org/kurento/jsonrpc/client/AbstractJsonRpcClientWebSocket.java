@@ -20,12 +20,17 @@ package org.kurento.jsonrpc.client;
 import static org.kurento.jsonrpc.JsonUtils.fromJson;
 import static org.kurento.jsonrpc.JsonUtils.fromJsonRequest;
 import static org.kurento.jsonrpc.JsonUtils.fromJsonResponse;
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.CANCEL_REQUEST_ID_PROPERTY;
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.LAST_SEQUENCE_PROPERTY;
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.METHOD_CANCEL;
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.METHOD_CLOSE;
 import static org.kurento.jsonrpc.internal.JsonRpcConstants.METHOD_CONNECT;
 import static org.kurento.jsonrpc.internal.JsonRpcConstants.METHOD_PING;
 
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.List;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -46,6 +51,7 @@ import org.kurento.jsonrpc.internal.JsonRpcRequestSenderHelper;
 import org.kurento.jsonrpc.internal.client.ClientSession;
 import org.kurento.jsonrpc.internal.client.TransactionImpl.ResponseSender;
 import org.kurento.jsonrpc.internal.ws.PendingRequests;
+import org.kurento.jsonrpc.internal.ws.ReplayBuffer;
 import org.kurento.jsonrpc.message.Message;
 import org.kurento.jsonrpc.message.MessageUtils;
 import org.kurento.jsonrpc.message.Request;
@@ -71,17 +77,28 @@ public abstract class AbstractJsonRpcClientWebSocket extends JsonRpcClient {
   private long requestTimeout =
       PropertiesManager.getProperty("jsonRpcClientWebSocket.timeout", 60000);
 
+  private boolean propagateDeadline =
+      PropertiesManager.getProperty("jsonRpcClientWebSocket.propagateDeadline", false);
+
   protected static final int maxPacketSize =
       PropertiesManager.getProperty("jsonRpcClientWebSocket.packetSize", 1000000);
 
   private volatile ExecutorService reqResEventExec;
   private volatile ScheduledExecutorService disconnectExec;
+  private volatile ExecutorService controlExec;
+  private volatile ExecutorService serverRequestExec;
 
   protected URI uri;
 
   private final PendingRequests pendingRequests = new PendingRequests();
   private ResponseSender rs;
 
+  private final int replayBufferSize =
+      PropertiesManager.getProperty("jsonRpcClientWebSocket.replayBufferSize", 0);
+  private final ReplayBuffer replayBuffer =
+      replayBufferSize > 0 ? new ReplayBuffer(replayBufferSize) : null;
+  private long lastReceivedSeq;
+
   private JsonRpcWSConnectionListener connectionListener;
   private Handler connectedHandler;
   private Handler connectionFailedHandler;
@@ -157,6 +174,23 @@ public abstract class AbstractJsonRpcClientWebSocket extends JsonRpcClient {
     return requestTimeout;
   }
 
+  /**
+   * Configures if requests sent by this client should include a deadline based on the request
+   * timeout. The server discards requests whose deadline has been reached before processing them.
+   * As the deadline is an absolute time, client and server clocks should be synchronized.
+   *
+   * By default propagateDeadline is false.
+   *
+   * @param propagateDeadline
+   */
+  public void setPropagateDeadline(boolean propagateDeadline) {
+    this.propagateDeadline = propagateDeadline;
+  }
+
+  public boolean isPropagateDeadline() {
+    return propagateDeadline;
+  }
+
   /**
    * Configures if this client should send a close message to server when close() method is invoked.
    * This close message is used to inform the server that client explicitly closed the connection.
@@ -184,10 +218,9 @@ public abstract class AbstractJsonRpcClientWebSocket extends JsonRpcClient {
   /**
    * Configures how requests from server have to be processed. If concurrentServerRequest is true,
    * then a executor service with several threads is used to execute the handler of the request. If
-   * concurrentServerRequest is false, the websocket library thread is used to execute the handler.
-   * In the current implementation (using Jetty as websocket client), this means that handler is
-   * executed sequentially. That is problematic if a synchronous request in sent to server in a
-   * handler because a deadlock is produced.
+   * concurrentServerRequest is false, a single thread executes the handlers sequentially, in the
+   * same order the requests were received. In both cases the websocket library thread is kept free
+   * to read responses, so pongs are not delayed by slow handlers.
    *
    * By default, concurrentServerRequest is true.
    *
@@ -342,10 +375,26 @@ public abstract class AbstractJsonRpcClientWebSocket extends JsonRpcClient {
           disconnectExec = Executors.newScheduledThreadPool(1,
               ThreadFactoryCreator.create("AbstractJsonRpcClientWebSocket-disconnectExec"));
         }
+
+        if (controlExec == null || controlExec.isShutdown() || controlExec.isTerminated()) {
+          controlExec = Executors.newSingleThreadExecutor(
+              ThreadFactoryCreator.create("AbstractJsonRpcClientWebSocket-controlExec"));
+        }
+
+        if (serverRequestExec == null || serverRequestExec.isShutdown()
+            || serverRequestExec.isTerminated()) {
+          serverRequestExec = Executors.newSingleThreadExecutor(
+              ThreadFactoryCreator.create("AbstractJsonRpcClientWebSocket-serverRequestExec"));
+        }
       }
     }
   }
 
+  private static boolean isControlMethod(String method) {
+    return METHOD_PING.equals(method) || METHOD_CONNECT.equals(method)
+        || METHOD_CLOSE.equals(method) || METHOD_CANCEL.equals(method);
+  }
+
   protected <P, R> Response<R> internalSendRequestWebSocket(Request<P> request,
       Class<R> resultClass) throws IOException {
 
@@ -355,6 +404,7 @@ public abstract class AbstractJsonRpcClientWebSocket extends JsonRpcClient {
 
     if (request.getId() != null) {
       responseFuture = pendingRequests.prepareResponse(request.getId());
+      setDeadlineIfNecessary(request);
     }
 
     boolean isPing = false;
@@ -366,7 +416,7 @@ public abstract class AbstractJsonRpcClientWebSocket extends JsonRpcClient {
       log.debug("{} Req-> {}", label, jsonMessage.trim());
     }
 
-    sendTextMessage(jsonMessage);
+    sendMessage(jsonMessage, request.getMethod());
 
     if (responseFuture == null) {
       return null;
@@ -395,6 +445,9 @@ public abstract class AbstractJsonRpcClientWebSocket extends JsonRpcClient {
     } catch (ExecutionException e) {
       throw new JsonRpcException(label + " This exception shouldn't be thrown", e);
     } catch (TimeoutException e) {
+      if (!isPing) {
+        sendCancelNotification(request);
+      }
       throw new JsonRpcException(label + " Timeout of " + requestTimeout
           + " milliseconds waiting from response to request " + jsonMessage.trim(), e);
     }
@@ -412,6 +465,7 @@ public abstract class AbstractJsonRpcClientWebSocket extends JsonRpcClient {
 
       if (request.getId() != null) {
         responseFuture = pendingRequests.prepareResponse(request.getId());
+        setDeadlineIfNecessary(request);
       }
 
       final boolean isPing;
@@ -424,8 +478,11 @@ public abstract class AbstractJsonRpcClientWebSocket extends JsonRpcClient {
         log.debug("{} Req-> {}", label, jsonMessage.trim());
       }
 
-      sendTextMessage(jsonMessage);
+      sendMessage(jsonMessage, request.getMethod());
 
+      // No cancel message is sent for asynchronous requests: the client has no timeout for them,
+      // so it never gives up waiting. When deadlines are propagated, the server discards them
+      // once expired, the same as it does with cancelled requests.
       if (responseFuture != null) {
 
         createExecServiceIfNecessary();
@@ -460,7 +517,7 @@ public abstract class AbstractJsonRpcClientWebSocket extends JsonRpcClient {
           public void onFailure(Throwable thrown) {
             continuation.onError(thrown);
           }
-        }, reqResEventExec);
+        }, isControlMethod(request.getMethod()) ? controlExec : reqResEventExec);
 
       }
 
@@ -469,6 +526,67 @@ public abstract class AbstractJsonRpcClientWebSocket extends JsonRpcClient {
     }
   }
 
+  /**
+   * Sends a message to the server. If the replay buffer is enabled, application messages are
+   * numbered and kept, so they can be resent if they are lost while reconnecting.
+   */
+  private void sendMessage(String jsonMessage, String method) throws IOException {
+
+    if (replayBuffer == null || (method != null && isControlMethod(method))) {
+      sendTextMessage(jsonMessage);
+      return;
+    }
+
+    synchronized (replayBuffer) {
+      String sequencedMessage = replayBuffer.sequence(jsonMessage);
+      try {
+        sendTextMessage(sequencedMessage);
+      } catch (IOException | RuntimeException e) {
+        if (isClosedByUser() || !replayBuffer.isStored(replayBuffer.getLastSeq())) {
+          throw e;
+        }
+        log.debug("{} Message kept for replay after reconnection: {}", label, e.getMessage());
+      }
+    }
+  }
+
+  private synchronized boolean acceptInboundSequence(long seq) {
+    if (seq <= lastReceivedSeq) {
+      return false;
+    }
+    lastReceivedSeq = seq;
+    return true;
+  }
+
+  private synchronized long getLastReceivedSequence() {
+    return lastReceivedSeq;
+  }
+
+  private synchronized void resetSequences() {
+    lastReceivedSeq = 0;
+    if (replayBuffer != null) {
+      replayBuffer.reset();
+    }
+  }
+
+  private void setDeadlineIfNecessary(Request<?> request) {
+    if (propagateDeadline && request.getDeadline() == null
+        && !METHOD_PING.equals(request.getMethod())) {
+      request.setDeadline(System.currentTimeMillis() + requestTimeout);
+    }
+  }
+
+  private void sendCancelNotification(Request<?> request) {
+    try {
+      JsonObject params = new JsonObject();
+      params.addProperty(CANCEL_REQUEST_ID_PROPERTY, request.getId());
+      rsHelper.sendNotification(METHOD_CANCEL, params);
+    } catch (Exception e) {
+      log.debug("{} Exception sending cancel message for request {}: {}", label,
+          request.getId(), e.getMessage());
+    }
+  }
+
   @Override
   public void close() throws IOException {
 
@@ -510,6 +628,16 @@ public abstract class AbstractJsonRpcClientWebSocket extends JsonRpcClient {
       reqResEventExec = null;
     }
 
+    if (serverRequestExec != null) {
+      serverRequestExec.shutdown();
+      serverRequestExec = null;
+    }
+
+    if (controlExec != null) {
+      controlExec.shutdown();
+      controlExec = null;
+    }
+
     if (disconnectExec != null && shutdownReconnectThread) {
       try {
         disconnectExec.shutdownNow();
@@ -554,6 +682,12 @@ public abstract class AbstractJsonRpcClientWebSocket extends JsonRpcClient {
 
       JsonObject jsonMessage = fromJson(message, JsonObject.class);
 
+      Long seq = ReplayBuffer.getSequence(jsonMessage);
+      if (seq != null && !acceptInboundSequence(seq)) {
+        log.debug("{} Discarding duplicated message with seq {}", label, seq);
+        return;
+      }
+
       if (jsonMessage.has(JsonRpcConstants.METHOD_PROPERTY)) {
         handleRequestFromServer(jsonMessage);
       } else {
@@ -580,11 +714,18 @@ public abstract class AbstractJsonRpcClientWebSocket extends JsonRpcClient {
 
     } else {
 
-      try {
-        handlerManager.handleRequest(session, fromJsonRequest(message, JsonElement.class), rs);
-      } catch (Exception e) {
-        log.warn("{} Exception processing request {}", label, message, e);
-      }
+      createExecServiceIfNecessary();
+
+      serverRequestExec.submit(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            handlerManager.handleRequest(session, fromJsonRequest(message, JsonElement.class), rs);
+          } catch (Exception e) {
+            log.warn("{} Exception processing request {}", label, message, e);
+          }
+        }
+      });
     }
   }
 
@@ -785,7 +926,22 @@ public abstract class AbstractJsonRpcClientWebSocket extends JsonRpcClient {
 
   boolean executeConnectProtocol() throws IOException {
     try {
-      rsHelper.sendRequest(METHOD_CONNECT, String.class);
+      long lastSeq = getLastReceivedSequence();
+      if (lastSeq > 0 || replayBuffer != null) {
+
+        JsonObject params = new JsonObject();
+        params.addProperty(LAST_SEQUENCE_PROPERTY, lastSeq);
+        JsonElement result = rsHelper.sendRequest(METHOD_CONNECT, params, JsonElement.class);
+
+        // Servers supporting session resumption answer with the last message received
+        if (result != null && result.isJsonObject()
+            && ((JsonObject) result).has(LAST_SEQUENCE_PROPERTY)) {
+          replayMessagesAfter(((JsonObject) result).get(LAST_SEQUENCE_PROPERTY).getAsLong());
+        }
+
+      } else {
+        rsHelper.sendRequest(METHOD_CONNECT, String.class);
+      }
 
       log.debug("{} Reconnected to the same session in server {}", label, uri);
 
@@ -797,6 +953,7 @@ public abstract class AbstractJsonRpcClientWebSocket extends JsonRpcClient {
       if (e.getCode() == 40007) {
 
         pendingRequests.closeAllPendingRequests();
+        resetSequences();
 
         try {
 
@@ -819,13 +976,33 @@ public abstract class AbstractJsonRpcClientWebSocket extends JsonRpcClient {
     }
   }
 
+  private void replayMessagesAfter(long lastSeq) throws IOException {
+
+    if (replayBuffer == null) {
+      return;
+    }
+
+    synchronized (replayBuffer) {
+      if (!replayBuffer.canReplayAfter(lastSeq)) {
+        log.warn("{} Some messages sent after seq {} are no longer buffered and can not be resent",
+            label, lastSeq);
+      }
+      List<String> messages = replayBuffer.getMessagesAfter(lastSeq);
+      log.debug("{} Resending {} messages after seq {}", label, messages.size(), lastSeq);
+      for (String message : messages) {
+        sendTextMessage(message);
+      }
+      replayBuffer.acknowledge(lastSeq);
+    }
+  }
+
   void configureResponseSender() {
     rs = new ResponseSender() {
       @Override
       public void sendResponse(Message message) throws IOException {
         String jsonMessage = message.toString();
         log.debug("{} <-Res {}", label, jsonMessage);
-        sendTextMessage(jsonMessage);
+        sendMessage(jsonMessage, null);
       }
 
       @Override
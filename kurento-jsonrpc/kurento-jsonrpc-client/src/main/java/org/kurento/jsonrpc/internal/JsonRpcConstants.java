@@ -45,6 +45,14 @@ public class JsonRpcConstants {
 
   public static final String SESSION_ID_PROPERTY = "sessionId";
 
+  public static final String DEADLINE_PROPERTY = "deadline";
+
+  public static final String CANCEL_REQUEST_ID_PROPERTY = "requestId";
+
+  public static final String SEQUENCE_PROPERTY = "seq";
+
+  public static final String LAST_SEQUENCE_PROPERTY = "lastSeq";
+
   public static final String METHOD_START = "start";
 
   public static final String METHOD_TERMINATE = "terminate";
@@ -59,6 +67,8 @@ public class JsonRpcConstants {
 
   public static final String METHOD_CLOSE = "closeSession";
 
+  public static final String METHOD_CANCEL = "cancelRequest";
+
   public static final String PONG_PAYLOAD = "value";
 
   public static final String PONG = "pong";
@@ -87,4 +97,6 @@ public class JsonRpcConstants {
 
   public static final int ERROR_SERVER_ERROR = -32000;
 
+  public static final int ERROR_SERVER_BUSY = -32001;
+
 }
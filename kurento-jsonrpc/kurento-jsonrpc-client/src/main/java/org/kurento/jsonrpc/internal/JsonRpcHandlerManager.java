@@ -88,11 +88,25 @@ public class JsonRpcHandlerManager {
     }
   }
 
-  @SuppressWarnings({ "rawtypes", "unchecked" })
   public void handleRequest(Session session, Request<JsonElement> request, ResponseSender rs) {
+    handleRequest(session, request, rs, new TransactionImpl(session, request, rs));
+  }
+
+  /**
+   * Handles the request using a transaction created by the caller. This allows the caller to keep
+   * track of in-flight transactions (for example, to cancel them when the client gives up).
+   */
+  @SuppressWarnings({ "rawtypes", "unchecked" })
+  public void handleRequest(Session session, Request<JsonElement> request, ResponseSender rs,
+      TransactionImpl tx) {
 
     try {
 
+      if (tx.isCancelled()) {
+        log.debug("Request {} cancelled before being processed. Discarding it", request);
+        return;
+      }
+
       if (handler == null) {
         log.warn("JsonRpcClient has received a request from server but"
             + " there is no JsonRpcHandler configured to manage this" + " request");
@@ -124,10 +138,9 @@ public class JsonRpcHandlerManager {
 
       JsonRpcHandler nonGenHandler = handler;
 
-      TransactionImpl tx = new TransactionImpl(session, request, rs);
       nonGenHandler.handleRequest(tx, nonGenRequest);
 
-      if (!tx.isAsync() && request.getId() != null) {
+      if (!tx.isAsync() && request.getId() != null && !tx.isCancelled()) {
 
         log.debug("Request {} is processed asynchronously", request);
 
@@ -144,6 +157,10 @@ public class JsonRpcHandlerManager {
       // TODO Maybe use the pattern handleUncaughtException
       log.error("Exception while processing request {}", request, e);
 
+      if (tx.isCancelled()) {
+        return;
+      }
+
       ResponseError error = ResponseError.newFromException(e);
       try {
         rs.sendResponse(new Response<>(request.getId(), error));
@@ -29,6 +29,7 @@ public abstract class AbstractTransaction implements Transaction {
 
   protected final Session session;
   protected boolean async;
+  protected volatile boolean cancelled;
   protected final Request<?> request;
 
   public AbstractTransaction(Session session, Request<?> request) {
@@ -88,6 +89,19 @@ public abstract class AbstractTransaction implements Transaction {
     internalSendResponse(response);
   }
 
+  public void cancel() {
+    cancelled = true;
+  }
+
+  /**
+   * Returns true if the client has cancelled the request associated to this transaction (or its
+   * deadline has been reached). Handlers performing long operations can check this flag to stop
+   * early. Responses sent in a cancelled transaction are silently discarded.
+   */
+  public boolean isCancelled() {
+    return cancelled || request.isExpired();
+  }
+
   @Override
   public boolean isNotification() {
     return request.getId() == null;
@@ -27,9 +27,13 @@ import org.kurento.jsonrpc.client.RequestAlreadyRespondedException;
 import org.kurento.jsonrpc.message.Message;
 import org.kurento.jsonrpc.message.Request;
 import org.kurento.jsonrpc.message.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class TransactionImpl extends AbstractTransaction {
 
+  private static final Logger log = LoggerFactory.getLogger(TransactionImpl.class);
+
   public interface ResponseSender {
     void sendResponse(Message message) throws IOException;
 
@@ -38,12 +42,21 @@ public class TransactionImpl extends AbstractTransaction {
 
   private final AtomicBoolean responded = new AtomicBoolean(false);
   private final ResponseSender responseSender;
+  private volatile Runnable completionListener;
 
   public TransactionImpl(Session session, Request<?> request, ResponseSender responseSender) {
     super(session, request);
     this.responseSender = responseSender;
   }
 
+  /**
+   * Sets a task to be executed once the response of this transaction has been sent, or discarded
+   * because the request was cancelled.
+   */
+  public void setCompletionListener(Runnable completionListener) {
+    this.completionListener = completionListener;
+  }
+
   public boolean setRespondedIfNot() {
     return responded.compareAndSet(false, true);
   }
@@ -54,15 +67,28 @@ public class TransactionImpl extends AbstractTransaction {
 
     if (notResponded) {
 
-      if (response.getSessionId() == null && INJECT_SESSION_ID) {
-        response.setSessionId(session.getSessionId());
-      }
+      try {
 
-      if (response.getId() == null) {
-        response.setId(request.getId());
-      }
+        if (isCancelled()) {
+          log.debug("Discarding response {} to cancelled request {}", response, request.getId());
+          return;
+        }
 
-      responseSender.sendResponse(response);
+        if (response.getSessionId() == null && INJECT_SESSION_ID) {
+          response.setSessionId(session.getSessionId());
+        }
+
+        if (response.getId() == null) {
+          response.setId(request.getId());
+        }
+
+        responseSender.sendResponse(response);
+
+      } finally {
+        if (completionListener != null) {
+          completionListener.run();
+        }
+      }
 
     } else {
       throw new RequestAlreadyRespondedException("This request has already been responded");
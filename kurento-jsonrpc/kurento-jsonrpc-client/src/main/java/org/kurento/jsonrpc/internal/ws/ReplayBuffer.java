@@ -0,0 +1,148 @@
+/*
+ * (C) Copyright 2013 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc.internal.ws;
+
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.SEQUENCE_PROPERTY;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * Numbers the outbound messages of a session and keeps the last ones, so they can be resent when
+ * the peer reconnects stating the last sequence number it received. Sequence numbers start at 1
+ * and are sent in the top level <code>seq</code> member of the message.
+ *
+ * <p>
+ * Callers that need the transport order to match the sequence order must hold the monitor of this
+ * object while numbering and writing a message.
+ */
+public class ReplayBuffer {
+
+  private static class Entry {
+
+    private final long seq;
+    private final String message;
+
+    private Entry(long seq, String message) {
+      this.seq = seq;
+      this.message = message;
+    }
+  }
+
+  private final int capacity;
+
+  private final ArrayDeque<Entry> entries;
+
+  private long lastSeq;
+
+  public ReplayBuffer(int capacity) {
+    this.capacity = capacity;
+    this.entries = new ArrayDeque<>(capacity);
+  }
+
+  /**
+   * Assigns the next sequence number to the message and stores it for replay.
+   *
+   * @return the message including its sequence number
+   */
+  public synchronized String sequence(String jsonMessage) {
+
+    long seq = ++lastSeq;
+    String message = addSequence(jsonMessage, seq);
+
+    if (entries.size() == capacity) {
+      entries.removeFirst();
+    }
+    entries.addLast(new Entry(seq, message));
+
+    return message;
+  }
+
+  /**
+   * Returns true if the message with the given sequence number is stored, so it can be replayed.
+   */
+  public synchronized boolean isStored(long seq) {
+    return !entries.isEmpty() && entries.getFirst().seq <= seq && seq <= entries.getLast().seq;
+  }
+
+  /**
+   * Returns the stored messages with sequence number greater than the given one, in order.
+   */
+  public synchronized List<String> getMessagesAfter(long seq) {
+    List<String> messages = new ArrayList<>();
+    for (Entry entry : entries) {
+      if (entry.seq > seq) {
+        messages.add(entry.message);
+      }
+    }
+    return messages;
+  }
+
+  /**
+   * Returns true if all the messages sent after the given sequence number are still stored, so
+   * that the peer can be fully resynchronized.
+   */
+  public synchronized boolean canReplayAfter(long seq) {
+    if (seq >= lastSeq) {
+      return true;
+    }
+    return !entries.isEmpty() && entries.getFirst().seq <= seq + 1;
+  }
+
+  /**
+   * Discards the stored messages acknowledged by the peer.
+   */
+  public synchronized void acknowledge(long seq) {
+    Iterator<Entry> it = entries.iterator();
+    while (it.hasNext() && it.next().seq <= seq) {
+      it.remove();
+    }
+  }
+
+  public synchronized long getLastSeq() {
+    return lastSeq;
+  }
+
+  public synchronized void reset() {
+    entries.clear();
+    lastSeq = 0;
+  }
+
+  /**
+   * Returns the sequence number of a received message, or null if it is not numbered.
+   */
+  public static Long getSequence(JsonObject message) {
+    JsonElement seq = message.get(SEQUENCE_PROPERTY);
+    return seq != null && seq.isJsonPrimitive() ? seq.getAsLong() : null;
+  }
+
+  static String addSequence(String jsonMessage, long seq) {
+    int start = jsonMessage.indexOf('{');
+    if (start == -1) {
+      throw new IllegalArgumentException("Message is not a JSON object: " + jsonMessage);
+    }
+    return jsonMessage.substring(0, start + 1) + "\"" + SEQUENCE_PROPERTY + "\":" + seq
+        + (jsonMessage.substring(start + 1).trim().startsWith("}") ? "" : ",")
+        + jsonMessage.substring(start + 1);
+  }
+}
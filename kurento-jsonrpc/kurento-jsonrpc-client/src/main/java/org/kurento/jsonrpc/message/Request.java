@@ -48,6 +48,12 @@ public class Request<P> extends Message {
    */
   protected P params;
 
+  /**
+   * Absolute time (in millis since epoch) after which the request is no longer useful for the
+   * client. Optional: a null deadline means that the request never expires.
+   */
+  private Long deadline;
+
   /**
    * Default constructor.
    */
@@ -119,4 +125,20 @@ public class Request<P> extends Message {
     return id == null;
   }
 
+  public Long getDeadline() {
+    return deadline;
+  }
+
+  public void setDeadline(Long deadline) {
+    this.deadline = deadline;
+  }
+
+  /**
+   * Returns true if the request has a deadline and it has already been reached, so there is no
+   * point in processing it.
+   */
+  public boolean isExpired() {
+    return deadline != null && System.currentTimeMillis() > deadline;
+  }
+
 }
\ No newline at end of file
@@ -0,0 +1,66 @@
+/*
+ * (C) Copyright 2013 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.kurento.jsonrpc.JsonUtils;
+import org.kurento.jsonrpc.internal.ws.ReplayBuffer;
+
+import com.google.gson.JsonObject;
+
+public class ReplayBufferTest {
+
+  @Test
+  public void testMessagesAreNumberedAndReplayed() {
+
+    ReplayBuffer buffer = new ReplayBuffer(3);
+
+    for (int i = 1; i <= 5; i++) {
+      String message = buffer.sequence("{\"jsonrpc\":\"2.0\",\"method\":\"m" + i + "\"}");
+      JsonObject json = JsonUtils.fromJson(message, JsonObject.class);
+      assertEquals(Long.valueOf(i), ReplayBuffer.getSequence(json));
+      assertEquals("m" + i, json.get("method").getAsString());
+    }
+
+    assertEquals(5, buffer.getLastSeq());
+
+    List<String> messages = buffer.getMessagesAfter(3);
+    assertEquals(2, messages.size());
+    assertTrue(buffer.canReplayAfter(3));
+    assertTrue(buffer.canReplayAfter(2));
+    assertFalse("Message 2 has been discarded", buffer.canReplayAfter(1));
+    assertTrue(buffer.isStored(5));
+    assertFalse(buffer.isStored(2));
+
+    buffer.acknowledge(4);
+    assertEquals(1, buffer.getMessagesAfter(0).size());
+  }
+
+  @Test
+  public void testEmptyObjectIsNumbered() {
+    ReplayBuffer buffer = new ReplayBuffer(1);
+    JsonObject json = JsonUtils.fromJson(buffer.sequence("{}"), JsonObject.class);
+    assertEquals(Long.valueOf(1), ReplayBuffer.getSequence(json));
+  }
+}
@@ -0,0 +1,88 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.kurento.jsonrpc.JsonUtils;
+import org.kurento.jsonrpc.internal.client.TransactionImpl;
+import org.kurento.jsonrpc.internal.client.TransactionImpl.ResponseSender;
+import org.kurento.jsonrpc.message.Message;
+import org.kurento.jsonrpc.message.Request;
+
+import com.google.gson.JsonObject;
+
+public class RequestDeadlineTest {
+
+  @Test
+  public void deadlineSerializationTest() {
+
+    Request<JsonObject> request = new Request<>(1, "method", new JsonObject());
+    request.setDeadline(12345L);
+
+    Request<JsonObject> newRequest =
+        JsonUtils.fromJsonRequest(request.toString(), JsonObject.class);
+
+    assertEquals(Long.valueOf(12345L), newRequest.getDeadline());
+    assertTrue(newRequest.isExpired());
+
+    Request<JsonObject> noDeadline =
+        JsonUtils.fromJsonRequest(new Request<>(2, "method", new JsonObject()).toString(),
+            JsonObject.class);
+
+    assertNull(noDeadline.getDeadline());
+    assertFalse(noDeadline.isExpired());
+  }
+
+  @Test
+  public void cancelledTransactionTest() throws IOException {
+
+    final List<Message> sent = new ArrayList<>();
+
+    ResponseSender rs = new ResponseSender() {
+      @Override
+      public void sendResponse(Message message) throws IOException {
+        sent.add(message);
+      }
+
+      @Override
+      public void sendPingResponse(Message message) throws IOException {
+        sent.add(message);
+      }
+    };
+
+    Request<JsonObject> request = new Request<>(1, "method", new JsonObject());
+    TransactionImpl tx = new TransactionImpl(null, request, rs);
+
+    assertFalse(tx.isCancelled());
+    tx.cancel();
+    assertTrue(tx.isCancelled());
+
+    tx.sendResponse("result");
+
+    assertTrue(sent.isEmpty());
+  }
+}
@@ -0,0 +1,41 @@
+/*
+ * (C) Copyright 2015 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc.metrics;
+
+import org.kurento.jsonrpc.internal.server.JsonRpcMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Exports the metrics of the JSON-RPC server in JSON format, grouped by handler path.
+ */
+@RestController
+public class JsonRpcMetricsController {
+
+  @Autowired
+  private JsonRpcMetrics metrics;
+
+  @RequestMapping(value = "/metrics", method = RequestMethod.GET,
+      produces = MediaType.APPLICATION_JSON_VALUE)
+  public String getMetrics() {
+    return metrics.toJson().toString();
+  }
+}
@@ -0,0 +1,48 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.kurento.jsonrpc.metrics;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import org.junit.Test;
+import org.kurento.jsonrpc.internal.server.JsonRpcMetrics;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+public class JsonRpcMetricsControllerTest {
+
+  @Test
+  public void metricsEndpointTest() throws Exception {
+
+    JsonRpcMetrics metrics = new JsonRpcMetrics();
+    metrics.getHandlerMetrics("/jsonrpc").requestProcessed("echo", 1000000);
+
+    JsonRpcMetricsController controller = new JsonRpcMetricsController();
+    ReflectionTestUtils.setField(controller, "metrics", metrics);
+    MockMvc mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
+
+    mockMvc.perform(get("/metrics")).andExpect(status().isOk())
+        .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+        .andExpect(content().string(containsString("\"/jsonrpc\":{\"requests\":1,")))
+        .andExpect(content().string(containsString("\"echo\":{\"requests\":1,")));
+  }
+}
@@ -74,6 +74,16 @@ public class JsonRpcHttpRequestHandler implements HttpRequestHandler {
     public void closeNativeSession(String reason) {
       throw new UnsupportedOperationException();
     }
+
+    @Override
+    public boolean isPushSupported() {
+      return false;
+    }
+
+    @Override
+    public void sendSerializedMessage(String jsonMessage) {
+      throw new UnsupportedOperationException("Server push is unavailable in HTTP sessions");
+    }
   }
 
   private final ProtocolManager protocolManager;
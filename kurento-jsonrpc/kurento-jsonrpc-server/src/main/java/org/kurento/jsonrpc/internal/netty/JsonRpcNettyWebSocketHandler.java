@@ -0,0 +1,225 @@
+/*
+ * (C) Copyright 2013 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc.internal.netty;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.kurento.commons.PropertiesManager;
+import org.kurento.jsonrpc.internal.client.TransactionImpl.ResponseSender;
+import org.kurento.jsonrpc.internal.server.ProtocolManager;
+import org.kurento.jsonrpc.internal.server.ProtocolManager.ServerSessionFactory;
+import org.kurento.jsonrpc.internal.server.ServerSession;
+import org.kurento.jsonrpc.internal.server.SessionsManager;
+import org.kurento.jsonrpc.internal.ws.CloseStatusHelper;
+import org.kurento.jsonrpc.message.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.codec.http.websocketx.CloseWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.PingWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.PongWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+
+/**
+ * Netty counterpart of {@link org.kurento.jsonrpc.internal.ws.JsonRpcWebSocketHandler}. It is
+ * installed in the pipeline of a channel once the WebSocket handshake has been completed, and
+ * hands every text message to the {@link ProtocolManager} in the event loop thread. Application
+ * requests are then executed in the session executor, so the event loop is never blocked by
+ * handlers.
+ */
+public class JsonRpcNettyWebSocketHandler extends SimpleChannelInboundHandler<WebSocketFrame> {
+
+  private static final long MAX_WS_CONNECTIONS =
+      PropertiesManager.getProperty("ws.maxSessions", Long.MAX_VALUE);
+
+  private static final AtomicLong numConnections = new AtomicLong();
+
+  private static final Logger log = LoggerFactory.getLogger(JsonRpcNettyWebSocketHandler.class);
+
+  private final ProtocolManager protocolManager;
+
+  private final String label;
+
+  private boolean counted;
+
+  private int closeCode = 1006;
+
+  private String closeReason;
+
+  public JsonRpcNettyWebSocketHandler(ProtocolManager protocolManager, String label) {
+    this.protocolManager = protocolManager;
+    this.label = label == null ? "" : "[" + label + "] ";
+  }
+
+  /**
+   * Invoked when the handshake of the channel has been completed.
+   *
+   * @return false if the connection has been rejected
+   */
+  boolean connectionEstablished(Channel channel) {
+
+    while (true) {
+      long curNumConn = numConnections.get();
+      if (curNumConn >= MAX_WS_CONNECTIONS) {
+        log.warn("Closed a WS connection because MAX_WS_CONNECTIONS={} limit reached",
+            MAX_WS_CONNECTIONS);
+        channel.writeAndFlush(new CloseWebSocketFrame(1013, "Too many connections"))
+            .addListener(ChannelFutureListener.CLOSE);
+        return false;
+      }
+      if (numConnections.compareAndSet(curNumConn, curNumConn + 1)) {
+        counted = true;
+        break;
+      }
+    }
+
+    log.debug("{} Client connection established from {} with transportId {}", label,
+        channel.remoteAddress(), NettyServerSession.transportIdOf(channel));
+
+    return true;
+  }
+
+  @Override
+  protected void channelRead0(ChannelHandlerContext ctx, WebSocketFrame frame) throws Exception {
+
+    if (frame instanceof TextWebSocketFrame) {
+      handleTextMessage(ctx.channel(), ((TextWebSocketFrame) frame).text());
+    } else if (frame instanceof PingWebSocketFrame) {
+      ctx.writeAndFlush(new PongWebSocketFrame(frame.content().retain()));
+    } else if (frame instanceof CloseWebSocketFrame) {
+      CloseWebSocketFrame closeFrame = (CloseWebSocketFrame) frame;
+      closeCode = closeFrame.statusCode();
+      closeReason = closeFrame.reasonText();
+      ctx.writeAndFlush(closeFrame.retainedDuplicate()).addListener(ChannelFutureListener.CLOSE);
+    } else if (!(frame instanceof PongWebSocketFrame)) {
+      log.warn("{} Ignoring unsupported frame {} in transportId {}", label,
+          frame.getClass().getSimpleName(), NettyServerSession.transportIdOf(ctx.channel()));
+    }
+  }
+
+  private void handleTextMessage(final Channel channel, String messageJson) {
+
+    try {
+
+      ServerSessionFactory factory = new ServerSessionFactory() {
+        @Override
+        public ServerSession createSession(String sessionId, Object registerInfo,
+            SessionsManager sessionsManager) {
+          return new NettyServerSession(sessionId, registerInfo, sessionsManager, channel);
+        }
+
+        @Override
+        public void updateSessionOnReconnection(ServerSession session) {
+          ((NettyServerSession) session).updateChannel(channel);
+        }
+      };
+
+      protocolManager.processMessage(messageJson, factory, new ResponseSender() {
+        @Override
+        public void sendResponse(Message message) throws IOException {
+
+          String jsonMessage = message.toString();
+          log.debug("{} Res<- {}", label, jsonMessage);
+          sendJsonMessage(jsonMessage);
+        }
+
+        @Override
+        public void sendPingResponse(Message message) throws IOException {
+
+          String jsonMessage = message.toString();
+          log.trace("{} Res<- {}", label, jsonMessage);
+          sendJsonMessage(jsonMessage);
+        }
+
+        private void sendJsonMessage(String jsonMessage) {
+          if (channel.isActive()) {
+            channel.writeAndFlush(new TextWebSocketFrame(jsonMessage));
+            protocolManager.getHandlerMetrics().messageSent(jsonMessage);
+          } else {
+            log.error("Trying to send a message to a closed session");
+          }
+        }
+      }, NettyServerSession.transportIdOf(channel));
+
+    } catch (Throwable t) {
+      log.error("{} Exception processing request {}.", label, messageJson, t);
+    }
+  }
+
+  @Override
+  public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+
+    if (counted) {
+      numConnections.decrementAndGet();
+    }
+
+    String transportId = NettyServerSession.transportIdOf(ctx.channel());
+
+    try {
+      ServerSession session = (ServerSession) protocolManager.getSessionByTransportId(transportId);
+
+      if (session != null) {
+
+        if (session.isGracefullyClosed()) {
+
+          log.debug("{} WebSocket session {} with transportId {} closed gracefully", label,
+              session.getSessionId(), transportId);
+
+        } else {
+
+          log.debug(
+              "{} WebSocket session {} with transportId {} closed for {} (code {}, reason '{}')",
+              label, session.getSessionId(), transportId,
+              CloseStatusHelper.getCloseStatusType(closeCode), closeCode, closeReason);
+
+          protocolManager.closeSessionIfTimeout(transportId, closeReason);
+        }
+      } else {
+        log.debug(
+            "{} WebSocket session not associated to any jsonRpcSession "
+                + "with transportId {} closed for {} (code {}, reason '{}')",
+            label, transportId, CloseStatusHelper.getCloseStatusType(closeCode), closeCode,
+            closeReason);
+      }
+
+    } catch (Throwable t) {
+      log.error("{} Exception processing channelInactive in transportId={}", label, transportId,
+          t);
+    }
+
+    super.channelInactive(ctx);
+  }
+
+  @Override
+  public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+
+    String transportId = NettyServerSession.transportIdOf(ctx.channel());
+    try {
+      protocolManager.processTransportError(transportId, cause);
+    } catch (Throwable t) {
+      log.error(label + "Exception processing transportError in transportId={}", transportId, t);
+    }
+    ctx.close();
+  }
+}
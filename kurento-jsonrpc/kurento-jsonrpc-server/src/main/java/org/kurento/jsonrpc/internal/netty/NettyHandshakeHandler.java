@@ -0,0 +1,174 @@
+/*
+ * (C) Copyright 2013 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc.internal.netty;
+
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+
+import org.kurento.jsonrpc.JsonRpcHandler;
+import org.kurento.jsonrpc.internal.server.ProtocolManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.QueryStringDecoder;
+import io.netty.handler.codec.http.websocketx.WebSocketFrameAggregator;
+import io.netty.handler.codec.http.websocketx.WebSocketServerHandshaker;
+import io.netty.handler.codec.http.websocketx.WebSocketServerHandshakerFactory;
+import io.netty.util.CharsetUtil;
+
+/**
+ * Routes WebSocket upgrade requests to the {@link ProtocolManager} registered for the requested
+ * path. Once the handshake is completed, this handler is replaced in the pipeline by a
+ * {@link JsonRpcNettyWebSocketHandler}.
+ */
+@Sharable
+public class NettyHandshakeHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
+
+  private static final Logger log = LoggerFactory.getLogger(NettyHandshakeHandler.class);
+
+  public static class Endpoint {
+
+    private final JsonRpcHandler<?> handler;
+    private final ProtocolManager protocolManager;
+
+    public Endpoint(JsonRpcHandler<?> handler, ProtocolManager protocolManager) {
+      this.handler = handler;
+      this.protocolManager = protocolManager;
+    }
+
+    public JsonRpcHandler<?> getHandler() {
+      return handler;
+    }
+
+    public ProtocolManager getProtocolManager() {
+      return protocolManager;
+    }
+  }
+
+  private final Map<String, Endpoint> endpoints;
+
+  private final int maxMessageSize;
+
+  public NettyHandshakeHandler(Map<String, Endpoint> endpoints, int maxMessageSize) {
+    this.endpoints = endpoints;
+    this.maxMessageSize = maxMessageSize;
+  }
+
+  @Override
+  protected void channelRead0(ChannelHandlerContext ctx, FullHttpRequest req) throws Exception {
+
+    if (!req.decoderResult().isSuccess()) {
+      sendHttpResponse(ctx, req, HttpResponseStatus.BAD_REQUEST);
+      return;
+    }
+
+    String path = new QueryStringDecoder(req.uri()).path();
+    Endpoint endpoint = endpoints.get(path);
+    if (endpoint == null) {
+      sendHttpResponse(ctx, req, HttpResponseStatus.NOT_FOUND);
+      return;
+    }
+
+    if (!isOriginAllowed(endpoint.getHandler(), req)) {
+      log.debug("Rejected WebSocket handshake to {} from origin {}", path,
+          req.headers().get(HttpHeaderNames.ORIGIN));
+      sendHttpResponse(ctx, req, HttpResponseStatus.FORBIDDEN);
+      return;
+    }
+
+    String location = "ws://" + req.headers().get(HttpHeaderNames.HOST) + path;
+    WebSocketServerHandshakerFactory factory =
+        new WebSocketServerHandshakerFactory(location, null, true, maxMessageSize);
+    WebSocketServerHandshaker handshaker = factory.newHandshaker(req);
+
+    if (handshaker == null) {
+      WebSocketServerHandshakerFactory.sendUnsupportedVersionResponse(ctx.channel());
+      return;
+    }
+
+    // Replaced before the handshake response is written, so no frame can reach this handler
+    JsonRpcNettyWebSocketHandler wsHandler = new JsonRpcNettyWebSocketHandler(
+        endpoint.getProtocolManager(), endpoint.getHandler().getLabel());
+    ctx.pipeline().addAfter(ctx.name(), "wsAggregator", new WebSocketFrameAggregator(
+        maxMessageSize));
+    ctx.pipeline().addAfter("wsAggregator", "jsonRpcHandler", wsHandler);
+    ctx.pipeline().remove(this);
+
+    handshaker.handshake(ctx.channel(), req);
+
+    wsHandler.connectionEstablished(ctx.channel());
+  }
+
+  private boolean isOriginAllowed(JsonRpcHandler<?> handler, FullHttpRequest req) {
+
+    String origin = req.headers().get(HttpHeaderNames.ORIGIN);
+    if (origin == null) {
+      return true;
+    }
+
+    List<String> allowedOrigins = handler.allowedOrigins();
+    if (allowedOrigins.contains("*") || allowedOrigins.contains(origin)) {
+      return true;
+    }
+
+    // Same origin requests are always allowed, as in the Spring WebSocket transport
+    try {
+      URI originUri = new URI(origin);
+      String host = req.headers().get(HttpHeaderNames.HOST);
+      String originHost = originUri.getPort() == -1 ? originUri.getHost()
+          : originUri.getHost() + ":" + originUri.getPort();
+      return originHost != null && originHost.equalsIgnoreCase(host);
+    } catch (Exception e) {
+      return false;
+    }
+  }
+
+  private static void sendHttpResponse(ChannelHandlerContext ctx, FullHttpRequest req,
+      HttpResponseStatus status) {
+
+    FullHttpResponse res = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, status,
+        Unpooled.copiedBuffer(status.toString(), CharsetUtil.UTF_8));
+    HttpUtil.setContentLength(res, res.content().readableBytes());
+
+    if (HttpUtil.isKeepAlive(req)) {
+      ctx.writeAndFlush(res);
+    } else {
+      ctx.writeAndFlush(res).addListener(ChannelFutureListener.CLOSE);
+    }
+  }
+
+  @Override
+  public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+    log.warn("Exception processing WebSocket handshake from {}", ctx.channel().remoteAddress(),
+        cause);
+    ctx.close();
+  }
+}
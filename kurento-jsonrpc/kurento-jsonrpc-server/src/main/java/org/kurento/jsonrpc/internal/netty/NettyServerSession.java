@@ -0,0 +1,247 @@
+/*
+ * (C) Copyright 2013 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc.internal.netty;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.kurento.commons.PropertiesManager;
+import org.kurento.commons.exception.KurentoException;
+import org.kurento.jsonrpc.JsonRpcException;
+import org.kurento.jsonrpc.JsonUtils;
+import org.kurento.jsonrpc.TransportException;
+import org.kurento.jsonrpc.client.Continuation;
+import org.kurento.jsonrpc.internal.JsonRpcRequestSenderHelper;
+import org.kurento.jsonrpc.internal.server.ServerSession;
+import org.kurento.jsonrpc.internal.server.SessionsManager;
+import org.kurento.jsonrpc.internal.ws.PendingRequests;
+import org.kurento.jsonrpc.message.MessageUtils;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.message.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.gson.JsonElement;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.handler.codec.http.websocketx.CloseWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+
+/**
+ * {@link ServerSession} whose transport is a Netty WebSocket channel. Writes never block the
+ * caller: frames are handed to the channel event loop, which flushes them in order.
+ */
+public class NettyServerSession extends ServerSession {
+
+  private static final long TIMEOUT =
+      PropertiesManager.getProperty("jsonRpcServerWebSocket.timeout", 10000);
+
+  private static final Logger log = LoggerFactory.getLogger(NettyServerSession.class);
+
+  private volatile Channel channel;
+
+  private final PendingRequests pendingRequests = new PendingRequests();
+
+  public NettyServerSession(String sessionId, Object registerInfo,
+      SessionsManager sessionsManager, Channel channel) {
+
+    super(sessionId, registerInfo, sessionsManager, transportIdOf(channel));
+
+    this.channel = channel;
+
+    this.enableReplayBuffer();
+
+    this.setRsHelper(new JsonRpcRequestSenderHelper(sessionId) {
+      @Override
+      public <P, R> Response<R> internalSendRequest(Request<P> request, Class<R> resultClass)
+          throws IOException {
+        return sendRequestWebSocket(request, resultClass);
+      }
+
+      @Override
+      protected void internalSendRequest(Request<? extends Object> request,
+          Class<JsonElement> resultClass, Continuation<Response<JsonElement>> continuation) {
+        sendRequestWebSocket(request, continuation);
+      }
+    });
+  }
+
+  /**
+   * Returns the identifier used as transportId for the given channel.
+   */
+  public static String transportIdOf(Channel channel) {
+    return channel.id().asLongText();
+  }
+
+  private void sendRequestWebSocket(Request<? extends Object> request,
+      final Continuation<Response<JsonElement>> continuation) {
+
+    log.debug("Req-> {}", request);
+
+    if (request.getId() == null) {
+      writeRequest(request);
+      try {
+        continuation.onSuccess(null);
+      } catch (Exception e) {
+        log.error("Exception while processing response", e);
+      }
+      return;
+    }
+
+    final ListenableFuture<Response<JsonElement>> responseFuture =
+        pendingRequests.prepareResponse(request.getId());
+
+    try {
+      writeRequest(request);
+    } catch (KurentoException e) {
+      responseFuture.cancel(false);
+      continuation.onError(e);
+      return;
+    }
+
+    final Integer requestId = request.getId();
+    channel.eventLoop().schedule(new Runnable() {
+      @Override
+      public void run() {
+        if (responseFuture.cancel(false)) {
+          continuation.onError(new TransportException("Timeout of " + TIMEOUT
+              + " milliseconds waiting from response to request with id:" + requestId));
+        }
+      }
+    }, TIMEOUT, TimeUnit.MILLISECONDS);
+
+    Futures.addCallback(responseFuture, new FutureCallback<Response<JsonElement>>() {
+      @Override
+      public void onSuccess(Response<JsonElement> result) {
+        log.debug("<-Res {}", result);
+        try {
+          continuation.onSuccess(result);
+        } catch (Exception e) {
+          log.error("Exception while processing response", e);
+        }
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        // Cancellation is reported by the timeout task
+      }
+    }, MoreExecutors.directExecutor());
+  }
+
+  private <P, R> Response<R> sendRequestWebSocket(Request<P> request, Class<R> resultClass) {
+
+    log.debug("Req-> {}", request);
+
+    ListenableFuture<Response<JsonElement>> responseFuture = null;
+
+    if (request.getId() != null) {
+      responseFuture = pendingRequests.prepareResponse(request.getId());
+    }
+
+    writeRequest(request);
+
+    if (responseFuture == null) {
+      return null;
+    }
+
+    if (channel.eventLoop().inEventLoop()) {
+      throw new JsonRpcException("Synchronous requests can not be sent from the transport thread");
+    }
+
+    Response<JsonElement> responseJsonObject;
+    try {
+      responseJsonObject = responseFuture.get(TIMEOUT, TimeUnit.MILLISECONDS);
+
+      log.debug("<-Res {}", responseJsonObject);
+
+    } catch (InterruptedException e) {
+      throw new JsonRpcException("Interrupted while waiting for a response", e);
+    } catch (ExecutionException e) {
+      throw new JsonRpcException("This exception shouldn't be thrown", e);
+    } catch (TimeoutException e) {
+      responseFuture.cancel(false);
+      throw new TransportException(
+          "Timeout of " + TIMEOUT + " milliseconds waiting from response to request with id:"
+              + request.getId() + ". Request: " + request,
+          e);
+    }
+
+    return MessageUtils.convertResponse(responseJsonObject, resultClass);
+  }
+
+  private void writeRequest(Request<?> request) {
+    String json = JsonUtils.toJson(request);
+    try {
+      sendJsonMessage(json);
+    } catch (IOException e) {
+      throw new KurentoException("Exception while sending message '" + json
+          + "' to websocket with transportId '" + getTransportId() + "'", e);
+    }
+  }
+
+  @Override
+  public void handleResponse(Response<JsonElement> response) {
+    pendingRequests.handleResponse(response);
+  }
+
+  @Override
+  public void sendSerializedMessage(String jsonMessage) throws IOException {
+    Channel ch = channel;
+    if (ch.isActive()) {
+      ch.writeAndFlush(new TextWebSocketFrame(jsonMessage));
+    } else {
+      throw new TransportException("WebSocket channel " + getTransportId() + " is closed");
+    }
+  }
+
+  public void updateChannel(Channel channel) {
+    this.channel = channel;
+  }
+
+  public Channel getChannel() {
+    return channel;
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      pendingRequests.closeAllPendingRequests();
+      channel.close();
+    } finally {
+      super.close();
+    }
+  }
+
+  @Override
+  public void closeNativeSession(String reason) {
+    Channel ch = channel;
+    if (ch.isActive()) {
+      ch.writeAndFlush(new CloseWebSocketFrame(1000, reason))
+          .addListener(ChannelFutureListener.CLOSE);
+    } else {
+      ch.close();
+    }
+  }
+}
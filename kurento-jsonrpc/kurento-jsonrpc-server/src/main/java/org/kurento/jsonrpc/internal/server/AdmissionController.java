@@ -0,0 +1,235 @@
+/*
+ * (C) Copyright 2013 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc.internal.server;
+
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.ERROR_SERVER_BUSY;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.kurento.commons.PropertiesManager;
+import org.kurento.jsonrpc.message.ResponseError;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonObject;
+
+/**
+ * Limits the amount of work accepted by the server. A request is rejected with a "server busy"
+ * error if its session has too many requests in-flight, if the number of requests queued in all
+ * sessions reaches a global limit or if the rate limit configured for its method is exceeded.
+ *
+ * Limits are read from the following properties:
+ * <ul>
+ * <li>{@value #MAX_IN_FLIGHT_PER_SESSION_PROPERTY}: max requests queued or executing per session.
+ * <li>{@value #MAX_QUEUED_REQUESTS_PROPERTY}: max requests queued or executing in all sessions.
+ * <li>{@value #METHOD_RATE_LIMITS_PROPERTY}: comma separated list of
+ * <code>method:permitsPerSecond[:burst]</code> entries.
+ * <li>{@value #BUSY_RETRY_AFTER_PROPERTY}: retry hint (in millis) sent when a queue is full.
+ * </ul>
+ * A value of 0 means no limit.
+ */
+public class AdmissionController {
+
+  private static final Logger log = LoggerFactory.getLogger(AdmissionController.class);
+
+  public static final String MAX_IN_FLIGHT_PER_SESSION_PROPERTY =
+      "jsonrpc.maxInFlightRequestsPerSession";
+
+  public static final String MAX_QUEUED_REQUESTS_PROPERTY = "jsonrpc.maxQueuedRequests";
+
+  public static final String METHOD_RATE_LIMITS_PROPERTY = "jsonrpc.methodRateLimits";
+
+  public static final String BUSY_RETRY_AFTER_PROPERTY = "jsonrpc.busyRetryAfter";
+
+  public static final String SERVER_BUSY_MESSAGE = "Server busy";
+
+  public static final String SERVER_BUSY_TYPE = "SERVER_BUSY";
+
+  public static final String RETRY_AFTER_PROPERTY = "retryAfter";
+
+  public static final String REASON_PROPERTY = "reason";
+
+  private static class TokenBucket {
+
+    private final double permitsPerNano;
+    private final double maxPermits;
+
+    private double storedPermits;
+    private long lastRefill = System.nanoTime();
+
+    public TokenBucket(double permitsPerSecond, int burst) {
+      this.permitsPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+      this.maxPermits = Math.max(1, burst);
+      this.storedPermits = maxPermits;
+    }
+
+    /**
+     * Takes a permit if available.
+     *
+     * @return 0 if the permit has been taken, or the time in millis until a permit will be
+     *         available
+     */
+    public synchronized long tryConsume() {
+
+      long now = System.nanoTime();
+      storedPermits = Math.min(maxPermits, storedPermits + (now - lastRefill) * permitsPerNano);
+      lastRefill = now;
+
+      if (storedPermits >= 1) {
+        storedPermits -= 1;
+        return 0;
+      }
+
+      double nanosToWait = (1 - storedPermits) / permitsPerNano;
+      return Math.max(1, TimeUnit.NANOSECONDS.toMillis((long) Math.ceil(nanosToWait)));
+    }
+  }
+
+  private final AtomicInteger queuedRequests = new AtomicInteger();
+
+  private final ConcurrentMap<String, TokenBucket> methodRateLimits = new ConcurrentHashMap<>();
+
+  private volatile int maxInFlightRequestsPerSession =
+      PropertiesManager.getProperty(MAX_IN_FLIGHT_PER_SESSION_PROPERTY, 0);
+
+  private volatile int maxQueuedRequests =
+      PropertiesManager.getProperty(MAX_QUEUED_REQUESTS_PROPERTY, 0);
+
+  private volatile long busyRetryAfterMillis =
+      PropertiesManager.getProperty(BUSY_RETRY_AFTER_PROPERTY, 1000);
+
+  public AdmissionController() {
+    parseMethodRateLimits(PropertiesManager.getProperty(METHOD_RATE_LIMITS_PROPERTY));
+  }
+
+  private void parseMethodRateLimits(String rateLimits) {
+
+    if (rateLimits == null || rateLimits.trim().isEmpty()) {
+      return;
+    }
+
+    for (String rateLimit : rateLimits.split(",")) {
+      String[] parts = rateLimit.trim().split(":");
+      try {
+        double permitsPerSecond = Double.parseDouble(parts[1]);
+        int burst = parts.length > 2 ? Integer.parseInt(parts[2]) : (int) permitsPerSecond;
+        setMethodRateLimit(parts[0], permitsPerSecond, burst);
+      } catch (RuntimeException e) {
+        log.warn("Invalid rate limit '{}' in property {}. It will be ignored", rateLimit,
+            METHOD_RATE_LIMITS_PROPERTY);
+      }
+    }
+  }
+
+  /**
+   * Tries to admit a new request in the given session. If the request is admitted, the caller
+   * must invoke {@link #release(ServerSession)} when the request has been processed.
+   *
+   * @return null if the request is admitted, or the error to be sent to the client otherwise
+   */
+  public ResponseError tryAdmit(ServerSession session, String method) {
+
+    int sessionRequests = session.incrementInFlightRequests();
+    if (maxInFlightRequestsPerSession > 0 && sessionRequests > maxInFlightRequestsPerSession) {
+      session.decrementInFlightRequests();
+      return createBusyError("Too many in-flight requests in session", busyRetryAfterMillis);
+    }
+
+    int globalRequests = queuedRequests.incrementAndGet();
+    if (maxQueuedRequests > 0 && globalRequests > maxQueuedRequests) {
+      release(session);
+      return createBusyError("Too many queued requests in server", busyRetryAfterMillis);
+    }
+
+    TokenBucket bucket = methodRateLimits.get(method);
+    if (bucket != null) {
+      long retryAfter = bucket.tryConsume();
+      if (retryAfter > 0) {
+        release(session);
+        return createBusyError("Rate limit exceeded for method " + method, retryAfter);
+      }
+    }
+
+    return null;
+  }
+
+  public void release(ServerSession session) {
+    if (session.decrementInFlightRequests()) {
+      queuedRequests.decrementAndGet();
+    }
+  }
+
+  /**
+   * Releases all the requests admitted in a session that has been closed. Requests still queued in
+   * the session will never be executed.
+   */
+  public void sessionClosed(ServerSession session) {
+    queuedRequests.addAndGet(-session.clearInFlightRequests());
+  }
+
+  private ResponseError createBusyError(String reason, long retryAfterMillis) {
+    JsonObject data = new JsonObject();
+    data.addProperty("type", SERVER_BUSY_TYPE);
+    data.addProperty(REASON_PROPERTY, reason);
+    data.addProperty(RETRY_AFTER_PROPERTY, retryAfterMillis);
+    return new ResponseError(ERROR_SERVER_BUSY, SERVER_BUSY_MESSAGE, data);
+  }
+
+  /**
+   * Configures a token bucket for the given method.
+   *
+   * @param permitsPerSecond
+   *          sustained rate of requests allowed
+   * @param burst
+   *          max number of requests allowed at once after an idle period
+   */
+  public void setMethodRateLimit(String method, double permitsPerSecond, int burst) {
+    if (permitsPerSecond <= 0) {
+      methodRateLimits.remove(method);
+    } else {
+      methodRateLimits.put(method, new TokenBucket(permitsPerSecond, burst));
+    }
+  }
+
+  public void setMaxInFlightRequestsPerSession(int maxInFlightRequestsPerSession) {
+    this.maxInFlightRequestsPerSession = maxInFlightRequestsPerSession;
+  }
+
+  public int getMaxInFlightRequestsPerSession() {
+    return maxInFlightRequestsPerSession;
+  }
+
+  public void setMaxQueuedRequests(int maxQueuedRequests) {
+    this.maxQueuedRequests = maxQueuedRequests;
+  }
+
+  public int getMaxQueuedRequests() {
+    return maxQueuedRequests;
+  }
+
+  public void setBusyRetryAfterMillis(long busyRetryAfterMillis) {
+    this.busyRetryAfterMillis = busyRetryAfterMillis;
+  }
+
+  public int getQueuedRequests() {
+    return queuedRequests.get();
+  }
+}
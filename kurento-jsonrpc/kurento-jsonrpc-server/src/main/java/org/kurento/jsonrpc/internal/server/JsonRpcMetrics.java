@@ -0,0 +1,296 @@
+/*
+ * (C) Copyright 2013 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc.internal.server;
+
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.gson.JsonObject;
+
+/**
+ * Metrics of the JSON-RPC server, grouped by handler path. All counters are updated without locks
+ * so they can be used in the request path. A snapshot can be obtained in JSON format with
+ * {@link #toJson()}.
+ */
+public class JsonRpcMetrics {
+
+  public static class MethodMetrics {
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong totalLatencyNanos = new AtomicLong();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+    public void requestProcessed(long latencyNanos) {
+      requests.incrementAndGet();
+      totalLatencyNanos.addAndGet(latencyNanos);
+      updateMax(maxLatencyNanos, latencyNanos);
+    }
+
+    public void errorResponse() {
+      errors.incrementAndGet();
+    }
+
+    public long getRequests() {
+      return requests.get();
+    }
+
+    public long getErrors() {
+      return errors.get();
+    }
+
+    public double getAverageLatencyMillis() {
+      long count = requests.get();
+      return count == 0 ? 0 : (double) totalLatencyNanos.get() / count / 1000000;
+    }
+
+    public double getMaxLatencyMillis() {
+      return (double) maxLatencyNanos.get() / 1000000;
+    }
+
+    JsonObject toJson() {
+      JsonObject json = new JsonObject();
+      json.addProperty("requests", getRequests());
+      json.addProperty("errors", getErrors());
+      json.addProperty("avgLatencyMillis", getAverageLatencyMillis());
+      json.addProperty("maxLatencyMillis", getMaxLatencyMillis());
+      return json;
+    }
+  }
+
+  public static class HandlerMetrics {
+
+    private final long creationTime = System.nanoTime();
+
+    private final AtomicLong messagesReceived = new AtomicLong();
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private final AtomicLong messagesSent = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicLong rejectedRequests = new AtomicLong();
+    private final AtomicLong expiredRequests = new AtomicLong();
+    private final AtomicLong pings = new AtomicLong();
+    private final AtomicLong reconnections = new AtomicLong();
+    private final AtomicLong sessionsCreated = new AtomicLong();
+    private final AtomicLong sessionsClosed = new AtomicLong();
+    private final AtomicInteger pendingRequests = new AtomicInteger();
+    private final AtomicLong maxPendingRequests = new AtomicLong();
+
+    private final ConcurrentMap<String, MethodMetrics> methods = new ConcurrentHashMap<>();
+
+    public void messageReceived(String message) {
+      messagesReceived.incrementAndGet();
+      bytesReceived.addAndGet(utf8Length(message));
+    }
+
+    public void messageSent(String message) {
+      messagesSent.incrementAndGet();
+      bytesSent.addAndGet(utf8Length(message));
+    }
+
+    /**
+     * Records a request accepted by the handler. Pending requests are counted for all the sessions
+     * of the handler, from their reception until their handler returns.
+     */
+    public void requestQueued() {
+      updateMax(maxPendingRequests, pendingRequests.incrementAndGet());
+    }
+
+    public void requestDequeued() {
+      pendingRequests.decrementAndGet();
+    }
+
+    /**
+     * Records a request processed by the handler. Latency is measured from the reception of the
+     * request to the return of the handler, so it includes the time queued in the session.
+     */
+    public void requestProcessed(String method, long latencyNanos) {
+      getOrCreateMethodMetrics(method).requestProcessed(latencyNanos);
+    }
+
+    public void errorResponse(String method) {
+      getOrCreateMethodMetrics(method).errorResponse();
+    }
+
+    private MethodMetrics getOrCreateMethodMetrics(String method) {
+      MethodMetrics methodMetrics = methods.get(method);
+      if (methodMetrics == null) {
+        methodMetrics = new MethodMetrics();
+        MethodMetrics oldMetrics = methods.putIfAbsent(method, methodMetrics);
+        if (oldMetrics != null) {
+          methodMetrics = oldMetrics;
+        }
+      }
+      return methodMetrics;
+    }
+
+    public void requestRejected() {
+      rejectedRequests.incrementAndGet();
+    }
+
+    public void requestExpired() {
+      expiredRequests.incrementAndGet();
+    }
+
+    public void pingReceived() {
+      pings.incrementAndGet();
+    }
+
+    public void sessionReconnected() {
+      reconnections.incrementAndGet();
+    }
+
+    public void sessionCreated() {
+      sessionsCreated.incrementAndGet();
+    }
+
+    public void sessionClosed() {
+      sessionsClosed.incrementAndGet();
+    }
+
+    public long getRequests() {
+      long requests = 0;
+      for (MethodMetrics methodMetrics : methods.values()) {
+        requests += methodMetrics.getRequests();
+      }
+      return requests;
+    }
+
+    public int getPendingRequests() {
+      return pendingRequests.get();
+    }
+
+    public long getMessagesSent() {
+      return messagesSent.get();
+    }
+
+    public long getBytesSent() {
+      return bytesSent.get();
+    }
+
+    public long getMessagesReceived() {
+      return messagesReceived.get();
+    }
+
+    public long getBytesReceived() {
+      return bytesReceived.get();
+    }
+
+    public long getRejectedRequests() {
+      return rejectedRequests.get();
+    }
+
+    public long getReconnections() {
+      return reconnections.get();
+    }
+
+    public MethodMetrics getMethodMetrics(String method) {
+      return methods.get(method);
+    }
+
+    /**
+     * Returns a snapshot of the metrics. Counters are totals since the handler was created, and so
+     * is {@code avgRequestsPerSecond}; rates over a time window can be calculated from the
+     * difference between two snapshots.
+     */
+    JsonObject toJson() {
+
+      long requests = getRequests();
+      double uptimeSecs = (double) (System.nanoTime() - creationTime) / TimeUnit.SECONDS.toNanos(1);
+
+      JsonObject json = new JsonObject();
+      json.addProperty("requests", requests);
+      json.addProperty("avgRequestsPerSecond", uptimeSecs > 0 ? requests / uptimeSecs : 0);
+      json.addProperty("pendingRequests", pendingRequests.get());
+      json.addProperty("maxPendingRequests", maxPendingRequests.get());
+      json.addProperty("rejectedRequests", rejectedRequests.get());
+      json.addProperty("expiredRequests", expiredRequests.get());
+      json.addProperty("pings", pings.get());
+      json.addProperty("reconnections", reconnections.get());
+      json.addProperty("sessionsCreated", sessionsCreated.get());
+      json.addProperty("sessionsClosed", sessionsClosed.get());
+      json.addProperty("messagesReceived", messagesReceived.get());
+      json.addProperty("bytesReceived", bytesReceived.get());
+      json.addProperty("messagesSent", messagesSent.get());
+      json.addProperty("bytesSent", bytesSent.get());
+
+      JsonObject methodsJson = new JsonObject();
+      for (Entry<String, MethodMetrics> e : methods.entrySet()) {
+        methodsJson.add(e.getKey(), e.getValue().toJson());
+      }
+      json.add("methods", methodsJson);
+
+      return json;
+    }
+  }
+
+  private final ConcurrentMap<String, HandlerMetrics> handlers = new ConcurrentHashMap<>();
+
+  public HandlerMetrics getHandlerMetrics(String handlerPath) {
+    HandlerMetrics metrics = handlers.get(handlerPath);
+    if (metrics == null) {
+      metrics = new HandlerMetrics();
+      HandlerMetrics oldMetrics = handlers.putIfAbsent(handlerPath, metrics);
+      if (oldMetrics != null) {
+        metrics = oldMetrics;
+      }
+    }
+    return metrics;
+  }
+
+  public JsonObject toJson() {
+    JsonObject json = new JsonObject();
+    for (Entry<String, HandlerMetrics> e : handlers.entrySet()) {
+      json.add(e.getKey(), e.getValue().toJson());
+    }
+    return json;
+  }
+
+  private static void updateMax(AtomicLong max, long value) {
+    long current;
+    while (value > (current = max.get())) {
+      if (max.compareAndSet(current, value)) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Calculates the length of the string encoded in UTF-8 without creating the byte array.
+   */
+  static long utf8Length(String s) {
+    long length = 0;
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if (c < 0x80) {
+        length++;
+      } else if (c < 0x800) {
+        length += 2;
+      } else if (Character.isHighSurrogate(c)) {
+        length += 4;
+        i++;
+      } else {
+        length += 3;
+      }
+    }
+    return length;
+  }
+}
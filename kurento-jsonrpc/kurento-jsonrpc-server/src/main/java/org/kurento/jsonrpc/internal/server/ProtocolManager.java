@@ -17,6 +17,9 @@
 
 package org.kurento.jsonrpc.internal.server;
 
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.CANCEL_REQUEST_ID_PROPERTY;
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.LAST_SEQUENCE_PROPERTY;
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.METHOD_CANCEL;
 import static org.kurento.jsonrpc.internal.JsonRpcConstants.METHOD_CLOSE;
 import static org.kurento.jsonrpc.internal.JsonRpcConstants.METHOD_CONNECT;
 import static org.kurento.jsonrpc.internal.JsonRpcConstants.METHOD_PING;
@@ -24,6 +27,7 @@ import static org.kurento.jsonrpc.internal.JsonRpcConstants.PONG;
 import static org.kurento.jsonrpc.internal.JsonRpcConstants.PONG_PAYLOAD;
 import static org.kurento.jsonrpc.internal.JsonRpcConstants.RECONNECTION_ERROR;
 import static org.kurento.jsonrpc.internal.JsonRpcConstants.RECONNECTION_SUCCESSFUL;
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.SEQUENCE_PROPERTY;
 
 import java.io.IOException;
 import java.lang.reflect.Type;
@@ -31,7 +35,10 @@ import java.text.SimpleDateFormat;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.PostConstruct;
 
@@ -40,11 +47,16 @@ import org.kurento.jsonrpc.JsonRpcHandler;
 import org.kurento.jsonrpc.JsonUtils;
 import org.kurento.jsonrpc.internal.JsonRpcHandlerManager;
 import org.kurento.jsonrpc.internal.client.AbstractSession;
+import org.kurento.jsonrpc.internal.client.TransactionImpl;
 import org.kurento.jsonrpc.internal.client.TransactionImpl.ResponseSender;
+import org.kurento.jsonrpc.internal.server.JsonRpcMetrics.HandlerMetrics;
 import org.kurento.jsonrpc.internal.server.PingWatchdogManager.NativeSessionCloser;
+import org.kurento.jsonrpc.internal.ws.ReplayBuffer;
+import org.kurento.jsonrpc.message.Message;
 import org.kurento.jsonrpc.message.Request;
 import org.kurento.jsonrpc.message.Response;
 import org.kurento.jsonrpc.message.ResponseError;
+import org.kurento.jsonrpc.server.SessionInfo;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -61,8 +73,12 @@ public class ProtocolManager {
 
   public static final String CLIENT_CLOSED_CLOSE_REASON = "Client sent close message";
 
+  public static final String TAKEN_OVER_CLOSE_REASON = "Session taken over by another node";
+
   private static final String INTERVAL_PROPERTY = "interval";
 
+  private static final String RECONNECTION_RESULT_PROPERTY = "value";
+
   public interface ServerSessionFactory {
     ServerSession createSession(String sessionId, Object registerInfo,
         SessionsManager sessionsManager);
@@ -89,10 +105,18 @@ public class ProtocolManager {
 
   private int maxHeartbeats = 0;
 
-  private int heartbeats = 0;
+  private final AtomicInteger heartbeats = new AtomicInteger();
 
   private PingWatchdogManager pingWachdogManager;
 
+  @Autowired(required = false)
+  private AdmissionController admissionController;
+
+  @Autowired(required = false)
+  private JsonRpcMetrics metrics;
+
+  private volatile HandlerMetrics handlerMetrics;
+
   public ProtocolManager(JsonRpcHandler<?> handler) {
     this.handlerManager = new JsonRpcHandlerManager(handler);
   }
@@ -121,15 +145,45 @@ public class ProtocolManager {
     };
 
     this.pingWachdogManager = new PingWatchdogManager(taskScheduler, nativeSessionCloser);
+
+    if (admissionController == null) {
+      admissionController = new AdmissionController();
+    }
+
+    if (metrics == null) {
+      metrics = new JsonRpcMetrics();
+    }
+  }
+
+  public void setMetrics(JsonRpcMetrics metrics) {
+    this.metrics = metrics;
+    this.handlerMetrics = null;
   }
 
   public void setLabel(String label) {
     this.label = "[" + label + "] ";
   }
 
+  /**
+   * Sets the name used to group the metrics of this protocol manager. Usually, the paths where the
+   * handler is published.
+   */
+  public void setMetricsName(String metricsName) {
+    this.handlerMetrics = metrics.getHandlerMetrics(metricsName);
+  }
+
+  public HandlerMetrics getHandlerMetrics() {
+    if (handlerMetrics == null) {
+      setMetricsName(handlerManager.getHandler().getClass().getSimpleName());
+    }
+    return handlerMetrics;
+  }
+
   public void processMessage(String messageJson, ServerSessionFactory factory,
       ResponseSender responseSender, String internalSessionId) throws IOException {
 
+    getHandlerMetrics().messageReceived(messageJson);
+
     JsonObject messagetJsonObject = JsonUtils.fromJson(messageJson, JsonObject.class);
 
     processMessage(messagetJsonObject, factory, responseSender, internalSessionId);
@@ -148,10 +202,15 @@ public class ProtocolManager {
   public void processMessage(JsonObject messagetJsonObject, ServerSessionFactory factory,
       ResponseSender responseSender, String internalSessionId) throws IOException {
 
+    Long seq = ReplayBuffer.getSequence(messagetJsonObject);
+    if (seq != null) {
+      messagetJsonObject.remove(SEQUENCE_PROPERTY);
+    }
+
     if (messagetJsonObject.has(Request.METHOD_FIELD_NAME)) {
-      processRequestMessage(factory, messagetJsonObject, responseSender, internalSessionId);
+      processRequestMessage(factory, messagetJsonObject, responseSender, internalSessionId, seq);
     } else {
-      processResponseMessage(messagetJsonObject, internalSessionId);
+      processResponseMessage(messagetJsonObject, internalSessionId, seq);
     }
   }
 
@@ -159,13 +218,43 @@ public class ProtocolManager {
   // entity "RequestContext" or similar. In this way, there are less
   // parameters
   // and the implementation is easier
-  private void processRequestMessage(ServerSessionFactory factory, JsonObject requestJsonObject,
-      final ResponseSender responseSender, String transportId) throws IOException {
+  private void processRequestMessage(final ServerSessionFactory factory,
+      JsonObject requestJsonObject, final ResponseSender transportResponseSender,
+      final String transportId, final Long seq) throws IOException {
 
     final Request<JsonElement> request = JsonUtils.fromJsonRequest(requestJsonObject,
         JsonElement.class);
 
+    // Requests of sessions not present in this node may need to take them over from the session
+    // store, so they are processed out of the transport thread
+    String reqSessionId = request.getSessionId();
+    if (reqSessionId != null && sessionsManager.executeWithStore(reqSessionId, new Runnable() {
+      @Override
+      public void run() {
+        try {
+          processRequest(factory, request, transportResponseSender, transportId, seq);
+        } catch (IOException | RuntimeException e) {
+          log.warn("{} Exception processing request {} of session {}", label, request,
+              request.getSessionId(), e);
+        }
+      }
+    })) {
+      return;
+    }
+
+    processRequest(factory, request, transportResponseSender, transportId, seq);
+  }
+
+  private void processRequest(ServerSessionFactory factory, final Request<JsonElement> request,
+      final ResponseSender transportResponseSender, String transportId, Long seq)
+      throws IOException {
+
+    ResponseSender responseSender = transportResponseSender;
+
     switch (request.getMethod()) {
+    // Control messages never go through the session executor, so they are not delayed by slow
+    // application handlers. Reconnection is processed in this thread (transport or store thread)
+    // because following requests in the same transport depend on the session being updated.
     case METHOD_CONNECT:
 
       log.debug("{} Req-> {} (transportId={})", label, request, transportId);
@@ -180,14 +269,35 @@ public class ProtocolManager {
       log.trace("{} Req-> {} (transportId={})", label, request, transportId);
       processCloseMessage(factory, request, responseSender, transportId);
 
+      break;
+    case METHOD_CANCEL:
+      log.debug("{} Req-> {} (transportId={})", label, request, transportId);
+      processCancelMessage(request, transportId);
       break;
     default:
 
+      if (request.isExpired()) {
+        log.debug("{} Discarding expired request {} (transportId={})", label, request,
+            transportId);
+        getHandlerMetrics().requestExpired();
+        break;
+      }
+
       final ServerSession session = getOrCreateSession(factory, transportId, request);
 
+      if (seq != null && !session.acceptInboundSequence(seq)) {
+        log.debug("{} Discarding duplicated request {} with seq {} in session {}", label,
+            request, seq, session.getSessionId());
+        break;
+      }
+
       log.debug("{} Req-> {} [jsonRpcSessionId={}, transportId={}]", label, request,
           session.getSessionId(), transportId);
 
+      if (session.isReplayEnabled()) {
+        responseSender = createSessionResponseSender(session, transportResponseSender);
+      }
+
       // TODO, Take out this an put in Http specific handler. The main
       // reason is to wait for request before responding to the client.
       // And for no contaminate the ProtocolManager.
@@ -212,18 +322,160 @@ public class ProtocolManager {
         responseSender.sendResponse(new Response<Object>(request.getId(), Collections.emptyList()));
 
       } else {
-        session.processRequest(new Runnable() {
-          @Override
-          public void run() {
-            handlerManager.handleRequest(session, request, responseSender);
+
+        ResponseError rejection = admissionController.tryAdmit(session, request.getMethod());
+        if (rejection != null) {
+          log.debug("{} Rejecting request {} in session {}: {}", label, request.getId(),
+              session.getSessionId(), rejection.getData());
+          getHandlerMetrics().requestRejected();
+          if (!request.isNotification()) {
+            responseSender.sendResponse(new Response<>(request.getId(), rejection));
           }
-        });
+          break;
+        }
+
+        final HandlerMetrics requestMetrics = getHandlerMetrics();
+        final long receptionTime = System.nanoTime();
+        final RequestCompletion completion = new RequestCompletion(session, request.getId());
+        final ResponseSender completingResponseSender = createCompletingResponseSender(
+            createMetricsResponseSender(requestMetrics, request.getMethod(), responseSender),
+            completion);
+        final TransactionImpl tx =
+            new TransactionImpl(session, request, completingResponseSender);
+        completion.setTransaction(tx);
+        tx.setCompletionListener(completion);
+        session.registerTransaction(request.getId(), tx);
+        requestMetrics.requestQueued();
+
+        try {
+          session.processRequest(new Runnable() {
+            @Override
+            public void run() {
+              try {
+                if (request.isExpired()) {
+                  log.debug("{} Request {} expired while queued in session {}. Discarding it",
+                      label, request.getId(), session.getSessionId());
+                  requestMetrics.requestExpired();
+                } else {
+                  handlerManager.handleRequest(session, request, completingResponseSender, tx);
+                }
+              } finally {
+                // Asynchronous transactions keep their admission slot until the response is sent
+                if (request.isNotification() || !tx.isAsync() || tx.isCancelled()) {
+                  completion.run();
+                }
+                requestMetrics.requestDequeued();
+                requestMetrics.requestProcessed(request.getMethod(),
+                    System.nanoTime() - receptionTime);
+              }
+            }
+          });
+        } catch (RejectedExecutionException e) {
+          completion.run();
+          requestMetrics.requestDequeued();
+          throw e;
+        }
       }
       break;
     }
 
   }
 
+  /**
+   * Creates a response sender that writes through the session instead of the transport where the
+   * request was received, so responses are numbered and can be replayed after a reconnection.
+   */
+  private ResponseSender createSessionResponseSender(final ServerSession session,
+      final ResponseSender transportResponseSender) {
+
+    return new ResponseSender() {
+      @Override
+      public void sendResponse(Message message) throws IOException {
+        String jsonMessage = message.toString();
+        log.debug("{} Res<- {}", label, jsonMessage);
+        session.sendJsonMessage(jsonMessage);
+        getHandlerMetrics().messageSent(jsonMessage);
+      }
+
+      @Override
+      public void sendPingResponse(Message message) throws IOException {
+        transportResponseSender.sendPingResponse(message);
+      }
+    };
+  }
+
+  /**
+   * Completion of a request. It is run once, when the response has been sent or discarded, or when
+   * the handler returns without starting an asynchronous response.
+   */
+  private class RequestCompletion implements Runnable {
+
+    private final AtomicBoolean completed = new AtomicBoolean();
+    private final ServerSession session;
+    private final Integer requestId;
+    private volatile TransactionImpl tx;
+
+    private RequestCompletion(ServerSession session, Integer requestId) {
+      this.session = session;
+      this.requestId = requestId;
+    }
+
+    private void setTransaction(TransactionImpl tx) {
+      this.tx = tx;
+    }
+
+    @Override
+    public void run() {
+      if (completed.compareAndSet(false, true)) {
+        session.unregisterTransaction(requestId, tx);
+        admissionController.release(session);
+      }
+    }
+  }
+
+  /**
+   * Creates a response sender that completes the transaction of the request after sending its
+   * response, so it stays registered (and can be cancelled) while an asynchronous handler runs.
+   */
+  private ResponseSender createCompletingResponseSender(final ResponseSender responseSender,
+      final Runnable completion) {
+
+    return new ResponseSender() {
+      @Override
+      public void sendResponse(Message message) throws IOException {
+        try {
+          responseSender.sendResponse(message);
+        } finally {
+          completion.run();
+        }
+      }
+
+      @Override
+      public void sendPingResponse(Message message) throws IOException {
+        responseSender.sendPingResponse(message);
+      }
+    };
+  }
+
+  private ResponseSender createMetricsResponseSender(final HandlerMetrics requestMetrics,
+      final String method, final ResponseSender responseSender) {
+
+    return new ResponseSender() {
+      @Override
+      public void sendResponse(Message message) throws IOException {
+        if (message instanceof Response && ((Response<?>) message).isError()) {
+          requestMetrics.errorResponse(method);
+        }
+        responseSender.sendResponse(message);
+      }
+
+      @Override
+      public void sendPingResponse(Message message) throws IOException {
+        responseSender.sendPingResponse(message);
+      }
+    };
+  }
+
   private ServerSession getOrCreateSession(ServerSessionFactory factory, String transportId,
       Request<JsonElement> request) {
 
@@ -278,12 +530,26 @@ public class ProtocolManager {
         nativeHandler.processNewCreatedKnownSession(session);
       }
     }
+
+    SessionInfo takenOver = session == null ? sessionsManager.takeOver(reqSessionId) : null;
+    if (takenOver != null) {
+
+      log.debug("{} Session {} created in other node has been taken over", label, reqSessionId);
+
+      session = createSession(factory, null, reqSessionId,
+          takenOver.withNodeId(sessionsManager.getNodeId()));
+      session.setNew(false);
+      handlerManager.afterConnectionEstablished(session);
+    }
+
     return session;
   }
 
   private void processPingMessage(ServerSessionFactory factory, Request<JsonElement> request,
       ResponseSender responseSender, String transportId) throws IOException {
-    if (maxHeartbeats == 0 || maxHeartbeats > ++heartbeats) {
+    getHandlerMetrics().pingReceived();
+
+    if (maxHeartbeats == 0 || maxHeartbeats > heartbeats.incrementAndGet()) {
 
       long interval = -1;
 
@@ -303,23 +569,71 @@ public class ProtocolManager {
     }
   }
 
-  private void processCloseMessage(ServerSessionFactory factory, Request<JsonElement> request,
-      ResponseSender responseSender, String transportId) {
+  /**
+   * Executes a control task in the task scheduler, independently of the session executors used for
+   * application requests. If the scheduler rejects the task, it is executed in the calling thread.
+   */
+  private void executeInControlLane(Runnable task) {
+    try {
+      taskScheduler.schedule(task, new Date());
+    } catch (TaskRejectedException e) {
+      log.debug("{} Control lane rejected task. Executing it in caller thread", label);
+      task.run();
+    }
+  }
+
+  private void processCloseMessage(ServerSessionFactory factory,
+      final Request<JsonElement> request, final ResponseSender responseSender,
+      String transportId) {
 
-    ServerSession session = sessionsManager.getByTransportId(transportId);
+    final ServerSession session = sessionsManager.getByTransportId(transportId);
     if (session != null) {
       session.setGracefullyClosed();
       cancelCloseTimer(session);
+      // Removed right away so that new requests with this sessionId don't reuse the session
+      sessionsManager.remove(session);
     }
 
-    try {
-      responseSender.sendResponse(new Response<>(request.getId(), "bye"));
-    } catch (IOException e) {
-      log.warn("Exception sending close message response to client", e);
+    executeInControlLane(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          responseSender.sendResponse(new Response<>(request.getId(), "bye"));
+        } catch (IOException e) {
+          log.warn("Exception sending close message response to client", e);
+        }
+
+        if (session != null) {
+          closeSession(session, CLIENT_CLOSED_CLOSE_REASON);
+        }
+      }
+    });
+  }
+
+  private void processCancelMessage(Request<JsonElement> request, String transportId) {
+
+    ServerSession session = null;
+    if (request.getSessionId() != null) {
+      session = sessionsManager.get(request.getSessionId());
+    }
+    if (session == null) {
+      session = sessionsManager.getByTransportId(transportId);
     }
 
-    if (session != null) {
-      this.closeSession(session, CLIENT_CLOSED_CLOSE_REASON);
+    JsonElement params = request.getParams();
+    JsonElement requestIdElement = params != null && params.isJsonObject()
+        ? ((JsonObject) params).get(CANCEL_REQUEST_ID_PROPERTY) : null;
+    if (session == null || requestIdElement == null || !requestIdElement.isJsonPrimitive()
+        || !requestIdElement.getAsJsonPrimitive().isNumber()) {
+      log.debug("{} Ignoring invalid cancel message {} (transportId={})", label, request,
+          transportId);
+      return;
+    }
+
+    int requestId = requestIdElement.getAsInt();
+    if (!session.cancelTransaction(requestId)) {
+      log.debug("{} Request {} to be cancelled is not in-flight in session {}", label, requestId,
+          session.getSessionId());
     }
   }
 
@@ -336,27 +650,59 @@ public class ProtocolManager {
 
     } else {
 
-      ServerSession session = sessionsManager.get(sessionId);
+      final ServerSession session = sessionsManager.get(sessionId);
       if (session != null) {
 
-        String oldTransportId = session.getTransportId();
-        session.setTransportId(transportId);
-        factory.updateSessionOnReconnection(session);
-        pingWachdogManager.updateTransportId(transportId, oldTransportId);
-        sessionsManager.updateTransportId(session, oldTransportId);
+        JsonElement params = request.getParams();
+        Long lastSeq = null;
+        if (params != null && params.isJsonObject()
+            && ((JsonObject) params).has(LAST_SEQUENCE_PROPERTY)) {
+          lastSeq = ((JsonObject) params).get(LAST_SEQUENCE_PROPERTY).getAsLong();
+        }
+
+        final ServerSessionFactory sessionFactory = factory;
+        final String newTransportId = transportId;
+        boolean replayed = session.resume(lastSeq, new Runnable() {
+          @Override
+          public void run() {
+            String oldTransportId = session.getTransportId();
+            session.setTransportId(newTransportId);
+            sessionFactory.updateSessionOnReconnection(session);
+            pingWachdogManager.updateTransportId(newTransportId, oldTransportId);
+            sessionsManager.updateTransportId(session, oldTransportId);
+          }
+        });
+
+        if (!replayed) {
+          log.warn("{} Some messages sent to session {} after seq {} are no longer buffered "
+              + "and can not be replayed", label, sessionId, lastSeq);
+        }
 
         // FIXME: Possible race condition if session is disposed when
         // reconnect method has arrived
         cancelCloseTimer(session);
 
-        responseSender
-            .sendResponse(new Response<>(sessionId, request.getId(), RECONNECTION_SUCCESSFUL));
+        getHandlerMetrics().sessionReconnected();
+
+        if (lastSeq != null) {
+
+          // Clients resuming the session are told the last message received from them, so they
+          // can resend the rest
+          JsonObject result = new JsonObject();
+          result.addProperty(RECONNECTION_RESULT_PROPERTY, RECONNECTION_SUCCESSFUL);
+          result.addProperty(LAST_SEQUENCE_PROPERTY, session.getLastReceivedSequence());
+          responseSender.sendResponse(new Response<>(sessionId, request.getId(), result));
+
+        } else {
+          responseSender
+              .sendResponse(new Response<>(sessionId, request.getId(), RECONNECTION_SUCCESSFUL));
+        }
 
       } else {
 
-        session = createSessionAsOldIfKnowByHandler(factory, sessionId);
+        ServerSession knownSession = createSessionAsOldIfKnowByHandler(factory, sessionId);
 
-        if (session != null) {
+        if (knownSession != null) {
           responseSender
               .sendResponse(new Response<>(sessionId, request.getId(), RECONNECTION_SUCCESSFUL));
         } else {
@@ -369,13 +715,22 @@ public class ProtocolManager {
 
   private ServerSession createSession(ServerSessionFactory factory, Object registerInfo,
       String sessionId) {
+    return createSession(factory, registerInfo, sessionId, null);
+  }
+
+  private ServerSession createSession(ServerSessionFactory factory, Object registerInfo,
+      String sessionId, SessionInfo sessionInfo) {
 
     ServerSession session = factory.createSession(sessionId, registerInfo, sessionsManager);
+    session.setHandlerMetrics(getHandlerMetrics());
+    session.setSessionInfo(sessionInfo);
 
     pingWachdogManager.associateSessionId(session.getTransportId(), sessionId);
 
     sessionsManager.put(session);
 
+    getHandlerMetrics().sessionCreated();
+
     return session;
   }
 
@@ -386,7 +741,8 @@ public class ProtocolManager {
     return createSession(factory, registerInfo, sessionId);
   }
 
-  private void processResponseMessage(JsonObject messagetJsonObject, String internalSessionId) {
+  private void processResponseMessage(JsonObject messagetJsonObject, String internalSessionId,
+      Long seq) {
 
     Response<JsonElement> response = JsonUtils.fromJsonResponse(messagetJsonObject,
         JsonElement.class);
@@ -394,6 +750,11 @@ public class ProtocolManager {
     ServerSession session = sessionsManager.getByTransportId(internalSessionId);
 
     if (session != null) {
+      if (seq != null && !session.acceptInboundSequence(seq)) {
+        log.debug("{} Discarding duplicated response {} with seq {} in session {}", label,
+            response, seq, session.getSessionId());
+        return;
+      }
       session.handleResponse(response);
     } else {
       log.debug("Processing response {} for non-existent session {}", response.toString(),
@@ -418,7 +779,11 @@ public class ProtocolManager {
         ScheduledFuture<?> lastStartedTimerFuture = taskScheduler.schedule(new Runnable() {
           @Override
           public void run() {
-            closeSession(session, reason);
+            if (sessionsManager.isOwnedByOtherNode(session.getSessionId())) {
+              closeSession(session, TAKEN_OVER_CLOSE_REASON);
+            } else {
+              closeSession(session, reason);
+            }
           }
         }, closeTime);
 
@@ -443,6 +808,8 @@ public class ProtocolManager {
     }
     sessionsManager.remove(session);
     pingWachdogManager.removeSession(session);
+    admissionController.sessionClosed(session);
+    getHandlerMetrics().sessionClosed();
     handlerManager.afterConnectionClosed(session, reason);
   }
 
@@ -470,6 +837,14 @@ public class ProtocolManager {
     this.pingWachdogManager.setPingWatchdog(pingWachdog);
   }
 
+  public void setAdmissionController(AdmissionController admissionController) {
+    this.admissionController = admissionController;
+  }
+
+  public AdmissionController getAdmissionController() {
+    return admissionController;
+  }
+
   public AbstractSession getSessionByTransportId(String transportId) {
     return sessionsManager.getByTransportId(transportId);
   }
@@ -18,20 +18,28 @@
 package org.kurento.jsonrpc.internal.server;
 
 import java.io.IOException;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.kurento.commons.PropertiesManager;
 import org.kurento.commons.ThreadFactoryCreator;
 import org.kurento.jsonrpc.client.Continuation;
 import org.kurento.jsonrpc.internal.JsonRpcRequestSenderHelper;
 import org.kurento.jsonrpc.internal.client.AbstractSession;
+import org.kurento.jsonrpc.internal.client.TransactionImpl;
+import org.kurento.jsonrpc.internal.server.JsonRpcMetrics.HandlerMetrics;
+import org.kurento.jsonrpc.internal.ws.ReplayBuffer;
 import org.kurento.jsonrpc.message.Request;
 import org.kurento.jsonrpc.message.Response;
+import org.kurento.jsonrpc.server.SessionInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
@@ -41,6 +49,11 @@ public abstract class ServerSession extends AbstractSession {
   public static final String SESSION_RECONNECTION_TIME_PROP = "ws.sessionReconnectionTime";
   private static final int SESSION_RECONNECTION_TIME_DEFAULT = 10;
 
+  public static final String REPLAY_BUFFER_SIZE_PROP = "ws.replayBufferSize";
+  private static final int REPLAY_BUFFER_SIZE_DEFAULT = 0;
+
+  private static final Logger log = LoggerFactory.getLogger(ServerSession.class);
+
   private final SessionsManager sessionsManager;
   private JsonRpcRequestSenderHelper rsHelper;
   private String transportId;
@@ -49,6 +62,19 @@ public abstract class ServerSession extends AbstractSession {
 
   private volatile ConcurrentMap<String, Object> attributes;
 
+  private final ConcurrentMap<Integer, TransactionImpl> inFlightTransactions =
+      new ConcurrentHashMap<>();
+
+  private final AtomicInteger inFlightRequests = new AtomicInteger();
+
+  private volatile HandlerMetrics handlerMetrics;
+
+  private volatile SessionInfo sessionInfo;
+
+  private ReplayBuffer replayBuffer;
+  private long lastReceivedSeq;
+  private volatile boolean closed;
+
   private long reconnectionTimeoutInMillis = PropertiesManager.getProperty(
       SESSION_RECONNECTION_TIME_PROP, SESSION_RECONNECTION_TIME_DEFAULT) * 1000;
   private boolean gracefullyClosed;
@@ -77,6 +103,7 @@ public abstract class ServerSession extends AbstractSession {
 
   @Override
   public void close() throws IOException {
+    this.closed = true;
     this.sessionsManager.remove(this.getSessionId());
     this.sessionExecutor.shutdownNow();
   }
@@ -188,7 +215,193 @@ public abstract class ServerSession extends AbstractSession {
 
   public abstract void closeNativeSession(String reason);
 
+  public void setHandlerMetrics(HandlerMetrics handlerMetrics) {
+    this.handlerMetrics = handlerMetrics;
+  }
+
+  /**
+   * @return the metrics of the handler this session belongs to, or null if not known
+   */
+  public HandlerMetrics getHandlerMetrics() {
+    return handlerMetrics;
+  }
+
+  public void setSessionInfo(SessionInfo sessionInfo) {
+    this.sessionInfo = sessionInfo;
+  }
+
+  /**
+   * @return the metadata kept for this session in the session store, or null if it has not been
+   *         stored yet
+   */
+  public SessionInfo getSessionInfo() {
+    return sessionInfo;
+  }
+
+  /**
+   * @return false if the transport of this session can't send messages not requested by the client
+   *         (e.g. HTTP), so notifications can't be pushed to it
+   */
+  public boolean isPushSupported() {
+    return true;
+  }
+
+  /**
+   * Writes an already serialized JSON-RPC message to the transport of this session. Used to send
+   * the same message to several sessions serializing it only once.
+   */
+  public abstract void sendSerializedMessage(String jsonMessage) throws IOException;
+
+  /**
+   * Enables numbering and buffering of outbound messages, so they can be replayed if the client
+   * reconnects to this session. The size of the buffer is configured with the property
+   * {@value #REPLAY_BUFFER_SIZE_PROP}. Called by transports that support session resumption.
+   */
+  protected void enableReplayBuffer() {
+    int size = PropertiesManager.getProperty(REPLAY_BUFFER_SIZE_PROP, REPLAY_BUFFER_SIZE_DEFAULT);
+    if (size > 0) {
+      this.replayBuffer = new ReplayBuffer(size);
+    }
+  }
+
+  public boolean isReplayEnabled() {
+    return replayBuffer != null;
+  }
+
+  /**
+   * Sends an already serialized message to the client. If the replay buffer is enabled, the message
+   * is numbered and stored; a message that can't be written because the transport is down is kept
+   * to be replayed when the client reconnects. Otherwise, write errors are thrown to the caller, so
+   * requests sent to a dead transport fail right away.
+   */
+  public void sendJsonMessage(String jsonMessage) throws IOException {
+
+    if (replayBuffer == null) {
+      sendSerializedMessage(jsonMessage);
+      return;
+    }
+
+    synchronized (replayBuffer) {
+      String sequencedMessage = replayBuffer.sequence(jsonMessage);
+      try {
+        sendSerializedMessage(sequencedMessage);
+      } catch (IOException | RuntimeException e) {
+        if (closed || !replayBuffer.isStored(replayBuffer.getLastSeq())) {
+          throw e;
+        }
+        log.debug("Transport of session {} is not available. Message kept for replay: {}",
+            getSessionId(), e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Attaches the session to the new transport of a reconnected client and resends the messages the
+   * client has not received. No new message is sent until the replay has finished.
+   *
+   * @param lastSeq
+   *          last sequence number received by the client, or null if the client does not support
+   *          session resumption
+   * @param transportUpdate
+   *          task that associates the session to the new transport
+   * @return false if some of the messages to be resent were already discarded from the buffer
+   */
+  public boolean resume(Long lastSeq, Runnable transportUpdate) throws IOException {
+
+    if (replayBuffer == null || lastSeq == null) {
+      transportUpdate.run();
+      return true;
+    }
+
+    synchronized (replayBuffer) {
+      transportUpdate.run();
+      boolean complete = replayBuffer.canReplayAfter(lastSeq);
+      List<String> messages = replayBuffer.getMessagesAfter(lastSeq);
+      log.debug("Replaying {} messages after seq {} in session {}", messages.size(), lastSeq,
+          getSessionId());
+      for (String message : messages) {
+        sendSerializedMessage(message);
+      }
+      replayBuffer.acknowledge(lastSeq);
+      return complete;
+    }
+  }
+
+  /**
+   * Registers the sequence number of a message received from the client.
+   *
+   * @return false if the message was already received, so it has to be discarded
+   */
+  public synchronized boolean acceptInboundSequence(long seq) {
+    if (seq <= lastReceivedSeq) {
+      return false;
+    }
+    lastReceivedSeq = seq;
+    return true;
+  }
+
+  public synchronized long getLastReceivedSequence() {
+    return lastReceivedSeq;
+  }
+
   public void processRequest(Runnable task) {
     sessionExecutor.execute(task);
   }
+
+  public int getInFlightRequests() {
+    return inFlightRequests.get();
+  }
+
+  int incrementInFlightRequests() {
+    return inFlightRequests.incrementAndGet();
+  }
+
+  /**
+   * Decrements the number of in-flight requests, unless they have been cleared when the session
+   * was closed.
+   *
+   * @return true if the counter has been decremented
+   */
+  boolean decrementInFlightRequests() {
+    while (true) {
+      int current = inFlightRequests.get();
+      if (current <= 0) {
+        return false;
+      }
+      if (inFlightRequests.compareAndSet(current, current - 1)) {
+        return true;
+      }
+    }
+  }
+
+  int clearInFlightRequests() {
+    return inFlightRequests.getAndSet(0);
+  }
+
+  public void registerTransaction(Integer requestId, TransactionImpl tx) {
+    if (requestId != null) {
+      inFlightTransactions.put(requestId, tx);
+    }
+  }
+
+  public void unregisterTransaction(Integer requestId, TransactionImpl tx) {
+    if (requestId != null) {
+      inFlightTransactions.remove(requestId, tx);
+    }
+  }
+
+  /**
+   * Marks as cancelled the transaction associated to the given request id, if it is still queued or
+   * being processed.
+   *
+   * @return true if there was an in-flight transaction with that id
+   */
+  public boolean cancelTransaction(Integer requestId) {
+    TransactionImpl tx = inFlightTransactions.get(requestId);
+    if (tx != null) {
+      tx.cancel();
+      return true;
+    }
+    return false;
+  }
 }
@@ -17,15 +17,45 @@
 
 package org.kurento.jsonrpc.internal.server;
 
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
+import javax.annotation.PreDestroy;
+
+import org.kurento.commons.PropertiesManager;
+import org.kurento.commons.SecretGenerator;
+import org.kurento.commons.ThreadFactoryCreator;
+import org.kurento.jsonrpc.JsonUtils;
+import org.kurento.jsonrpc.Session;
+import org.kurento.jsonrpc.internal.server.JsonRpcMetrics.HandlerMetrics;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.server.SessionInfo;
+import org.kurento.jsonrpc.server.SessionStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 /**
  *
- * This class is responsible for storing JSON-RPC sessions using a ConcurrentHashMap.
+ * This class is responsible for storing JSON-RPC sessions using a ConcurrentHashMap. Sessions can
+ * also be grouped by name, so a notification can be broadcasted to all the sessions in a group
+ * serializing it only once. Group membership is updated incrementally when sessions join or leave
+ * a group and when they are removed.
+ *
+ * If a {@link SessionStore} is configured, the metadata of the sessions is also kept in it, so
+ * sessions created in other server instances (nodes) sharing the store can be taken over when their
+ * clients reconnect to this one. Stores may block (files, network), so they are only accessed from
+ * a dedicated thread, never from the transport threads.
  *
  * @author Micael Gallego (micael.gallego@gmail.com)
  * @version 1.0.0
@@ -40,10 +70,59 @@ public class SessionsManager {
   private final ConcurrentHashMap<String, ServerSession> sessions = new ConcurrentHashMap<>();
   private final ConcurrentHashMap<String, ServerSession> sessionsByTransportId = new ConcurrentHashMap<>();
 
+  private final ConcurrentHashMap<String, Set<ServerSession>> groups = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, Set<String>> groupsBySessionId = new ConcurrentHashMap<>();
+
+  @Autowired(required = false)
+  private volatile SessionStore sessionStore;
+
+  private String nodeId =
+      PropertiesManager.getProperty("jsonrpc.nodeId", new SecretGenerator().nextSecret());
+
+  // Single thread, so store operations are executed in the same order they are submitted
+  private final ThreadPoolExecutor storeExecutor = new ThreadPoolExecutor(1, 1, 60,
+      TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+      ThreadFactoryCreator.create("SessionsManager-storeExec"));
+
+  // Number of tasks submitted to the store executor, and not finished yet, for each session id
+  private final Map<String, Integer> pendingStoreTasks = new HashMap<>();
+
+  public SessionsManager() {
+    storeExecutor.allowCoreThreadTimeOut(true);
+  }
+
+  public void setSessionStore(SessionStore sessionStore) {
+    this.sessionStore = sessionStore;
+  }
+
+  public SessionStore getSessionStore() {
+    return sessionStore;
+  }
+
+  public void setNodeId(String nodeId) {
+    this.nodeId = nodeId;
+  }
+
+  /**
+   * @return the identifier of this server instance in the session store
+   */
+  public String getNodeId() {
+    return nodeId;
+  }
+
   public void put(ServerSession session) {
 
     sessions.put(session.getSessionId(), session);
 
+    // Sessions taken over already have the claimed info, that is already stored
+    SessionInfo info = session.getSessionInfo();
+    if (info == null || !nodeId.equals(info.getNodeId())) {
+      info = info == null ? new SessionInfo(session.getSessionId(), nodeId)
+          : info.withNodeId(nodeId);
+      session.setSessionInfo(info);
+      putInStore(info);
+    }
+
     String transportId = session.getTransportId();
 
     if (transportId != null) {
@@ -65,6 +144,8 @@ public class SessionsManager {
     ServerSession session = sessionsByTransportId.remove(transportId);
     if (session != null) {
       sessions.remove(session.getSessionId());
+      leaveAllGroups(session);
+      removeFromStore(session.getSessionId());
     }
     return session;
   }
@@ -73,10 +154,145 @@ public class SessionsManager {
     ServerSession session = sessions.remove(sessionId);
     if (session != null) {
       sessionsByTransportId.remove(session.getTransportId());
+      leaveAllGroups(session);
+      removeFromStore(sessionId);
     }
     return session;
   }
 
+  /**
+   * Sets a property of the session, and updates it in the session store. Properties are kept when
+   * the session is taken over by other node.
+   */
+  public void setSessionProperty(Session session, String name, String value) {
+    ServerSession serverSession = toServerSession(session);
+    SessionInfo info;
+    synchronized (serverSession) {
+      info = serverSession.getSessionInfo();
+      if (info == null) {
+        info = new SessionInfo(serverSession.getSessionId(), nodeId);
+      }
+      info = info.withProperty(name, value);
+      serverSession.setSessionInfo(info);
+    }
+    putInStore(info);
+  }
+
+  private void putInStore(final SessionInfo info) {
+    final SessionStore store = sessionStore;
+    if (store != null) {
+      executeInStoreThread(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            store.put(info);
+          } catch (Exception e) {
+            log.warn("Exception storing session {} in session store", info.getSessionId(), e);
+          }
+        }
+      });
+    }
+  }
+
+  private void removeFromStore(final String sessionId) {
+    final SessionStore store = sessionStore;
+    if (store != null) {
+      executeInStoreThread(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            store.remove(sessionId, nodeId);
+          } catch (Exception e) {
+            log.warn("Exception removing session {} from session store", sessionId, e);
+          }
+        }
+      });
+    }
+  }
+
+  private void executeInStoreThread(Runnable task) {
+    try {
+      storeExecutor.execute(task);
+    } catch (RejectedExecutionException e) {
+      log.warn("Session store task can not be executed because the sessions manager is destroyed");
+    }
+  }
+
+  /**
+   * Executes a task that may access the session store for a session not present in this node
+   * (e.g. to take it over) in the thread used for store operations, so the transport thread is not
+   * blocked. While a task is pending for a session id, following tasks for the same id are also
+   * executed there, so messages of the session are still processed in order.
+   *
+   * @return true if the task has been submitted, or false if no store access is needed and the
+   *         caller has to execute the task itself
+   */
+  public boolean executeWithStore(final String sessionId, final Runnable task) {
+
+    synchronized (pendingStoreTasks) {
+      Integer pending = pendingStoreTasks.get(sessionId);
+      if (pending == null && (sessionStore == null || sessions.containsKey(sessionId))) {
+        return false;
+      }
+
+      try {
+        storeExecutor.execute(new Runnable() {
+          @Override
+          public void run() {
+            try {
+              task.run();
+            } finally {
+              synchronized (pendingStoreTasks) {
+                Integer remaining = pendingStoreTasks.get(sessionId);
+                if (remaining == null || remaining <= 1) {
+                  pendingStoreTasks.remove(sessionId);
+                } else {
+                  pendingStoreTasks.put(sessionId, remaining - 1);
+                }
+              }
+            }
+          }
+        });
+      } catch (RejectedExecutionException e) {
+        return false;
+      }
+
+      pendingStoreTasks.put(sessionId, pending == null ? 1 : pending + 1);
+      return true;
+    }
+  }
+
+  /**
+   * Claims the ownership of a session not present in this node, but stored in the session store by
+   * other node. As it accesses the store, it should be called from a task executed with
+   * {@link #executeWithStore(String, Runnable)}.
+   *
+   * @return the metadata of the session before being taken over, or null if it is unknown
+   */
+  public SessionInfo takeOver(String sessionId) {
+    SessionStore store = sessionStore;
+    if (store == null) {
+      return null;
+    }
+    SessionInfo previous = store.claim(sessionId, nodeId);
+    if (previous != null) {
+      log.debug("Session {} taken over from node {}", sessionId, previous.getNodeId());
+    }
+    return previous;
+  }
+
+  /**
+   * @return true if the session has been taken over by another node sharing the session store
+   */
+  public boolean isOwnedByOtherNode(String sessionId) {
+    SessionStore store = sessionStore;
+    if (store == null) {
+      return false;
+    }
+    SessionInfo info = store.get(sessionId);
+    return info != null && !nodeId.equals(info.getNodeId());
+  }
+
   public void updateTransportId(ServerSession session, String oldTransportId) {
     if (oldTransportId != null) {
       sessionsByTransportId.remove(oldTransportId);
@@ -91,6 +307,140 @@ public class SessionsManager {
     remove(session.getSessionId());
   }
 
+  public void joinGroup(String group, Session session) {
+
+    ServerSession serverSession = toServerSession(session);
+
+    while (true) {
+      Set<ServerSession> members = groups.get(group);
+      if (members == null) {
+        Set<ServerSession> newMembers =
+            Collections.newSetFromMap(new ConcurrentHashMap<ServerSession, Boolean>());
+        members = groups.putIfAbsent(group, newMembers);
+        if (members == null) {
+          members = newMembers;
+        }
+      }
+      members.add(serverSession);
+
+      // The group may have been removed concurrently when its last member left it
+      if (groups.get(group) == members) {
+        break;
+      }
+    }
+
+    Set<String> sessionGroups = groupsBySessionId.get(session.getSessionId());
+    if (sessionGroups == null) {
+      Set<String> newSessionGroups =
+          Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+      sessionGroups = groupsBySessionId.putIfAbsent(session.getSessionId(), newSessionGroups);
+      if (sessionGroups == null) {
+        sessionGroups = newSessionGroups;
+      }
+    }
+    sessionGroups.add(group);
+
+    // The session may have been removed concurrently, before its groups were registered
+    if (sessions.get(serverSession.getSessionId()) != serverSession) {
+      leaveAllGroups(serverSession);
+    }
+  }
+
+  public void leaveGroup(String group, Session session) {
+
+    Set<ServerSession> members = groups.get(group);
+    if (members != null) {
+      members.remove(session);
+      if (members.isEmpty()) {
+        groups.remove(group, members);
+      }
+    }
+
+    Set<String> sessionGroups = groupsBySessionId.get(session.getSessionId());
+    if (sessionGroups != null) {
+      sessionGroups.remove(group);
+    }
+  }
+
+  public void leaveAllGroups(Session session) {
+    Set<String> sessionGroups = groupsBySessionId.remove(session.getSessionId());
+    if (sessionGroups != null) {
+      for (String group : sessionGroups) {
+        leaveGroup(group, session);
+      }
+    }
+  }
+
+  public Set<? extends Session> getGroupSessions(String group) {
+    Set<ServerSession> members = groups.get(group);
+    if (members == null) {
+      return Collections.emptySet();
+    }
+    return Collections.unmodifiableSet(members);
+  }
+
+  /**
+   * Sends a notification to all the sessions in a group.
+   *
+   * @see #broadcastNotification(Collection, String, Object)
+   */
+  public int broadcastNotification(String group, String method, Object params) {
+    return broadcastNotification(getGroupSessions(group), method, params);
+  }
+
+  /**
+   * Sends a notification to several sessions. The notification is serialized only once and the same
+   * message is written to the transport of every session. As the message is shared, the sessionId
+   * is not included in the params. Failures in one session don't prevent delivery to the others,
+   * and sessions whose transport doesn't support server push (HTTP) are skipped.
+   *
+   * @return the number of sessions where the notification was written
+   */
+  public int broadcastNotification(Collection<? extends Session> sessions, String method,
+      Object params) {
+
+    String jsonMessage = JsonUtils.toJson(new Request<>(method, params));
+
+    int sent = 0;
+    for (Session session : sessions) {
+      try {
+        ServerSession serverSession = toServerSession(session);
+        if (!serverSession.isPushSupported()) {
+          log.debug("Skipping session {} in broadcast of {}: server push is not supported",
+              session.getSessionId(), method);
+          continue;
+        }
+        serverSession.sendJsonMessage(jsonMessage);
+        sent++;
+        HandlerMetrics handlerMetrics = serverSession.getHandlerMetrics();
+        if (handlerMetrics != null) {
+          handlerMetrics.messageSent(jsonMessage);
+        }
+      } catch (IOException | RuntimeException e) {
+        log.warn("Exception broadcasting notification {} to session {}: {}", method,
+            session.getSessionId(), e.getMessage());
+      }
+    }
+    return sent;
+  }
+
+  private ServerSession toServerSession(Session session) {
+    if (session instanceof ServerSession) {
+      return (ServerSession) session;
+    }
+    ServerSession serverSession = sessions.get(session.getSessionId());
+    if (serverSession == null) {
+      throw new IllegalArgumentException(
+          "Session " + session.getSessionId() + " is not managed by this server");
+    }
+    return serverSession;
+  }
+
+  @PreDestroy
+  public void destroy() {
+    storeExecutor.shutdown();
+  }
+
   @Override
   public String toString() {
     return "SessionsManager [sessions=" + sessions + ", sessionsByTransportId="
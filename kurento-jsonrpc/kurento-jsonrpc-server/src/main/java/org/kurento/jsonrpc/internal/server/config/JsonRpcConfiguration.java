@@ -26,8 +26,11 @@ import java.util.Map.Entry;
 
 import org.apache.catalina.Context;
 import org.apache.tomcat.websocket.server.WsSci;
+import org.kurento.commons.PropertiesManager;
 import org.kurento.jsonrpc.JsonRpcHandler;
 import org.kurento.jsonrpc.internal.http.JsonRpcHttpRequestHandler;
+import org.kurento.jsonrpc.internal.server.AdmissionController;
+import org.kurento.jsonrpc.internal.server.JsonRpcMetrics;
 import org.kurento.jsonrpc.internal.server.PerSessionJsonRpcHandler;
 import org.kurento.jsonrpc.internal.server.ProtocolManager;
 import org.kurento.jsonrpc.internal.server.SessionsManager;
@@ -51,6 +54,8 @@ import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistra
 import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
 import org.springframework.web.socket.server.HandshakeInterceptor;
 
+import com.google.common.base.Joiner;
+
 @Configuration
 @EnableWebSocket
 public class JsonRpcConfiguration implements WebSocketConfigurer {
@@ -131,8 +136,10 @@ public class JsonRpcConfiguration implements WebSocketConfigurer {
   private void putHandlersMappings(Map<String, Object> urlMap, JsonRpcHandler<?> handler,
       List<String> paths) {
 
-    JsonRpcHttpRequestHandler requestHandler =
-        new JsonRpcHttpRequestHandler((ProtocolManager) ctx.getBean("protocolManager", handler));
+    ProtocolManager protocolManager = (ProtocolManager) ctx.getBean("protocolManager", handler);
+    protocolManager.setMetricsName(Joiner.on(',').join(paths));
+
+    JsonRpcHttpRequestHandler requestHandler = new JsonRpcHttpRequestHandler(protocolManager);
 
     for (String path : paths) {
       urlMap.put(path, requestHandler);
@@ -185,6 +192,8 @@ public class JsonRpcConfiguration implements WebSocketConfigurer {
 
     ProtocolManager protocolManager = (ProtocolManager) ctx.getBean("protocolManager", handler);
 
+    protocolManager.setMetricsName(Joiner.on(',').join(paths));
+
     JsonRpcWebSocketHandler wsHandler = new JsonRpcWebSocketHandler(protocolManager);
 
     protocolManager.setPingWachdog(handler.isPingWatchdog());
@@ -258,9 +267,26 @@ public class JsonRpcConfiguration implements WebSocketConfigurer {
     return new PerSessionJsonRpcHandler(beanName, beanClass);
   }
 
+  @Bean
+  public JsonRpcMetrics jsonRpcMetrics() {
+    return new JsonRpcMetrics();
+  }
+
+  @Bean
+  public AdmissionController admissionController() {
+    return new AdmissionController();
+  }
+
+  /**
+   * Scheduler used for timers and for the responses to close messages, so that they are never
+   * queued behind application requests.
+   */
   @Bean(destroyMethod = "shutdown")
   public TaskScheduler jsonrpcTaskScheduler() {
-    return new ThreadPoolTaskScheduler();
+    ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+    scheduler.setPoolSize(PropertiesManager.getProperty("jsonrpc.controlThreads", 2));
+    scheduler.setThreadNamePrefix("JsonRpcControl-");
+    return scheduler;
   }
 
 }
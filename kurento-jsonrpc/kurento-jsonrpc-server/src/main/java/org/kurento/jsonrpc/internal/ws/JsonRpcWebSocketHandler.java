@@ -204,6 +204,7 @@ public class JsonRpcWebSocketHandler extends TextWebSocketHandler {
           synchronized (wsSession) {
             if (wsSession.isOpen()) {
               wsSession.sendMessage(new TextMessage(jsonMessage));
+              protocolManager.getHandlerMetrics().messageSent(jsonMessage);
             } else {
               log.error("Trying to send a message to a closed session");
             }
@@ -65,6 +65,8 @@ public class WebSocketServerSession extends ServerSession {
 
     this.wsSession = wsSession;
 
+    this.enableReplayBuffer();
+
     this.setRsHelper(new JsonRpcRequestSenderHelper(sessionId) {
       @Override
       public <P, R> Response<R> internalSendRequest(Request<P> request, Class<R> resultClass)
@@ -113,9 +115,7 @@ public class WebSocketServerSession extends ServerSession {
     }
 
     try {
-      synchronized (wsSession) {
-        wsSession.sendMessage(new TextMessage(JsonUtils.toJson(request)));
-      }
+      sendJsonMessage(JsonUtils.toJson(request));
     } catch (Exception e) {
       throw new KurentoException("Exception while sending message '" + JsonUtils.toJson(request)
           + "' to websocket with native sessionId '" + wsSession.getId() + "'", e);
@@ -162,6 +162,17 @@ public class WebSocketServerSession extends ServerSession {
     }
   }
 
+  @Override
+  public void sendSerializedMessage(String jsonMessage) throws IOException {
+    synchronized (wsSession) {
+      if (wsSession.isOpen()) {
+        wsSession.sendMessage(new TextMessage(jsonMessage));
+      } else {
+        throw new TransportException("WebSocket session " + wsSession.getId() + " is closed");
+      }
+    }
+  }
+
   public void updateWebSocketSession(WebSocketSession wsSession) {
     synchronized (wsSession) {
       this.wsSession = wsSession;
@@ -0,0 +1,182 @@
+/*
+ * (C) Copyright 2013 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.kurento.commons.exception.KurentoException;
+
+import com.google.common.io.BaseEncoding;
+
+/**
+ * {@link SessionStore} keeping each session in a file of a shared directory. Operations are
+ * serialized with a lock file, so several server processes in the same host can share it. It is
+ * intended as a local stand-in of a shared store for tests and development.
+ */
+public class FileSessionStore implements SessionStore {
+
+  private static final String FILE_SUFFIX = ".session";
+  private static final String LOCK_FILE = ".lock";
+
+  private static final String SESSION_ID_KEY = "sessionId";
+  private static final String NODE_ID_KEY = "nodeId";
+  private static final String LAST_UPDATE_KEY = "lastUpdateTime";
+  private static final String PROPERTY_PREFIX = "property.";
+
+  // File locks are held by the whole JVM, so threads using the same directory are serialized here
+  private static final ConcurrentHashMap<Path, Object> jvmLocks = new ConcurrentHashMap<>();
+
+  private final Path directory;
+  private final Object jvmLock;
+
+  public FileSessionStore(Path directory) {
+    try {
+      this.directory = Files.createDirectories(directory).toRealPath();
+    } catch (IOException e) {
+      throw new KurentoException("Exception creating session store directory " + directory, e);
+    }
+    jvmLocks.putIfAbsent(this.directory, new Object());
+    this.jvmLock = jvmLocks.get(this.directory);
+  }
+
+  @Override
+  public void put(final SessionInfo sessionInfo) {
+    executeLocked(new Operation<Void>() {
+      @Override
+      public Void execute() throws IOException {
+        write(sessionInfo);
+        return null;
+      }
+    });
+  }
+
+  @Override
+  public SessionInfo get(final String sessionId) {
+    return executeLocked(new Operation<SessionInfo>() {
+      @Override
+      public SessionInfo execute() throws IOException {
+        return read(sessionId);
+      }
+    });
+  }
+
+  @Override
+  public SessionInfo claim(final String sessionId, final String nodeId) {
+    return executeLocked(new Operation<SessionInfo>() {
+      @Override
+      public SessionInfo execute() throws IOException {
+        SessionInfo current = read(sessionId);
+        if (current != null) {
+          write(current.withNodeId(nodeId));
+        }
+        return current;
+      }
+    });
+  }
+
+  @Override
+  public boolean remove(final String sessionId, final String nodeId) {
+    return executeLocked(new Operation<Boolean>() {
+      @Override
+      public Boolean execute() throws IOException {
+        SessionInfo current = read(sessionId);
+        if (current == null || !current.getNodeId().equals(nodeId)) {
+          return false;
+        }
+        Files.deleteIfExists(getFile(sessionId));
+        return true;
+      }
+    });
+  }
+
+  private interface Operation<T> {
+    T execute() throws IOException;
+  }
+
+  private <T> T executeLocked(Operation<T> operation) {
+    synchronized (jvmLock) {
+      try (FileChannel channel = FileChannel.open(directory.resolve(LOCK_FILE),
+          StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+          FileLock lock = channel.lock()) {
+        return operation.execute();
+      } catch (IOException e) {
+        throw new KurentoException("Exception accessing session store in " + directory, e);
+      }
+    }
+  }
+
+  private Path getFile(String sessionId) {
+    // Session ids are received from clients, so they are encoded to be safe file names
+    return directory.resolve(
+        BaseEncoding.base16().lowerCase().encode(sessionId.getBytes(StandardCharsets.UTF_8))
+            + FILE_SUFFIX);
+  }
+
+  private SessionInfo read(String sessionId) throws IOException {
+
+    Properties props = new Properties();
+    try (InputStream is = Files.newInputStream(getFile(sessionId))) {
+      props.load(is);
+    } catch (NoSuchFileException e) {
+      return null;
+    }
+
+    Map<String, String> properties = new HashMap<>();
+    for (String name : props.stringPropertyNames()) {
+      if (name.startsWith(PROPERTY_PREFIX)) {
+        properties.put(name.substring(PROPERTY_PREFIX.length()), props.getProperty(name));
+      }
+    }
+
+    return new SessionInfo(props.getProperty(SESSION_ID_KEY), props.getProperty(NODE_ID_KEY),
+        Long.parseLong(props.getProperty(LAST_UPDATE_KEY, "0")), properties);
+  }
+
+  private void write(SessionInfo sessionInfo) throws IOException {
+
+    Properties props = new Properties();
+    props.setProperty(SESSION_ID_KEY, sessionInfo.getSessionId());
+    props.setProperty(NODE_ID_KEY, sessionInfo.getNodeId());
+    props.setProperty(LAST_UPDATE_KEY, Long.toString(sessionInfo.getLastUpdateTime()));
+    for (Map.Entry<String, String> property : sessionInfo.getProperties().entrySet()) {
+      props.setProperty(PROPERTY_PREFIX + property.getKey(), property.getValue());
+    }
+
+    Path file = getFile(sessionInfo.getSessionId());
+    Path tmpFile = Files.createTempFile(directory, "tmp", FILE_SUFFIX + ".tmp");
+    try (OutputStream os = Files.newOutputStream(tmpFile)) {
+      props.store(os, null);
+    }
+    Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  }
+}
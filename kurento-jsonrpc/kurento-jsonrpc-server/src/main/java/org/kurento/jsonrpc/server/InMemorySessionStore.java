@@ -0,0 +1,69 @@
+/*
+ * (C) Copyright 2013 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc.server;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link SessionStore} keeping sessions in process memory. It can be shared by several servers
+ * running in the same process, and is the reference implementation of the store semantics.
+ */
+public class InMemorySessionStore implements SessionStore {
+
+  private final ConcurrentHashMap<String, SessionInfo> sessions = new ConcurrentHashMap<>();
+
+  @Override
+  public void put(SessionInfo sessionInfo) {
+    sessions.put(sessionInfo.getSessionId(), sessionInfo);
+  }
+
+  @Override
+  public SessionInfo get(String sessionId) {
+    return sessions.get(sessionId);
+  }
+
+  @Override
+  public SessionInfo claim(String sessionId, String nodeId) {
+    while (true) {
+      SessionInfo current = sessions.get(sessionId);
+      if (current == null) {
+        return null;
+      }
+      if (sessions.replace(sessionId, current, current.withNodeId(nodeId))) {
+        return current;
+      }
+    }
+  }
+
+  @Override
+  public boolean remove(String sessionId, String nodeId) {
+    while (true) {
+      SessionInfo current = sessions.get(sessionId);
+      if (current == null || !current.getNodeId().equals(nodeId)) {
+        return false;
+      }
+      if (sessions.remove(sessionId, current)) {
+        return true;
+      }
+    }
+  }
+
+  public int size() {
+    return sessions.size();
+  }
+}
@@ -0,0 +1,235 @@
+/*
+ * (C) Copyright 2013 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc.server;
+
+import java.io.Closeable;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.kurento.commons.PropertiesManager;
+import org.kurento.commons.ThreadFactoryCreator;
+import org.kurento.jsonrpc.JsonRpcHandler;
+import org.kurento.jsonrpc.internal.netty.NettyHandshakeHandler;
+import org.kurento.jsonrpc.internal.netty.NettyHandshakeHandler.Endpoint;
+import org.kurento.jsonrpc.internal.server.AdmissionController;
+import org.kurento.jsonrpc.internal.server.JsonRpcMetrics;
+import org.kurento.jsonrpc.internal.server.ProtocolManager;
+import org.kurento.jsonrpc.internal.server.SessionsManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+import com.google.common.base.Joiner;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpServerCodec;
+
+/**
+ * Standalone JSON-RPC server using a Netty WebSocket transport. It publishes
+ * {@link JsonRpcHandler}s with the same protocol semantics (sessions, reconnection, ping
+ * watchdog, admission control and metrics) as the Spring based server, but without an
+ * application context or a servlet container, so it is suitable for embedded use.
+ *
+ * <pre>
+ * JsonRpcNettyServer server = new JsonRpcNettyServer(8888);
+ * server.addHandler(new EchoJsonRpcHandler(), "/jsonrpc");
+ * server.start();
+ * </pre>
+ *
+ * Only WebSocket transport is supported. SockJS and handshake interceptors configured in the
+ * handlers are ignored.
+ */
+public class JsonRpcNettyServer implements Closeable {
+
+  private static final Logger log = LoggerFactory.getLogger(JsonRpcNettyServer.class);
+
+  private static final int MAX_MESSAGE_SIZE =
+      PropertiesManager.getProperty("jsonrpc.netty.maxMessageSize", 10 * 1024 * 1024);
+
+  private final String host;
+  private final int port;
+
+  private final SessionsManager sessionsManager = new SessionsManager();
+  private final JsonRpcMetrics metrics = new JsonRpcMetrics();
+  private final AdmissionController admissionController = new AdmissionController();
+
+  private final Map<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+  private final List<ProtocolManager> protocolManagers = new ArrayList<>();
+
+  private ThreadPoolTaskScheduler taskScheduler;
+  private EventLoopGroup bossGroup;
+  private EventLoopGroup workerGroup;
+  private Channel serverChannel;
+
+  public JsonRpcNettyServer(int port) {
+    this(null, port);
+  }
+
+  /**
+   * @param host
+   *          address to bind to. If null, the server listens on all interfaces
+   * @param port
+   *          port to listen on. If 0, an ephemeral port is used (see {@link #getPort()})
+   */
+  public JsonRpcNettyServer(String host, int port) {
+    this.host = host;
+    this.port = port;
+
+    taskScheduler = new ThreadPoolTaskScheduler();
+    taskScheduler.setPoolSize(PropertiesManager.getProperty("jsonrpc.controlThreads", 2));
+    taskScheduler.setThreadNamePrefix("JsonRpcControl-");
+    taskScheduler.initialize();
+  }
+
+  /**
+   * Publishes the handler in the given paths. Handlers must be added before the server is
+   * started.
+   */
+  public synchronized JsonRpcNettyServer addHandler(JsonRpcHandler<?> handler, String... paths) {
+
+    if (serverChannel != null) {
+      throw new IllegalStateException("Handlers can not be added to a started server");
+    }
+
+    ProtocolManager protocolManager =
+        new ProtocolManager(handler, sessionsManager, taskScheduler);
+    protocolManager.setMetrics(metrics);
+    protocolManager.setAdmissionController(admissionController);
+    protocolManager.setMetricsName(Joiner.on(',').join(paths));
+    protocolManager.setPingWachdog(handler.isPingWatchdog());
+    if (handler.getLabel() != null) {
+      protocolManager.setLabel(handler.getLabel());
+    }
+
+    if (handler.isSockJSEnabled() || !handler.interceptors().isEmpty()) {
+      log.warn("SockJS and handshake interceptors are not supported by JsonRpcNettyServer. "
+          + "Ignoring them in handler {}", handler);
+    }
+
+    Endpoint endpoint = new Endpoint(handler, protocolManager);
+    for (String path : paths) {
+      if (endpoints.putIfAbsent(path, endpoint) != null) {
+        throw new IllegalArgumentException("Path " + path + " has already a handler");
+      }
+    }
+    protocolManagers.add(protocolManager);
+
+    return this;
+  }
+
+  public synchronized void start() throws InterruptedException {
+
+    if (serverChannel != null) {
+      throw new IllegalStateException("Server already started");
+    }
+
+    bossGroup = new NioEventLoopGroup(1,
+        ThreadFactoryCreator.create("JsonRpcNettyServer-boss"));
+    workerGroup = new NioEventLoopGroup(0,
+        ThreadFactoryCreator.create("JsonRpcNettyServer-worker"));
+
+    final NettyHandshakeHandler handshakeHandler =
+        new NettyHandshakeHandler(endpoints, MAX_MESSAGE_SIZE);
+
+    ServerBootstrap b = new ServerBootstrap();
+    b.group(bossGroup, workerGroup).channel(NioServerSocketChannel.class)
+        .childOption(ChannelOption.TCP_NODELAY, true)
+        .childHandler(new ChannelInitializer<SocketChannel>() {
+          @Override
+          protected void initChannel(SocketChannel ch) {
+            ch.pipeline().addLast(new HttpServerCodec(), new HttpObjectAggregator(65536),
+                handshakeHandler);
+          }
+        });
+
+    InetSocketAddress address =
+        host == null ? new InetSocketAddress(port) : new InetSocketAddress(host, port);
+
+    try {
+      serverChannel = b.bind(address).sync().channel();
+    } catch (InterruptedException | RuntimeException e) {
+      shutdownGroups();
+      throw e;
+    }
+
+    log.info("JsonRpcNettyServer listening in {} with paths {}", serverChannel.localAddress(),
+        endpoints.keySet());
+  }
+
+  /**
+   * Returns the port the server is listening to, or the configured port if it is not started.
+   */
+  public int getPort() {
+    Channel ch = serverChannel;
+    if (ch != null) {
+      return ((InetSocketAddress) ch.localAddress()).getPort();
+    }
+    return port;
+  }
+
+  public SessionsManager getSessionsManager() {
+    return sessionsManager;
+  }
+
+  public JsonRpcMetrics getMetrics() {
+    return metrics;
+  }
+
+  public AdmissionController getAdmissionController() {
+    return admissionController;
+  }
+
+  public boolean isStarted() {
+    return serverChannel != null;
+  }
+
+  @Override
+  public synchronized void close() {
+
+    if (serverChannel != null) {
+      serverChannel.close().syncUninterruptibly();
+      serverChannel = null;
+    }
+
+    shutdownGroups();
+    taskScheduler.shutdown();
+    sessionsManager.destroy();
+  }
+
+  private void shutdownGroups() {
+    if (bossGroup != null) {
+      bossGroup.shutdownGracefully();
+      bossGroup = null;
+    }
+    if (workerGroup != null) {
+      workerGroup.shutdownGracefully();
+      workerGroup = null;
+    }
+  }
+}
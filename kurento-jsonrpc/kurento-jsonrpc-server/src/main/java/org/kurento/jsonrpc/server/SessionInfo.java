@@ -0,0 +1,89 @@
+/*
+ * (C) Copyright 2013 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc.server;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Metadata of a JSON-RPC session kept in a {@link SessionStore}. Instances are immutable.
+ */
+public class SessionInfo {
+
+  private final String sessionId;
+  private final String nodeId;
+  private final long lastUpdateTime;
+  private final Map<String, String> properties;
+
+  public SessionInfo(String sessionId, String nodeId) {
+    this(sessionId, nodeId, System.currentTimeMillis(), Collections.<String, String> emptyMap());
+  }
+
+  public SessionInfo(String sessionId, String nodeId, long lastUpdateTime,
+      Map<String, String> properties) {
+    this.sessionId = sessionId;
+    this.nodeId = nodeId;
+    this.lastUpdateTime = lastUpdateTime;
+    this.properties = Collections.unmodifiableMap(new HashMap<>(properties));
+  }
+
+  public String getSessionId() {
+    return sessionId;
+  }
+
+  /**
+   * @return the identifier of the server instance owning the session
+   */
+  public String getNodeId() {
+    return nodeId;
+  }
+
+  public long getLastUpdateTime() {
+    return lastUpdateTime;
+  }
+
+  /**
+   * @return application defined properties of the session
+   */
+  public Map<String, String> getProperties() {
+    return properties;
+  }
+
+  /**
+   * @return a copy of this info owned by the given node
+   */
+  public SessionInfo withNodeId(String nodeId) {
+    return new SessionInfo(sessionId, nodeId, System.currentTimeMillis(), properties);
+  }
+
+  /**
+   * @return a copy of this info including the given property
+   */
+  public SessionInfo withProperty(String name, String value) {
+    Map<String, String> newProperties = new HashMap<>(properties);
+    newProperties.put(name, value);
+    return new SessionInfo(sessionId, nodeId, System.currentTimeMillis(), newProperties);
+  }
+
+  @Override
+  public String toString() {
+    return "SessionInfo [sessionId=" + sessionId + ", nodeId=" + nodeId + ", lastUpdateTime="
+        + lastUpdateTime + ", properties=" + properties + "]";
+  }
+}
@@ -0,0 +1,56 @@
+/*
+ * (C) Copyright 2013 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc.server;
+
+/**
+ * Storage of the metadata of JSON-RPC sessions. When several server instances share the same
+ * store, a client can reconnect with its sessionId to any of them: the instance receiving the
+ * reconnection claims the ownership of the session and creates it locally.
+ *
+ * Implementations must be thread safe, and {@link #claim(String, String)} and
+ * {@link #remove(String, String)} must be atomic with respect to other instances using the store.
+ */
+public interface SessionStore {
+
+  /**
+   * Stores or replaces the metadata of a session.
+   */
+  void put(SessionInfo sessionInfo);
+
+  /**
+   * @return the metadata of the session, or null if it is not stored
+   */
+  SessionInfo get(String sessionId);
+
+  /**
+   * Transfers the ownership of a stored session to the given node.
+   *
+   * @return the metadata before the transfer, or null if the session is not stored. In this case
+   *         nothing is stored.
+   */
+  SessionInfo claim(String sessionId, String nodeId);
+
+  /**
+   * Removes the session, but only if it is owned by the given node. This way, a node closing a
+   * session that has been handed off to another node doesn't remove it from the store.
+   *
+   * @return true if the session has been removed
+   */
+  boolean remove(String sessionId, String nodeId);
+
+}
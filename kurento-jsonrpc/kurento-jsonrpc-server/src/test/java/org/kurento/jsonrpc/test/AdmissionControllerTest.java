@@ -0,0 +1,98 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.kurento.jsonrpc.internal.JsonRpcConstants;
+import org.kurento.jsonrpc.internal.server.AdmissionController;
+import org.kurento.jsonrpc.internal.server.ServerSession;
+import org.kurento.jsonrpc.internal.server.SessionsManager;
+import org.kurento.jsonrpc.message.ResponseError;
+
+public class AdmissionControllerTest {
+
+  private ServerSession createSession(String sessionId) {
+    return new StubServerSession(sessionId, new SessionsManager());
+  }
+
+  @Test
+  public void sessionLimitTest() {
+
+    AdmissionController controller = new AdmissionController();
+    controller.setMaxInFlightRequestsPerSession(2);
+
+    ServerSession session = createSession("s1");
+
+    assertNull(controller.tryAdmit(session, "method"));
+    assertNull(controller.tryAdmit(session, "method"));
+
+    ResponseError error = controller.tryAdmit(session, "method");
+    assertNotNull(error);
+    assertEquals(JsonRpcConstants.ERROR_SERVER_BUSY, error.getCode());
+    assertEquals(AdmissionController.SERVER_BUSY_TYPE, error.getType());
+
+    assertNull(controller.tryAdmit(createSession("s2"), "method"));
+
+    controller.release(session);
+    assertNull(controller.tryAdmit(session, "method"));
+  }
+
+  @Test
+  public void globalLimitTest() {
+
+    AdmissionController controller = new AdmissionController();
+    controller.setMaxQueuedRequests(2);
+
+    ServerSession session1 = createSession("s1");
+    ServerSession session2 = createSession("s2");
+
+    assertNull(controller.tryAdmit(session1, "method"));
+    assertNull(controller.tryAdmit(session2, "method"));
+    assertNotNull(controller.tryAdmit(session2, "method"));
+
+    controller.sessionClosed(session1);
+    controller.release(session1);
+
+    assertEquals(1, controller.getQueuedRequests());
+    assertNull(controller.tryAdmit(session2, "method"));
+  }
+
+  @Test
+  public void rateLimitTest() {
+
+    AdmissionController controller = new AdmissionController();
+    controller.setMethodRateLimit("limited", 1, 2);
+
+    ServerSession session = createSession("s1");
+
+    assertNull(controller.tryAdmit(session, "limited"));
+    assertNull(controller.tryAdmit(session, "limited"));
+
+    ResponseError error = controller.tryAdmit(session, "limited");
+    assertNotNull(error);
+    assertTrue(error.getData().contains(AdmissionController.RETRY_AFTER_PROPERTY));
+
+    assertNull(controller.tryAdmit(session, "other"));
+    assertEquals(3, controller.getQueuedRequests());
+  }
+}
@@ -0,0 +1,119 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.kurento.jsonrpc.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.client.Continuation;
+import org.kurento.jsonrpc.client.JsonRpcClientNettyWebSocket;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.server.JsonRpcNettyServer;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * Checks that pings are answered while slow handlers keep the executors of application requests
+ * busy, both in the server and in the client.
+ */
+public class ControlLaneTest {
+
+  private static final int PING_TIMEOUT = 2000;
+
+  private final CountDownLatch handlerStarted = new CountDownLatch(1);
+  private final CountDownLatch releaseHandler = new CountDownLatch(1);
+
+  private JsonRpcNettyServer server;
+  private JsonRpcClientNettyWebSocket client;
+
+  @Before
+  public void start() throws InterruptedException {
+    server = new JsonRpcNettyServer("127.0.0.1", 0);
+    server.addHandler(new DefaultJsonRpcHandler<JsonObject>() {
+      @Override
+      public void handleRequest(Transaction transaction, Request<JsonObject> request)
+          throws Exception {
+        if ("slow".equals(request.getMethod())) {
+          handlerStarted.countDown();
+          releaseHandler.await(10, TimeUnit.SECONDS);
+        } else if ("notifyMe".equals(request.getMethod())) {
+          transaction.getSession().sendNotification("slowNotification");
+        }
+        transaction.sendResponse("done");
+      }
+    }, "/jsonrpc");
+    server.start();
+
+    client = new JsonRpcClientNettyWebSocket("ws://127.0.0.1:" + server.getPort() + "/jsonrpc");
+    client.setRequestTimeout(PING_TIMEOUT);
+  }
+
+  @After
+  public void stop() throws Exception {
+    releaseHandler.countDown();
+    client.close();
+    server.close();
+  }
+
+  @Test
+  public void serverAnswersPingWhileSessionIsBusy() throws Exception {
+
+    client.sendRequest("slow", new JsonObject(), new Continuation<JsonElement>() {
+      @Override
+      public void onSuccess(JsonElement result) {
+      }
+
+      @Override
+      public void onError(Throwable cause) {
+      }
+    });
+    assertTrue(handlerStarted.await(5, TimeUnit.SECONDS));
+
+    // The session executor is blocked in the handler, but the pong is sent by the transport
+    assertNotNull(client.sendRequest("ping"));
+  }
+
+  @Test
+  public void clientReadsResponsesWhileServerRequestIsBusy() throws Exception {
+
+    client.setConcurrentServerRequest(false);
+    client.setServerRequestHandler(new DefaultJsonRpcHandler<JsonElement>() {
+      @Override
+      public void handleRequest(Transaction transaction, Request<JsonElement> request)
+          throws Exception {
+        handlerStarted.countDown();
+        releaseHandler.await(10, TimeUnit.SECONDS);
+      }
+    });
+
+    // The notification is received before the response, and its handler does not block the
+    // websocket thread that reads the response and the pong
+    assertEquals("done", client.sendRequest("notifyMe", String.class));
+    assertTrue(handlerStarted.await(5, TimeUnit.SECONDS));
+    assertNotNull(client.sendRequest("ping"));
+  }
+}
@@ -0,0 +1,110 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.kurento.jsonrpc.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.kurento.jsonrpc.internal.server.JsonRpcMetrics;
+import org.kurento.jsonrpc.internal.server.JsonRpcMetrics.HandlerMetrics;
+import org.kurento.jsonrpc.internal.server.JsonRpcMetrics.MethodMetrics;
+import org.kurento.jsonrpc.internal.server.ServerSession;
+import org.kurento.jsonrpc.internal.server.SessionsManager;
+
+import com.google.gson.JsonObject;
+
+public class JsonRpcMetricsTest {
+
+  @Test
+  public void handlerCountersTest() {
+
+    JsonRpcMetrics metrics = new JsonRpcMetrics();
+    HandlerMetrics handler = metrics.getHandlerMetrics("/path");
+    assertSame(handler, metrics.getHandlerMetrics("/path"));
+
+    handler.messageReceived("{}");
+    handler.messageSent("ñ€");
+    handler.requestQueued();
+    handler.requestQueued();
+    handler.requestDequeued();
+    handler.requestProcessed("method", 2000000);
+    handler.requestProcessed("method", 4000000);
+    handler.errorResponse("method");
+    handler.requestRejected();
+    handler.sessionReconnected();
+
+    assertEquals(1, handler.getMessagesReceived());
+    assertEquals(2, handler.getBytesReceived());
+    assertEquals(1, handler.getMessagesSent());
+    assertEquals(5, handler.getBytesSent());
+    assertEquals(1, handler.getPendingRequests());
+    assertEquals(2, handler.getRequests());
+    assertEquals(1, handler.getRejectedRequests());
+    assertEquals(1, handler.getReconnections());
+
+    MethodMetrics method = handler.getMethodMetrics("method");
+    assertEquals(2, method.getRequests());
+    assertEquals(1, method.getErrors());
+    assertEquals(3.0, method.getAverageLatencyMillis(), 0.001);
+    assertEquals(4.0, method.getMaxLatencyMillis(), 0.001);
+    assertNull(handler.getMethodMetrics("other"));
+  }
+
+  @Test
+  public void jsonSnapshotTest() {
+
+    JsonRpcMetrics metrics = new JsonRpcMetrics();
+    HandlerMetrics handler = metrics.getHandlerMetrics("/path");
+    handler.requestQueued();
+    handler.requestQueued();
+    handler.requestDequeued();
+    handler.requestProcessed("method", 1000000);
+
+    JsonObject json = metrics.toJson().getAsJsonObject("/path");
+    assertEquals(1, json.get("requests").getAsLong());
+    assertEquals(1, json.get("pendingRequests").getAsInt());
+    assertEquals(2, json.get("maxPendingRequests").getAsLong());
+    assertEquals(1,
+        json.getAsJsonObject("methods").getAsJsonObject("method").get("requests").getAsLong());
+  }
+
+  @Test
+  public void broadcastCountedTest() {
+
+    HandlerMetrics handler = new JsonRpcMetrics().getHandlerMetrics("/path");
+    SessionsManager sessionsManager = new SessionsManager();
+
+    ServerSession session1 = createSession("s1", sessionsManager);
+    ServerSession session2 = createSession("s2", sessionsManager);
+    session1.setHandlerMetrics(handler);
+    session2.setHandlerMetrics(handler);
+
+    assertEquals(2, sessionsManager.broadcastNotification(Arrays.asList(session1, session2),
+        "event", new JsonObject()));
+    assertEquals(2, handler.getMessagesSent());
+  }
+
+  private ServerSession createSession(String sessionId, SessionsManager sessionsManager) {
+    ServerSession session = new StubServerSession(sessionId, sessionsManager);
+    sessionsManager.put(session);
+    return session;
+  }
+}
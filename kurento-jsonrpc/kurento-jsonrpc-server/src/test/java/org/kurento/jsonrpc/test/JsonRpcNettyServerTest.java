@@ -0,0 +1,95 @@
+/*
+ * (C) Copyright 2013 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc.test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.client.JsonRpcClient;
+import org.kurento.jsonrpc.client.JsonRpcClientNettyWebSocket;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.server.JsonRpcNettyServer;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+public class JsonRpcNettyServerTest {
+
+  private JsonRpcNettyServer server;
+
+  @Before
+  public void startServer() throws InterruptedException {
+    server = new JsonRpcNettyServer("127.0.0.1", 0);
+    server.addHandler(new DefaultJsonRpcHandler<JsonObject>() {
+      @Override
+      public void handleRequest(Transaction transaction, Request<JsonObject> request)
+          throws Exception {
+        if ("notifyMe".equals(request.getMethod())) {
+          transaction.getSession().sendNotification("notification", request.getParams());
+          transaction.sendResponse("sent");
+        } else {
+          transaction.sendResponse(request.getParams());
+        }
+      }
+    }, "/jsonrpc");
+    server.start();
+  }
+
+  @After
+  public void stopServer() {
+    server.close();
+  }
+
+  @Test
+  public void testEchoAndNotification() throws Exception {
+
+    final CountDownLatch notificationLatch = new CountDownLatch(1);
+
+    JsonRpcClient client =
+        new JsonRpcClientNettyWebSocket("ws://127.0.0.1:" + server.getPort() + "/jsonrpc");
+    client.setServerRequestHandler(new DefaultJsonRpcHandler<JsonElement>() {
+      @Override
+      public void handleRequest(Transaction transaction, Request<JsonElement> request)
+          throws Exception {
+        if ("notification".equals(request.getMethod())) {
+          notificationLatch.countDown();
+        }
+      }
+    });
+
+    try {
+      JsonObject params = new JsonObject();
+      params.addProperty("value", "hello");
+
+      JsonObject result = client.sendRequest("echo", params, JsonObject.class);
+      Assert.assertEquals("hello", result.get("value").getAsString());
+
+      Assert.assertEquals("sent", client.sendRequest("notifyMe", params, String.class));
+      Assert.assertTrue("Notification not received",
+          notificationLatch.await(5, TimeUnit.SECONDS));
+    } finally {
+      client.close();
+    }
+  }
+}
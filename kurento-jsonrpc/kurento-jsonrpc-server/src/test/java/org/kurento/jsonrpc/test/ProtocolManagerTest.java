@@ -0,0 +1,179 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.kurento.jsonrpc.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.internal.JsonRpcConstants;
+import org.kurento.jsonrpc.internal.client.AbstractTransaction;
+import org.kurento.jsonrpc.internal.client.TransactionImpl.ResponseSender;
+import org.kurento.jsonrpc.internal.server.AdmissionController;
+import org.kurento.jsonrpc.internal.server.ProtocolManager;
+import org.kurento.jsonrpc.internal.server.ProtocolManager.ServerSessionFactory;
+import org.kurento.jsonrpc.internal.server.ServerSession;
+import org.kurento.jsonrpc.internal.server.SessionsManager;
+import org.kurento.jsonrpc.message.Message;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.message.Response;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+import com.google.gson.JsonObject;
+
+public class ProtocolManagerTest {
+
+  private static final String TRANSPORT_ID = "transport";
+
+  private final BlockingQueue<Transaction> transactions = new LinkedBlockingQueue<>();
+  private final BlockingQueue<Message> sent = new LinkedBlockingQueue<>();
+
+  private ThreadPoolTaskScheduler scheduler;
+  private ProtocolManager protocolManager;
+
+  private final ServerSessionFactory factory = new ServerSessionFactory() {
+    @Override
+    public ServerSession createSession(String sessionId, Object registerInfo,
+        SessionsManager sessionsManager) {
+      return new StubServerSession(sessionId, registerInfo, sessionsManager, TRANSPORT_ID);
+    }
+
+    @Override
+    public void updateSessionOnReconnection(ServerSession session) {
+    }
+  };
+
+  private final ResponseSender responseSender = new ResponseSender() {
+    @Override
+    public void sendResponse(Message message) {
+      sent.add(message);
+    }
+
+    @Override
+    public void sendPingResponse(Message message) {
+      sent.add(message);
+    }
+  };
+
+  @Before
+  public void setup() {
+    scheduler = new ThreadPoolTaskScheduler();
+    scheduler.initialize();
+    protocolManager = new ProtocolManager(new DefaultJsonRpcHandler<JsonObject>() {
+      @Override
+      public void handleRequest(Transaction transaction, Request<JsonObject> request) {
+        transaction.startAsync();
+        transactions.add(transaction);
+      }
+    }, new SessionsManager(), scheduler);
+  }
+
+  @After
+  public void teardown() {
+    scheduler.shutdown();
+  }
+
+  private void process(String json) throws IOException {
+    protocolManager.processMessage(json, factory, responseSender, TRANSPORT_ID);
+  }
+
+  @Test
+  public void cancelAsyncRequestTest() throws Exception {
+
+    process("{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"slow\",\"params\":{}}");
+
+    // The handler has returned, but the response has not been sent yet
+    Transaction tx = transactions.poll(5, TimeUnit.SECONDS);
+    assertNotNull(tx);
+    assertFalse(((AbstractTransaction) tx).isCancelled());
+
+    process("{\"jsonrpc\":\"2.0\",\"method\":\"cancelRequest\",\"params\":{\"requestId\":1}}");
+    assertTrue(((AbstractTransaction) tx).isCancelled());
+
+    tx.sendResponse("result");
+    assertTrue(sent.isEmpty());
+  }
+
+  @Test
+  public void malformedCancelIsIgnoredTest() throws Exception {
+
+    process("{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"slow\",\"params\":{}}");
+    Transaction tx = transactions.poll(5, TimeUnit.SECONDS);
+
+    // Cancel messages with an id that is not a number are ignored
+    String cancel = "{\"jsonrpc\":\"2.0\",\"method\":\"cancelRequest\",\"params\":%s}";
+    process(String.format(cancel, "{\"requestId\":\"abc\"}"));
+    process(String.format(cancel, "{\"requestId\":{}}"));
+    process(String.format(cancel, "{\"requestId\":null}"));
+    process(String.format(cancel, "{}"));
+    assertFalse(((AbstractTransaction) tx).isCancelled());
+
+    tx.sendResponse("result");
+    assertEquals(1, (int) ((Response<?>) sent.poll(5, TimeUnit.SECONDS)).getId());
+  }
+
+  @Test
+  public void asyncResponseTest() throws Exception {
+
+    process("{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"slow\",\"params\":{}}");
+
+    Transaction tx = transactions.poll(5, TimeUnit.SECONDS);
+    tx.sendResponse("result");
+
+    Message response = sent.poll(5, TimeUnit.SECONDS);
+    assertEquals(1, (int) ((Response<?>) response).getId());
+
+    // Cancelling a request that has already been responded has no effect
+    process("{\"jsonrpc\":\"2.0\",\"method\":\"cancelRequest\",\"params\":{\"requestId\":1}}");
+    assertFalse(((AbstractTransaction) tx).isCancelled());
+  }
+
+  @Test
+  public void asyncRequestKeepsAdmissionSlotTest() throws Exception {
+
+    AdmissionController admissionController = new AdmissionController();
+    admissionController.setMaxInFlightRequestsPerSession(1);
+    protocolManager.setAdmissionController(admissionController);
+
+    process("{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"slow\",\"params\":{}}");
+    Transaction tx = transactions.poll(5, TimeUnit.SECONDS);
+
+    // The handler has returned, but the request is still in flight
+    process("{\"jsonrpc\":\"2.0\",\"id\":2,\"method\":\"slow\",\"params\":{}}");
+    Response<?> rejection = (Response<?>) sent.poll(5, TimeUnit.SECONDS);
+    assertEquals(2, (int) rejection.getId());
+    assertEquals(JsonRpcConstants.ERROR_SERVER_BUSY, rejection.getError().getCode());
+
+    tx.sendResponse("result");
+    assertEquals(1, (int) ((Response<?>) sent.poll(5, TimeUnit.SECONDS)).getId());
+
+    process("{\"jsonrpc\":\"2.0\",\"id\":3,\"method\":\"slow\",\"params\":{}}");
+    assertNotNull(transactions.poll(5, TimeUnit.SECONDS));
+    assertTrue(sent.isEmpty());
+  }
+}
@@ -0,0 +1,79 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.kurento.jsonrpc.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Test;
+import org.kurento.jsonrpc.TransportException;
+import org.kurento.jsonrpc.internal.server.ServerSession;
+import org.kurento.jsonrpc.internal.server.SessionsManager;
+
+public class ServerSessionReplayTest {
+
+  private ServerSession createSession(final boolean replay) {
+    return new StubServerSession("session", null, new SessionsManager(), "transport") {
+
+      {
+        if (replay) {
+          enableReplayBuffer();
+        }
+      }
+
+      @Override
+      protected void write(String jsonMessage) {
+        throw new TransportException("Transport is closed");
+      }
+    };
+  }
+
+  @After
+  public void clearProperty() {
+    System.clearProperty(ServerSession.REPLAY_BUFFER_SIZE_PROP);
+  }
+
+  @Test
+  public void writeErrorThrownWithoutReplay() throws IOException {
+
+    ServerSession session = createSession(false);
+    assertFalse(session.isReplayEnabled());
+
+    try {
+      session.sendJsonMessage("{\"jsonrpc\":\"2.0\",\"method\":\"event\"}");
+      fail("Write error should be thrown when replay is disabled");
+    } catch (TransportException e) {
+      assertEquals("Transport is closed", e.getMessage());
+    }
+  }
+
+  @Test
+  public void writeErrorKeptForReplay() throws IOException {
+
+    System.setProperty(ServerSession.REPLAY_BUFFER_SIZE_PROP, "10");
+    ServerSession session = createSession(true);
+    assertTrue(session.isReplayEnabled());
+
+    // The message is buffered, so it will be resent when the client reconnects
+    session.sendJsonMessage("{\"jsonrpc\":\"2.0\",\"method\":\"event\"}");
+  }
+}
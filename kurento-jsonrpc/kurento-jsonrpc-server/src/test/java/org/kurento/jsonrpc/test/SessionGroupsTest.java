@@ -0,0 +1,77 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.kurento.jsonrpc.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.kurento.jsonrpc.internal.server.ServerSession;
+import org.kurento.jsonrpc.internal.server.SessionsManager;
+
+import com.google.gson.JsonObject;
+
+public class SessionGroupsTest {
+
+  private final SessionsManager sessionsManager = new SessionsManager();
+  private final List<String> written = new ArrayList<>();
+
+  private ServerSession createSession(String sessionId, boolean push) {
+    StubServerSession session = new StubServerSession(sessionId, sessionsManager) {
+      @Override
+      protected void write(String jsonMessage) {
+        written.add(getSessionId());
+      }
+    };
+    session.setPushSupported(push);
+    return session;
+  }
+
+  @Test
+  public void broadcastSkipsSessionsWithoutPush() {
+
+    ServerSession ws1 = createSession("ws1", true);
+    ServerSession http = createSession("http", false);
+    ServerSession ws2 = createSession("ws2", true);
+    for (ServerSession session : new ServerSession[] { ws1, http, ws2 }) {
+      sessionsManager.put(session);
+      sessionsManager.joinGroup("room", session);
+    }
+
+    assertEquals(2, sessionsManager.broadcastNotification("room", "event", new JsonObject()));
+    assertEquals(2, written.size());
+    assertTrue(written.contains("ws1"));
+    assertTrue(written.contains("ws2"));
+  }
+
+  @Test
+  public void joinGroupOfRemovedSession() {
+
+    ServerSession session = createSession("s1", true);
+    sessionsManager.put(session);
+    sessionsManager.remove(session);
+
+    // A join that arrives after the session was removed must not leave stale membership
+    sessionsManager.joinGroup("room", session);
+
+    assertTrue(sessionsManager.getGroupSessions("room").isEmpty());
+    assertEquals(0, sessionsManager.broadcastNotification("room", "event", new JsonObject()));
+  }
+}
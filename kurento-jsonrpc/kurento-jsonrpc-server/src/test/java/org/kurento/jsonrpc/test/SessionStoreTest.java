@@ -0,0 +1,157 @@
+/*
+ * (C) Copyright 2013 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.Test;
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.client.JsonRpcClient;
+import org.kurento.jsonrpc.client.JsonRpcClientNettyWebSocket;
+import org.kurento.jsonrpc.internal.server.SessionsManager;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.server.FileSessionStore;
+import org.kurento.jsonrpc.server.InMemorySessionStore;
+import org.kurento.jsonrpc.server.JsonRpcNettyServer;
+import org.kurento.jsonrpc.server.SessionInfo;
+import org.kurento.jsonrpc.server.SessionStore;
+
+public class SessionStoreTest {
+
+  private static class SessionStateHandler extends DefaultJsonRpcHandler<String> {
+
+    private final SessionsManager sessionsManager;
+
+    public SessionStateHandler(SessionsManager sessionsManager) {
+      this.sessionsManager = sessionsManager;
+    }
+
+    @Override
+    public void handleRequest(Transaction transaction, Request<String> request) throws Exception {
+      if (request.getParams() != null) {
+        sessionsManager.setSessionProperty(transaction.getSession(), "user", request.getParams());
+      }
+      transaction.sendResponse(transaction.getSession().isNew() ? "new" : "old");
+    }
+  }
+
+  private void assertStoreSemantics(SessionStore store) {
+
+    assertNull(store.claim("unknown", "nodeB"));
+
+    store.put(new SessionInfo("s1", "nodeA").withProperty("user", "alice"));
+    assertEquals("nodeA", store.get("s1").getNodeId());
+
+    SessionInfo previous = store.claim("s1", "nodeB");
+    assertEquals("nodeA", previous.getNodeId());
+    assertEquals("nodeB", store.get("s1").getNodeId());
+    assertEquals("alice", store.get("s1").getProperties().get("user"));
+
+    assertFalse("Former owner can't remove a handed off session", store.remove("s1", "nodeA"));
+    assertTrue(store.remove("s1", "nodeB"));
+    assertNull(store.get("s1"));
+  }
+
+  @Test
+  public void testInMemoryStore() {
+    assertStoreSemantics(new InMemorySessionStore());
+  }
+
+  @Test
+  public void testFileStore() throws Exception {
+    Path dir = Files.createTempDirectory("sessionstore");
+    assertStoreSemantics(new FileSessionStore(dir));
+    // Session ids are encoded, so they can't escape the store directory
+    assertNull(new FileSessionStore(dir).get("../../etc/passwd"));
+  }
+
+  @Test
+  public void testSessionIsTakenOverByOtherNode() throws Exception {
+
+    Path dir = Files.createTempDirectory("sessionstore");
+
+    JsonRpcNettyServer nodeA = new JsonRpcNettyServer("127.0.0.1", 0);
+    JsonRpcNettyServer nodeB = new JsonRpcNettyServer("127.0.0.1", 0);
+    nodeA.getSessionsManager().setSessionStore(new FileSessionStore(dir));
+    final List<String> claimThreads = new CopyOnWriteArrayList<>();
+    nodeB.getSessionsManager().setSessionStore(new FileSessionStore(dir) {
+      @Override
+      public SessionInfo claim(String sessionId, String nodeId) {
+        claimThreads.add(Thread.currentThread().getName());
+        return super.claim(sessionId, nodeId);
+      }
+    });
+    nodeA.addHandler(new SessionStateHandler(nodeA.getSessionsManager()), "/jsonrpc");
+    nodeB.addHandler(new SessionStateHandler(nodeB.getSessionsManager()), "/jsonrpc");
+
+    try {
+      nodeA.start();
+      nodeB.start();
+
+      JsonRpcClient clientA =
+          new JsonRpcClientNettyWebSocket("ws://127.0.0.1:" + nodeA.getPort() + "/jsonrpc");
+      assertEquals("new", clientA.sendRequest("test", "alice", String.class));
+      String sessionId = clientA.getSession().getSessionId();
+
+      // Sessions are written to the store asynchronously
+      SessionStore storeA = nodeA.getSessionsManager().getSessionStore();
+      long timeout = System.currentTimeMillis() + 5000;
+      while (!isStoredWithUser(storeA, sessionId) && System.currentTimeMillis() < timeout) {
+        Thread.sleep(10);
+      }
+      assertTrue(isStoredWithUser(storeA, sessionId));
+
+      JsonRpcClient clientB =
+          new JsonRpcClientNettyWebSocket("ws://127.0.0.1:" + nodeB.getPort() + "/jsonrpc");
+      clientB.connect();
+      clientB.setSessionId(sessionId);
+      assertEquals("old", clientB.sendRequest("test", String.class));
+      assertEquals(sessionId, clientB.getSession().getSessionId());
+
+      SessionInfo info = nodeB.getSessionsManager().getSessionStore().get(sessionId);
+      assertEquals(nodeB.getSessionsManager().getNodeId(), info.getNodeId());
+      assertEquals("Properties are kept on takeover", "alice", info.getProperties().get("user"));
+      assertEquals("alice", nodeB.getSessionsManager().get(sessionId).getSessionInfo()
+          .getProperties().get("user"));
+
+      assertEquals(1, claimThreads.size());
+      assertTrue("Store is not accessed from the transport thread",
+          claimThreads.get(0).startsWith("SessionsManager-storeExec"));
+
+      clientB.close();
+      clientA.close();
+    } finally {
+      nodeA.close();
+      nodeB.close();
+    }
+  }
+
+  private boolean isStoredWithUser(SessionStore store, String sessionId) {
+    SessionInfo info = store.get(sessionId);
+    return info != null && "alice".equals(info.getProperties().get("user"));
+  }
+}
@@ -0,0 +1,71 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.kurento.jsonrpc.test;
+
+import java.io.IOException;
+
+import org.kurento.jsonrpc.internal.server.ServerSession;
+import org.kurento.jsonrpc.internal.server.SessionsManager;
+import org.kurento.jsonrpc.message.Response;
+
+import com.google.gson.JsonElement;
+
+/**
+ * Server session without a native session, for tests. Messages sent to the client are passed to
+ * {@link #write(String)}, that does nothing unless it is overridden.
+ */
+public class StubServerSession extends ServerSession {
+
+  private volatile boolean pushSupported = true;
+
+  public StubServerSession(String sessionId, SessionsManager sessionsManager) {
+    this(sessionId, null, sessionsManager, sessionId);
+  }
+
+  public StubServerSession(String sessionId, Object registerInfo, SessionsManager sessionsManager,
+      String transportId) {
+    super(sessionId, registerInfo, sessionsManager, transportId);
+  }
+
+  public void setPushSupported(boolean pushSupported) {
+    this.pushSupported = pushSupported;
+  }
+
+  @Override
+  public boolean isPushSupported() {
+    return pushSupported;
+  }
+
+  @Override
+  public void handleResponse(Response<JsonElement> response) {
+  }
+
+  @Override
+  public void closeNativeSession(String reason) {
+  }
+
+  @Override
+  public void sendSerializedMessage(String jsonMessage) throws IOException {
+    if (!pushSupported) {
+      throw new UnsupportedOperationException("Session " + getSessionId() + " has no push");
+    }
+    write(jsonMessage);
+  }
+
+  protected void write(String jsonMessage) throws IOException {
+  }
+}